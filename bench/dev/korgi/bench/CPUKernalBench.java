@@ -0,0 +1,78 @@
+package dev.korgi.bench;
+
+import java.util.Random;
+
+import dev.korgi.game.physics.WorldStorage;
+import dev.korgi.game.rendering.Camera;
+import dev.korgi.game.rendering.NativeGPUKernal;
+import dev.korgi.game.rendering.TextureAtlas;
+import dev.korgi.game.rendering.Voxel;
+import dev.korgi.math.Vector4;
+
+/**
+ * Frames per second of the CPU renderer at 900x600 over the default 100x100
+ * spawn plane with some coloured pillars on it. The camera orbits the plane so
+ * both the chunk skipping and the grid rebuilds are exercised.
+ */
+public class CPUKernalBench {
+
+    private static final int WIDTH = 900;
+    private static final int HEIGHT = 600;
+
+    public static void main(String[] args) {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int warmup = Math.max(1, frames / 5);
+
+        WorldStorage world = new WorldStorage();
+        Random random = new Random(42);
+        for (int x = 0; x < 100; x++) {
+            for (int z = 0; z < 100; z++) {
+                Voxel v = new Voxel(x, -5, z);
+                v.getMaterial().setTextureLocation(TextureAtlas.MINECRAFT_GRASS_BLOCK);
+                world.add(v);
+            }
+        }
+        for (int i = 0; i < 200; i++) {
+            int x = random.nextInt(100);
+            int z = random.nextInt(100);
+            int height = 1 + random.nextInt(8);
+            Vector4 color = new Vector4(random.nextDouble(), random.nextDouble(), random.nextDouble(), 1);
+            for (int y = -4; y < -4 + height; y++) {
+                world.add(new Voxel(x, y, z, color));
+            }
+        }
+
+        TextureAtlas atlas = new TextureAtlas(TextureAtlas.amt + 1);
+        atlas.build();
+        NativeGPUKernal.textureAtlas = atlas;
+        NativeGPUKernal.cpu = true;
+
+        int[] pixels = new int[WIDTH * HEIGHT];
+        NativeGPUKernal.resetSpecs(pixels, WIDTH, HEIGHT);
+
+        Camera camera = new Camera();
+        camera.fov = 60;
+        camera.position.copyFrom(50, 2, 50);
+
+        System.out.printf("%d threads, %dx%d%n", Runtime.getRuntime().availableProcessors(), WIDTH, HEIGHT);
+        for (int i = 0; i < warmup; i++) {
+            frame(world, camera, i, frames);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            frame(world, camera, i, frames);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d frames in %.2fs, %.1f fps, %.2f ms/frame%n", frames, seconds, frames / seconds,
+                seconds * 1000 / frames);
+    }
+
+    private static void frame(WorldStorage world, Camera camera, int i, int frames) {
+        double angle = Math.PI * 2 * i / frames;
+        camera.position.copyFrom(50 + Math.sin(angle) * 30, 2, 50 + Math.cos(angle) * 30);
+        camera.rotation.copyFrom(-0.3, angle + Math.PI, 0);
+        NativeGPUKernal.execute(world, camera);
+    }
+
+}
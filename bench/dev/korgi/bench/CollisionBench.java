@@ -0,0 +1,98 @@
+package dev.korgi.bench;
+
+import java.util.List;
+import java.util.Random;
+
+import dev.korgi.game.Game;
+import dev.korgi.game.entites.Entity;
+import dev.korgi.game.items.JimmyItem;
+import dev.korgi.game.physics.WorldEngine;
+import dev.korgi.game.rendering.Voxel;
+import dev.korgi.math.Vector3;
+
+/**
+ * Entity vs entity collision cost per tick with N JimmyItems scattered on the
+ * floor at roughly constant density. The all-pairs column replays the old
+ * loop's voxel tests (without the collision response, so it is a lower bound)
+ * and is skipped above the given entity count.
+ *
+ * Usage: CollisionBench [maxAllPairs] [counts...]
+ */
+public class CollisionBench {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int maxAllPairs = args.length > 0 ? Integer.parseInt(args[0].replace("_", "")) : 1_000;
+        int[] counts = { 100, 1_000, 10_000 };
+        if (args.length > 1) {
+            counts = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                counts[i - 1] = Integer.parseInt(args[i].replace("_", ""));
+            }
+        }
+
+        Game.loadEntities();
+        System.out.printf("%8s %14s %14s %10s%n", "items", "all-pairs ms", "broadphase ms", "contacts");
+        for (int count : counts) {
+            List<Entity> entities = WorldEngine.getWorld().entities;
+            entities.clear();
+            Random random = new Random(count);
+            double side = Math.sqrt(count) * 4;
+            Vector3[] start = new Vector3[count];
+            for (int i = 0; i < count; i++) {
+                JimmyItem item = new JimmyItem();
+                start[i] = new Vector3(random.nextDouble() * side, 0, random.nextDouble() * side);
+                item.getPosition().copyFrom(start[i]);
+                entities.add(item);
+            }
+
+            String allPairs = "skipped";
+            int contacts = 0;
+            if (count <= maxAllPairs) {
+                long best = Long.MAX_VALUE;
+                for (int round = 0; round < ROUNDS; round++) {
+                    long t0 = System.nanoTime();
+                    contacts = allPairs(entities);
+                    best = Math.min(best, System.nanoTime() - t0);
+                }
+                allPairs = "%.3f".formatted(best / 1e6);
+            }
+
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                for (int i = 0; i < count; i++) {
+                    entities.get(i).getPosition().copyFrom(start[i]);
+                }
+                long t0 = System.nanoTime();
+                WorldEngine.collideEntities();
+                best = Math.min(best, System.nanoTime() - t0);
+            }
+            System.out.printf("%8d %14s %14.3f %10s%n", count, allPairs, best / 1e6,
+                    count <= maxAllPairs ? contacts : "-");
+        }
+        WorldEngine.getWorld().entities.clear();
+    }
+
+    // the loop WorldEngine.execute ran before the broadphase
+    private static int allPairs(List<Entity> entities) {
+        int contacts = 0;
+        for (int i = 0; i < entities.size(); i++) {
+            Entity a = entities.get(i);
+            for (int j = i + 1; j < entities.size(); j++) {
+                Entity b = entities.get(j);
+                for (Voxel va : a.getHitbox()) {
+                    Vector3 vaWorld = va.position.add(a.getPosition());
+                    for (Voxel vb : b.getHitbox()) {
+                        Vector3 vbWorld = vb.position.add(b.getPosition());
+                        if (WorldEngine.voxelIntersects(vaWorld, vbWorld)) {
+                            contacts++;
+                        }
+                    }
+                }
+            }
+        }
+        return contacts;
+    }
+
+}
@@ -0,0 +1,240 @@
+package dev.korgi.bench;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import dev.korgi.game.Game;
+import dev.korgi.game.entites.Entity;
+import dev.korgi.game.items.JimmyItem;
+import dev.korgi.game.physics.WorldEngine;
+import dev.korgi.json.JSONObject;
+import dev.korgi.networking.DeltaReplicator;
+import dev.korgi.networking.NetworkStream;
+
+/**
+ * Entity state bandwidth with full states every tick against deltas on
+ * acknowledged baselines, for populations of JimmyItems where only a share of
+ * them move. Simulated clients over loopback keep only the newest state per id
+ * from each burst they read, like the client's per-id queues, apply those and
+ * acknowledge the highest sequence seen. Traffic is measured once every client
+ * has a baseline, and after the delta run the clients' copies of every entity
+ * are checked field by field against the server.
+ *
+ * Usage: DeltaBench [ticks] [clients] [entities] [moving_percent...]
+ */
+public class DeltaBench {
+
+    private static final int TICK_RATE = 60;
+    private static final int PORT = 6992;
+
+    private static final AtomicLong received = new AtomicLong();
+    private static final AtomicLong ackBytes = new AtomicLong();
+    private static final List<Client> clients = new ArrayList<>();
+
+    private static class Client {
+        final Socket socket;
+        final String id;
+        final Map<String, Map<String, String>> states = new HashMap<>();
+        final Map<String, JSONObject> queued = new HashMap<>();
+        long received;
+        long acked;
+        long lastPing;
+
+        Client(Socket socket, String id) {
+            this.socket = socket;
+            this.id = id;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+        int clientCount = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int entities = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+        List<Double> moving = new ArrayList<>();
+        for (int i = 3; i < args.length; i++) {
+            moving.add(Double.parseDouble(args[i]));
+        }
+        if (moving.isEmpty()) {
+            moving = List.of(0.0, 1.0, 5.0, 25.0);
+        }
+
+        Game.isClient = false;
+        Game.loadEntities();
+        NetworkStream.startServer(PORT);
+
+        Random random = new Random(9);
+        List<Entity> items = new ArrayList<>();
+        for (int i = 0; i < entities; i++) {
+            JimmyItem item = new JimmyItem();
+            item.getPosition().copyFrom(random.nextDouble() * 100, 0, random.nextDouble() * 100);
+            WorldEngine.addEntity(item);
+            items.add(item);
+        }
+
+        for (int i = 0; i < clientCount; i++) {
+            Client client = new Client(new Socket("localhost", PORT), UUID.randomUUID().toString());
+            clients.add(client);
+            Thread reader = new Thread(() -> read(client), "bench-client-" + i);
+            reader.setDaemon(true);
+            reader.start();
+            send(client.socket, "{\"internal_id\":\"" + client.id + "\",\"destination\":" + NetworkStream.SERVER
+                    + ",\"type\":" + NetworkStream.HANDSHAKE_REQUEST + ",\"data\":{\"protocol\":"
+                    + NetworkStream.PROTOCOL_VERSION + "}}");
+        }
+        while (Game.getPlayers().size() < clientCount) {
+            NetworkStream.update(true);
+            Thread.sleep(5);
+        }
+
+        System.out.printf("%d clients, %d JimmyItems, %d ticks%n", clientCount, entities, ticks);
+        System.out.printf("%-8s %-6s %14s %14s %12s %10s %10s %12s%n", "moving", "", "bytes/tick", "bytes/s",
+                "acks/s", "full", "deltas", "unchanged");
+        for (double percent : moving) {
+            int count = (int) Math.round(entities * percent / 100);
+            NetworkStream.setReplicator(null);
+            run(percent + "%", "full", ticks, items.subList(0, count), random, null);
+
+            DeltaReplicator deltas = new DeltaReplicator(120);
+            NetworkStream.setReplicator(deltas);
+            run("", "delta", ticks, items.subList(0, count), random, deltas);
+            settle(items);
+        }
+        System.exit(0);
+    }
+
+    private static void run(String moving, String name, int ticks, List<Entity> movers, Random random,
+            DeltaReplicator deltas) throws InterruptedException, IOException {
+        for (int t = 0; t < 10; t++) {
+            tick(movers, random);
+        }
+        long bytes = NetworkStream.bytesSent;
+        long acks = ackBytes.get();
+        long full = deltas == null ? 0 : deltas.fullSent();
+        long sent = deltas == null ? 0 : deltas.deltasSent();
+        long same = deltas == null ? 0 : deltas.unchanged();
+        for (int t = 0; t < ticks; t++) {
+            tick(movers, random);
+        }
+        double perTick = (double) (NetworkStream.bytesSent - bytes) / ticks;
+        System.out.printf("%-8s %-6s %14.0f %14.0f %12.0f %10s %10s %12s%n", moving, name, perTick,
+                perTick * TICK_RATE, (double) (ackBytes.get() - acks) / ticks * TICK_RATE,
+                deltas == null ? "-" : deltas.fullSent() - full, deltas == null ? "-" : deltas.deltasSent() - sent,
+                deltas == null ? "-" : deltas.unchanged() - same);
+    }
+
+    // one server tick, then waits for the clients to read and acknowledge it
+    private static void tick(List<Entity> movers, Random random) throws InterruptedException, IOException {
+        NetworkStream.update(true);
+        for (Entity e : movers) {
+            e.getPosition().addTo((random.nextDouble() - 0.5) * 0.2, 0, (random.nextDouble() - 0.5) * 0.2);
+        }
+        Game.networkEndLoop();
+        while (received.get() < NetworkStream.bytesSent) {
+            Thread.sleep(1);
+        }
+        for (Client client : clients) {
+            apply(client);
+        }
+        Thread.sleep(2);
+    }
+
+    // ticks without movement until nothing is resent, then compares the clients' copies
+    private static void settle(List<Entity> items) throws InterruptedException, IOException {
+        Random random = new Random();
+        long before;
+        int rounds = 0;
+        do {
+            before = NetworkStream.bytesSent;
+            tick(List.of(), random);
+            rounds++;
+        } while (NetworkStream.bytesSent != before && rounds < 1000);
+
+        int wrong = 0;
+        for (Client client : clients) {
+            synchronized (client) {
+                for (Entity e : items) {
+                    Map<String, String> server = DeltaReplicator.fields(new JSONObject(e));
+                    Map<String, String> copy = client.states.get(e.internal_id);
+                    if (copy == null || !copy.entrySet().containsAll(server.entrySet()))
+                        wrong++;
+                }
+            }
+        }
+        System.out.printf("%-8s settled after %d ticks, %d of %d client copies differ from the server%n", "",
+                rounds, wrong, items.size() * clients.size());
+    }
+
+    private static void send(Socket socket, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        byte[] frame = new byte[body.length + 5];
+        frame[0] = (byte) NetworkStream.FRAME_JSON;
+        frame[1] = (byte) (body.length >>> 24);
+        frame[2] = (byte) (body.length >>> 16);
+        frame[3] = (byte) (body.length >>> 8);
+        frame[4] = (byte) body.length;
+        System.arraycopy(body, 0, frame, 5, body.length);
+        OutputStream out = socket.getOutputStream();
+        out.write(frame);
+        out.flush();
+        if (json.contains("\"type\":" + NetworkStream.ACK))
+            ackBytes.addAndGet(frame.length);
+    }
+
+    private static void read(Client client) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(client.socket.getInputStream()))) {
+            while (in.read() != -1) {
+                int length = in.readInt();
+                byte[] body = new byte[length];
+                in.readFully(body);
+                if (NetworkStream.getReplicator() != null) {
+                    JSONObject packet = JSONObject.fromJSONString(new String(body, StandardCharsets.UTF_8));
+                    Long sequence = packet.getLong("sequence");
+                    if (sequence != null) {
+                        synchronized (client) {
+                            client.queued.put(packet.getString("internal_id"), packet.getJSONObject("data"));
+                            client.received = Math.max(client.received, sequence);
+                        }
+                    }
+                }
+                received.addAndGet(length + 5);
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    // a client frame: apply the newest queued state per id, acknowledge and keep alive
+    private static void apply(Client client) throws IOException {
+        synchronized (client) {
+            for (Map.Entry<String, JSONObject> q : client.queued.entrySet()) {
+                Map<String, String> state = client.states.computeIfAbsent(q.getKey(), k -> new HashMap<>());
+                for (String key : q.getValue().getValues().keySet()) {
+                    state.put(key, q.getValue().toJSONString(key));
+                }
+            }
+            client.queued.clear();
+        }
+        long now = System.currentTimeMillis();
+        if (now - client.lastPing > 1000) {
+            send(client.socket, "{\"internal_id\":\"" + client.id + "\",\"destination\":" + NetworkStream.SERVER
+                    + ",\"type\":" + NetworkStream.PING + ",\"data\":{\"timestamp\":" + now + "}}");
+            client.lastPing = now;
+        }
+        if (client.received > client.acked) {
+            send(client.socket, "{\"internal_id\":\"" + client.id + "\",\"destination\":" + NetworkStream.SERVER
+                    + ",\"type\":" + NetworkStream.ACK + ",\"data\":{\"sequence\":" + client.received + "}}");
+            client.acked = client.received;
+        }
+    }
+
+}
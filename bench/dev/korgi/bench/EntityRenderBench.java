@@ -0,0 +1,252 @@
+package dev.korgi.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import dev.korgi.game.Game;
+import dev.korgi.game.entites.Entity;
+import dev.korgi.game.entites.Jimmy;
+import dev.korgi.game.rendering.EntityModel;
+import dev.korgi.game.rendering.Material;
+import dev.korgi.game.rendering.NativeGPUKernal;
+import dev.korgi.game.rendering.Voxel;
+import dev.korgi.math.Vector3;
+
+/**
+ * Per frame cost of preparing N Jimmy instances for the entity kernal, the old
+ * rebuild of every body and BVH against packing only instance headers over the
+ * cached models. Also casts random rays through both trees of the Jimmy model
+ * on the cpu and reports nodes visited per ray and rays whose nearest hit
+ * differs.
+ *
+ * Usage: EntityRenderBench [instances] [rays]
+ */
+public class EntityRenderBench {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int instances = args.length > 0 ? Integer.parseInt(args[0].replace("_", "")) : 1_000;
+        int rays = args.length > 1 ? Integer.parseInt(args[1].replace("_", "")) : 20_000;
+
+        Game.loadEntities();
+        List<Entity> entities = new ArrayList<>();
+        Random random = new Random(5);
+        for (int i = 0; i < instances; i++) {
+            Jimmy jimmy = new Jimmy();
+            jimmy.getPosition().copyFrom(random.nextDouble() * 100, 0, random.nextDouble() * 100);
+            entities.add(jimmy);
+        }
+
+        long rebuild = best(() -> OldPrep.run(entities));
+        long cached = best(() -> NativeGPUKernal.packEntities(entities));
+        System.out.printf("%d Jimmys, %d voxels each%n", instances, entities.get(0).getBody().size());
+        System.out.printf("%14s %14s%n", "rebuild ms", "cached ms");
+        System.out.printf("%14.3f %14.3f%n", rebuild / 1e6, cached / 1e6);
+
+        EntityModel model = EntityModel.of(entities.get(0));
+        OldPrep.run(entities.subList(0, 1));
+        float[] mins = new float[OldPrep.nodes * 3];
+        float[] maxs = new float[OldPrep.nodes * 3];
+        int[] links = new int[OldPrep.nodes * 3];
+        for (int i = 0; i < OldPrep.nodes; i++) {
+            System.arraycopy(OldPrep.mins.get(i), 0, mins, i * 3, 3);
+            System.arraycopy(OldPrep.maxs.get(i), 0, maxs, i * 3, 3);
+            System.arraycopy(OldPrep.links.get(i), 0, links, i * 3, 3);
+        }
+
+        long[] visited = new long[2];
+        int mismatch = 0;
+        float r = model.radius;
+        for (int i = 0; i < rays; i++) {
+            Vector3 o = new Vector3(random.nextGaussian(), random.nextGaussian(), random.nextGaussian())
+                    .normalize().multiply(r * 1.5);
+            Vector3 target = new Vector3(random.nextDouble() - 0.5, random.nextDouble() - 0.5,
+                    random.nextDouble() - 0.5).multiply(r);
+            Vector3 d = target.subtract(o).normalize();
+            float[] ro = o.toFloatArray();
+            float[] rd = d.toFloatArray();
+            float a = trace(ro, rd, model, mins, maxs, links, visited, 0);
+            float b = trace(ro, rd, model, model.mins, model.maxs, model.links, visited, 1);
+            if (a != b)
+                mismatch++;
+        }
+        System.out.printf("%14s %14s %10s%n", "median nodes", "sah nodes", "mismatch");
+        System.out.printf("%14.1f %14.1f %10d%n", visited[0] / (double) rays, visited[1] / (double) rays, mismatch);
+    }
+
+    private static long best(Runnable r) {
+        r.run();
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            r.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    // the shader's traversal, nearest hit distance or -1
+    private static float trace(float[] ro, float[] rd, EntityModel model, float[] mins, float[] maxs, int[] links,
+            long[] visited, int slot) {
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        float best = Float.MAX_VALUE;
+        while (top > 0) {
+            int n = stack[--top];
+            visited[slot]++;
+            float t = slab(ro, rd, mins[n * 3], mins[n * 3 + 1], mins[n * 3 + 2], maxs[n * 3], maxs[n * 3 + 1],
+                    maxs[n * 3 + 2]);
+            if (t < 0 || t >= best)
+                continue;
+            if (links[n * 3] == -1) {
+                int v = links[n * 3 + 2];
+                float s = model.sizes[v] * 0.5f;
+                float x = model.positions[v * 3], y = model.positions[v * 3 + 1], z = model.positions[v * 3 + 2];
+                float hit = slab(ro, rd, x - s, y - s, z - s, x + s, y + s, z + s);
+                if (hit >= 0 && hit < best)
+                    best = hit;
+            } else {
+                stack[top++] = links[n * 3];
+                stack[top++] = links[n * 3 + 1];
+            }
+        }
+        return best == Float.MAX_VALUE ? -1 : best;
+    }
+
+    private static float slab(float[] ro, float[] rd, float x0, float y0, float z0, float x1, float y1, float z1) {
+        float[] lo = { x0, y0, z0 };
+        float[] hi = { x1, y1, z1 };
+        float tMin = -Float.MAX_VALUE, tMax = Float.MAX_VALUE;
+        for (int k = 0; k < 3; k++) {
+            float inv = 1f / rd[k];
+            float t0 = (lo[k] - ro[k]) * inv;
+            float t1 = (hi[k] - ro[k]) * inv;
+            tMin = Math.max(tMin, Math.min(t0, t1));
+            tMax = Math.min(tMax, Math.max(t0, t1));
+        }
+        if (tMin > tMax || tMax < 0)
+            return -1;
+        return tMin >= 0 ? tMin : tMax;
+    }
+
+    // NativeGPUKernal.precomputeEntites before the model cache, minus the kernal call
+    private static class OldPrep {
+        static List<float[]> mins, maxs;
+        static List<int[]> links;
+        static int nodes;
+
+        static void run(List<Entity> entities) {
+            int totalVoxels = 0;
+            for (Entity entity : entities) {
+                totalVoxels += entity.getBody().size();
+            }
+            int entityCount = entities.size();
+            float[] entityPositions = new float[entityCount * 3];
+            float[] entityRotations = new float[entityCount * 9];
+            int[] entityVoxelOffsets = new int[entityCount * 2];
+            int[] entityBvhOffsets = new int[entityCount];
+            float[] entityRadii = new float[entityCount];
+            float[] bvPositions = new float[totalVoxels * 3];
+            float[] bvSizes = new float[totalVoxels];
+            float[] bvOpacities = new float[totalVoxels];
+            int[] bvTextureIds = new int[totalVoxels];
+
+            int voxelCursor = 0;
+            for (int i = 0; i < entityCount; i++) {
+                Entity entity = entities.get(i);
+                Vector3 ePos = entity.getPosition();
+                entityPositions[i * 3] = (float) ePos.x;
+                entityPositions[i * 3 + 1] = (float) ePos.y;
+                entityPositions[i * 3 + 2] = (float) ePos.z;
+                System.arraycopy(entity.getRotationMatrix(), 0, entityRotations, i * 9, 9);
+                entityVoxelOffsets[i * 2] = voxelCursor;
+                entityVoxelOffsets[i * 2 + 1] = entity.getBody().size();
+                float maxDist = 0;
+                for (Voxel bv : entity.getBody()) {
+                    Material mat = bv.getMaterial();
+                    maxDist = Math.max(maxDist, (float) bv.position.length() + (float) mat.getSize() * 0.5f);
+                    bvPositions[voxelCursor * 3] = (float) bv.position.x;
+                    bvPositions[voxelCursor * 3 + 1] = (float) bv.position.y;
+                    bvPositions[voxelCursor * 3 + 2] = (float) bv.position.z;
+                    bvSizes[voxelCursor] = (float) mat.getSize();
+                    bvTextureIds[voxelCursor] = mat.getTextureLocation();
+                    bvOpacities[voxelCursor] = (float) mat.getOpacity();
+                    voxelCursor++;
+                }
+                entityRadii[i] = maxDist;
+            }
+
+            mins = new ArrayList<>();
+            maxs = new ArrayList<>();
+            links = new ArrayList<>();
+            voxelCursor = 0;
+            for (int i = 0; i < entityCount; i++) {
+                int voxelCount = entities.get(i).getBody().size();
+                entityBvhOffsets[i] = mins.size();
+                int[] localIndices = new int[voxelCount];
+                for (int j = 0; j < voxelCount; j++)
+                    localIndices[j] = j;
+                buildBVH(localIndices, 0, voxelCount, bvPositions, bvSizes, voxelCursor);
+                voxelCursor += voxelCount;
+            }
+            nodes = mins.size();
+        }
+
+        static int buildBVH(int[] localIndices, int start, int end, float[] bvPositions, float[] bvSizes,
+                int globalOffset) {
+            int nodeIdx = mins.size();
+            if (end - start == 1) {
+                int gi = globalOffset + localIndices[start];
+                float x = bvPositions[gi * 3], y = bvPositions[gi * 3 + 1], z = bvPositions[gi * 3 + 2];
+                float s = bvSizes[gi] * 0.5f;
+                mins.add(new float[] { x - s, y - s, z - s });
+                maxs.add(new float[] { x + s, y + s, z + s });
+                links.add(new int[] { -1, -1, localIndices[start] });
+                return nodeIdx;
+            }
+            float aMinX = Float.MAX_VALUE, aMinY = Float.MAX_VALUE, aMinZ = Float.MAX_VALUE;
+            float aMaxX = -Float.MAX_VALUE, aMaxY = -Float.MAX_VALUE, aMaxZ = -Float.MAX_VALUE;
+            float cMinX = Float.MAX_VALUE, cMinY = Float.MAX_VALUE, cMinZ = Float.MAX_VALUE;
+            float cMaxX = -Float.MAX_VALUE, cMaxY = -Float.MAX_VALUE, cMaxZ = -Float.MAX_VALUE;
+            for (int i = start; i < end; i++) {
+                int gi = globalOffset + localIndices[i];
+                float x = bvPositions[gi * 3], y = bvPositions[gi * 3 + 1], z = bvPositions[gi * 3 + 2];
+                float s = bvSizes[gi] * 0.5f;
+                aMinX = Math.min(aMinX, x - s);
+                aMaxX = Math.max(aMaxX, x + s);
+                aMinY = Math.min(aMinY, y - s);
+                aMaxY = Math.max(aMaxY, y + s);
+                aMinZ = Math.min(aMinZ, z - s);
+                aMaxZ = Math.max(aMaxZ, z + s);
+                cMinX = Math.min(cMinX, x);
+                cMaxX = Math.max(cMaxX, x);
+                cMinY = Math.min(cMinY, y);
+                cMaxY = Math.max(cMaxY, y);
+                cMinZ = Math.min(cMinZ, z);
+                cMaxZ = Math.max(cMaxZ, z);
+            }
+            float dx = cMaxX - cMinX, dy = cMaxY - cMinY, dz = cMaxZ - cMinZ;
+            final int axis = (dx >= dy && dx >= dz) ? 0 : (dy >= dz) ? 1 : 2;
+            Integer[] sub = new Integer[end - start];
+            for (int i = 0; i < sub.length; i++)
+                sub[i] = localIndices[start + i];
+            Arrays.sort(sub, (a, b) -> Float.compare(bvPositions[(globalOffset + a) * 3 + axis],
+                    bvPositions[(globalOffset + b) * 3 + axis]));
+            for (int i = 0; i < sub.length; i++)
+                localIndices[start + i] = sub[i];
+            mins.add(new float[] { aMinX, aMinY, aMinZ });
+            maxs.add(new float[] { aMaxX, aMaxY, aMaxZ });
+            links.add(new int[] { -1, -1, -1 });
+            int left = buildBVH(localIndices, start, (start + end) / 2, bvPositions, bvSizes, globalOffset);
+            int right = buildBVH(localIndices, (start + end) / 2, end, bvPositions, bvSizes, globalOffset);
+            links.get(nodeIdx)[0] = left;
+            links.get(nodeIdx)[1] = right;
+            return nodeIdx;
+        }
+    }
+
+}
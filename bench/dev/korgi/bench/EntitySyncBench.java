@@ -0,0 +1,99 @@
+package dev.korgi.bench;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import dev.korgi.game.Game;
+import dev.korgi.game.entites.Entity;
+import dev.korgi.game.entites.Jimmy;
+import dev.korgi.json.JSONObject;
+import dev.korgi.json.JSONReader;
+import dev.korgi.networking.NetworkStream;
+import dev.korgi.networking.Packet;
+import dev.korgi.player.Player;
+import dev.korgi.utils.ServerSide;
+
+/**
+ * Throughput of the per-entity network state path: sendOut (reflect the entity
+ * into a JSONObject and frame it), filling a received state into an entity
+ * through the JSONObject tree and binding it straight from the frame text the
+ * way NetworkObject.loop does.
+ *
+ * Usage: EntitySyncBench [iterations]
+ */
+public class EntitySyncBench {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+
+        Game.loadEntities();
+        System.out.printf("%-8s %14s %14s %14s%n", "entity", "sendOut/s", "tree fill/s", "stream fill/s");
+        run("Player", Player::new, iterations);
+        run("Jimmy", Jimmy::new, iterations);
+    }
+
+    private static void run(String name, Supplier<Entity> factory, int iterations) {
+        Entity source = factory.get();
+        Entity target = factory.get();
+        String frame = new JSONObject(new Packet(source.internal_id, NetworkStream.CLIENT, NetworkStream.BROADCAST,
+                new JSONObject(source))).toJSONString();
+        JSONReader header = new JSONReader(frame);
+        int dataStart = 0;
+        int dataEnd = 0;
+        header.beginObject();
+        while (header.hasNext()) {
+            if (header.nextName().equals("data")) {
+                header.peek();
+                dataStart = header.position();
+                header.skipValue();
+                dataEnd = header.position();
+            } else {
+                header.skipValue();
+            }
+        }
+        int start = dataStart;
+        int end = dataEnd;
+
+        // what a server skips when a client state arrives, see NetworkObject.handleInPacket
+        List<String> serverSide = new ArrayList<>();
+        for (Class<?> c = source.getClass(); c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (field.isAnnotationPresent(ServerSide.class))
+                    serverSide.add(field.getName());
+            }
+        }
+
+        double send = opsPerSecond(iterations, source::sendOut);
+        double tree = opsPerSecond(iterations, () -> JSONObject.fromJSONString(frame).getJSONObject("data")
+                .fillObject(target));
+        double stream = opsPerSecond(iterations, () -> {
+            Packet packet = new Packet(source.internal_id, NetworkStream.CLIENT, NetworkStream.BROADCAST, frame,
+                    start, end);
+            for (String field : serverSide) {
+                packet.skipField(field);
+            }
+            packet.fillObject(target);
+        });
+        System.out.printf("%-8s %14.0f %14.0f %14.0f%n", name, send, tree, stream);
+    }
+
+    private static double opsPerSecond(int iterations, Runnable op) {
+        for (int i = 0; i < iterations; i++) {
+            op.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                op.run();
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return iterations / (best / 1e9);
+    }
+
+}
@@ -0,0 +1,136 @@
+package dev.korgi.bench;
+
+import java.io.IOException;
+
+import dev.korgi.game.Game;
+import dev.korgi.game.physics.NoiseGenerator;
+import dev.korgi.game.physics.TerrainSource;
+import dev.korgi.game.physics.VoxelChunk;
+import dev.korgi.game.physics.VoxelStore;
+import dev.korgi.game.physics.WorldStorage;
+import dev.korgi.game.rendering.Voxel;
+
+/**
+ * Generates the chunks within radius columns of spawn with the noise generator
+ * through TerrainSource.loadAll on pools of each thread count, and once chunk
+ * by chunk the way a single miss is generated on the tick thread. The old
+ * init, 10k Voxels for a 100x100 plane with a progress update each, is timed
+ * for comparison.
+ *
+ * Every run hashes the chunks it made, material by material, and the hashes
+ * have to match: the same seed gives the same world on any number of threads.
+ *
+ * Usage: GenerationBench [radius] [threads...]
+ */
+public class GenerationBench {
+
+    private static final int ROUNDS = 5;
+    private static final long SEED = 24;
+
+    public static void main(String[] args) throws IOException {
+        int radius = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int cores = Runtime.getRuntime().availableProcessors();
+        int[] threads = { 1, 2, 4, cores };
+        if (args.length > 1) {
+            threads = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                threads[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+        Game.isClient = false;
+
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            WorldStorage world = new WorldStorage();
+            for (int x = 0; x < 100; x++) {
+                for (int z = 0; z < 100; z++) {
+                    Voxel v = new Voxel(x, -5, z);
+                    v.getMaterial().setTextureLocation(0);
+                    world.add(v);
+                    Game.setInitProgress(0.5f * ((float) (x * 100 + z) / (float) (100 * 100)) + 0.5f);
+                }
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("old init: 100x100 plane in %.1f ms, %.0f voxels/ms%n", best / 1e6, 10_000 / (best / 1e6));
+
+        System.out.printf("%nnoise, seed %d, %d cores, columns within %d of spawn%n", SEED, cores, radius);
+        System.out.printf("%-12s %10s %10s %12s %12s %18s%n", "threads", "chunks", "ms", "chunks/s", "voxels",
+                "hash");
+        Long expected = null;
+        boolean same = true;
+        for (int t : threads) {
+            same &= report(Integer.toString(t), radius, t, true, expected);
+            if (expected == null) {
+                expected = lastHash;
+            }
+        }
+        same &= report("on demand", radius, 1, false, expected);
+        System.out.printf("%ndeterminism %s%n", same ? "ok, every run made the same chunks"
+                : "FAILED, runs made different chunks");
+    }
+
+    private static long lastHash;
+
+    private static boolean report(String label, int radius, int threads, boolean parallel, Long expected)
+            throws IOException {
+        long best = Long.MAX_VALUE;
+        int chunks = 0;
+        long voxels = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            VoxelStore store = new VoxelStore();
+            TerrainSource terrain = new TerrainSource(null, new NoiseGenerator(SEED), threads);
+            store.setSource(terrain);
+            long[] keys = keys(terrain, radius);
+            long start = System.nanoTime();
+            if (parallel) {
+                terrain.loadAll(store, keys, keys.length);
+            } else {
+                for (long key : keys) {
+                    store.load(key);
+                }
+            }
+            best = Math.min(best, System.nanoTime() - start);
+            chunks = keys.length;
+            voxels = store.size();
+            lastHash = hash(store, keys);
+            terrain.close();
+        }
+        System.out.printf("%-12s %10d %10.1f %12.0f %12d %18x%n", label, chunks, best / 1e6, chunks / (best / 1e9),
+                voxels, lastHash);
+        return expected == null || expected == lastHash;
+    }
+
+    private static long[] keys(TerrainSource terrain, int radius) throws IOException {
+        int side = 2 * radius + 1;
+        int[] heights = terrain.heights(0, 0);
+        long[] keys = new long[side * side * heights.length];
+        int n = 0;
+        for (int cx = -radius; cx <= radius; cx++) {
+            for (int cz = -radius; cz <= radius; cz++) {
+                for (int cy : heights) {
+                    keys[n++] = VoxelStore.chunkKey(cx, cy, cz);
+                }
+            }
+        }
+        return keys;
+    }
+
+    // by texture, so the hash does not depend on palette ids
+    private static long hash(VoxelStore store, long[] keys) {
+        long hash = 1125899906842597L;
+        for (long key : keys) {
+            hash = 31 * hash + key;
+            VoxelChunk chunk = store.chunks().get(key);
+            if (chunk == null) {
+                continue;
+            }
+            for (char id : chunk.cells()) {
+                hash = 31 * hash + (id == VoxelChunk.EMPTY ? 0 : store.palette().get(id).getTextureLocation() + 1);
+            }
+        }
+        return hash;
+    }
+
+}
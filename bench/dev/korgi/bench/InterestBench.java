@@ -0,0 +1,216 @@
+package dev.korgi.bench;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import dev.korgi.game.Game;
+import dev.korgi.game.entites.Entity;
+import dev.korgi.game.entites.Jimmy;
+import dev.korgi.game.physics.WorldEngine;
+import dev.korgi.json.JSONObject;
+import dev.korgi.math.Vector3;
+import dev.korgi.networking.InterestManager;
+import dev.korgi.networking.NetworkStream;
+import dev.korgi.player.Player;
+
+/**
+ * Entity replication traffic with every broadcast going to every client
+ * against area of interest filtering. Connects simulated clients over loopback
+ * to an in process server holding Jimmys scattered over a square map, then
+ * runs Game.networkEndLoop for a number of ticks while players walk and
+ * entities wander. Reports bytes the server sent per tick and per second at
+ * 60 ticks/s, and checks that every client's view built from enter and leave
+ * events matches the entities in its radius.
+ *
+ * Usage: InterestBench [ticks] [clients] [entities] [map_size] [radius]
+ */
+public class InterestBench {
+
+    private static final int TICK_RATE = 60;
+    private static final int PORT = 6991;
+
+    private static final AtomicLong received = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 120;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int entities = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+        double map = args.length > 3 ? Double.parseDouble(args[3]) : 2048;
+        double radius = args.length > 4 ? Double.parseDouble(args[4]) : 64;
+
+        Game.isClient = false;
+        Game.loadEntities();
+        NetworkStream.startServer(PORT);
+
+        Random random = new Random(5);
+        for (int i = 0; i < entities; i++) {
+            Jimmy jimmy = new Jimmy();
+            jimmy.getPosition().copyFrom(random.nextDouble() * map, 0, random.nextDouble() * map);
+            WorldEngine.addEntity(jimmy);
+        }
+
+        List<String> ids = new ArrayList<>();
+        List<Set<String>> views = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            String id = UUID.randomUUID().toString();
+            ids.add(id);
+            Socket socket = new Socket("localhost", PORT);
+            Set<String> view = new HashSet<>();
+            views.add(view);
+            Thread reader = new Thread(() -> read(socket, view), "bench-client-" + i);
+            reader.setDaemon(true);
+            reader.start();
+            send(socket, "{\"internal_id\":\"" + id + "\",\"destination\":" + NetworkStream.SERVER
+                    + ",\"type\":" + NetworkStream.HANDSHAKE_REQUEST + ",\"data\":{\"protocol\":"
+                    + NetworkStream.PROTOCOL_VERSION + "}}");
+        }
+        while (Game.getPlayers().size() < clients) {
+            NetworkStream.update(true);
+            Thread.sleep(5);
+        }
+        List<Player> players = Game.getPlayers();
+        double[] heading = new double[clients];
+        for (int i = 0; i < clients; i++) {
+            players.get(i).getPosition().copyFrom(random.nextDouble() * map, 0, random.nextDouble() * map);
+            heading[i] = random.nextDouble() * Math.PI * 2;
+        }
+
+        System.out.printf("%d clients, %d entities on a %.0fx%.0f map, radius %.0f, %d ticks%n", clients, entities,
+                map, map, radius, ticks);
+        System.out.printf("%-12s %14s %14s %12s %10s %10s%n", "", "bytes/tick", "bytes/s", "tick ms", "entered",
+                "left");
+
+        NetworkStream.setInterest(null);
+        run("broadcast", ticks, random, map, heading, null);
+
+        InterestManager interest = new InterestManager(radius);
+        NetworkStream.setInterest(interest);
+        run("interest", ticks, random, map, heading, interest);
+
+        int mismatched = 0;
+        double seen = 0;
+        for (int i = 0; i < clients; i++) {
+            Set<String> expected = new HashSet<>();
+            Vector3 center = null;
+            for (Player p : players) {
+                if (p.internal_id.equals(ids.get(i)))
+                    center = p.getPosition();
+            }
+            for (Entity e : WorldEngine.getWorld().entities) {
+                if (e instanceof Player)
+                    continue;
+                Vector3 pos = e.getPosition();
+                double dx = pos.x - center.x, dy = pos.y - center.y, dz = pos.z - center.z;
+                if (dx * dx + dy * dy + dz * dz <= radius * radius)
+                    expected.add(e.internal_id);
+            }
+            synchronized (views.get(i)) {
+                if (!expected.equals(views.get(i)))
+                    mismatched++;
+            }
+            seen += expected.size();
+        }
+        System.out.printf("%.1f entities in view per client, %d of %d client views differ from their radius%n",
+                seen / clients, mismatched, clients);
+        System.exit(0);
+    }
+
+    private static void run(String name, int ticks, Random random, double map, double[] heading,
+            InterestManager interest) throws InterruptedException {
+        drain();
+        long bytes = NetworkStream.bytesSent;
+        double dt = 1.0 / TICK_RATE;
+        long time = 0;
+        for (int t = 0; t < ticks; t++) {
+            move(random, map, heading, dt);
+            long start = System.nanoTime();
+            Game.networkEndLoop();
+            time += System.nanoTime() - start;
+        }
+        drain();
+        double perTick = (double) (NetworkStream.bytesSent - bytes) / ticks;
+        System.out.printf("%-12s %14.0f %14.0f %12.2f %10s %10s%n", name, perTick, perTick * TICK_RATE,
+                time / 1e6 / ticks, interest == null ? "-" : interest.entered(),
+                interest == null ? "-" : interest.left());
+    }
+
+    private static void move(Random random, double map, double[] heading, double dt) {
+        List<Player> players = Game.getPlayers();
+        for (int i = 0; i < players.size(); i++) {
+            Vector3 p = players.get(i).getPosition();
+            p.x = wrap(p.x + Math.cos(heading[i]) * 20 * dt, map);
+            p.z = wrap(p.z + Math.sin(heading[i]) * 20 * dt, map);
+        }
+        for (Entity e : WorldEngine.getWorld().entities) {
+            if (e instanceof Player)
+                continue;
+            Vector3 p = e.getPosition();
+            p.x = Math.min(map, Math.max(0, p.x + (random.nextDouble() - 0.5) * 8 * dt));
+            p.z = Math.min(map, Math.max(0, p.z + (random.nextDouble() - 0.5) * 8 * dt));
+        }
+    }
+
+    private static double wrap(double v, double map) {
+        return ((v % map) + map) % map;
+    }
+
+    // waits until the clients have read everything the server queued
+    private static void drain() throws InterruptedException {
+        while (received.get() < NetworkStream.bytesSent) {
+            Thread.sleep(5);
+        }
+    }
+
+    private static void send(Socket socket, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        byte[] frame = new byte[body.length + 5];
+        frame[0] = (byte) NetworkStream.FRAME_JSON;
+        frame[1] = (byte) (body.length >>> 24);
+        frame[2] = (byte) (body.length >>> 16);
+        frame[3] = (byte) (body.length >>> 8);
+        frame[4] = (byte) body.length;
+        System.arraycopy(body, 0, frame, 5, body.length);
+        OutputStream out = socket.getOutputStream();
+        out.write(frame);
+        out.flush();
+    }
+
+    private static void read(Socket socket, Set<String> view) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            while (in.read() != -1) {
+                int length = in.readInt();
+                byte[] body = new byte[length];
+                in.readFully(body);
+                String text = new String(body, StandardCharsets.UTF_8);
+                if (text.contains("\"internal_id\":\"" + InterestManager.CHANNEL + "\"")) {
+                    apply(JSONObject.fromJSONString(text).getJSONObject("data"), view);
+                }
+                received.addAndGet(length + 5);
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static void apply(JSONObject data, Set<String> view) {
+        synchronized (view) {
+            for (int i = 0; i < data.getInt("lc"); i++) {
+                view.remove(data.getString("l%d".formatted(i)));
+            }
+            for (int i = 0; i < data.getInt("ec"); i++) {
+                view.add(data.getJSONObject("e%d".formatted(i)).getString("internal_id"));
+            }
+        }
+    }
+
+}
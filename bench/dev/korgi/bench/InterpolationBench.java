@@ -0,0 +1,232 @@
+package dev.korgi.bench;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+
+import dev.korgi.game.Game;
+import dev.korgi.game.entites.Jimmy;
+import dev.korgi.json.JSONObject;
+import dev.korgi.math.Vector3;
+import dev.korgi.networking.NetworkStream;
+import dev.korgi.networking.Packet;
+import dev.korgi.networking.ServerClock;
+import dev.korgi.networking.SnapshotBuffer;
+
+/**
+ * How a remote entity moves on screen when drawn at the newest state received,
+ * the old behaviour, against the snapshot buffer sampled at the server clock's
+ * render tick. One entity drives round a circle at a steady speed, stopping
+ * now and then, on a 60 tick server that sends its state at each send rate
+ * and skips unchanged states like the delta replicator. Packets arrive in
+ * order after a fixed latency plus jitter and the odd spike, and a 60 fps
+ * client takes whatever has arrived each frame. Everything runs on a
+ * simulated clock so runs are repeatable.
+ *
+ * Steps are the distance the entity moves on screen between frames, measured
+ * while it has been driving long enough for every packet in flight to be a
+ * moving one, where an ideal step is speed / fps. Behind is how far the drawn
+ * state trails the server while driving, error is the distance from where the
+ * entity really was at the tick drawn.
+ *
+ * Usage: InterpolationBench [seconds] [latency_ms] [jitter_ms] [delay_ms] [send_rates...]
+ */
+public class InterpolationBench {
+
+    private static final int TICK_RATE = 60;
+    private static final double FPS = 60;
+    private static final double SPEED = 10;
+    private static final double RADIUS = 8;
+    // drives for DRIVE seconds then waits for STOP seconds
+    private static final double DRIVE = 5;
+    private static final double STOP = 2;
+    private static final double SPIKE_CHANCE = 0.02;
+    private static final double SPIKE = 0.15;
+    // the client's clock has nothing to do with the server's
+    private static final long CLIENT_EPOCH = 5_000_000_000L;
+
+    private static class State {
+        final long tick;
+        final Vector3 position = new Vector3();
+        final Vector3 rotation = new Vector3();
+        final Vector3 velocity = new Vector3();
+        double arrival;
+
+        State(long tick) {
+            this.tick = tick;
+            double seconds = (double) tick / TICK_RATE;
+            double cycles = Math.floor(seconds / (DRIVE + STOP));
+            double phase = seconds - cycles * (DRIVE + STOP);
+            double driven = cycles * DRIVE + Math.min(phase, DRIVE);
+            double angle = driven * SPEED / RADIUS;
+            position.copyFrom(Math.cos(angle) * RADIUS, 0, Math.sin(angle) * RADIUS);
+            rotation.copyFrom(0, Math.IEEEremainder(angle + Math.PI / 2, Math.PI * 2), 0);
+            if (phase < DRIVE) {
+                velocity.copyFrom(-Math.sin(angle) * SPEED, 0, Math.cos(angle) * SPEED);
+            }
+        }
+
+        boolean sameAs(State other) {
+            return other != null && position.equals(other.position) && rotation.equals(other.rotation)
+                    && velocity.equals(other.velocity);
+        }
+    }
+
+    private static class Stats {
+        double stepSum;
+        double stepSquares;
+        double maxStep;
+        int steps;
+        int frozen;
+        double behind;
+        int behindFrames;
+        double error;
+        double maxError;
+        int frames;
+
+        void step(double step) {
+            stepSum += step;
+            stepSquares += step * step;
+            maxStep = Math.max(maxStep, step);
+            steps++;
+            if (step < 1e-9) {
+                frozen++;
+            }
+        }
+
+        void frame(double behindTicks, double error) {
+            if (!Double.isNaN(behindTicks)) {
+                behind += behindTicks;
+                behindFrames++;
+            }
+            this.error += error;
+            maxError = Math.max(maxError, error);
+            frames++;
+        }
+
+        void print(String label, int rate, double bytesPerSecond, boolean showError) {
+            double mean = stepSum / steps;
+            double stddev = Math.sqrt(Math.max(0, stepSquares / steps - mean * mean));
+            System.out.printf("%-6s %-8s %10.0f %10.3f %10.3f %10.3f %9.1f%% %10.1f %10s %10s%n",
+                    rate + "Hz", label, bytesPerSecond, mean, stddev, maxStep, 100.0 * frozen / steps,
+                    behind / behindFrames * 1000 / TICK_RATE,
+                    showError ? String.format("%.3f", error / frames) : "-",
+                    showError ? String.format("%.3f", maxError) : "-");
+        }
+    }
+
+    public static void main(String[] args) {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 60;
+        double latency = (args.length > 1 ? Double.parseDouble(args[1]) : 40) / 1000;
+        double jitter = (args.length > 2 ? Double.parseDouble(args[2]) : 20) / 1000;
+        double delay = args.length > 3 ? Double.parseDouble(args[3]) : 100;
+        int[] rates = { 60, 20, 10 };
+        if (args.length > 4) {
+            rates = new int[args.length - 4];
+            for (int i = 4; i < args.length; i++) {
+                rates[i - 4] = Integer.parseInt(args[i]);
+            }
+        }
+
+        Game.loadEntities();
+        Jimmy jimmy = new Jimmy();
+        int frameBytes = new JSONObject(new Packet(jimmy.internal_id, NetworkStream.CLIENT, NetworkStream.BROADCAST,
+                new JSONObject(jimmy))).toJSONString().length() + 5 + ",\"tick\":000000".length();
+
+        System.out.printf("%.0f s, %.0f ms latency, %.0f ms jitter, %.0f%% spikes of %.0f ms, %.0f ms delay, "
+                + "ideal step %.3f%n", seconds, latency * 1000, jitter * 1000, SPIKE_CHANCE * 100, SPIKE * 1000,
+                delay, SPEED / FPS);
+        System.out.printf("%-6s %-8s %10s %10s %10s %10s %10s %10s %10s %10s%n", "rate", "drawn", "bytes/s",
+                "step", "stddev", "max step", "frozen", "behind ms", "error", "max error");
+        for (int rate : rates) {
+            run(rate, seconds, latency, jitter, delay, frameBytes);
+        }
+    }
+
+    private static void run(int rate, double seconds, double latency, double jitter, double delay,
+            int frameBytes) {
+        int interval = Math.max(1, Math.round((float) TICK_RATE / rate));
+        ServerClock.reset();
+        ServerClock.tickRate = TICK_RATE;
+        ServerClock.stateInterval = interval;
+        ServerClock.delayMs = delay;
+        SnapshotBuffer buffer = new SnapshotBuffer();
+        Random random = new Random(20);
+
+        // everything the server sends, in arrival order
+        ArrayDeque<State> inFlight = new ArrayDeque<>();
+        State lastSent = null;
+        double lastArrival = 0;
+        long sent = 0;
+        long ticks = (long) (seconds * TICK_RATE);
+        for (long tick = 1; tick <= ticks; tick++) {
+            if (tick % interval != 0) {
+                continue;
+            }
+            State state = new State(tick);
+            if (state.sameAs(lastSent)) {
+                continue;
+            }
+            double arrival = (double) tick / TICK_RATE + latency + random.nextDouble() * jitter;
+            if (random.nextDouble() < SPIKE_CHANCE) {
+                arrival += SPIKE;
+            }
+            state.arrival = Math.max(arrival, lastArrival);
+            lastArrival = state.arrival;
+            inFlight.add(state);
+            lastSent = state;
+            sent++;
+        }
+
+        Stats latest = new Stats();
+        Stats interpolated = new Stats();
+        State newest = null;
+        Vector3 drawn = new Vector3();
+        Vector3 rotation = new Vector3();
+        Vector3 lastLatest = null;
+        Vector3 lastDrawn = null;
+        double warmup = 1;
+        for (double time = 0.37 / FPS; time < seconds; time += 1 / FPS) {
+            while (!inFlight.isEmpty() && inFlight.peekFirst().arrival <= time) {
+                State state = inFlight.pollFirst();
+                ServerClock.observe(state.tick, CLIENT_EPOCH + (long) (state.arrival * 1e9));
+                buffer.add(state.tick, state.position, state.rotation, state.velocity);
+                newest = state;
+            }
+            ServerClock.advance(CLIENT_EPOCH + (long) (time * 1e9));
+            if (newest == null || !buffer.sample(ServerClock.renderTick(), drawn, rotation)) {
+                continue;
+            }
+
+            double now = time * TICK_RATE;
+            boolean counted = time > warmup && steady(time, latency + jitter + SPIKE + delay / 1000);
+            if (counted && lastLatest != null) {
+                latest.step(newest.position.subtract(lastLatest).length());
+                interpolated.step(drawn.subtract(lastDrawn).length());
+            }
+            if (counted) {
+                latest.frame(now - newest.tick, 0);
+            }
+            if (time > warmup) {
+                double renderTick = ServerClock.renderTick();
+                State truth = new State((long) Math.floor(renderTick));
+                State next = new State((long) Math.floor(renderTick) + 1);
+                double t = renderTick - Math.floor(renderTick);
+                Vector3 real = truth.position.add(next.position.subtract(truth.position).multiply(t));
+                interpolated.frame(counted ? now - renderTick : Double.NaN, drawn.subtract(real).length());
+            }
+            lastLatest = newest.position.copy();
+            lastDrawn = drawn.copy();
+        }
+
+        double bytesPerSecond = (double) sent * frameBytes / seconds;
+        latest.print("latest", rate, bytesPerSecond, false);
+        interpolated.print("interp", rate, bytesPerSecond, true);
+    }
+
+    // driving now and for long enough that nothing older is still being drawn
+    private static boolean steady(double time, double lag) {
+        double phase = time % (DRIVE + STOP);
+        return phase > lag && phase < DRIVE;
+    }
+
+}
@@ -0,0 +1,174 @@
+package dev.korgi.bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import dev.korgi.game.Game;
+import dev.korgi.game.rendering.Voxel;
+import dev.korgi.json.JSONObject;
+import dev.korgi.json.JSONReader;
+import dev.korgi.math.Vector3;
+import dev.korgi.math.Vector4;
+import dev.korgi.networking.NetworkStream;
+import dev.korgi.networking.Packet;
+import dev.korgi.player.Player;
+
+/**
+ * Decode time and allocation of the json frames the game actually sends, a
+ * player state broadcast and one page of the full world sync, through the
+ * JSONObject tree (fromJSONString + fillObject) against binding straight from
+ * a JSONReader.
+ *
+ * Usage: JSONBench [iterations]
+ */
+public class JSONBench {
+
+    private static final int ROUNDS = 5;
+    private static final int SYNC_VOXELS = 5000;
+
+    private static Player target;
+
+    private static final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+            .getThreadMXBean();
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+
+        Game.loadEntities();
+        target = new Player();
+        String player = playerFrame();
+        String sync = syncFrame();
+
+        System.out.printf("%-14s %8s %8s %12s %14s%n", "payload", "bytes", "path", "us/op", "alloc B/op");
+        run("player state", player, iterations, JSONBench::playerTree, JSONBench::playerStream);
+        run("world sync", sync, Math.max(1, iterations / 1000), JSONBench::syncTree, JSONBench::syncStream);
+    }
+
+    private interface Decode {
+        int decode(String frame);
+    }
+
+    private static void run(String name, String frame, int iterations, Decode tree, Decode stream) {
+        if (tree.decode(frame) != stream.decode(frame))
+            throw new IllegalStateException("tree and stream decoded different values for " + name);
+        measure(name, frame, iterations, "tree", tree);
+        measure(name, frame, iterations, "stream", stream);
+    }
+
+    private static void measure(String name, String frame, int iterations, String path, Decode decode) {
+        for (int i = 0; i < iterations; i++) {
+            decode.decode(frame);
+        }
+        long best = Long.MAX_VALUE;
+        long alloc = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long bytes = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                decode.decode(frame);
+            }
+            best = Math.min(best, System.nanoTime() - start);
+            alloc = Math.min(alloc, threads.getCurrentThreadAllocatedBytes() - bytes);
+        }
+        System.out.printf("%-14s %8d %8s %12.2f %14d%n", name, frame.length(), path, best / 1e3 / iterations,
+                alloc / iterations);
+    }
+
+    private static String playerFrame() {
+        Player p = new Player();
+        p.getPosition().x = 12.25;
+        p.getPosition().y = 40;
+        p.getPosition().z = -3.5;
+        p.pressedKeys.add("W");
+        p.pressedKeys.add("SPACE");
+        Packet packet = new Packet(p.internal_id, NetworkStream.CLIENT, NetworkStream.BROADCAST, new JSONObject(p));
+        return new JSONObject(packet).toJSONString();
+    }
+
+    private static String syncFrame() {
+        Random random = new Random(1);
+        JSONObject obj = new JSONObject();
+        obj.set("vcount", SYNC_VOXELS);
+        for (int i = 0; i < SYNC_VOXELS; i++) {
+            Voxel v = new Voxel(new Vector3(random.nextInt(256), random.nextInt(64), random.nextInt(256)),
+                    new Vector4(random.nextDouble(), random.nextDouble(), random.nextDouble(), 1));
+            obj.set("v%d".formatted(i), v);
+        }
+        obj.set("progress", 1);
+        obj.set("total", 4);
+        obj.set("done", false);
+        JSONObject data = new JSONObject();
+        data.set("full", true);
+        data.set("id", "client");
+        data.set("obj", obj);
+        data.set("ecount", 0);
+        Packet packet = new Packet("world", NetworkStream.CLIENT, NetworkStream.PRIVATE_MESSAGE, data);
+        return new JSONObject(packet).toJSONString();
+    }
+
+    private static int playerTree(String frame) {
+        JSONObject obj = JSONObject.fromJSONString(frame);
+        obj.getJSONObject("data").fillObject(target);
+        return (int) target.getPosition().x + target.pressedKeys.size();
+    }
+
+    private static int playerStream(String frame) {
+        JSONReader in = new JSONReader(frame);
+        in.beginObject();
+        while (in.hasNext()) {
+            if (in.nextName().equals("data"))
+                JSONObject.fillObject(in, target);
+            else
+                in.skipValue();
+        }
+        in.endObject();
+        return (int) target.getPosition().x + target.pressedKeys.size();
+    }
+
+    private static int syncTree(String frame) {
+        JSONObject obj = JSONObject.fromJSONString(frame).getJSONObject("data").getJSONObject("obj");
+        int sum = 0;
+        int count = obj.getInt("vcount");
+        for (int i = 0; i < count; i++) {
+            Voxel v = new Voxel();
+            obj.getJSONObject("v%d".formatted(i)).fillObject(v);
+            sum += (int) v.position.x;
+        }
+        return sum;
+    }
+
+    private static int syncStream(String frame) {
+        JSONReader in = new JSONReader(frame);
+        int sum = 0;
+        in.beginObject();
+        while (in.hasNext()) {
+            if (!in.nextName().equals("data")) {
+                in.skipValue();
+                continue;
+            }
+            in.beginObject();
+            while (in.hasNext()) {
+                if (!in.nextName().equals("obj")) {
+                    in.skipValue();
+                    continue;
+                }
+                in.beginObject();
+                while (in.hasNext()) {
+                    String key = in.nextName();
+                    if (key.length() > 1 && key.charAt(0) == 'v' && Character.isDigit(key.charAt(1))) {
+                        Voxel v = new Voxel();
+                        JSONObject.fillObject(in, v);
+                        sum += (int) v.position.x;
+                    } else {
+                        in.skipValue();
+                    }
+                }
+                in.endObject();
+            }
+            in.endObject();
+        }
+        in.endObject();
+        return sum;
+    }
+
+}
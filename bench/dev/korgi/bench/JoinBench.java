@@ -0,0 +1,380 @@
+package dev.korgi.bench;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import dev.korgi.game.Game;
+import dev.korgi.game.physics.LongChunkMap;
+import dev.korgi.game.physics.VoxelChunk;
+import dev.korgi.game.physics.VoxelStore;
+import dev.korgi.game.physics.WorldDelta;
+import dev.korgi.game.physics.WorldEngine;
+import dev.korgi.game.physics.WorldStorage;
+import dev.korgi.game.rendering.Voxel;
+import dev.korgi.json.JSONObject;
+import dev.korgi.networking.BinaryReader;
+import dev.korgi.networking.NetworkStream;
+import dev.korgi.networking.Packet;
+
+/**
+ * Join time for flat worlds of a few voxel layers centred on spawn, with a
+ * simulated client over loopback that handles what arrives once a frame like
+ * the real one. The old sync answered each page request by skipping through
+ * the world and reflecting 5000 voxels into json on the tick thread, and the
+ * client sent the page back to ask for the next. It is rebuilt here and only
+ * run up to old_max voxels since it is quadratic. The stream is the
+ * ChunkStreamer through WorldEngine.execute.
+ *
+ * Reported are the time until the chunks within SPAWN_RADIUS of spawn are
+ * there, the time until the whole world is, bytes sent, and the slowest and
+ * total cpu time the tick thread spent in the world handler. The client's copy is
+ * checked voxel by voxel against the server at the end.
+ *
+ * Usage: JoinBench [old_max] [voxels...]
+ */
+public class JoinBench {
+
+    private static final int PORT = 6993;
+    private static final int TICK_RATE = 60;
+    private static final int FRAME_MS = 16;
+    private static final int LAYERS = 4;
+    private static final int PAGE = 5000;
+    // in chunks, about a render distance
+    private static final int SPAWN_RADIUS = 4;
+
+    private static class Frame {
+        final int kind;
+        final byte[] body;
+
+        Frame(int kind, byte[] body) {
+            this.kind = kind;
+            this.body = body;
+        }
+    }
+
+    private static class Client {
+        final Socket socket;
+        final String id = UUID.randomUUID().toString();
+        final Queue<Frame> frames = new ConcurrentLinkedQueue<>();
+        final VoxelStore store = new VoxelStore();
+        volatile boolean done;
+        volatile long spawnReady;
+        volatile long finished;
+        int total = -1;
+        int chunks;
+        int batches;
+        int acked;
+        long lastPing;
+
+        Client() throws IOException {
+            socket = new Socket("localhost", PORT);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        long oldMax = args.length > 0 ? Long.parseLong(args[0]) : 1_000_000;
+        List<Integer> sizes = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            sizes.add(Integer.parseInt(args[i]));
+        }
+        if (sizes.isEmpty()) {
+            sizes = List.of(1_000_000, 10_000_000);
+        }
+
+        Game.isClient = false;
+        Game.loadEntities();
+        NetworkStream.startServer(PORT);
+
+        System.out.printf("%-10s %-8s %12s %12s %14s %14s %14s %s%n", "voxels", "sync", "spawn ms", "done ms",
+                "bytes", "max cpu ms", "total cpu ms", "check");
+        for (int voxels : sizes) {
+            buildWorld(voxels);
+            if (voxels <= oldMax) {
+                run(voxels, false);
+            } else {
+                System.out.printf("%-10d %-8s %12s%n", voxels, "paged", "skipped");
+            }
+            run(voxels, true);
+        }
+        System.exit(0);
+    }
+
+    private static void buildWorld(int voxels) {
+        VoxelStore store = WorldEngine.getWorld().voxels;
+        store.clear();
+        int side = (int) Math.ceil(Math.sqrt((double) voxels / LAYERS));
+        char[] layers = new char[LAYERS];
+        for (int y = 0; y < LAYERS; y++) {
+            Voxel v = new Voxel();
+            v.getMaterial().setTextureLocation(y);
+            layers[y] = store.palette().idOf(v.getMaterial());
+        }
+        int placed = 0;
+        for (int x = -side / 2; x < side - side / 2 && placed < voxels; x++) {
+            for (int z = -side / 2; z < side - side / 2 && placed < voxels; z++) {
+                for (int y = 0; y < LAYERS && placed < voxels; y++) {
+                    store.put(x, -1 - y, z, layers[y]);
+                    placed++;
+                }
+            }
+        }
+    }
+
+    private static void run(int voxels, boolean stream) throws Exception {
+        Client client = new Client();
+        Thread reader = new Thread(() -> read(client), "bench-client-read");
+        reader.setDaemon(true);
+        reader.start();
+        send(client, packet(client.id, NetworkStream.HANDSHAKE_REQUEST,
+                "{\"protocol\":" + NetworkStream.PROTOCOL_VERSION + "}"));
+        while (!NetworkStream.isConnected(client.id)) {
+            NetworkStream.update(true);
+            Thread.sleep(5);
+        }
+        Thread.sleep(50);
+        NetworkStream.update(true);
+
+        LongChunkMap spawnChunks = spawnChunks(WorldEngine.getWorld().voxels);
+        long bytes = NetworkStream.bytesSent;
+        long start = System.nanoTime();
+        send(client, packet("world", NetworkStream.WORLD_UPDATE, "{\"full\":true,\"id\":\"" + client.id + "\"}"));
+
+        Thread frames = new Thread(() -> clientLoop(client, stream, spawnChunks, start), "bench-client");
+        frames.setDaemon(true);
+        frames.start();
+
+        // cpu time, the stream's worker may share the core with the tick thread
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long maxTick = 0;
+        long tickTotal = 0;
+        long next = System.nanoTime();
+        while (!client.done) {
+            NetworkStream.update(true);
+            long t0 = threads.getCurrentThreadCpuTime();
+            if (stream) {
+                WorldEngine.execute();
+            } else {
+                pagedSync();
+            }
+            long spent = threads.getCurrentThreadCpuTime() - t0;
+            maxTick = Math.max(maxTick, spent);
+            tickTotal += spent;
+            next += 1_000_000_000L / TICK_RATE;
+            long sleep = next - System.nanoTime();
+            if (sleep > 0) {
+                Thread.sleep(sleep / 1_000_000, (int) (sleep % 1_000_000));
+            } else {
+                next = System.nanoTime();
+            }
+        }
+        frames.join();
+
+        System.out.printf("%-10d %-8s %12.0f %12.0f %14d %14.2f %14.0f %s%n", voxels, stream ? "stream" : "paged",
+                (client.spawnReady - start) / 1e6, (client.finished - start) / 1e6, NetworkStream.bytesSent - bytes,
+                maxTick / 1e6, tickTotal / 1e6, check(client.store));
+        client.socket.close();
+    }
+
+    // the old full sync handler, one page per request
+    private static void pagedSync() {
+        WorldStorage world = WorldEngine.getWorld();
+        for (Packet p : NetworkStream.getAllPackets("world", false)) {
+            JSONObject data = p.getData();
+            JSONObject voxelData = data.hasKey("obj") ? data.getJSONObject("obj") : new JSONObject();
+            voxelData.addInt("progress", 0);
+            int total = Math.max(1, (world.voxels.size() + PAGE - 1) / PAGE);
+            voxelData.addInt("total", total);
+            int page = PAGE * voxelData.getInt("progress");
+
+            List<Voxel> chunk = new ArrayList<>();
+            int index = 0;
+            for (Voxel v : world.voxels.values()) {
+                if (index++ < page) {
+                    continue;
+                }
+                if (chunk.size() >= PAGE) {
+                    break;
+                }
+                chunk.add(v);
+            }
+            voxelData.set("vcount", chunk.size());
+            for (int i = 0; i < chunk.size(); i++) {
+                voxelData.set("v%d".formatted(i), chunk.get(i));
+            }
+            voxelData.set("progress", voxelData.getInt("progress") + 1);
+            voxelData.set("done", voxelData.getInt("progress") >= voxelData.getInt("total"));
+            data.set("obj", voxelData);
+            Packet reply = new Packet("world", NetworkStream.CLIENT, NetworkStream.PRIVATE_MESSAGE, data);
+            reply.network_destination = data.getString("id");
+            NetworkStream.sendPacket(reply);
+        }
+    }
+
+    private static void clientLoop(Client client, boolean stream, LongChunkMap spawnChunks, long start) {
+        try {
+            while (!client.done) {
+                Frame frame;
+                while ((frame = client.frames.poll()) != null) {
+                    if (stream) {
+                        streamFrame(client, frame);
+                    } else {
+                        pagedFrame(client, frame);
+                    }
+                }
+                if (stream && client.batches > client.acked) {
+                    send(client, packet("world", NetworkStream.WORLD_UPDATE,
+                            "{\"streamed\":" + client.batches + ",\"id\":\"" + client.id + "\"}"));
+                    client.acked = client.batches;
+                }
+                if (stream && client.total >= 0 && client.chunks >= client.total) {
+                    client.finished = System.nanoTime();
+                    client.done = true;
+                }
+                if (client.spawnReady == 0 && hasAll(client.store, spawnChunks)) {
+                    client.spawnReady = System.nanoTime();
+                }
+                long now = System.currentTimeMillis();
+                if (now - client.lastPing > 1000) {
+                    send(client, packet(client.id, NetworkStream.PING, "{\"timestamp\":" + now + "}"));
+                    client.lastPing = now;
+                }
+                Thread.sleep(FRAME_MS);
+            }
+            if (client.spawnReady == 0) {
+                client.spawnReady = client.finished;
+            }
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+            client.finished = System.nanoTime();
+            client.done = true;
+        }
+    }
+
+    private static void streamFrame(Client client, Frame frame) {
+        if (frame.kind == NetworkStream.FRAME_BINARY) {
+            BinaryReader in = new BinaryReader(frame.body);
+            in.readString();
+            in.readVarInt();
+            if (in.readZigZag() == NetworkStream.PRIVATE_MESSAGE) {
+                client.chunks += WorldDelta.apply(in.readRemaining(), client.store);
+                client.batches++;
+            }
+            return;
+        }
+        JSONObject data = JSONObject.fromJSONString(new String(frame.body, StandardCharsets.UTF_8))
+                .getJSONObject("data");
+        if (data != null && data.hasKey("stream")) {
+            client.total = data.getInt("chunks");
+        }
+    }
+
+    private static void pagedFrame(Client client, Frame frame) throws IOException {
+        if (frame.kind != NetworkStream.FRAME_JSON) {
+            return;
+        }
+        JSONObject packet = JSONObject.fromJSONString(new String(frame.body, StandardCharsets.UTF_8));
+        JSONObject data = packet.getJSONObject("data");
+        if (!"world".equals(packet.getString("internal_id")) || data == null || !data.hasKey("obj")) {
+            return;
+        }
+        JSONObject page = data.getJSONObject("obj");
+        int count = page.getInt("vcount");
+        for (int i = 0; i < count; i++) {
+            Voxel v = new Voxel();
+            page.getJSONObject("v%d".formatted(i)).fillObject(v);
+            client.store.put(WorldStorage.voxelKey(v.position), v);
+        }
+        if (page.getBoolean("done")) {
+            client.finished = System.nanoTime();
+            client.done = true;
+        } else {
+            send(client, packet("world", NetworkStream.WORLD_UPDATE, data.toJSONString()));
+        }
+    }
+
+    private static LongChunkMap spawnChunks(VoxelStore store) {
+        LongChunkMap near = new LongChunkMap();
+        store.chunks().forEach((key, chunk) -> {
+            if (Math.abs(VoxelStore.keyX(key)) <= SPAWN_RADIUS && Math.abs(VoxelStore.keyZ(key)) <= SPAWN_RADIUS) {
+                near.put(key, chunk);
+            }
+        });
+        return near;
+    }
+
+    private static boolean hasAll(VoxelStore store, LongChunkMap chunks) {
+        for (int slot = 0; slot < chunks.capacity(); slot++) {
+            VoxelChunk chunk = chunks.valueAt(slot);
+            if (chunk == null) {
+                continue;
+            }
+            VoxelChunk copy = store.chunks().get(chunks.keyAt(slot));
+            if (copy == null || copy.count() != chunk.count()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String check(VoxelStore copy) {
+        VoxelStore server = WorldEngine.getWorld().voxels;
+        long[] wrong = new long[1];
+        server.forEach((x, y, z, id) -> {
+            char other = copy.paletteId(x, y, z);
+            if (other == VoxelChunk.EMPTY || !server.palette().get(id).getTextureLocation()
+                    .equals(copy.palette().get(other).getTextureLocation())) {
+                wrong[0]++;
+            }
+        });
+        if (wrong[0] == 0 && copy.size() == server.size()) {
+            return "ok";
+        }
+        return "%d wrong, %d of %d voxels".formatted(wrong[0], copy.size(), server.size());
+    }
+
+    private static String packet(String id, int type, String data) {
+        return "{\"internal_id\":\"" + id + "\",\"destination\":" + NetworkStream.SERVER + ",\"type\":" + type
+                + ",\"data\":" + data + "}";
+    }
+
+    private static void send(Client client, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        byte[] frame = new byte[body.length + 5];
+        frame[0] = (byte) NetworkStream.FRAME_JSON;
+        frame[1] = (byte) (body.length >>> 24);
+        frame[2] = (byte) (body.length >>> 16);
+        frame[3] = (byte) (body.length >>> 8);
+        frame[4] = (byte) body.length;
+        System.arraycopy(body, 0, frame, 5, body.length);
+        synchronized (client.socket) {
+            OutputStream out = client.socket.getOutputStream();
+            out.write(frame);
+            out.flush();
+        }
+    }
+
+    private static void read(Client client) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(client.socket.getInputStream()))) {
+            int kind;
+            while ((kind = in.read()) != -1) {
+                int length = in.readInt();
+                byte[] body = new byte[length];
+                in.readFully(body);
+                client.frames.add(new Frame(kind, body));
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+}
@@ -0,0 +1,210 @@
+package dev.korgi.bench;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import dev.korgi.game.Game;
+import dev.korgi.json.JSONObject;
+import dev.korgi.networking.NetworkStream;
+import dev.korgi.networking.Packet;
+import dev.korgi.player.Player;
+
+/**
+ * Starts the server transport in process and connects N simulated clients
+ * over loopback. Every client handshakes, sends an input packet at 20 Hz and
+ * pings every 3 s; the server ticks at 60 Hz, drains every player's packets
+ * and broadcasts one state packet per player to all clients.
+ *
+ * Usage: NetworkLoadBench [clients] [seconds] [port]
+ */
+public class NetworkLoadBench {
+
+    private static final long TICK_NS = 1_000_000_000L / 60;
+    private static final long INPUT_INTERVAL_MS = 50;
+    private static final long PING_INTERVAL_MS = 3000;
+
+    private static final AtomicLong clientReceived = new AtomicLong();
+    private static final AtomicLong clientSent = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 6990;
+
+        Game.loadEntities();
+        NetworkStream.startServer(port);
+
+        List<Socket> sockets = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            Socket socket = new Socket("localhost", port);
+            socket.setTcpNoDelay(true);
+            String id = UUID.randomUUID().toString();
+            sockets.add(socket);
+            ids.add(id);
+            Thread reader = new Thread(() -> read(socket), "bench-client-" + i);
+            reader.setDaemon(true);
+            reader.start();
+            send(socket, packet(id, NetworkStream.HANDSHAKE_REQUEST,
+                    "{\"protocol\":" + NetworkStream.PROTOCOL_VERSION + "}"));
+        }
+
+        Thread sender = new Thread(() -> sendInputs(sockets, ids), "bench-client-sender");
+        sender.setDaemon(true);
+        sender.start();
+
+        JSONObject state = new JSONObject();
+        state.set("position", new double[] { 1.5, 2.5, 3.5 });
+        state.set("rotation", new double[] { 0.1, 0.2, 0 });
+        state.set("velocity", new double[] { 0, -1, 0 });
+
+        // let the handshakes land before measuring
+        long warmupEnd = System.nanoTime() + 1_000_000_000L;
+        while (System.nanoTime() < warmupEnd) {
+            tick(state);
+            Thread.sleep(5);
+        }
+        clientReceived.set(0);
+        clientSent.set(0);
+
+        long ticks = (long) seconds * 60;
+        long[] tickTimes = new long[(int) ticks];
+        long serverIn = 0;
+        long serverOut = 0;
+        long start = System.nanoTime();
+        long next = start;
+        for (int i = 0; i < ticks; i++) {
+            long t0 = System.nanoTime();
+            int[] counts = tick(state);
+            tickTimes[i] = System.nanoTime() - t0;
+            serverIn += counts[0];
+            serverOut += counts[1];
+
+            next += TICK_NS;
+            long sleep = next - System.nanoTime();
+            if (sleep > 0) {
+                Thread.sleep(sleep / 1_000_000, (int) (sleep % 1_000_000));
+            }
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        Arrays.sort(tickTimes);
+        double avg = Arrays.stream(tickTimes).average().orElse(0) / 1e6;
+        double p99 = tickTimes[(int) Math.min(tickTimes.length - 1, tickTimes.length * 0.99)] / 1e6;
+        double max = tickTimes[tickTimes.length - 1] / 1e6;
+
+        System.out.printf("clients            %d (%d players connected)%n", clients, connected());
+        System.out.printf("tick ms            avg %.3f  p99 %.3f  max %.3f%n", avg, p99, max);
+        System.out.printf("server in  pkt/s   %.0f (clients sent %.0f)%n", serverIn / elapsed,
+                clientSent.get() / elapsed);
+        System.out.printf("server out pkt/s   %.0f (clients received %.0f)%n", serverOut / elapsed,
+                clientReceived.get() / elapsed);
+        System.out.printf("jvm threads        %d (%d are simulated client readers)%n", Thread.activeCount(), clients);
+
+        for (Socket s : sockets) {
+            s.close();
+        }
+        System.exit(0);
+    }
+
+    private static int connected() {
+        int n = 0;
+        for (Player p : Game.getPlayers()) {
+            if (p.connected)
+                n++;
+        }
+        return n;
+    }
+
+    private static int[] tick(JSONObject state) {
+        NetworkStream.update(true);
+        int in = 0;
+        int out = 0;
+        List<Player> players = Game.getPlayers();
+        for (Player p : players) {
+            in += NetworkStream.getAllPackets(p.internal_id, false).size();
+        }
+        for (Player p : players) {
+            if (!p.connected)
+                continue;
+            NetworkStream.sendPacket(new Packet(p.internal_id, NetworkStream.CLIENT, NetworkStream.BROADCAST, state));
+            out += players.size();
+        }
+        return new int[] { in, out };
+    }
+
+    private static void sendInputs(List<Socket> sockets, List<String> ids) {
+        long lastPing = 0;
+        boolean[] dead = new boolean[sockets.size()];
+        while (true) {
+            long now = System.currentTimeMillis();
+            boolean ping = now - lastPing > PING_INTERVAL_MS;
+            if (ping)
+                lastPing = now;
+            for (int i = 0; i < sockets.size(); i++) {
+                if (dead[i])
+                    continue;
+                Socket s = sockets.get(i);
+                String id = ids.get(i);
+                try {
+                    send(s, packet(id, NetworkStream.INPUT_HANDLE_REQUEST,
+                            "{\"pressedKeys\":[\"W\"],\"rotation\":{\"x\":0.1,\"y\":0.2,\"z\":0}}"));
+                    clientSent.incrementAndGet();
+                    if (ping) {
+                        send(s, packet(id, NetworkStream.PING, "{\"timestamp\":" + now + "}"));
+                        clientSent.incrementAndGet();
+                    }
+                } catch (IOException e) {
+                    dead[i] = true;
+                }
+            }
+            try {
+                Thread.sleep(INPUT_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private static String packet(String id, int type, String data) {
+        return "{\"internal_id\":\"" + id + "\",\"destination\":" + NetworkStream.SERVER + ",\"type\":" + type
+                + ",\"data\":" + data + "}";
+    }
+
+    private static void send(Socket socket, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        byte[] frame = new byte[body.length + 5];
+        frame[0] = (byte) NetworkStream.FRAME_JSON;
+        frame[1] = (byte) (body.length >>> 24);
+        frame[2] = (byte) (body.length >>> 16);
+        frame[3] = (byte) (body.length >>> 8);
+        frame[4] = (byte) body.length;
+        System.arraycopy(body, 0, frame, 5, body.length);
+        synchronized (socket) {
+            OutputStream out = socket.getOutputStream();
+            out.write(frame);
+            out.flush();
+        }
+    }
+
+    private static void read(Socket socket) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            while (in.read() != -1) {
+                int length = in.readInt();
+                in.skipNBytes(length);
+                clientReceived.incrementAndGet();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+package dev.korgi.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import dev.korgi.json.JSONObject;
+import dev.korgi.networking.NetworkStream;
+import dev.korgi.networking.Packet;
+
+/**
+ * Cost of one server tick of packet handling: deliver the queued packets, then
+ * every entity polls its latest one the way NetworkObject.loop does. The old
+ * shared list scan is reproduced inline for comparison.
+ *
+ * Usage: PacketRoutingBench [packets] [entities...]
+ */
+public class PacketRoutingBench {
+
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) {
+        int packets = args.length > 0 ? Integer.parseInt(args[0].replace("_", "")) : 10_000;
+        int[] entityCounts = { 10, 100, 1_000, 10_000 };
+        if (args.length > 1) {
+            entityCounts = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                entityCounts[i - 1] = Integer.parseInt(args[i].replace("_", ""));
+            }
+        }
+
+        System.out.printf("%9s %9s %12s %12s%n", "entities", "packets", "scan ms", "routed ms");
+        for (int entities : entityCounts) {
+            List<String> ids = new ArrayList<>();
+            for (int i = 0; i < entities; i++) {
+                ids.add(UUID.randomUUID().toString());
+            }
+            List<Packet> incoming = new ArrayList<>();
+            for (int i = 0; i < packets; i++) {
+                incoming.add(new Packet(ids.get(i % entities), NetworkStream.SERVER, NetworkStream.INPUT_HANDLE_REQUEST,
+                        new JSONObject()));
+            }
+
+            // warm up both paths before timing
+            scanTick(ids, incoming);
+            routedTick(ids, incoming);
+
+            int rounds = entities * (long) packets > 10_000_000L ? 3 : ROUNDS;
+            long scan = Long.MAX_VALUE;
+            long routed = Long.MAX_VALUE;
+            for (int round = 0; round < rounds; round++) {
+                scan = Math.min(scan, scanTick(ids, incoming));
+            }
+            for (int round = 0; round < ROUNDS; round++) {
+                routed = Math.min(routed, routedTick(ids, incoming));
+            }
+            System.out.printf("%9d %9d %12.3f %12.3f%n", entities, packets, scan / 1e6, routed / 1e6);
+        }
+    }
+
+    private static long routedTick(List<String> ids, List<Packet> incoming) {
+        long start = System.nanoTime();
+        for (Packet p : incoming) {
+            NetworkStream.deliver(p);
+        }
+        int found = 0;
+        for (String id : ids) {
+            if (NetworkStream.getPacket(id, false) != null)
+                found++;
+        }
+        long time = System.nanoTime() - start;
+        check(found, ids, incoming);
+        return time;
+    }
+
+    private static long scanTick(List<String> ids, List<Packet> incoming) {
+        long start = System.nanoTime();
+        List<Packet> list = new ArrayList<>();
+        for (Packet p : incoming) {
+            list.add(p);
+        }
+        int found = 0;
+        for (String id : ids) {
+            if (scanPacket(list, id) != null)
+                found++;
+        }
+        long time = System.nanoTime() - start;
+        check(found, ids, incoming);
+        return time;
+    }
+
+    // NetworkStream.getPacket before per-id routing
+    private static Packet scanPacket(List<Packet> list, String internalId) {
+        List<Packet> packets = new ArrayList<>();
+        for (Packet p : list) {
+            if (p.getInternalId().equals(internalId)) {
+                packets.add(p);
+            }
+        }
+        for (Packet p : packets) {
+            list.remove(p);
+        }
+        if (packets.size() > 0) {
+            return packets.get(packets.size() - 1);
+        } else {
+            return null;
+        }
+    }
+
+    private static void check(int found, List<String> ids, List<Packet> incoming) {
+        if (found != Math.min(ids.size(), incoming.size()))
+            throw new IllegalStateException("expected a packet per entity, got " + found);
+    }
+
+}
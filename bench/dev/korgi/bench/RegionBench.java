@@ -0,0 +1,198 @@
+package dev.korgi.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import dev.korgi.game.physics.MaterialPalette;
+import dev.korgi.game.physics.RegionStorage;
+import dev.korgi.game.physics.VoxelChunk;
+import dev.korgi.game.physics.VoxelStore;
+import dev.korgi.game.rendering.Voxel;
+
+/**
+ * Region file persistence for flat worlds of a few layers with some scattered
+ * blocks on top, in a temporary directory.
+ *
+ * save: every chunk of a freshly built world, then again after a few hundred
+ * scattered edits. cold start: opening the storage and loading the chunks
+ * within load_radius of spawn, against regenerating the old 100x100 plane the
+ * server built on every start. load rest: every other stored chunk. random
+ * reads: chunks loaded by key in random order, the way collisions and edits
+ * miss into the storage. The reloaded world is
+ * compared voxel by voxel with the one saved.
+ *
+ * The OS page cache is warm after saving, so cold start here is the cost of
+ * the format rather than of the disk.
+ *
+ * Usage: RegionBench [reads] [voxels...]
+ */
+public class RegionBench {
+
+    private static final int LAYERS = 4;
+    private static final int LOAD_RADIUS = 16;
+    private static final int EDITS = 500;
+
+    public static void main(String[] args) throws IOException {
+        int reads = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int[] sizes = { 1_000_000, 10_000_000 };
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                sizes[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.printf("%-10s %-12s %12s %12s %14s %s%n", "voxels", "", "ms", "chunks", "MB/s or us", "");
+        for (int voxels : sizes) {
+            Path dir = Files.createTempDirectory("korgi-regions");
+            try {
+                run(voxels, reads, dir);
+            } finally {
+                try (Stream<Path> files = Files.walk(dir)) {
+                    files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+                }
+            }
+        }
+    }
+
+    private static void run(int voxels, int reads, Path dir) throws IOException {
+        VoxelStore world = new VoxelStore();
+        RegionStorage storage = new RegionStorage(dir);
+        world.setSource(storage);
+        world.addListener(storage);
+        int side = build(world, voxels);
+
+        long start = System.nanoTime();
+        int chunks = storage.save(world);
+        double ms = (System.nanoTime() - start) / 1e6;
+        long bytes = size(dir);
+        System.out.printf("%-10d %-12s %12.0f %12d %14.1f %.1f MB on disk, %.2f bytes a voxel%n", voxels, "save all",
+                ms, chunks, bytes / 1e6 / (ms / 1000), bytes / 1e6, (double) bytes / world.size());
+
+        Random random = new Random(22);
+        for (int i = 0; i < EDITS; i++) {
+            int x = random.nextInt(side) - side / 2;
+            int z = random.nextInt(side) - side / 2;
+            if (random.nextBoolean()) {
+                world.remove(x, -1, z);
+            } else {
+                world.put(x, random.nextInt(8), z, world.paletteId(x, -2, z));
+            }
+        }
+        start = System.nanoTime();
+        chunks = storage.save(world);
+        ms = (System.nanoTime() - start) / 1e6;
+        System.out.printf("%-10s %-12s %12.1f %12d%n", "", "save edits", ms, chunks);
+        storage.close();
+
+        start = System.nanoTime();
+        VoxelStore plane = new VoxelStore();
+        for (int x = 0; x < 100; x++) {
+            for (int z = 0; z < 100; z++) {
+                Voxel v = new Voxel(x, -5, z);
+                v.getMaterial().setTextureLocation(0);
+                plane.put(x, -5, z, plane.palette().idOf(v.getMaterial()));
+            }
+        }
+        System.out.printf("%-10s %-12s %12.1f %12d%n", "", "old plane", (System.nanoTime() - start) / 1e6,
+                plane.chunks().size());
+
+        start = System.nanoTime();
+        RegionStorage cold = new RegionStorage(dir);
+        VoxelStore loaded = new VoxelStore();
+        loaded.setSource(cold);
+        chunks = loadColumns(loaded, cold, -LOAD_RADIUS, LOAD_RADIUS);
+        System.out.printf("%-10s %-12s %12.1f %12d%n", "", "cold start", (System.nanoTime() - start) / 1e6, chunks);
+
+        start = System.nanoTime();
+        int half = (side >> VoxelChunk.SHIFT) / 2 + 1;
+        chunks = loadColumns(loaded, cold, -half - 1, half + 1);
+        ms = (System.nanoTime() - start) / 1e6;
+        System.out.printf("%-10s %-12s %12.0f %12d %14.1f%n", "", "load rest", ms, chunks,
+                (double) bytes / 1e6 / (ms / 1000));
+        String check = compare(world, loaded);
+        cold.close();
+
+        long[] keys = new long[world.chunks().size()];
+        int[] count = { 0 };
+        world.chunks().forEach((key, chunk) -> keys[count[0]++] = key);
+        RegionStorage reader = new RegionStorage(dir);
+        MaterialPalette palette = new MaterialPalette();
+        long[] times = new long[reads];
+        for (int i = 0; i < reads; i++) {
+            long key = keys[random.nextInt(keys.length)];
+            long t0 = System.nanoTime();
+            reader.load(key, palette);
+            times[i] = System.nanoTime() - t0;
+        }
+        reader.close();
+        Arrays.sort(times);
+        long total = Arrays.stream(times).sum();
+        System.out.printf("%-10s %-12s %12.0f %12d %14.1f p50 %.1f us, p99 %.1f us%n", "", "random reads",
+                total / 1e6, reads, total / 1e3 / reads, times[reads / 2] / 1e3, times[reads * 99 / 100] / 1e3);
+        System.out.printf("%-10s %-12s %s%n", "", "check", check);
+    }
+
+    private static int build(VoxelStore world, int voxels) {
+        int side = (int) Math.ceil(Math.sqrt((double) voxels / LAYERS));
+        char[] layers = new char[LAYERS];
+        for (int y = 0; y < LAYERS; y++) {
+            Voxel v = new Voxel();
+            v.getMaterial().setTextureLocation(y);
+            layers[y] = world.palette().idOf(v.getMaterial());
+        }
+        Random random = new Random(7);
+        int placed = 0;
+        for (int x = -side / 2; x < side - side / 2 && placed < voxels; x++) {
+            for (int z = -side / 2; z < side - side / 2 && placed < voxels; z++) {
+                for (int y = 0; y < LAYERS && placed < voxels; y++) {
+                    world.put(x, -1 - y, z, layers[y]);
+                    placed++;
+                }
+                if (random.nextInt(50) == 0) {
+                    world.put(x, 0, z, layers[random.nextInt(LAYERS)]);
+                }
+            }
+        }
+        return side;
+    }
+
+    private static int loadColumns(VoxelStore store, RegionStorage storage, int from, int to) throws IOException {
+        int before = store.chunks().size();
+        for (int cx = from; cx <= to; cx++) {
+            for (int cz = from; cz <= to; cz++) {
+                for (int cy : storage.heights(cx, cz)) {
+                    store.load(VoxelStore.chunkKey(cx, cy, cz));
+                }
+            }
+        }
+        return store.chunks().size() - before;
+    }
+
+    private static String compare(VoxelStore saved, VoxelStore loaded) {
+        long[] wrong = new long[1];
+        saved.forEach((x, y, z, id) -> {
+            char other = loaded.paletteId(x, y, z);
+            if (other == VoxelChunk.EMPTY || !saved.palette().get(id).getTextureLocation()
+                    .equals(loaded.palette().get(other).getTextureLocation())) {
+                wrong[0]++;
+            }
+        });
+        if (wrong[0] == 0 && loaded.size() == saved.size()) {
+            return "ok, %d voxels".formatted(loaded.size());
+        }
+        return "%d wrong, %d of %d voxels".formatted(wrong[0], loaded.size(), saved.size());
+    }
+
+    private static long size(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.mapToLong(p -> p.toFile().length()).sum();
+        }
+    }
+
+}
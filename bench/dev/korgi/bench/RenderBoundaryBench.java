@@ -0,0 +1,118 @@
+package dev.korgi.bench;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import dev.korgi.game.Game;
+import dev.korgi.game.entites.Jimmy;
+import dev.korgi.game.rendering.EntityModel;
+import dev.korgi.game.rendering.TextureAtlas;
+import dev.korgi.jni.RenderContext;
+
+/**
+ * Bytes crossing the JNI boundary per frame at 900x600 with N Jimmys, the
+ * array entry points (executeResidentKernal then executeEntityKernal) against
+ * a RenderContext. The context runs on a stub that stands in for the natives
+ * and counts what they would read and write: the registered buffers once, the
+ * model patches, then the uniforms, the headers and the pixel readback per
+ * frame.
+ *
+ * Usage: RenderBoundaryBench [entities] [frames]
+ */
+public class RenderBoundaryBench {
+
+    private static final int WIDTH = 900;
+    private static final int HEIGHT = 600;
+
+    private static class CountingNatives implements RenderContext.Natives {
+        long registerBytes;
+        long patchBytes;
+        long frameBytes;
+        int frames;
+        private ByteBuffer uniforms;
+
+        @Override
+        public void register(ByteBuffer uniforms, ByteBuffer pixels, ByteBuffer headers, ByteBuffer voxelsHot,
+                ByteBuffer voxelsCold, ByteBuffer nodes, String worldShader, String entityShader) {
+            this.uniforms = uniforms;
+            registerBytes += voxelsHot.capacity() + voxelsCold.capacity() + nodes.capacity();
+        }
+
+        @Override
+        public void patch(int voxelOffset, int voxelCount, int nodeOffset, int nodeCount) {
+            patchBytes += (long) voxelCount * RenderContext.VOXEL_BYTES * 2 + (long) nodeCount * RenderContext.NODE_BYTES;
+        }
+
+        @Override
+        public void execute(int passes) {
+            int entities = (int) uniforms.getFloat(17 * 4);
+            int pixels = (int) uniforms.getFloat(20 * 4) * (int) uniforms.getFloat(21 * 4);
+            frameBytes += RenderContext.UNIFORM_BYTES + (long) pixels * 4;
+            if ((passes & RenderContext.UPLOAD_PIXELS) != 0)
+                frameBytes += (long) pixels * 4;
+            if ((passes & RenderContext.ENTITIES) != 0)
+                frameBytes += (long) entities * RenderContext.HEADER_BYTES;
+            frames++;
+        }
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0].replace("_", "")) : 1_000;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+
+        Game.loadEntities();
+        EntityModel model = EntityModel.of(new Jimmy());
+        TextureAtlas atlas = new TextureAtlas(TextureAtlas.amt + 1);
+        atlas.build();
+        int atlasLength = atlas.getAtlas().length;
+
+        float[] positions = new float[count * 3];
+        float[] rotations = new float[count * 9];
+        float[] radii = new float[count];
+        int[] voxelOffsets = new int[count * 2];
+        int[] bvhOffsets = new int[count];
+        Random random = new Random(1);
+        for (int i = 0; i < count; i++) {
+            voxelOffsets[i * 2 + 1] = model.voxelCount;
+            radii[i] = model.radius;
+            rotations[i * 9] = rotations[i * 9 + 4] = rotations[i * 9 + 8] = 1;
+        }
+
+        // the arrays NativeGPUKernal passes each frame without a context
+        long pixelBytes = (long) WIDTH * HEIGHT * 4;
+        long camera = 4 * 3 * 4;
+        long world = pixelBytes + camera;
+        long entities = 2 * pixelBytes + camera + (long) count * (3 + 9 + 1 + 2 + 1) * 4
+                + (long) model.voxelCount * (3 + 1 + 1 + 1 + 1) * 4 + (long) model.nodeCount * 9 * 4
+                + (long) atlasLength * 4;
+
+        CountingNatives natives = new CountingNatives();
+        RenderContext context = new RenderContext(natives, "world", "entity");
+        context.resize(WIDTH, HEIGHT);
+        context.putModels(model.positions, model.sizes, model.colors, model.opacities, model.textureIds, 0,
+                model.voxelCount, model.mins, model.maxs, model.links, 0, model.nodeCount);
+        int[] pixels = new int[WIDTH * HEIGHT];
+        float[] view = { 0, 1, 0 };
+
+        long start = System.nanoTime();
+        for (int f = 0; f < frames; f++) {
+            for (int i = 0; i < count; i++) {
+                positions[i * 3] = random.nextFloat() * 100;
+                positions[i * 3 + 2] = random.nextFloat() * 100;
+            }
+            context.setView(view, view, view, view, 0.5f);
+            context.putHeaders(positions, rotations, radii, voxelOffsets, bvhOffsets, count);
+            context.render(RenderContext.WORLD | RenderContext.ENTITIES, pixels);
+        }
+        double ms = (System.nanoTime() - start) / 1e6 / frames;
+
+        System.out.printf("%d Jimmys, %dx%d, atlas %d ints%n", count, WIDTH, HEIGHT, atlasLength);
+        System.out.printf("%-22s %14s%n", "", "bytes/frame");
+        System.out.printf("%-22s %14d%n", "arrays", world + entities);
+        System.out.printf("%-22s %14d%n", "render context", natives.frameBytes / natives.frames);
+        System.out.printf("%-22s %14d%n", "  of which pixels", pixelBytes);
+        System.out.printf("context registered %d bytes once, patched %d, java side %.3f ms/frame%n",
+                natives.registerBytes, natives.patchBytes, ms);
+    }
+
+}
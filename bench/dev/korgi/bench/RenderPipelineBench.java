@@ -0,0 +1,148 @@
+package dev.korgi.bench;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import dev.korgi.game.physics.VoxelStore;
+import dev.korgi.game.physics.WorldStorage;
+import dev.korgi.game.rendering.Camera;
+import dev.korgi.game.rendering.NativeGPUKernal;
+import dev.korgi.game.rendering.RenderPipeline;
+import dev.korgi.game.rendering.TextureAtlas;
+import dev.korgi.game.rendering.Voxel;
+import dev.korgi.math.Vector3;
+
+/**
+ * Game loop frame times with the kernal run inline against the render thread,
+ * on the cpu kernal at 320x240 over a 256x256 terrain. Every tick spins for
+ * tick_ms as a stand-in for networking and entity updates, edits a few voxels
+ * near the camera and moves it. Reports percentiles of the loop period and,
+ * for the render thread, of the time between finished frames, then checks the
+ * last pipelined frame against an inline render of the same state.
+ *
+ * Usage: RenderPipelineBench [frames] [tick_ms]
+ */
+public class RenderPipelineBench {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+
+    public static void main(String[] args) throws InterruptedException {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        double tickMs = args.length > 1 ? Double.parseDouble(args[1]) : 4;
+
+        WorldStorage world = new WorldStorage();
+        VoxelStore store = world.voxels;
+        store.put(WorldStorage.voxelKey(new Vector3(0, 0, 0)), new Voxel(new Vector3(0, 0, 0)));
+        char ground = store.paletteId(0, 0, 0);
+        for (int x = 0; x < 256; x++) {
+            for (int z = 0; z < 256; z++) {
+                int height = 4 + (int) (6 * Math.sin(x * 0.05) * Math.cos(z * 0.04));
+                for (int y = 0; y <= Math.max(0, height); y++) {
+                    store.put(x, y, z, ground);
+                }
+            }
+        }
+
+        TextureAtlas atlas = new TextureAtlas(TextureAtlas.amt + 1);
+        atlas.build();
+        NativeGPUKernal.textureAtlas = atlas;
+        NativeGPUKernal.cpu = true;
+
+        Camera camera = new Camera();
+        camera.fov = 60;
+        camera.rotation.copyFrom(-0.3, 0.6, 0);
+        int[] screen = new int[WIDTH * HEIGHT];
+
+        System.out.printf("%d threads, %d voxels, %dx%d, %.1f ms tick%n", Runtime.getRuntime().availableProcessors(),
+                store.size(), WIDTH, HEIGHT, tickMs);
+        System.out.printf("%-22s %9s %9s %9s %9s %9s%n", "", "p50 ms", "p95 ms", "p99 ms", "max ms", "frames");
+
+        long[] loop = new long[frames];
+        Random random = new Random(11);
+        NativeGPUKernal.resetSpecs(screen, WIDTH, HEIGHT);
+        run(world, camera, random, tickMs, frames / 4, null, () -> NativeGPUKernal.execute(world, camera));
+        run(world, camera, random, tickMs, frames, loop, () -> NativeGPUKernal.execute(world, camera));
+        print("inline loop", loop, frames);
+
+        long[] finished = new long[frames * 2];
+        int[] finishedCount = { 0 };
+        long[] last = { 0 };
+        RenderPipeline.start();
+        run(world, camera, random, tickMs, frames / 4, null, () -> {
+            RenderPipeline.publish(world, camera, WIDTH, HEIGHT);
+            RenderPipeline.present(screen);
+        });
+        run(world, camera, random, tickMs, frames, loop, () -> {
+            RenderPipeline.publish(world, camera, WIDTH, HEIGHT);
+            boolean fresh = RenderPipeline.hasFreshFrame();
+            RenderPipeline.present(screen);
+            long now = System.nanoTime();
+            if (fresh) {
+                if (last[0] != 0 && finishedCount[0] < finished.length)
+                    finished[finishedCount[0]++] = now - last[0];
+                last[0] = now;
+            }
+        });
+        print("render thread loop", loop, frames);
+        print("  presented frames", finished, finishedCount[0]);
+
+        while (!RenderPipeline.publish(world, camera, WIDTH, HEIGHT)) {
+            Thread.sleep(1);
+        }
+        RenderPipeline.finish();
+        int[] pipelined = new int[WIDTH * HEIGHT];
+        RenderPipeline.present(pipelined);
+        RenderPipeline.stop();
+
+        int[] inline = new int[WIDTH * HEIGHT];
+        NativeGPUKernal.resetSpecs(inline, WIDTH, HEIGHT);
+        NativeGPUKernal.execute(world, camera);
+        System.out.printf("world version %d, last frame matches inline render: %b%n", store.version(),
+                Arrays.equals(pipelined, inline));
+    }
+
+    private static void run(WorldStorage world, Camera camera, Random random, double tickMs, int frames,
+            long[] times, Runnable render) {
+        long prev = System.nanoTime();
+        for (int f = 0; f < frames; f++) {
+            tick(world, camera, random, tickMs, f);
+            render.run();
+            long now = System.nanoTime();
+            if (times != null)
+                times[f] = now - prev;
+            prev = now;
+        }
+    }
+
+    private static void tick(WorldStorage world, Camera camera, Random random, double tickMs, int f) {
+        long until = System.nanoTime() + (long) (tickMs * 1e6);
+        while (System.nanoTime() < until) {
+            Thread.onSpinWait();
+        }
+        camera.position.copyFrom(40 + (f % 400) * 0.4, 16, 40 + (f % 400) * 0.3);
+        int x = (int) camera.position.x + random.nextInt(16);
+        int z = (int) camera.position.z + 4 + random.nextInt(16);
+        for (int y = 8; y < 12; y++) {
+            if (random.nextBoolean()) {
+                world.voxels.put(x, y, z, world.voxels.paletteId(0, 0, 0));
+            } else {
+                world.voxels.remove(x, y, z);
+            }
+        }
+    }
+
+    private static void print(String name, long[] times, int count) {
+        long[] sorted = Arrays.copyOf(times, count);
+        Arrays.sort(sorted);
+        System.out.printf("%-22s %9.2f %9.2f %9.2f %9.2f %9d%n", name, pct(sorted, 0.5), pct(sorted, 0.95),
+                pct(sorted, 0.99), count == 0 ? 0 : sorted[count - 1] / 1e6, count);
+    }
+
+    private static double pct(long[] sorted, double p) {
+        if (sorted.length == 0)
+            return 0;
+        return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))] / 1e6;
+    }
+
+}
@@ -0,0 +1,191 @@
+package dev.korgi.bench;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import dev.korgi.game.Game;
+import dev.korgi.game.entites.Entity;
+import dev.korgi.game.items.JimmyItem;
+import dev.korgi.game.physics.ChunkResidency;
+import dev.korgi.game.physics.RegionStorage;
+import dev.korgi.game.physics.TerrainSource;
+import dev.korgi.game.physics.VoxelChunk;
+import dev.korgi.game.physics.VoxelStore;
+import dev.korgi.game.rendering.Voxel;
+import dev.korgi.player.Player;
+
+/**
+ * A player flying rows across a stored flat world, four layers deep, with
+ * JimmyItems scattered over it, placing a block every half second. The world
+ * is loaded around the player through ChunkResidency, once with everything
+ * loaded kept in memory, the way the server kept the whole world before, and
+ * once with the chunk_memory budget.
+ *
+ * Heap is measured after a full GC. update ms is the residency work per tick,
+ * which includes loading the columns that come into range and saving before
+ * evicting. The placed blocks are checked against a fresh load at the end.
+ *
+ * Usage: RoamBench [side_blocks] [chunk_memory_mb] [radius]
+ */
+public class RoamBench {
+
+    private static final int LAYERS = 4;
+    private static final int ITEMS = 2_000;
+    private static final double SPEED = 2;
+    private static final int PLACE_TICKS = 30;
+    private static final int SAMPLE_TICKS = 1_000;
+
+    public static void main(String[] args) throws IOException {
+        int side = args.length > 0 ? Integer.parseInt(args[0]) : 2048;
+        double memory = args.length > 1 ? Double.parseDouble(args[1]) : 16;
+        int radius = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+        Game.loadEntities();
+        Path dir = Files.createTempDirectory("korgi-roam");
+        try {
+            long start = System.nanoTime();
+            build(dir, side);
+            System.out.printf("%d x %d blocks, %d layers, stored in %.0f ms%n", side, side, LAYERS,
+                    (System.nanoTime() - start) / 1e6);
+            run("keep all", dir, side, 1e9, radius);
+            run("budget %.0f MB".formatted(memory), dir, side, memory, radius);
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    private static void build(Path dir, int side) throws IOException {
+        VoxelStore world = new VoxelStore();
+        RegionStorage storage = new RegionStorage(dir);
+        world.setSource(storage);
+        world.addListener(storage);
+        for (int y = 0; y < LAYERS; y++) {
+            Voxel v = new Voxel();
+            v.getMaterial().setTextureLocation(y);
+            char id = world.palette().idOf(v.getMaterial());
+            for (int x = -side / 2; x < side / 2; x++) {
+                for (int z = -side / 2; z < side / 2; z++) {
+                    world.put(x, -1 - y, z, id);
+                }
+            }
+        }
+        storage.save(world);
+        storage.close();
+    }
+
+    private static void run(String mode, Path dir, int side, double memory, int radius) throws IOException {
+        VoxelStore world = new VoxelStore();
+        RegionStorage storage = new RegionStorage(dir);
+        TerrainSource terrain = new TerrainSource(storage, null, 1);
+        world.setSource(terrain);
+        world.addListener(storage);
+        ChunkResidency residency = new ChunkResidency(world, storage, terrain, radius, memory);
+
+        Player player = new Player();
+        player.internal_id = "roamer";
+        player.connected = true;
+        List<Player> players = List.of(player);
+        List<Entity> entities = new ArrayList<>();
+        entities.add(player);
+        Random random = new Random(23);
+        for (int i = 0; i < ITEMS; i++) {
+            JimmyItem item = new JimmyItem();
+            item.getPosition().copyFrom(random.nextInt(side) - side / 2, 0, random.nextInt(side) - side / 2);
+            entities.add(item);
+        }
+
+        Voxel placed = new Voxel();
+        placed.getMaterial().setTextureLocation(LAYERS);
+        char placedId = world.palette().idOf(placed.getMaterial());
+        List<int[]> edits = new ArrayList<>();
+
+        // rows one ticket wide, so every column comes into range once
+        double rowSpacing = (2 * radius + 1) * VoxelChunk.SIZE;
+        double min = -side / 2.0 + 1;
+        double max = side / 2.0 - 1;
+        double x = min;
+        double z = min + radius * VoxelChunk.SIZE;
+        double direction = 1;
+        double nextRow = z;
+        player.getPosition().copyFrom(x, 1, z);
+        residency.joined(player.internal_id, player.getPosition(), entities);
+
+        System.out.printf("%n%s, radius %d, budget %d chunks%n", mode, radius, residency.budget());
+        System.out.printf("%8s %10s %10s %10s %10s %10s %10s %12s%n", "tick", "resident", "loaded", "evicted",
+                "suspended", "heap MB", "update ms", "max update ms");
+        MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+        long updateNanos = 0;
+        long maxUpdate = 0;
+        double peakHeap = 0;
+        int tick = 0;
+        while (true) {
+            tick++;
+            if (z < nextRow) {
+                z = Math.min(nextRow, z + SPEED);
+            } else {
+                x += direction * SPEED;
+                if (x > max || x < min) {
+                    x = Math.max(min, Math.min(max, x));
+                    direction = -direction;
+                    nextRow += rowSpacing;
+                    if (nextRow > max) {
+                        break;
+                    }
+                }
+            }
+            player.getPosition().copyFrom(x, 1, z);
+            if (tick % PLACE_TICKS == 0) {
+                int bx = (int) Math.floor(x);
+                int bz = (int) Math.floor(z);
+                world.put(bx, 0, bz, placedId);
+                edits.add(new int[] { bx, bz });
+            }
+
+            long t0 = System.nanoTime();
+            residency.update(players, entities);
+            long spent = System.nanoTime() - t0;
+            updateNanos += spent;
+            maxUpdate = Math.max(maxUpdate, spent);
+
+            if (tick % SAMPLE_TICKS == 0) {
+                System.gc();
+                double heap = memoryBean.getHeapMemoryUsage().getUsed() / 1e6;
+                peakHeap = Math.max(peakHeap, heap);
+                System.out.printf("%8d %10d %10d %10d %10d %10.1f %10.3f %12.2f%n", tick, residency.residentChunks(),
+                        residency.loads(), residency.evictions(), residency.suspendedEntities(), heap,
+                        updateNanos / 1e6 / SAMPLE_TICKS, maxUpdate / 1e6);
+                updateNanos = 0;
+                maxUpdate = 0;
+            }
+        }
+        storage.save(world);
+        storage.close();
+        terrain.close();
+        System.out.printf("peak heap %.1f MB over %d ticks%n", peakHeap, tick);
+
+        RegionStorage check = new RegionStorage(dir);
+        VoxelStore reloaded = new VoxelStore();
+        reloaded.setSource(check);
+        int missing = 0;
+        for (int[] edit : edits) {
+            char id = reloaded.paletteId(edit[0], 0, edit[1]);
+            if (id == VoxelChunk.EMPTY || reloaded.palette().get(id).getTextureLocation().intValue() != LAYERS) {
+                missing++;
+            }
+        }
+        check.close();
+        System.out.printf("check %s%n", missing == 0 ? "ok, %d placed blocks".formatted(edits.size())
+                : "%d of %d placed blocks missing".formatted(missing, edits.size()));
+    }
+
+}
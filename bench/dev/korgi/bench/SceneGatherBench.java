@@ -0,0 +1,95 @@
+package dev.korgi.bench;
+
+import java.util.Random;
+
+import dev.korgi.game.physics.VoxelStore;
+import dev.korgi.game.physics.WorldStorage;
+import dev.korgi.game.rendering.Camera;
+import dev.korgi.game.rendering.NativeGPUKernal;
+import dev.korgi.game.rendering.TextureAtlas;
+import dev.korgi.game.rendering.Voxel;
+import dev.korgi.math.Vector3;
+import dev.korgi.math.Vector4;
+
+/**
+ * Time to gather the world into the render grid when the camera crosses a
+ * chunk border, over a 512x512 rolling terrain with sparse floating islands.
+ * Frames are rendered 1x1 on the cpu kernal so only the scene gather shows up.
+ *
+ * Usage: SceneGatherBench [frames] [render_dists...]
+ */
+public class SceneGatherBench {
+
+    public static void main(String[] args) {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+        int[] dists = { 50, 100 };
+        if (args.length > 1) {
+            dists = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                dists[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+
+        WorldStorage world = new WorldStorage();
+        VoxelStore store = world.voxels;
+        store.put(WorldStorage.voxelKey(new Vector3(0, 0, 0)), new Voxel(new Vector3(0, 0, 0)));
+        char ground = store.paletteId(0, 0, 0);
+        store.put(WorldStorage.voxelKey(new Vector3(0, 64, 0)),
+                new Voxel(new Vector3(0, 64, 0), new Vector4(0.5, 0.5, 0.5, 1)));
+        char stone = store.paletteId(0, 64, 0);
+        Random random = new Random(3);
+        for (int x = 0; x < 512; x++) {
+            for (int z = 0; z < 512; z++) {
+                int height = 4 + (int) (6 * Math.sin(x * 0.05) * Math.cos(z * 0.04));
+                for (int y = 0; y <= Math.max(0, height); y++) {
+                    store.put(x, y, z, ground);
+                }
+            }
+        }
+        for (int i = 0; i < 40; i++) {
+            int x = random.nextInt(500);
+            int y = 48 + random.nextInt(32);
+            int z = random.nextInt(500);
+            for (int dx = 0; dx < 12; dx++) {
+                for (int dz = 0; dz < 12; dz++) {
+                    store.put(x + dx, y, z + dz, stone);
+                }
+            }
+        }
+
+        TextureAtlas atlas = new TextureAtlas(TextureAtlas.amt + 1);
+        atlas.build();
+        NativeGPUKernal.textureAtlas = atlas;
+        NativeGPUKernal.cpu = true;
+        NativeGPUKernal.resetSpecs(new int[1], 1, 1);
+
+        Camera camera = new Camera();
+        camera.fov = 60;
+
+        System.out.printf("%d threads, %d voxels%n", Runtime.getRuntime().availableProcessors(), store.size());
+        System.out.printf("%12s %12s %12s%n", "render_dist", "avg ms", "best ms");
+        for (int dist : dists) {
+            NativeGPUKernal.render_dist = dist;
+            for (int i = 0; i < frames; i++) {
+                frame(world, camera, i);
+            }
+            long total = 0;
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < frames; i++) {
+                long start = System.nanoTime();
+                frame(world, camera, i);
+                long t = System.nanoTime() - start;
+                total += t;
+                best = Math.min(best, t);
+            }
+            System.out.printf("%12d %12.3f %12.3f%n", dist, total / 1e6 / frames, best / 1e6);
+        }
+    }
+
+    // every frame lands in a different chunk so the grid is gathered again
+    private static void frame(WorldStorage world, Camera camera, int i) {
+        camera.position.copyFrom(256 + (i % 2) * 16, 12, 256 + (i % 3) * 16);
+        NativeGPUKernal.execute(world, camera);
+    }
+
+}
@@ -0,0 +1,71 @@
+package dev.korgi.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Starts ServerMain in a child JVM and reports the time until it is ticking,
+ * its resident set once settled (linux only) and how many classes it loaded,
+ * counting Processing and java.desktop (AWT, Swing, ImageIO) separately.
+ *
+ * Usage: ServerStartupBench [runs]
+ */
+public class ServerStartupBench {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        String classpath = System.getProperty("java.class.path");
+
+        System.out.printf("%6s %12s %10s %10s %12s%n", "run", "startup ms", "rss MB", "classes", "desktop/p5");
+        for (int run = 0; run < runs; run++) {
+            File log = File.createTempFile("korgi-classes", ".log");
+            log.deleteOnExit();
+            ProcessBuilder pb = new ProcessBuilder(java, "-Xlog:class+load=info:file=" + log.getPath(), "-cp",
+                    classpath, "dev.korgi.ServerMain", "--port", String.valueOf(17000 + run));
+            pb.redirectErrorStream(true);
+            long start = System.nanoTime();
+            Process process = pb.start();
+            BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            String line;
+            while ((line = out.readLine()) != null && !line.startsWith("Server on port")) {
+            }
+            double startup = (System.nanoTime() - start) / 1e6;
+            if (line == null) {
+                System.out.println("server exited before it started ticking");
+                return;
+            }
+
+            Thread.sleep(2000);
+            double rss = rssMb(process.pid());
+            process.destroy();
+            process.waitFor();
+
+            List<String> classes = Files.readAllLines(log.toPath());
+            long desktop = classes.stream()
+                    .filter(c -> c.contains("source: jrt:/java.desktop") || c.contains(" processing."))
+                    .count();
+            System.out.printf("%6d %12.0f %10s %10d %12d%n", run, startup, rss < 0 ? "n/a" : "%.1f".formatted(rss),
+                    classes.size(), desktop);
+        }
+    }
+
+    private static double rssMb(long pid) throws IOException {
+        Path status = Path.of("/proc", String.valueOf(pid), "status");
+        if (!Files.exists(status)) {
+            return -1;
+        }
+        for (String line : Files.readAllLines(status)) {
+            if (line.startsWith("VmRSS:")) {
+                return Long.parseLong(line.replaceAll("[^0-9]", "")) / 1024.0;
+            }
+        }
+        return -1;
+    }
+
+}
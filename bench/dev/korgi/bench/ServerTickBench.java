@@ -0,0 +1,75 @@
+package dev.korgi.bench;
+
+import java.util.concurrent.locks.LockSupport;
+
+import dev.korgi.game.ServerScheduler;
+
+/**
+ * Server ticks driven the old way, paced like Processing's frameRate with dt
+ * taken from the wall clock, against ServerScheduler. Each tick spins for 2 ms
+ * and every 40th tick stalls for 60 ms, standing in for a slow chunk load.
+ * Reports ticks run, simulated over wall seconds, the largest dt a tick saw
+ * and the scheduler's own accounting.
+ *
+ * Usage: ServerTickBench [seconds] [tick_rate] [max_catch_up]
+ */
+public class ServerTickBench {
+
+    private static class Load {
+        long ticks;
+        double simulated;
+        double maxDt;
+
+        void tick(double dt) {
+            simulated += dt;
+            maxDt = Math.max(maxDt, dt);
+            spin(ticks++ % 40 == 39 ? 60 : 2);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 5;
+        int rate = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+        int catchUp = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        long wall = (long) (seconds * 1e9);
+
+        Load paced = new Load();
+        long period = 1_000_000_000L / rate;
+        long start = System.nanoTime();
+        long last = start;
+        while (System.nanoTime() - start < wall) {
+            long frame = System.nanoTime();
+            paced.tick((frame - last) / 1e9);
+            last = frame;
+            long wait = frame + period - System.nanoTime();
+            if (wait > 0)
+                LockSupport.parkNanos(wait);
+        }
+        double pacedWall = (System.nanoTime() - start) / 1e9;
+
+        Load fixed = new Load();
+        ServerScheduler scheduler = new ServerScheduler(rate, catchUp, fixed::tick);
+        start = System.nanoTime();
+        scheduler.start();
+        Thread.sleep(wall / 1_000_000);
+        scheduler.stop();
+        double fixedWall = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d Hz for %.1f s, max catch up %d%n", rate, seconds, catchUp);
+        System.out.printf("%-12s %8s %10s %10s %8s %8s %9s %9s%n", "", "ticks", "sim/wall", "max dt ms", "late",
+                "skipped", "mean ms", "p99 ms");
+        System.out.printf("%-12s %8d %10.3f %10.2f %8s %8s %9s %9s%n", "draw paced", paced.ticks,
+                paced.simulated / pacedWall, paced.maxDt * 1e3, "-", "-", "-", "-");
+        System.out.printf("%-12s %8d %10.3f %10.2f %8d %8d %9.2f %9.2f%n", "scheduler", fixed.ticks,
+                fixed.simulated / fixedWall, fixed.maxDt * 1e3, scheduler.ticksLate(), scheduler.ticksSkipped(),
+                scheduler.meanTickMs(), scheduler.p99TickMs());
+    }
+
+    private static void spin(double ms) {
+        long until = System.nanoTime() + (long) (ms * 1e6);
+        while (System.nanoTime() < until) {
+            Thread.onSpinWait();
+        }
+    }
+
+}
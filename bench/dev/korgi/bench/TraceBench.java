@@ -0,0 +1,146 @@
+package dev.korgi.bench;
+
+import java.util.Random;
+
+import dev.korgi.game.physics.Hit;
+import dev.korgi.game.physics.VoxelStore;
+import dev.korgi.game.physics.WorldEngine;
+import dev.korgi.game.physics.WorldStorage;
+import dev.korgi.game.rendering.Voxel;
+import dev.korgi.math.Vector3;
+import dev.korgi.math.Vector4;
+import dev.korgi.math.VectorConstants;
+
+/**
+ * Rays per second through WorldEngine.trace and traceMany against the old
+ * fixed 0.05 step march, over a 128x128 floor with scattered pillars. Rays
+ * start at player height in random directions. Also counts rays where the
+ * stepped march hit a different cell than the exact walk.
+ *
+ * Usage: TraceBench [rays]
+ */
+public class TraceBench {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int rays = args.length > 0 ? Integer.parseInt(args[0].replace("_", "")) : 200_000;
+
+        VoxelStore store = WorldEngine.getWorld().voxels;
+        Random random = new Random(7);
+        for (int x = 0; x < 128; x++) {
+            for (int z = 0; z < 128; z++) {
+                store.put(WorldStorage.voxelKey(new Vector3(x, 0, z)), new Voxel(new Vector3(x, 0, z)));
+                if (random.nextInt(12) == 0) {
+                    int height = 1 + random.nextInt(4);
+                    for (int y = 1; y <= height; y++) {
+                        store.put(WorldStorage.voxelKey(new Vector3(x, y, z)),
+                                new Voxel(new Vector3(x, y, z), new Vector4(0.5, 0.5, 0.5, 1)));
+                    }
+                }
+            }
+        }
+
+        double[] origins = new double[rays * 3];
+        double[] dirs = new double[rays * 3];
+        for (int i = 0; i < rays; i++) {
+            origins[i * 3] = 16 + random.nextDouble() * 96;
+            origins[i * 3 + 1] = 6 + random.nextDouble() * 2;
+            origins[i * 3 + 2] = 16 + random.nextDouble() * 96;
+            Vector3 d = new Vector3(random.nextGaussian(), random.nextGaussian(), random.nextGaussian()).normalize();
+            dirs[i * 3] = d.x;
+            dirs[i * 3 + 1] = d.y;
+            dirs[i * 3 + 2] = d.z;
+        }
+
+        System.out.printf("%8s %12s %12s %12s %12s%n", "reach", "stepped/s", "trace/s", "traceMany/s", "mismatch");
+        for (double reach : new double[] { 5, 64 }) {
+            run(origins, dirs, rays, reach);
+        }
+    }
+
+    private static void run(double[] origins, double[] dirs, int rays, double reach) {
+        double[] dist = new double[rays];
+        int[] faces = new int[rays];
+        int[] cells = new int[rays * 3];
+
+        int mismatch = 0;
+        WorldEngine.traceMany(origins, dirs, rays, reach, dist, faces, cells);
+        for (int i = 0; i < rays; i++) {
+            Hit old = stepped(vec(origins, i), vec(dirs, i), reach);
+            boolean same = old == null ? dist[i] < 0
+                    : dist[i] >= 0 && old.hit.position.x == cells[i * 3] && old.hit.position.y == cells[i * 3 + 1]
+                            && old.hit.position.z == cells[i * 3 + 2];
+            if (!same)
+                mismatch++;
+        }
+
+        int steppedRays = Math.max(1, rays / (reach > 10 ? 20 : 4));
+        long stepped = best(() -> {
+            for (int i = 0; i < steppedRays; i++) {
+                stepped(vec(origins, i), vec(dirs, i), reach);
+            }
+        });
+        long trace = best(() -> {
+            for (int i = 0; i < rays; i++) {
+                WorldEngine.trace(vec(origins, i), vec(dirs, i), reach);
+            }
+        });
+        long many = best(() -> WorldEngine.traceMany(origins, dirs, rays, reach, dist, faces, cells));
+
+        System.out.printf("%8.0f %12.0f %12.0f %12.0f %12d%n", reach, steppedRays / (stepped / 1e9),
+                rays / (trace / 1e9), rays / (many / 1e9), mismatch);
+    }
+
+    private static Vector3 vec(double[] packed, int i) {
+        return new Vector3(packed[i * 3], packed[i * 3 + 1], packed[i * 3 + 2]);
+    }
+
+    private static long best(Runnable r) {
+        r.run();
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            r.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    // WorldEngine.trace before the grid walk
+    private static Hit stepped(Vector3 origin, Vector3 dir, double maxDist) {
+        double stepSize = 0.05;
+        double traveled = 0.0;
+
+        Vector3 pos = origin.copy();
+        Vector3 prev = pos.copy();
+
+        while (traveled <= maxDist) {
+            Vector3 voxPos = pos.floor();
+
+            Voxel v = WorldEngine.getWorld().at(voxPos);
+            if (v != null) {
+                Hit hit = new Hit();
+                hit.hit = v;
+                hit.dist = traveled;
+
+                Vector3 dMin = prev.subtract(voxPos).absValue();
+                Vector3 dMax = prev.subtract(voxPos.add(VectorConstants.ONE)).absValue();
+
+                double min = Vector3.min(dMin, dMax).min();
+
+                hit.face = (int) dMin.compare(min, new Vector4(1, 3, 5, hit.face));
+                hit.face = (int) dMax.compare(min, new Vector4(0, 2, 4, hit.face));
+
+                return hit;
+            }
+
+            prev.copyFrom(pos);
+            pos.addTo(dir.multiply(stepSize));
+            traveled += stepSize;
+        }
+
+        return null;
+    }
+
+}
@@ -0,0 +1,246 @@
+package dev.korgi.bench;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import dev.korgi.game.rendering.Voxel;
+import dev.korgi.math.Vector4;
+import dev.korgi.utils.VoxModel;
+import dev.korgi.utils.VoxTranslator;
+
+/**
+ * Loads .vox files with the old VoxTranslator, a DataInputStream read byte by
+ * byte into Voxels, and with the mapped loader into a packed VoxModel. Load
+ * time is the best of the rounds. old MB is the heap freed by dropping the
+ * Voxels after a full GC, new MB the size of the VoxModel's arrays. copy is
+ * what a cached model cost each call: the old cache was deep copied with
+ * copyModel, a VoxModel is shared as it is and view only reads it.
+ *
+ * The old loader ignored the scene graph and stacked every model in a file,
+ * so its voxels are only compared with the new ones for files holding a
+ * single model. Positions have to match exactly, colors are not compared
+ * since the old loader ignored the palette. cars.vox places two rotated
+ * models, T-Rex.vox is an animation of which only the first frame is loaded.
+ *
+ * Usage: VoxLoadBench [rounds] [files...]
+ */
+public class VoxLoadBench {
+
+    private static final String[] FILES = {
+            "voxeleditor/MagicaVoxel-win/vox/monu2.vox",
+            "voxeleditor/MagicaVoxel-win/vox/monu1.vox",
+            "voxeleditor/MagicaVoxel-win/vox/menger.vox",
+            "voxeleditor/MagicaVoxel-win/vox/room.vox",
+            "voxeleditor/MagicaVoxel-mac/vox/nature.vox",
+            "voxeleditor/MagicaVoxel-win/vox/cars.vox",
+            "voxeleditor/MagicaVoxel-win/vox/anim/T-Rex.vox",
+            "models/player.vox",
+            "models/jimmy.vox",
+    };
+
+    public static void main(String[] args) throws IOException {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        String[] files = args.length > 1 ? Arrays.copyOfRange(args, 1, args.length) : FILES;
+
+        System.out.printf("%-28s %7s %9s %9s %9s %11s %11s %9s %9s  %s%n", "file", "models", "voxels", "old ms",
+                "new ms", "old MB", "new MB", "copy ms", "view ms", "check");
+        boolean ok = true;
+        for (String name : files) {
+            Path file = Path.of(name);
+            if (!file.toFile().exists()) {
+                System.out.printf("%-28s missing%n", name);
+                continue;
+            }
+            long oldBest = Long.MAX_VALUE;
+            long newBest = Long.MAX_VALUE;
+            List<Voxel> old = null;
+            VoxModel model = null;
+            for (int round = 0; round < rounds; round++) {
+                long start = System.nanoTime();
+                old = oldLoad(file.toFile());
+                oldBest = Math.min(oldBest, System.nanoTime() - start);
+                start = System.nanoTime();
+                model = VoxTranslator.load(file);
+                newBest = Math.min(newBest, System.nanoTime() - start);
+            }
+            old = null;
+            model = null;
+            double oldRetained = retained(() -> oldLoad(file.toFile()));
+
+            old = oldLoad(file.toFile());
+            model = VoxTranslator.load(file);
+            double newRetained = model.bytes() / 1e6;
+            long copyBest = Long.MAX_VALUE;
+            long viewBest = Long.MAX_VALUE;
+            for (int round = 0; round < rounds; round++) {
+                long start = System.nanoTime();
+                sink += VoxTranslator.copyModel(old).size();
+                copyBest = Math.min(copyBest, System.nanoTime() - start);
+                start = System.nanoTime();
+                sink += view(model);
+                viewBest = Math.min(viewBest, System.nanoTime() - start);
+            }
+
+            int models = models(file.toFile());
+            String check;
+            if (models != 1) {
+                check = "%d models, old loader stacked them into %d voxels".formatted(models, old.size());
+            } else if (same(old, VoxTranslator.toVoxels(model))) {
+                check = "ok, same voxels";
+            } else {
+                check = "FAILED, voxels differ";
+                ok = false;
+            }
+            String label = file.getFileName().toString();
+            System.out.printf("%-28s %7d %9d %9.2f %9.2f %11.2f %11.2f %9.3f %9.4f  %s%n", label, models,
+                    model.count, oldBest / 1e6, newBest / 1e6, oldRetained, newRetained, copyBest / 1e6,
+                    viewBest / 1e6, check);
+        }
+        System.out.printf("%ncheck %s%n", ok ? "ok" : "FAILED");
+    }
+
+    // keeps the copies and views from being optimized away
+    private static long sink;
+
+    private interface Load {
+        Object run() throws IOException;
+    }
+
+    // MB freed when what load returns is dropped
+    private static double retained(Load load) throws IOException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        Object[] kept = { load.run() };
+        collect();
+        long with = memory.getHeapMemoryUsage().getUsed();
+        kept[0] = null;
+        collect();
+        return (with - memory.getHeapMemoryUsage().getUsed()) / 1e6;
+    }
+
+    // until the heap stops shrinking, one System.gc() does not always free everything
+    private static void collect() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            long now = memory.getHeapMemoryUsage().getUsed();
+            if (now >= used) {
+                return;
+            }
+            used = now;
+        }
+    }
+
+    // what a caller of the shared model touches, every position and color
+    private static long view(VoxModel model) {
+        long sum = 0;
+        for (int i = 0; i < model.count; i++) {
+            sum += model.x(i) + model.y(i) + model.z(i) + model.color(i);
+        }
+        return sum;
+    }
+
+    private static boolean same(List<Voxel> a, List<Voxel> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        return Arrays.equals(sorted(a), sorted(b));
+    }
+
+    private static String[] sorted(List<Voxel> voxels) {
+        String[] keys = new String[voxels.size()];
+        for (int i = 0; i < keys.length; i++) {
+            Voxel v = voxels.get(i);
+            keys[i] = (v.position.x + 0.0) + "," + (v.position.y + 0.0) + "," + (v.position.z + 0.0);
+        }
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    private static int models(File file) throws IOException {
+        int models = 0;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.skipBytes(8);
+            while (in.available() > 0) {
+                byte[] id = new byte[4];
+                in.readFully(id);
+                int content = Integer.reverseBytes(in.readInt());
+                in.readInt();
+                models += new String(id).equals("XYZI") ? 1 : 0;
+                in.skipBytes(content);
+            }
+        }
+        return models;
+    }
+
+    // VoxTranslator.fromModel before the mapped loader, without its cache and its default palette lookup
+    private static List<Voxel> oldLoad(File model) throws IOException {
+        List<Voxel> voxels = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new FileInputStream(model))) {
+            byte[] magic = new byte[4];
+            in.readFully(magic);
+            Integer.reverseBytes(in.readInt());
+
+            while (in.available() > 0) {
+                byte[] chunkIdBytes = new byte[4];
+                in.readFully(chunkIdBytes);
+                String chunkId = new String(chunkIdBytes);
+
+                int contentSize = Integer.reverseBytes(in.readInt());
+                Integer.reverseBytes(in.readInt());
+
+                if (chunkId.equals("XYZI")) {
+                    int numVoxels = Integer.reverseBytes(in.readInt());
+
+                    float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+                    float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+
+                    List<Voxel> rawVoxels = new ArrayList<>();
+                    for (int i = 0; i < numVoxels; i++) {
+                        int x = in.readUnsignedByte();
+                        int y = in.readUnsignedByte();
+                        int z = in.readUnsignedByte();
+                        int colorIndex = in.readUnsignedByte();
+                        rawVoxels.add(new Voxel(x, z, y, Vector4.of(colorIndex)));
+
+                        minX = Math.min(minX, x);
+                        minY = Math.min(minY, y);
+                        minZ = Math.min(minZ, z);
+                        maxX = Math.max(maxX, x);
+                        maxY = Math.max(maxY, y);
+                        maxZ = Math.max(maxZ, z);
+                    }
+
+                    float cx = (minX + maxX) / 2f;
+                    float cy = (minY + maxY) / 2f;
+                    float cz = (minZ + maxZ) / 2f;
+
+                    for (Voxel v : rawVoxels) {
+                        float x = (float) v.position.x - cx;
+                        float y = (float) v.position.y - cy;
+                        float z = (float) v.position.z - cz;
+
+                        v.position.x = -x;
+                        v.position.y = y;
+                        v.position.z = -z;
+
+                        voxels.add(v);
+                    }
+
+                } else {
+                    in.skipBytes(contentSize);
+                }
+            }
+        }
+        return voxels;
+    }
+
+}
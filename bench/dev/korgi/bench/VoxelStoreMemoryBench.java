@@ -0,0 +1,86 @@
+package dev.korgi.bench;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+import dev.korgi.game.physics.VoxelStore;
+import dev.korgi.game.physics.WorldStorage;
+import dev.korgi.game.rendering.Voxel;
+
+/**
+ * Heap used by the chunked store against the old LinkedHashMap<Long, Voxel> at
+ * increasing world sizes. Run with a large -Xmx, the map runs out of memory
+ * well before the store does.
+ */
+public class VoxelStoreMemoryBench {
+
+    private static final int SIDE = 1000;
+
+    public static void main(String[] args) {
+        long[] counts = args.length > 0 ? parse(args) : new long[] { 1_000_000, 10_000_000, 50_000_000 };
+        System.out.printf("max heap %d MB%n", Runtime.getRuntime().maxMemory() >> 20);
+        System.out.printf("%12s %16s %16s %10s%n", "voxels", "map (MB)", "store (MB)", "ratio");
+        for (long count : counts) {
+            double store = measure(() -> fillStore(count));
+            double map = measure(() -> fillMap(count));
+            System.out.printf("%12d %16s %16s %10s%n", count, format(map), format(store),
+                    map > 0 && store > 0 ? "%.1fx".formatted(map / store) : "-");
+        }
+    }
+
+    private static long[] parse(String[] args) {
+        long[] counts = new long[args.length];
+        for (int i = 0; i < args.length; i++) {
+            counts[i] = Long.parseLong(args[i].replace("_", ""));
+        }
+        return counts;
+    }
+
+    private static String format(double mb) {
+        return mb < 0 ? "OOM" : "%.1f".formatted(mb);
+    }
+
+    private static Object fillStore(long count) {
+        VoxelStore store = new VoxelStore();
+        char grass = store.palette().idOf(new Voxel().getMaterial());
+        for (long i = 0; i < count; i++) {
+            store.put((int) (i % SIDE), (int) (i / ((long) SIDE * SIDE)), (int) ((i / SIDE) % SIDE), grass);
+        }
+        return store;
+    }
+
+    private static Object fillMap(long count) {
+        HashMap<Long, Voxel> map = new LinkedHashMap<>();
+        for (long i = 0; i < count; i++) {
+            int x = (int) (i % SIDE);
+            int y = (int) (i / ((long) SIDE * SIDE));
+            int z = (int) ((i / SIDE) % SIDE);
+            Voxel v = new Voxel(x, y, z);
+            v.getMaterial().setTextureLocation(0);
+            map.put(WorldStorage.voxelKey(x, y, z), v);
+        }
+        return map;
+    }
+
+    private static double measure(java.util.function.Supplier<Object> build) {
+        long before = usedAfterGc();
+        Object held;
+        try {
+            held = build.get();
+        } catch (OutOfMemoryError e) {
+            return -1;
+        }
+        long after = usedAfterGc();
+        held.hashCode();
+        return (after - before) / (1024.0 * 1024.0);
+    }
+
+    private static long usedAfterGc() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+}
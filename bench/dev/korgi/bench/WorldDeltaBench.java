@@ -0,0 +1,125 @@
+package dev.korgi.bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import dev.korgi.game.physics.VoxelStore;
+import dev.korgi.game.physics.WorldDelta;
+import dev.korgi.game.physics.WorldStorage;
+import dev.korgi.game.rendering.Voxel;
+import dev.korgi.json.JSONObject;
+import dev.korgi.math.Vector3;
+import dev.korgi.math.Vector4;
+
+/**
+ * Bytes on the wire and encode/decode time of a world update, the old
+ * u0..uN / r0..rN JSON packet data against WorldDelta. Edits are 80% placements
+ * and 20% removals scattered over a 256x64x256 area with a handful of
+ * materials.
+ */
+public class WorldDeltaBench {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int[] counts = args.length > 0 ? parse(args) : new int[] { 1_000, 10_000, 100_000 };
+        System.out.printf("%8s %8s %12s %12s %12s%n", "edits", "format", "bytes", "encode ms", "decode ms");
+        for (int count : counts) {
+            List<Voxel> updates = new ArrayList<>();
+            List<Vector3> removes = new ArrayList<>();
+            edits(count, updates, removes);
+            runJson(count, updates, removes);
+            runBinary(count, updates, removes);
+        }
+    }
+
+    private static int[] parse(String[] args) {
+        int[] counts = new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            counts[i] = Integer.parseInt(args[i].replace("_", ""));
+        }
+        return counts;
+    }
+
+    private static void edits(int count, List<Voxel> updates, List<Vector3> removes) {
+        Random random = new Random(count);
+        Vector4[] colors = new Vector4[8];
+        for (int i = 0; i < colors.length; i++) {
+            colors[i] = new Vector4(random.nextDouble(), random.nextDouble(), random.nextDouble(), 1);
+        }
+        for (int i = 0; i < count; i++) {
+            Vector3 pos = new Vector3(random.nextInt(256), random.nextInt(64) - 32, random.nextInt(256));
+            if (random.nextInt(5) == 0) {
+                removes.add(pos);
+                continue;
+            }
+            Voxel v = new Voxel(pos, colors[random.nextInt(colors.length)]);
+            if (random.nextInt(4) == 0) {
+                v.getMaterial().setTextureLocation(random.nextInt(3));
+            }
+            updates.add(v);
+        }
+    }
+
+    private static void runJson(int count, List<Voxel> updates, List<Vector3> removes) {
+        String json = null;
+        long encode = Long.MAX_VALUE;
+        long decode = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            JSONObject outData = new JSONObject();
+            outData.set("uc", updates.size());
+            outData.set("rc", removes.size());
+            for (int i = 0; i < updates.size(); i++) {
+                outData.set("u%d".formatted(i), updates.get(i));
+            }
+            for (int i = 0; i < removes.size(); i++) {
+                outData.set("r%d".formatted(i), removes.get(i));
+            }
+            json = outData.toJSONString();
+            encode = Math.min(encode, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            VoxelStore store = new VoxelStore();
+            JSONObject obj = JSONObject.fromJSONString(json);
+            int uc = obj.getInt("uc");
+            int rc = obj.getInt("rc");
+            for (int i = 0; i < uc; i++) {
+                Voxel v = new Voxel();
+                obj.getJSONObject("u%d".formatted(i)).fillObject(v);
+                store.put(WorldStorage.voxelKey(v.position), v);
+            }
+            for (int i = 0; i < rc; i++) {
+                Vector3 v = new Vector3();
+                obj.getJSONObject("r%d".formatted(i)).fillObject(v);
+                store.remove(WorldStorage.voxelKey(v));
+            }
+            decode = Math.min(decode, System.nanoTime() - start);
+        }
+        report(count, "json", json.getBytes(StandardCharsets.UTF_8).length, encode, decode);
+    }
+
+    private static void runBinary(int count, List<Voxel> updates, List<Vector3> removes) {
+        VoxelStore server = new VoxelStore();
+        byte[] bytes = null;
+        long encode = Long.MAX_VALUE;
+        long decode = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            bytes = WorldDelta.encode(server.palette(), updates, removes);
+            encode = Math.min(encode, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            WorldDelta.apply(bytes, new VoxelStore());
+            decode = Math.min(decode, System.nanoTime() - start);
+        }
+        report(count, "binary", bytes.length, encode, decode);
+    }
+
+    private static void report(int count, String format, int bytes, long encode, long decode) {
+        System.out.printf("%8d %8s %12d %12.2f %12.2f%n", count, format, bytes, encode / 1e6, decode / 1e6);
+    }
+
+}
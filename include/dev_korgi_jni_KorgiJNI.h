@@ -15,6 +15,15 @@ extern "C"
    */
   JNIEXPORT void JNICALL Java_dev_korgi_jni_KorgiJNI_executeKernal(JNIEnv *, jclass, jintArray, jint, jint, jfloatArray, jfloatArray, jfloatArray, jfloatArray, jfloat, jint, jintArray, jfloatArray, jintArray, jintArray, jintArray, jstring, jintArray, jintArray, jintArray, jintArray, jintArray);
   JNIEXPORT void JNICALL Java_dev_korgi_jni_KorgiJNI_executeEntityKernal(JNIEnv *, jclass, jintArray, jint, jint, jfloatArray, jfloatArray, jfloatArray, jfloatArray, jfloat, jfloatArray, jfloatArray, jfloatArray, jintArray, jintArray, jint, jfloatArray, jfloatArray, jintArray, jfloatArray, jintArray, jint, jfloatArray, jfloatArray, jintArray, jint, jintArray, jstring);
+  JNIEXPORT void JNICALL Java_dev_korgi_jni_KorgiJNI_uploadTextureAtlas(JNIEnv *, jclass, jintArray);
+  JNIEXPORT void JNICALL Java_dev_korgi_jni_KorgiJNI_uploadPalette(JNIEnv *, jclass, jint, jintArray, jfloatArray, jintArray, jintArray);
+  JNIEXPORT void JNICALL Java_dev_korgi_jni_KorgiJNI_uploadVoxelGrid(JNIEnv *, jclass, jintArray, jintArray, jintArray, jintArray, jintArray);
+  JNIEXPORT void JNICALL Java_dev_korgi_jni_KorgiJNI_patchVoxelGrid(JNIEnv *, jclass, jintArray, jint, jint);
+  JNIEXPORT void JNICALL Java_dev_korgi_jni_KorgiJNI_patchChunkGrid(JNIEnv *, jclass, jintArray, jint, jint);
+  JNIEXPORT void JNICALL Java_dev_korgi_jni_KorgiJNI_executeResidentKernal(JNIEnv *, jclass, jintArray, jint, jint, jfloatArray, jfloatArray, jfloatArray, jfloatArray, jfloat, jstring);
+  JNIEXPORT void JNICALL Java_dev_korgi_jni_KorgiJNI_registerRenderContext(JNIEnv *, jclass, jobject, jobject, jobject, jobject, jobject, jobject, jstring, jstring);
+  JNIEXPORT void JNICALL Java_dev_korgi_jni_KorgiJNI_patchRenderContext(JNIEnv *, jclass, jint, jint, jint, jint);
+  JNIEXPORT void JNICALL Java_dev_korgi_jni_KorgiJNI_executeRenderContext(JNIEnv *, jclass, jint);
 #ifdef __cplusplus
 }
 #endif
@@ -517,4 +517,289 @@ JNIEXPORT void JNICALL Java_dev_korgi_jni_KorgiJNI_executeEntityKernal(
 
     memcpy(pixelsPtr, entityPixelsBuffer.contents, jintSize * w * h);
     env->ReleasePrimitiveArrayCritical(pixels, pixelsPtr, 0);
-}
\ No newline at end of file
+}
+
+// Resident scene: the voxel grid, palette and atlas stay in shared Metal
+// buffers between frames and are only patched where the world changed.
+
+static int32_t residentWorldMin[3] = {0, 0, 0};
+static int32_t residentWorldSize[3] = {0, 0, 0};
+static int32_t residentVoxCount = 0;
+
+static void ensureDevice() {
+    if (device) return;
+    device = MTLCreateSystemDefaultDevice();
+    commandQueue = [device newCommandQueue];
+}
+
+static void ensurePipeline(NSString* path) {
+    if (pipelineState) return;
+    ensureDevice();
+    NSError* error = nil;
+    id<MTLLibrary> library = [device newLibraryWithFile:path error:&error];
+    id<MTLFunction> kernelFunc = [library newFunctionWithName:@"raytraceKernel"];
+    pipelineState = [device newComputePipelineStateWithFunction:kernelFunc error:&error];
+    if (error) {
+        NSLog(@"Failed to create pipeline: %@", error);
+    }
+}
+
+static void encodeResidentWorld(id<MTLCommandBuffer> commandBuffer, jint width, jint height, const float* camV,
+                                const float* forwardV, const float* rightV, const float* upV, float tanFov) {
+    int32_t w = width, h = height;
+    ensureBuffer(&widthBuffer, sizeof(int32_t));
+    ensureBuffer(&heightBuffer, sizeof(int32_t));
+    ensureBuffer(&paramsBuffer, sizeof(RayParams));
+    memcpy(widthBuffer.contents, &w, sizeof(int32_t));
+    memcpy(heightBuffer.contents, &h, sizeof(int32_t));
+
+    RayParams params;
+    params.cam = simd_make_float3(camV[0], camV[1], camV[2]);
+    params.forward = simd_make_float3(forwardV[0], forwardV[1], forwardV[2]);
+    params.right = simd_make_float3(rightV[0], rightV[1], rightV[2]);
+    params.up = simd_make_float3(upV[0], upV[1], upV[2]);
+    params.tanFov = tanFov;
+    params.voxelCount = residentVoxCount;
+    params.worldMin = simd_make_int3(residentWorldMin[0], residentWorldMin[1], residentWorldMin[2]);
+    params.worldSize = simd_make_int3(residentWorldSize[0], residentWorldSize[1], residentWorldSize[2]);
+    memcpy(paramsBuffer.contents, &params, sizeof(RayParams));
+
+    id<MTLComputeCommandEncoder> encoder = [commandBuffer computeCommandEncoder];
+    [encoder setComputePipelineState:pipelineState];
+
+    [encoder setBuffer:pixelsBuffer offset:0 atIndex:0];
+    [encoder setBuffer:voxelBuffer offset:0 atIndex:1];
+    [encoder setBuffer:colorBuffer offset:0 atIndex:2];
+    [encoder setBuffer:opacityBuffer offset:0 atIndex:3];
+    [encoder setBuffer:paramsBuffer offset:0 atIndex:4];
+    [encoder setBuffer:widthBuffer offset:0 atIndex:5];
+    [encoder setBuffer:heightBuffer offset:0 atIndex:6];
+    [encoder setBuffer:textureLocationBuffer offset:0 atIndex:7];
+    [encoder setBuffer:overlayLocationBuffer offset:0 atIndex:8];
+    [encoder setBuffer:textureAtlasBuffer offset:0 atIndex:9];
+    [encoder setBuffer:chunkGridBuffer offset:0 atIndex:10];
+    [encoder setBuffer:chunkSizeBuffer offset:0 atIndex:11];
+    [encoder setBuffer:tBuffer offset:0 atIndex: 12];
+
+    NSUInteger tw = pipelineState.threadExecutionWidth;
+    NSUInteger th = pipelineState.maxTotalThreadsPerThreadgroup / tw;
+    [encoder dispatchThreads:MTLSizeMake(width, height, 1) threadsPerThreadgroup:MTLSizeMake(tw, th, 1)];
+    [encoder endEncoding];
+}
+
+extern "C"
+JNIEXPORT void JNICALL Java_dev_korgi_jni_KorgiJNI_uploadTextureAtlas(JNIEnv* env, jclass cls, jintArray textureAtlas) {
+    ensureDevice();
+    jsize length = env->GetArrayLength(textureAtlas);
+    ensureBuffer(&textureAtlasBuffer, jintSize * length);
+    env->GetIntArrayRegion(textureAtlas, 0, length, (jint*) textureAtlasBuffer.contents);
+}
+
+extern "C"
+JNIEXPORT void JNICALL Java_dev_korgi_jni_KorgiJNI_uploadPalette(
+    JNIEnv* env, jclass cls, jint count,
+    jintArray color, jfloatArray opacity, jintArray textureLocation, jintArray overlayLocation
+) {
+    ensureDevice();
+    size_t size = jintSize * (count > 0 ? count : 1);
+    ensureBuffer(&colorBuffer, size);
+    ensureBuffer(&opacityBuffer, size);
+    ensureBuffer(&textureLocationBuffer, size);
+    ensureBuffer(&overlayLocationBuffer, size);
+    env->GetIntArrayRegion(color, 0, count, (jint*) colorBuffer.contents);
+    env->GetFloatArrayRegion(opacity, 0, count, (jfloat*) opacityBuffer.contents);
+    env->GetIntArrayRegion(textureLocation, 0, count, (jint*) textureLocationBuffer.contents);
+    env->GetIntArrayRegion(overlayLocation, 0, count, (jint*) overlayLocationBuffer.contents);
+    residentVoxCount = count;
+}
+
+extern "C"
+JNIEXPORT void JNICALL Java_dev_korgi_jni_KorgiJNI_uploadVoxelGrid(
+    JNIEnv* env, jclass cls,
+    jintArray voxelGrid, jintArray worldMinArray, jintArray worldSizeArray,
+    jintArray chunkGrid, jintArray chunkSize
+) {
+    ensureDevice();
+    env->GetIntArrayRegion(worldMinArray, 0, 3, (jint*) residentWorldMin);
+    env->GetIntArrayRegion(worldSizeArray, 0, 3, (jint*) residentWorldSize);
+    jint cs[3];
+    env->GetIntArrayRegion(chunkSize, 0, 3, cs);
+
+    jsize gridLen = residentWorldSize[0] * residentWorldSize[1] * residentWorldSize[2];
+    jsize chunkLen = cs[0] * cs[1] * cs[2];
+
+    ensureBuffer(&voxelBuffer, jintSize * gridLen);
+    ensureBuffer(&chunkGridBuffer, jintSize * chunkLen);
+    ensureBuffer(&chunkSizeBuffer, jintSize * 3);
+    env->GetIntArrayRegion(voxelGrid, 0, gridLen, (jint*) voxelBuffer.contents);
+    env->GetIntArrayRegion(chunkGrid, 0, chunkLen, (jint*) chunkGridBuffer.contents);
+    memcpy(chunkSizeBuffer.contents, cs, jintSize * 3);
+}
+
+extern "C"
+JNIEXPORT void JNICALL Java_dev_korgi_jni_KorgiJNI_patchVoxelGrid(JNIEnv* env, jclass cls, jintArray voxelGrid, jint offset, jint length) {
+    if (voxelBuffer == nil || length <= 0) return;
+    env->GetIntArrayRegion(voxelGrid, offset, length, ((jint*) voxelBuffer.contents) + offset);
+}
+
+extern "C"
+JNIEXPORT void JNICALL Java_dev_korgi_jni_KorgiJNI_patchChunkGrid(JNIEnv* env, jclass cls, jintArray chunkGrid, jint offset, jint length) {
+    if (chunkGridBuffer == nil || length <= 0) return;
+    env->GetIntArrayRegion(chunkGrid, offset, length, ((jint*) chunkGridBuffer.contents) + offset);
+}
+
+extern "C"
+JNIEXPORT void JNICALL Java_dev_korgi_jni_KorgiJNI_executeResidentKernal(
+    JNIEnv* env, jclass cls,
+    jintArray pixels, jint width, jint height,
+    jfloatArray cam, jfloatArray forward, jfloatArray right, jfloatArray up,
+    jfloat tanFov, jstring path
+) {
+    ensurePipeline(JString_to_NSString(env, path));
+
+    jfloat camV[3], forwardV[3], rightV[3], upV[3];
+    env->GetFloatArrayRegion(cam, 0, 3, camV);
+    env->GetFloatArrayRegion(forward, 0, 3, forwardV);
+    env->GetFloatArrayRegion(right, 0, 3, rightV);
+    env->GetFloatArrayRegion(up, 0, 3, upV);
+
+    ensureBuffer(&pixelsBuffer, jintSize * width * height);
+    ensureBuffer(&tBuffer, sizeof(float) * width * height);
+
+    id<MTLCommandBuffer> commandBuffer = [commandQueue commandBuffer];
+    encodeResidentWorld(commandBuffer, width, height, camV, forwardV, rightV, upV, tanFov);
+    [commandBuffer commit];
+    [commandBuffer waitUntilCompleted];
+
+    env->SetIntArrayRegion(pixels, 0, width * height, (jint*) pixelsBuffer.contents);
+}
+
+// Render context: the scene lives in direct buffers registered once from
+// RenderContext, in the layouts the GL shaders read. A frame only reads the
+// uniforms block and the entity headers, the pixels stay in the shared
+// buffer between the world and entity passes.
+
+static const jint PASS_WORLD = 1;
+static const jint PASS_ENTITIES = 2;
+static const jint PASS_UPLOAD_PIXELS = 4;
+
+static float* ctxUniforms = nullptr;
+static jint* ctxPixels = nullptr;
+static uint8_t* ctxHeaders = nullptr;
+static uint8_t* ctxHot = nullptr;
+static uint8_t* ctxCold = nullptr;
+static uint8_t* ctxNodes = nullptr;
+
+extern "C"
+JNIEXPORT void JNICALL Java_dev_korgi_jni_KorgiJNI_registerRenderContext(
+    JNIEnv* env, jclass cls,
+    jobject uniforms, jobject pixels, jobject headers, jobject voxelsHot, jobject voxelsCold, jobject nodes,
+    jstring worldShader, jstring entityShader
+) {
+    ensurePipeline(JString_to_NSString(env, worldShader));
+    initEntityMetal(JString_to_NSString(env, entityShader));
+
+    ctxUniforms = (float*) env->GetDirectBufferAddress(uniforms);
+    ctxPixels = (jint*) env->GetDirectBufferAddress(pixels);
+    ctxHeaders = (uint8_t*) env->GetDirectBufferAddress(headers);
+    ctxHot = (uint8_t*) env->GetDirectBufferAddress(voxelsHot);
+    ctxCold = (uint8_t*) env->GetDirectBufferAddress(voxelsCold);
+    ctxNodes = (uint8_t*) env->GetDirectBufferAddress(nodes);
+
+    jlong hotBytes = env->GetDirectBufferCapacity(voxelsHot);
+    jlong coldBytes = env->GetDirectBufferCapacity(voxelsCold);
+    jlong nodeBytes = env->GetDirectBufferCapacity(nodes);
+    ensureEntityBuffer(&bvHotBuffer, hotBytes);
+    ensureEntityBuffer(&bvColdBuffer, coldBytes);
+    ensureEntityBuffer(&bvhNodeBuffer, nodeBytes);
+    memcpy(bvHotBuffer.contents, ctxHot, hotBytes);
+    memcpy(bvColdBuffer.contents, ctxCold, coldBytes);
+    memcpy(bvhNodeBuffer.contents, ctxNodes, nodeBytes);
+
+    jlong pixelBytes = env->GetDirectBufferCapacity(pixels);
+    ensureBuffer(&pixelsBuffer, pixelBytes);
+    ensureBuffer(&tBuffer, pixelBytes);
+}
+
+extern "C"
+JNIEXPORT void JNICALL Java_dev_korgi_jni_KorgiJNI_patchRenderContext(
+    JNIEnv* env, jclass cls, jint voxelOffset, jint voxelCount, jint nodeOffset, jint nodeCount
+) {
+    if (!ctxHot) return;
+    if (voxelCount > 0) {
+        memcpy((uint8_t*) bvHotBuffer.contents + voxelOffset * sizeof(BVHotC), ctxHot + voxelOffset * sizeof(BVHotC), voxelCount * sizeof(BVHotC));
+        memcpy((uint8_t*) bvColdBuffer.contents + voxelOffset * sizeof(BVColdC), ctxCold + voxelOffset * sizeof(BVColdC), voxelCount * sizeof(BVColdC));
+    }
+    if (nodeCount > 0) {
+        memcpy((uint8_t*) bvhNodeBuffer.contents + nodeOffset * sizeof(BVHNodeC), ctxNodes + nodeOffset * sizeof(BVHNodeC), nodeCount * sizeof(BVHNodeC));
+    }
+}
+
+extern "C"
+JNIEXPORT void JNICALL Java_dev_korgi_jni_KorgiJNI_executeRenderContext(JNIEnv* env, jclass cls, jint passes) {
+    if (!ctxUniforms || !pipelineState || !entityPipelineState) return;
+
+    const float* u = ctxUniforms;
+    jint width = (jint) u[20];
+    jint height = (jint) u[21];
+    jint entityCount = (jint) u[17];
+    size_t pixelBytes = jintSize * width * height;
+
+    if (passes & PASS_UPLOAD_PIXELS) {
+        memcpy(pixelsBuffer.contents, ctxPixels, pixelBytes);
+    }
+
+    id<MTLCommandBuffer> commandBuffer = [commandQueue commandBuffer];
+    if (passes & PASS_WORLD) {
+        encodeResidentWorld(commandBuffer, width, height, u, u + 4, u + 8, u + 12, u[16]);
+    }
+
+    if ((passes & PASS_ENTITIES) && entityCount > 0) {
+        // RenderContext writes the 16 int GL header, the Metal struct adds a pad
+        ensureEntityBuffer(&entHeaderBuffer, sizeof(EntityHeaderC) * entityCount);
+        EntityHeaderC* dst = (EntityHeaderC*) entHeaderBuffer.contents;
+        for (int i = 0; i < entityCount; i++) {
+            memcpy(&dst[i], ctxHeaders + i * 16 * sizeof(int32_t), 16 * sizeof(int32_t));
+            dst[i].pad1 = 0;
+        }
+
+        EntityParams params;
+        params.cam = simd_make_float3(u[0], u[1], u[2]);
+        params.forward = simd_make_float3(u[4], u[5], u[6]);
+        params.right = simd_make_float3(u[8], u[9], u[10]);
+        params.up = simd_make_float3(u[12], u[13], u[14]);
+        params.tanFov = u[16];
+        params.entityCount = entityCount;
+        params.totalVoxels = (int32_t) u[18];
+
+        int32_t w32 = width, h32 = height;
+        ensureEntityBuffer(&entityWidthBuffer, sizeof(int32_t));
+        ensureEntityBuffer(&entityHeightBuffer, sizeof(int32_t));
+        ensureEntityBuffer(&entityCountBuffer, sizeof(EntityParams));
+        memcpy(entityWidthBuffer.contents, &w32, sizeof(int32_t));
+        memcpy(entityHeightBuffer.contents, &h32, sizeof(int32_t));
+        memcpy(entityCountBuffer.contents, &params, sizeof(EntityParams));
+
+        id<MTLComputeCommandEncoder> encoder = [commandBuffer computeCommandEncoder];
+        [encoder setComputePipelineState:entityPipelineState];
+        [encoder setBuffer:pixelsBuffer offset:0 atIndex:0];
+        [encoder setBuffer:entityWidthBuffer offset:0 atIndex:1];
+        [encoder setBuffer:entityHeightBuffer offset:0 atIndex:2];
+        [encoder setBuffer:entityCountBuffer offset:0 atIndex:3];
+        [encoder setBuffer:entHeaderBuffer offset:0 atIndex:4];
+        [encoder setBuffer:bvHotBuffer offset:0 atIndex:5];
+        [encoder setBuffer:bvColdBuffer offset:0 atIndex:6];
+        [encoder setBuffer:textureAtlasBuffer offset:0 atIndex:7];
+        [encoder setBuffer:tBuffer offset:0 atIndex:8];
+        [encoder setBuffer:bvhNodeBuffer offset:0 atIndex:9];
+
+        NSUInteger tw = entityPipelineState.threadExecutionWidth;
+        NSUInteger th = entityPipelineState.maxTotalThreadsPerThreadgroup / tw;
+        [encoder dispatchThreads:MTLSizeMake(width, height, 1) threadsPerThreadgroup:MTLSizeMake(tw, th, 1)];
+        [encoder endEncoding];
+    }
+    [commandBuffer commit];
+    [commandBuffer waitUntilCompleted];
+
+    memcpy(ctxPixels, pixelsBuffer.contents, pixelBytes);
+}
@@ -492,4 +492,281 @@ extern "C" JNIEXPORT void JNICALL Java_dev_korgi_jni_KorgiJNI_executeEntityKerna
     glUnmapBuffer(GL_SHADER_STORAGE_BUFFER);
 
     env->ReleasePrimitiveArrayCritical(pixels, pixelsPtr, 0);
-}
\ No newline at end of file
+}
+// Resident scene: the voxel grid, palette and atlas stay on the GPU between
+// frames and are only patched where the world changed.
+
+static jint residentWorldMin[3] = {0, 0, 0};
+static jint residentWorldSize[3] = {0, 0, 0};
+static jint residentVoxCount = 0;
+
+static void patchSSBO(GLuint buf, GLintptr byteOffset, GLsizeiptr byteSize, const void *data)
+{
+    glBindBuffer(GL_SHADER_STORAGE_BUFFER, buf);
+    glBufferSubData(GL_SHADER_STORAGE_BUFFER, byteOffset, byteSize, data);
+}
+
+extern "C" JNIEXPORT void JNICALL Java_dev_korgi_jni_KorgiJNI_uploadTextureAtlas(
+    JNIEnv *env, jclass cls, jintArray textureAtlas)
+{
+    if (!initGL(1, 1))
+        return;
+    jsize len = env->GetArrayLength(textureAtlas);
+    jint *ptr = (jint *)env->GetPrimitiveArrayCritical(textureAtlas, nullptr);
+    uploadSSBO(textureAtlasBuffer, sizeof(jint) * len, ptr);
+    env->ReleasePrimitiveArrayCritical(textureAtlas, ptr, JNI_ABORT);
+}
+
+extern "C" JNIEXPORT void JNICALL Java_dev_korgi_jni_KorgiJNI_uploadPalette(
+    JNIEnv *env, jclass cls, jint count,
+    jintArray color, jfloatArray opacity, jintArray textureLocation, jintArray overlayLocation)
+{
+    if (!initGL(1, 1))
+        return;
+    jint *colorPtr = (jint *)env->GetPrimitiveArrayCritical(color, nullptr);
+    jfloat *opacityPtr = (jfloat *)env->GetPrimitiveArrayCritical(opacity, nullptr);
+    jint *texPtr = (jint *)env->GetPrimitiveArrayCritical(textureLocation, nullptr);
+    jint *overlayPtr = (jint *)env->GetPrimitiveArrayCritical(overlayLocation, nullptr);
+
+    uploadSSBO(colorBuffer, sizeof(jint) * count, colorPtr);
+    uploadSSBO(opacityBuffer, sizeof(float) * count, opacityPtr);
+    uploadSSBO(textureLocationBuffer, sizeof(jint) * count, texPtr);
+    uploadSSBO(overlayLocationBuffer, sizeof(jint) * count, overlayPtr);
+    residentVoxCount = count;
+
+    env->ReleasePrimitiveArrayCritical(overlayLocation, overlayPtr, JNI_ABORT);
+    env->ReleasePrimitiveArrayCritical(textureLocation, texPtr, JNI_ABORT);
+    env->ReleasePrimitiveArrayCritical(opacity, opacityPtr, JNI_ABORT);
+    env->ReleasePrimitiveArrayCritical(color, colorPtr, JNI_ABORT);
+}
+
+extern "C" JNIEXPORT void JNICALL Java_dev_korgi_jni_KorgiJNI_uploadVoxelGrid(
+    JNIEnv *env, jclass cls,
+    jintArray voxelGrid, jintArray worldMinArray, jintArray worldSizeArray,
+    jintArray chunkGrid, jintArray chunkSize)
+{
+    if (!initGL(1, 1))
+        return;
+    env->GetIntArrayRegion(worldMinArray, 0, 3, residentWorldMin);
+    env->GetIntArrayRegion(worldSizeArray, 0, 3, residentWorldSize);
+    jint cs[3];
+    env->GetIntArrayRegion(chunkSize, 0, 3, cs);
+
+    jsize gridLen = residentWorldSize[0] * residentWorldSize[1] * residentWorldSize[2];
+    jsize chunkLen = cs[0] * cs[1] * cs[2];
+
+    jint *gridPtr = (jint *)env->GetPrimitiveArrayCritical(voxelGrid, nullptr);
+    uploadSSBO(voxelBuffer, sizeof(jint) * gridLen, gridPtr);
+    env->ReleasePrimitiveArrayCritical(voxelGrid, gridPtr, JNI_ABORT);
+
+    jint *chunkPtr = (jint *)env->GetPrimitiveArrayCritical(chunkGrid, nullptr);
+    uploadSSBO(chunkGridBuffer, sizeof(jint) * chunkLen, chunkPtr);
+    env->ReleasePrimitiveArrayCritical(chunkGrid, chunkPtr, JNI_ABORT);
+
+    uploadSSBO(chunkSizeBuffer, sizeof(jint) * 3, cs);
+}
+
+extern "C" JNIEXPORT void JNICALL Java_dev_korgi_jni_KorgiJNI_patchVoxelGrid(
+    JNIEnv *env, jclass cls, jintArray voxelGrid, jint offset, jint length)
+{
+    if (!voxelBuffer || length <= 0)
+        return;
+    jint *gridPtr = (jint *)env->GetPrimitiveArrayCritical(voxelGrid, nullptr);
+    patchSSBO(voxelBuffer, sizeof(jint) * offset, sizeof(jint) * length, gridPtr + offset);
+    env->ReleasePrimitiveArrayCritical(voxelGrid, gridPtr, JNI_ABORT);
+}
+
+extern "C" JNIEXPORT void JNICALL Java_dev_korgi_jni_KorgiJNI_patchChunkGrid(
+    JNIEnv *env, jclass cls, jintArray chunkGrid, jint offset, jint length)
+{
+    if (!chunkGridBuffer || length <= 0)
+        return;
+    jint *chunkPtr = (jint *)env->GetPrimitiveArrayCritical(chunkGrid, nullptr);
+    patchSSBO(chunkGridBuffer, sizeof(jint) * offset, sizeof(jint) * length, chunkPtr + offset);
+    env->ReleasePrimitiveArrayCritical(chunkGrid, chunkPtr, JNI_ABORT);
+}
+
+static void ensurePixelBuffers(jsize pixelCount)
+{
+    static jsize allocated = 0;
+    if (pixelsBuffer && tBuffer && allocated == pixelCount)
+        return;
+    if (!pixelsBuffer)
+        glGenBuffers(1, &pixelsBuffer);
+    glBindBuffer(GL_SHADER_STORAGE_BUFFER, pixelsBuffer);
+    glBufferData(GL_SHADER_STORAGE_BUFFER, sizeof(jint) * pixelCount, nullptr, GL_DYNAMIC_DRAW);
+
+    if (!tBuffer)
+        glGenBuffers(1, &tBuffer);
+    glBindBuffer(GL_SHADER_STORAGE_BUFFER, tBuffer);
+    glBufferData(GL_SHADER_STORAGE_BUFFER, sizeof(float) * pixelCount, nullptr, GL_DYNAMIC_DRAW);
+    allocated = pixelCount;
+}
+
+static void dispatchResidentWorld(jint width, jint height, const float *camV, const float *forwardV,
+                                  const float *rightV, const float *upV, float tanFov)
+{
+    glUseProgram(computeProgram);
+
+    glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 0, pixelsBuffer);
+    glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 1, voxelBuffer);
+    glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 2, colorBuffer);
+    glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 3, opacityBuffer);
+    glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 4, textureLocationBuffer);
+    glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 5, overlayLocationBuffer);
+    glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 6, textureAtlasBuffer);
+    glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 7, chunkGridBuffer);
+    glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 8, chunkSizeBuffer);
+    glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 9, tBuffer);
+
+    glUniform3f(glGetUniformLocation(computeProgram, "cam"), camV[0], camV[1], camV[2]);
+    glUniform3f(glGetUniformLocation(computeProgram, "forward"), forwardV[0], forwardV[1], forwardV[2]);
+    glUniform3f(glGetUniformLocation(computeProgram, "right"), rightV[0], rightV[1], rightV[2]);
+    glUniform3f(glGetUniformLocation(computeProgram, "up"), upV[0], upV[1], upV[2]);
+    glUniform1f(glGetUniformLocation(computeProgram, "tanFov"), tanFov);
+    glUniform1i(glGetUniformLocation(computeProgram, "voxCount"), residentVoxCount);
+    glUniform3i(glGetUniformLocation(computeProgram, "worldMin"), residentWorldMin[0], residentWorldMin[1], residentWorldMin[2]);
+    glUniform3i(glGetUniformLocation(computeProgram, "worldSize"), residentWorldSize[0], residentWorldSize[1], residentWorldSize[2]);
+    glUniform1i(glGetUniformLocation(computeProgram, "width"), width);
+    glUniform1i(glGetUniformLocation(computeProgram, "height"), height);
+
+    glDispatchCompute((width + 7) / 8, (height + 7) / 8, 1);
+    glMemoryBarrier(GL_SHADER_STORAGE_BARRIER_BIT);
+}
+
+extern "C" JNIEXPORT void JNICALL Java_dev_korgi_jni_KorgiJNI_executeResidentKernal(
+    JNIEnv *env, jclass cls,
+    jintArray pixels, jint width, jint height,
+    jfloatArray cam, jfloatArray forward, jfloatArray right, jfloatArray up,
+    jfloat tanFov, jstring path)
+{
+    if (!initGL(width, height))
+        return;
+
+    if (!computeProgram)
+    {
+        computeProgram = compileComputeShader(toString(env, path));
+        if (!computeProgram)
+            return;
+    }
+
+    jfloat camV[3], forwardV[3], rightV[3], upV[3];
+    env->GetFloatArrayRegion(cam, 0, 3, camV);
+    env->GetFloatArrayRegion(forward, 0, 3, forwardV);
+    env->GetFloatArrayRegion(right, 0, 3, rightV);
+    env->GetFloatArrayRegion(up, 0, 3, upV);
+
+    jsize pixelCount = width * height;
+    ensurePixelBuffers(pixelCount);
+    dispatchResidentWorld(width, height, camV, forwardV, rightV, upV, tanFov);
+
+    jint *pixelsPtr = (jint *)env->GetPrimitiveArrayCritical(pixels, nullptr);
+    glBindBuffer(GL_SHADER_STORAGE_BUFFER, pixelsBuffer);
+    void *ptr = glMapBuffer(GL_SHADER_STORAGE_BUFFER, GL_READ_ONLY);
+    memcpy(pixelsPtr, ptr, sizeof(jint) * pixelCount);
+    glUnmapBuffer(GL_SHADER_STORAGE_BUFFER);
+    env->ReleasePrimitiveArrayCritical(pixels, pixelsPtr, 0);
+}
+
+// Render context: the scene lives in direct buffers registered once from
+// RenderContext, in the layouts the shaders read. A frame only reads the
+// uniforms block and the entity headers, the pixels stay on the GPU between
+// the world and entity passes and are read back once.
+
+static const jint PASS_WORLD = 1;
+static const jint PASS_ENTITIES = 2;
+static const jint PASS_UPLOAD_PIXELS = 4;
+
+static float *ctxUniforms = nullptr;
+static jint *ctxPixels = nullptr;
+static jbyte *ctxHeaders = nullptr;
+static jbyte *ctxHot = nullptr;
+static jbyte *ctxCold = nullptr;
+static jbyte *ctxNodes = nullptr;
+
+extern "C" JNIEXPORT void JNICALL Java_dev_korgi_jni_KorgiJNI_registerRenderContext(
+    JNIEnv *env, jclass cls,
+    jobject uniforms, jobject pixels, jobject headers, jobject voxelsHot, jobject voxelsCold, jobject nodes,
+    jstring worldShader, jstring entityShader)
+{
+    if (!initGL(1, 1))
+        return;
+
+    if (!computeProgram)
+        computeProgram = compileComputeShader(toString(env, worldShader));
+    if (!entityProgram)
+        entityProgram = compileComputeShader(toString(env, entityShader));
+
+    ctxUniforms = (float *)env->GetDirectBufferAddress(uniforms);
+    ctxPixels = (jint *)env->GetDirectBufferAddress(pixels);
+    ctxHeaders = (jbyte *)env->GetDirectBufferAddress(headers);
+    ctxHot = (jbyte *)env->GetDirectBufferAddress(voxelsHot);
+    ctxCold = (jbyte *)env->GetDirectBufferAddress(voxelsCold);
+    ctxNodes = (jbyte *)env->GetDirectBufferAddress(nodes);
+
+    uploadSSBO(entHeaderBuffer, env->GetDirectBufferCapacity(headers), nullptr);
+    uploadSSBO(bvHotBuffer, env->GetDirectBufferCapacity(voxelsHot), ctxHot);
+    uploadSSBO(bvColdBuffer, env->GetDirectBufferCapacity(voxelsCold), ctxCold);
+    uploadSSBO(bvhNodeBuffer, env->GetDirectBufferCapacity(nodes), ctxNodes);
+    uploadSSBO(entityParamsBuffer, sizeof(EntityParams), nullptr);
+    ensurePixelBuffers((jsize)(env->GetDirectBufferCapacity(pixels) / sizeof(jint)));
+}
+
+extern "C" JNIEXPORT void JNICALL Java_dev_korgi_jni_KorgiJNI_patchRenderContext(
+    JNIEnv *env, jclass cls, jint voxelOffset, jint voxelCount, jint nodeOffset, jint nodeCount)
+{
+    if (!ctxHot)
+        return;
+    if (voxelCount > 0)
+    {
+        patchSSBO(bvHotBuffer, (GLintptr)voxelOffset * sizeof(BVHotC), (GLsizeiptr)voxelCount * sizeof(BVHotC), ctxHot + voxelOffset * sizeof(BVHotC));
+        patchSSBO(bvColdBuffer, (GLintptr)voxelOffset * sizeof(BVColdC), (GLsizeiptr)voxelCount * sizeof(BVColdC), ctxCold + voxelOffset * sizeof(BVColdC));
+    }
+    if (nodeCount > 0)
+        patchSSBO(bvhNodeBuffer, (GLintptr)nodeOffset * sizeof(BVHNodeC), (GLsizeiptr)nodeCount * sizeof(BVHNodeC), ctxNodes + nodeOffset * sizeof(BVHNodeC));
+}
+
+extern "C" JNIEXPORT void JNICALL Java_dev_korgi_jni_KorgiJNI_executeRenderContext(
+    JNIEnv *env, jclass cls, jint passes)
+{
+    if (!ctxUniforms || !computeProgram || !entityProgram)
+        return;
+
+    EntityParams params;
+    memcpy(&params, ctxUniforms, sizeof(EntityParams));
+    jint width = (jint)params.misc1[0];
+    jint height = (jint)params.misc1[1];
+    jint entityCount = (jint)params.misc0[1];
+    jsize pixelCount = width * height;
+
+    if (passes & PASS_UPLOAD_PIXELS)
+        patchSSBO(pixelsBuffer, 0, sizeof(jint) * pixelCount, ctxPixels);
+
+    if (passes & PASS_WORLD)
+        dispatchResidentWorld(width, height, params.cam, params.forward, params.right, params.up, params.misc0[0]);
+
+    if ((passes & PASS_ENTITIES) && entityCount > 0)
+    {
+        // the shader reads 16 ints per header, the same layout RenderContext writes
+        patchSSBO(entHeaderBuffer, 0, (GLsizeiptr)entityCount * 16 * sizeof(int), ctxHeaders);
+        patchSSBO(entityParamsBuffer, 0, sizeof(EntityParams), &params);
+
+        glUseProgram(entityProgram);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 0, pixelsBuffer);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 1, entityParamsBuffer);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 2, entHeaderBuffer);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 3, bvHotBuffer);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 4, bvColdBuffer);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 5, textureAtlasBuffer);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 6, tBuffer);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 7, bvhNodeBuffer);
+
+        glDispatchCompute((width + 7) / 8, (height + 7) / 8, 1);
+        glMemoryBarrier(GL_SHADER_STORAGE_BARRIER_BIT);
+    }
+
+    glBindBuffer(GL_SHADER_STORAGE_BUFFER, pixelsBuffer);
+    void *mapped = glMapBuffer(GL_SHADER_STORAGE_BUFFER, GL_READ_ONLY);
+    memcpy(ctxPixels, mapped, sizeof(jint) * pixelCount);
+    glUnmapBuffer(GL_SHADER_STORAGE_BUFFER);
+}
@@ -0,0 +1,34 @@
+@echo off
+setlocal enabledelayedexpansion
+
+:: Usage: runbench.bat <BenchClass> [args...]
+:: Compiles src\ and bench\ into bin-bench\ and runs dev.korgi.bench.<BenchClass>
+
+set "PROJECT_DIR=%cd%"
+set "BIN_DIR=%PROJECT_DIR%\bin-bench"
+set "LIBS=%PROJECT_DIR%\lib\processing_core.jar"
+
+if "%~1"=="" (
+    echo usage: runbench.bat ^<BenchClass^> [args...]
+    exit /b 1
+)
+
+set "BENCH=%~1"
+shift
+set "ARGS="
+:collect
+if "%~1"=="" goto run
+set "ARGS=!ARGS! %1"
+shift
+goto collect
+
+:run
+if not exist "%BIN_DIR%" mkdir "%BIN_DIR%"
+> sources.txt (
+    for /r "%PROJECT_DIR%\src" %%F in (*.java) do echo %%F
+    for /r "%PROJECT_DIR%\bench" %%F in (*.java) do echo %%F
+)
+javac -encoding UTF-8 -d "%BIN_DIR%" -cp "%LIBS%" @sources.txt || exit /b 1
+del sources.txt
+
+java %JAVA_OPTS% -cp "%BIN_DIR%;%LIBS%" dev.korgi.bench.%BENCH% %ARGS%
@@ -11,14 +11,24 @@ set "BIN_DIR=%PROJECT_DIR%\bin"
 set "EXTRA_FLAGS="
 
 :: -----------------------------
-:: Process optional -e flag
+:: Process optional -e (jvm flags), -m (main class) and -a (program arguments) flags
 :: -----------------------------
+set "MAIN_CLASS="
+set "PROGRAM_ARGS="
 :parse_args
 if "%~1"=="" goto args_done
 if "%~1"=="-e" (
     set "EXTRA_FLAGS=%~2"
     shift
     shift
+) else if "%~1"=="-m" (
+    set "MAIN_CLASS=%~2"
+    shift
+    shift
+) else if "%~1"=="-a" (
+    set "PROGRAM_ARGS=%~2"
+    shift
+    shift
 ) else (
     shift
 )
@@ -98,9 +108,18 @@ if exist "%SRC_PATH%\" (
 )
 
 :: -----------------------------
-:: Detect main class (fully qualified) reliably
+:: Detect main class (fully qualified) reliably, preferring a Main.java
 :: -----------------------------
-set "MAIN_CLASS="
+if defined MAIN_CLASS goto run_main
+for /R "%SRC_PATH%" %%F in (Main.java) do (
+    if exist "%%F" (
+        findstr /C:"public static void main(String" "%%F" >nul
+        if not errorlevel 1 (
+            set "MAIN_FILE=%%F"
+            goto :found_main
+        )
+    )
+)
 for /R "%SRC_PATH%" %%F in (*.java) do (
     findstr /C:"public static void main(String" "%%F" >nul
     if not errorlevel 1 (
@@ -149,9 +168,9 @@ echo ------------- Output -------------
 echo.
 
 if defined LIBS (
-    java %EXTRA_FLAGS% -cp "%BIN_DIR%;%LIBS%" "%MAIN_CLASS%"
+    java %EXTRA_FLAGS% -cp "%BIN_DIR%;%LIBS%" "%MAIN_CLASS%" %PROGRAM_ARGS%
 ) else (
-    java %EXTRA_FLAGS% -cp "%BIN_DIR%" "%MAIN_CLASS%"
+    java %EXTRA_FLAGS% -cp "%BIN_DIR%" "%MAIN_CLASS%" %PROGRAM_ARGS%
 )
 
 :: -----------------------------
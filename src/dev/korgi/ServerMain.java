@@ -0,0 +1,60 @@
+package dev.korgi;
+
+import java.io.IOException;
+
+import dev.korgi.game.Game;
+import dev.korgi.utils.ErrorHandler;
+
+/**
+ * Dedicated server without a window. Reads config.json like the game, flags
+ * given on the command line take precedence.
+ *
+ * Usage: ServerMain [--port n] [--tick-rate n] [--max-catch-up n]
+ */
+public class ServerMain {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        for (int i = 0; i < args.length; i++) {
+            String flag = args[i];
+            if (i + 1 >= args.length) {
+                usage("missing value for " + flag);
+            }
+            String value = args[++i];
+            switch (flag) {
+                case "--port" -> Game.config.set("port", parse(flag, value));
+                case "--tick-rate" -> Game.config.set("tick_rate", parse(flag, value));
+                case "--max-catch-up" -> Game.config.set("max_catch_up", parse(flag, value));
+                default -> usage("unknown flag " + flag);
+            }
+        }
+
+        // the flag or config.json
+        if (Game.config.getInt("tick_rate") < 1) {
+            usage("tick rate has to be at least 1, got " + Game.config.getInt("tick_rate"));
+        }
+
+        ErrorHandler.setHeadless(true);
+        Game.isClient = false;
+        Game.init();
+        System.out.printf("Server on port %d at %d ticks/s, started in %.0f ms%n", Game.config.getInt("port"),
+                Game.scheduler.tickRate(), (System.nanoTime() - start) / 1e6);
+        Game.scheduler.join();
+    }
+
+    private static int parse(String flag, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            usage(flag + " expects a number, got " + value);
+            return 0;
+        }
+    }
+
+    private static void usage(String error) {
+        System.err.println(error);
+        System.err.println("usage: ServerMain [--port n] [--tick-rate n] [--max-catch-up n]");
+        System.exit(1);
+    }
+
+}
@@ -16,9 +16,13 @@ import dev.korgi.game.rendering.Graphics;
 import dev.korgi.game.rendering.NativeGPUKernal;
 import dev.korgi.json.JSONObject;
 import dev.korgi.math.Vector3;
+import dev.korgi.networking.DeltaReplicator;
+import dev.korgi.networking.InterestManager;
 import dev.korgi.networking.NetworkStream;
+import dev.korgi.networking.ServerClock;
 import dev.korgi.networking.Packet;
 import dev.korgi.player.Player;
+import dev.korgi.utils.AllocationTracker;
 
 public class Game {
 
@@ -28,6 +32,11 @@ public class Game {
     private static List<Player> players = new ArrayList<>();
     public static boolean canFly = false;
     public static JSONObject config;
+    /** Drives the server simulation, null on clients. */
+    public static ServerScheduler scheduler;
+    // server ticks run so far, stamped on every state sent
+    private static long tick;
+    private static int stateInterval = 1;
     static {
         File configLoc = new File("./config.json");
         if (configLoc.exists()) {
@@ -47,6 +56,21 @@ public class Game {
         config.addInt("render_dist", 50);
         config.addFloat("mouse_sensitivity", 3);
         config.addString("pack", "default");
+        config.addString("renderer", "gpu");
+        config.addBoolean("render_thread", true);
+        config.addInt("tick_rate", 60);
+        config.addInt("max_catch_up", 5);
+        config.addFloat("interest_radius", 64);
+        config.addInt("keyframe_interval", 120);
+        config.addInt("state_rate", 20);
+        config.addFloat("interpolation_delay", 100);
+        config.addString("world_dir", "world");
+        config.addFloat("autosave_interval", 60);
+        config.addInt("load_radius", 16);
+        config.addFloat("chunk_memory", 256);
+        config.addString("generator", "noise");
+        config.addInt("seed", 0);
+        config.addInt("generator_threads", 0);
     }
 
     public static void loadEntities() {
@@ -80,13 +104,26 @@ public class Game {
                     obj);
             NetworkStream.sendPacket(worldRequest);
             NativeGPUKernal.render_dist = config.getInt("render_dist");
+            NativeGPUKernal.cpu = "cpu".equalsIgnoreCase(config.getString("renderer"));
+            Graphics.pipelined = config.getBoolean("render_thread");
             Graphics.camera.fov = config.getFloat("fov");
+            ServerClock.delayMs = config.getFloat("interpolation_delay");
             initProgress += 0.1;
         } else {
             NetworkStream.startServer(config.getInt("port"));
             initProgress += 0.5;
             WorldEngine.init();
+            NetworkStream.setInterest(new InterestManager(config.getFloat("interest_radius")));
+            NetworkStream.setReplicator(new DeltaReplicator(config.getInt("keyframe_interval")));
+            stateInterval = Math.max(1, Math.round(config.getFloat("tick_rate") / config.getFloat("state_rate")));
             forceCompleteInit();
+            scheduler = new ServerScheduler(config.getInt("tick_rate"), config.getInt("max_catch_up"), Game::loop);
+            scheduler.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                scheduler.stop();
+                WorldEngine.close();
+                NetworkStream.stopServer();
+            }));
         }
     }
 
@@ -111,24 +148,42 @@ public class Game {
     }
 
     public static void loop() {
-        networkStartLoop();
+        loop((System.nanoTime() - lastTime) / 1e9);
+    }
+
+    public static void loop(double dt) {
+        AllocationTracker.beginTick();
+        if (!isClient) {
+            tick++;
+        }
+        networkStartLoop(dt);
+        AllocationTracker.section(AllocationTracker.WORLD);
         if (Game.isClient) {
+            ServerClock.advance();
             WorldEngine.updateClient();
+            AllocationTracker.section(AllocationTracker.RENDER);
             Graphics.display();
         } else {
             WorldEngine.execute();
         }
+        AllocationTracker.section(AllocationTracker.NETWORK);
         networkEndLoop();
-
-        System.gc();
+        AllocationTracker.endTick();
     }
 
     public static void networkEndLoop() {
+        InterestManager interest = NetworkStream.getInterest();
+        if (!isClient && interest != null) {
+            interest.update(players, WorldEngine.getWorld().entities);
+        }
         for (Player p : players) {
             p.sendOut();
         }
         WorldEngine.getWorld().entities.forEach((e) -> {
-            if (e instanceof Player) {
+            if (e instanceof Player || (interest != null && !interest.watched(e.internal_id))) {
+                return;
+            }
+            if (!isClient && tick % stateInterval != 0) {
                 return;
             }
             e.sendOut();
@@ -148,8 +203,13 @@ public class Game {
     }
 
     public static void networkStartLoop() {
+        networkStartLoop((System.nanoTime() - lastTime) / 1e9);
+    }
+
+    public static void networkStartLoop(double dt) {
+        AllocationTracker.section(AllocationTracker.NETWORK);
         NetworkStream.update(!isClient);
-        double dt = (System.nanoTime() - lastTime) / 1e9;
+        AllocationTracker.section(AllocationTracker.ENTITIES);
         for (Player p : players) {
             p.loop(dt);
         }
@@ -174,10 +234,26 @@ public class Game {
         Player player = new Player();
         player.internal_id = internal_id;
         player.connected = true;
+        if (!isClient) {
+            player.getPosition().copyFrom(WorldEngine.spawnPoint());
+        }
         players.add(player);
         player.addToWorld();
     }
 
+    public static long getTick() {
+        return tick;
+    }
+
+    public static int getTickRate() {
+        return scheduler != null ? scheduler.tickRate() : config.getInt("tick_rate");
+    }
+
+    /** Server ticks between states of non-player entities, players are sent every tick. */
+    public static int getStateInterval() {
+        return stateInterval;
+    }
+
     public static boolean isInitialized() {
         return initialized;
     }
@@ -0,0 +1,147 @@
+package dev.korgi.game;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.DoubleConsumer;
+
+import dev.korgi.utils.ServerSide;
+
+/**
+ * Runs the server simulation at a fixed rate on its own thread. Every tick is
+ * handed the same dt. A tick that starts after its slot has passed counts as
+ * late, and when the loop falls more than maxCatchUp ticks behind the rest are
+ * skipped instead of run back to back.
+ */
+@ServerSide
+public class ServerScheduler {
+
+    private static final int WINDOW = 256;
+
+    private final long period;
+    private final double dt;
+    private final int maxCatchUp;
+    private final DoubleConsumer tick;
+    private final Thread thread;
+    private volatile boolean running;
+
+    private volatile long ticks;
+    private volatile long late;
+    private volatile long skipped;
+    // the last WINDOW tick durations in ns
+    private final long[] durations = new long[WINDOW];
+    private int durationCount;
+
+    public ServerScheduler(int tickRate, int maxCatchUp, DoubleConsumer tick) {
+        if (tickRate < 1) {
+            throw new IllegalArgumentException("tick rate has to be at least 1, got " + tickRate);
+        }
+        this.period = 1_000_000_000L / tickRate;
+        this.dt = 1.0 / tickRate;
+        this.maxCatchUp = Math.max(1, maxCatchUp);
+        this.tick = tick;
+        thread = new Thread(this::run, "korgi-tick");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Blocks until the scheduler is stopped. */
+    public void join() throws InterruptedException {
+        thread.join();
+    }
+
+    private void run() {
+        long next = System.nanoTime();
+        while (running) {
+            long now = System.nanoTime();
+            if (now < next) {
+                LockSupport.parkNanos(next - now);
+                continue;
+            }
+
+            int ran = 0;
+            while (now >= next && ran < maxCatchUp && running) {
+                if (now - next >= period) {
+                    late++;
+                }
+                long start = System.nanoTime();
+                try {
+                    tick.accept(dt);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+                record(System.nanoTime() - start);
+                ticks++;
+                ran++;
+                next += period;
+                now = System.nanoTime();
+            }
+
+            if (now - next >= period) {
+                long behind = (now - next) / period;
+                skipped += behind;
+                next += behind * period;
+            }
+        }
+    }
+
+    private synchronized void record(long duration) {
+        durations[durationCount++ % WINDOW] = duration;
+    }
+
+    public int tickRate() {
+        return (int) Math.round(1 / dt);
+    }
+
+    public long ticks() {
+        return ticks;
+    }
+
+    /** Ticks that started a whole period or more after their slot. */
+    public long ticksLate() {
+        return late;
+    }
+
+    /** Ticks dropped because the loop was more than maxCatchUp behind. */
+    public long ticksSkipped() {
+        return skipped;
+    }
+
+    /** Mean tick time in ms over the last few hundred ticks. */
+    public synchronized double meanTickMs() {
+        int n = Math.min(durationCount, WINDOW);
+        if (n == 0) {
+            return 0;
+        }
+        long total = 0;
+        for (int i = 0; i < n; i++) {
+            total += durations[i];
+        }
+        return total / 1e6 / n;
+    }
+
+    /** 99th percentile tick time in ms over the last few hundred ticks. */
+    public synchronized double p99TickMs() {
+        int n = Math.min(durationCount, WINDOW);
+        if (n == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(durations, n);
+        Arrays.sort(sorted);
+        return sorted[Math.min(n - 1, (int) (n * 0.99))] / 1e6;
+    }
+
+}
@@ -14,7 +14,11 @@ import dev.korgi.json.JSONIgnore;
 import dev.korgi.json.JSONObject;
 import dev.korgi.math.Vector3;
 import dev.korgi.math.VectorConstants;
+import dev.korgi.game.Game;
 import dev.korgi.networking.NetworkObject;
+import dev.korgi.networking.Packet;
+import dev.korgi.networking.ServerClock;
+import dev.korgi.networking.SnapshotBuffer;
 import dev.korgi.utils.ClientSide;
 import dev.korgi.utils.ErrorHandler;
 import dev.korgi.utils.ServerSide;
@@ -47,6 +51,18 @@ public abstract class Entity extends NetworkObject {
     @ServerSide
     protected boolean onGround = false;
 
+    // received states of a remote entity and where it is drawn this frame
+    @JSONIgnore
+    private SnapshotBuffer snapshots;
+    @JSONIgnore
+    private Vector3 renderPosition = new Vector3();
+    @JSONIgnore
+    private Vector3 renderRotation = new Vector3();
+    @JSONIgnore
+    private double sampledTick = Double.NaN;
+    @JSONIgnore
+    private boolean sampled;
+
     public Entity() {
         this.position = new Vector3();
         this.rotation = new Vector3();
@@ -218,7 +234,7 @@ public abstract class Entity extends NetworkObject {
 
         if (position.y < -70 && WorldEngine.getWorld().voxels.size() > 0) {
             position.copyFrom(
-                    WorldEngine.getWorld().voxels.values().stream().toList().get(0).position.add(VectorConstants.HALF)
+                    WorldEngine.getWorld().voxels.first().position.add(VectorConstants.HALF)
                             .addTo(VectorConstants.UP.multiply(3)));
             velocity.copyFrom(VectorConstants.ZERO);
             rotation.copyFrom(VectorConstants.ZERO);
@@ -241,9 +257,47 @@ public abstract class Entity extends NetworkObject {
         return rotation;
     }
 
+    @Override
+    protected void stateApplied(Packet in) {
+        if (!Game.isClient || in.getTick() == 0 || this == Game.getClient()) {
+            return;
+        }
+        if (snapshots == null) {
+            snapshots = new SnapshotBuffer();
+        }
+        snapshots.add(in.getTick(), position, rotation, velocity);
+    }
+
+    /**
+     * Where to draw the entity. Remote entities are drawn at the client's
+     * render tick, between the states received around it, everything else at
+     * its position.
+     */
+    @ClientSide
+    public Vector3 getRenderPosition() {
+        return sampleRender() ? renderPosition : position;
+    }
+
+    @ClientSide
+    public Vector3 getRenderRotation() {
+        return sampleRender() ? renderRotation : rotation;
+    }
+
+    private boolean sampleRender() {
+        if (snapshots == null || !ServerClock.isSynced()) {
+            return false;
+        }
+        double tick = ServerClock.renderTick();
+        if (tick != sampledTick) {
+            sampledTick = tick;
+            sampled = snapshots.sample(tick, renderPosition, renderRotation);
+        }
+        return sampled;
+    }
+
     @ClientSide
     public float[] getRotationMatrix() {
-        Vector3 rot = rotation.multiply(displayAxis);
+        Vector3 rot = getRenderRotation().multiply(displayAxis);
         double cx = Math.cos(rot.x), sx = Math.sin(rot.x);
         double cy = Math.cos(rot.y), sy = Math.sin(rot.y);
         double cz = Math.cos(rot.z), sz = Math.sin(rot.z);
@@ -1,59 +1,23 @@
 package dev.korgi.game.items;
 
-import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
-import javax.imageio.ImageIO;
-
-import dev.korgi.game.Game;
 import dev.korgi.game.entites.Entity;
 import dev.korgi.game.entites.StorageEntity;
 import dev.korgi.game.rendering.Voxel;
-import dev.korgi.json.JSONIgnore;
 import dev.korgi.math.Vector3;
 import dev.korgi.math.VectorConstants;
 import dev.korgi.utils.ClientSide;
 import dev.korgi.utils.ServerSide;
 import dev.korgi.utils.Time;
 import dev.korgi.utils.VoxTranslator;
-import processing.core.PImage;
 
 public abstract class Item extends Entity {
 
-    private static Map<String, PImage> iconCache = new HashMap<>();
-
     @ServerSide
     private boolean dropped = true;
 
-    @JSONIgnore
-    private PImage icon;
-
     public Item() {
-        try {
-            icon = iconCache.get(getIconName());
-            if (icon == null) {
-                File file = new File("./texture/" + Game.config.getString("pack") + "/items/" + getIconName());
-                BufferedImage img = ImageIO.read(file);
-                int w = img.getWidth();
-                int h = img.getHeight();
-                icon = new PImage(w, h, PImage.ARGB);
-                img.getRGB(
-                        0, 0,
-                        w,
-                        h,
-                        icon.pixels,
-                        0,
-                        w);
-                icon.updatePixels();
-                iconCache.put(getIconName(), icon);
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
         displayAxis = VectorConstants.ONE;
     }
 
@@ -82,7 +46,7 @@ public abstract class Item extends Entity {
 
     protected abstract String getModelName();
 
-    protected abstract String getIconName();
+    public abstract String getIconName();
 
     @ServerSide
     public void rmb() {
@@ -111,10 +75,6 @@ public abstract class Item extends Entity {
         return this.body;
     }
 
-    public PImage getIcon() {
-        return icon;
-    }
-
     @Override
     @ClientSide
     protected void client(double dt) {
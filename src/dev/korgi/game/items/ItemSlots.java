@@ -0,0 +1,80 @@
+package dev.korgi.game.items;
+
+/**
+ * The items a player carries and the selected slot. Synced as part of the
+ * player, the hotbar GUI only draws it.
+ */
+public class ItemSlots {
+
+    private Item[] items;
+    private int selected;
+
+    public ItemSlots() {
+        this.items = new Item[9];
+    }
+
+    public ItemSlots(int size) {
+        this.items = new Item[size];
+    }
+
+    public void select(int val) {
+        selected = val;
+    }
+
+    public Item getSelected() {
+        return items[selected];
+    }
+
+    public int getSelectedIndex() {
+        return selected;
+    }
+
+    public boolean addToInventory(Item item) {
+        for (int i = 0; i < items.length; i++) {
+            if (items[i] == null) {
+                items[i] = item;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean removeFromInventory(Item item) {
+        for (int i = 0; i < items.length; i++) {
+            if (items[i].internal_id.equals(item.internal_id)) {
+                items[i] = null;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int totalCapacity() {
+        return items.length;
+    }
+
+    public int itemCount() {
+        int size = 0;
+        for (int i = 0; i < items.length; i++) {
+            if (items[i] != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    public void clear() {
+        for (int i = 0; i < items.length; i++) {
+            items[i] = null;
+        }
+    }
+
+    public Item get(int i) {
+        return items[i];
+    }
+
+    public Item[] getItems() {
+        return items;
+    }
+
+}
@@ -12,7 +12,7 @@ public class JimmyItem extends Item {
     }
 
     @Override
-    protected String getIconName() {
+    public String getIconName() {
         return "jimmy_item.png";
     }
 
@@ -0,0 +1,388 @@
+package dev.korgi.game.physics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import dev.korgi.game.Game;
+import dev.korgi.game.entites.Entity;
+import dev.korgi.game.rendering.Material;
+import dev.korgi.json.JSONObject;
+import dev.korgi.math.Vector3;
+import dev.korgi.networking.NetworkStream;
+import dev.korgi.networking.Packet;
+import dev.korgi.player.Player;
+import dev.korgi.utils.ErrorHandler;
+import dev.korgi.utils.LongHashSet;
+import dev.korgi.utils.ServerSide;
+
+/**
+ * Keeps the part of a stored world that players can reach in memory and lets
+ * the rest go back to disk.
+ *
+ * Every joined player holds a ticket on the chunk columns within radius of
+ * their own. Columns load, or are generated, as they come into a ticket and
+ * are sent to that player's client, which drops the columns that left it.
+ * Chunks outside every ticket stay resident until more than the budget are,
+ * then the ones longest outside a ticket are saved if they changed and
+ * evicted. Entities outside every ticket are taken out of the world until a
+ * player comes near them again.
+ *
+ * <pre>
+ * server: {"center": true, "cx": cx, "cz": cz, "radius": r}  json, drop columns further than r
+ * server: WorldDelta batch ...                                binary, the columns that came into range
+ * </pre>
+ */
+@ServerSide
+public class ChunkResidency {
+
+    // cells, the chunk and its slot in the map
+    private static final int CHUNK_BYTES = VoxelChunk.VOLUME * 2 + 64;
+    private static final int BATCH_BYTES = 64 * 1024;
+
+    private final VoxelStore store;
+    private final RegionStorage storage;
+    private final TerrainSource terrain;
+    private final int radius;
+    private final int budget;
+
+    private final Map<String, Long> centers = new HashMap<>();
+    private long[] tickets = new long[0];
+    private final Map<Long, List<Entity>> suspended = new HashMap<>();
+
+    private long[] queue = new long[256];
+    private int queued;
+    private final LongHashSet sending = new LongHashSet();
+    private long[] sendKeys = new long[256];
+    private VoxelChunk[] sendChunks = new VoxelChunk[256];
+    private int sendCount;
+
+    private long updates;
+    private long lastScan;
+    private long loaded;
+    private long evicted;
+    private int suspendedCount;
+
+    public ChunkResidency(VoxelStore store, RegionStorage storage, TerrainSource terrain, int radius,
+            double memoryMb) {
+        this.store = store;
+        this.storage = storage;
+        this.terrain = terrain;
+        this.radius = Math.max(0, radius);
+        this.budget = (int) Math.max(1, memoryMb * 1024 * 1024 / CHUNK_BYTES);
+    }
+
+    private static long column(int cx, int cz) {
+        return ((long) cx << 32) | (cz & 0xFFFFFFFFL);
+    }
+
+    private static int columnX(long column) {
+        return (int) (column >> 32);
+    }
+
+    private static int columnZ(long column) {
+        return (int) column;
+    }
+
+    private static long columnOf(Vector3 position) {
+        return column((int) Math.floor(position.x) >> VoxelChunk.SHIFT,
+                (int) Math.floor(position.z) >> VoxelChunk.SHIFT);
+    }
+
+    private boolean within(long center, int cx, int cz) {
+        return Math.max(Math.abs(cx - columnX(center)), Math.abs(cz - columnZ(center))) <= radius;
+    }
+
+    private boolean ticketed(int cx, int cz) {
+        for (long center : tickets) {
+            if (within(center, cx, cz)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tickets and loads the area around a client that is about to be sent the
+     * world, which is streamed from what is resident.
+     */
+    public void joined(String client, Vector3 position, List<Entity> entities) {
+        long center = columnOf(position);
+        centers.put(client, center);
+        refreshTickets();
+        for (int cx = columnX(center) - radius; cx <= columnX(center) + radius; cx++) {
+            for (int cz = columnZ(center) - radius; cz <= columnZ(center) + radius; cz++) {
+                queueColumn(cx, cz);
+            }
+        }
+        loadQueued(false);
+        restore(entities);
+    }
+
+    /** Follows every joined player, called every tick. */
+    public void update(List<Player> players, List<Entity> entities) {
+        updates++;
+        int before = centers.size();
+        centers.keySet().removeIf(id -> !connected(players, id));
+        boolean moved = centers.size() != before;
+        for (Player p : players) {
+            Long center = centers.get(p.internal_id);
+            if (center == null) {
+                continue;
+            }
+            long now = columnOf(p.getPosition());
+            if (now != center) {
+                centers.put(p.internal_id, now);
+                refreshTickets();
+                enter(p.internal_id, center, now);
+                moved = true;
+            }
+        }
+        if (moved || updates - lastScan >= Game.getTickRate()) {
+            lastScan = updates;
+            scan(entities);
+        }
+    }
+
+    private static boolean connected(List<Player> players, String id) {
+        for (Player p : players) {
+            if (p.connected && p.internal_id.equals(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void refreshTickets() {
+        if (tickets.length != centers.size()) {
+            tickets = new long[centers.size()];
+        }
+        int i = 0;
+        for (long center : centers.values()) {
+            tickets[i++] = center;
+        }
+    }
+
+    // loads the columns around to that were not around from and sends them to the client
+    private void enter(String client, long from, long to) {
+        sending.clear();
+        sendCount = 0;
+        for (int cx = columnX(to) - radius; cx <= columnX(to) + radius; cx++) {
+            for (int cz = columnZ(to) - radius; cz <= columnZ(to) + radius; cz++) {
+                if (!within(from, cx, cz)) {
+                    queueColumn(cx, cz);
+                }
+            }
+        }
+        loadQueued(true);
+        // chunks made since the last save are not in the columns on disk yet
+        storage.forEachDirty(key -> {
+            int cx = VoxelStore.keyX(key);
+            int cz = VoxelStore.keyZ(key);
+            if (within(to, cx, cz) && !within(from, cx, cz)) {
+                collect(key, store.chunks().get(key));
+            }
+        });
+
+        JSONObject center = new JSONObject();
+        center.set("center", true);
+        center.set("cx", columnX(to));
+        center.set("cz", columnZ(to));
+        center.set("radius", radius);
+        send(client, new Packet("world", NetworkStream.CLIENT, NetworkStream.WORLD_UPDATE, center));
+        if (sendCount == 0) {
+            return;
+        }
+        Material[] palette = store.palette().snapshot();
+        int start = 0;
+        while (start < sendCount) {
+            int end = start;
+            int estimate = 0;
+            while (end < sendCount && (end == start || estimate < BATCH_BYTES)) {
+                estimate += sendChunks[end++].count() * 2 + 8;
+            }
+            Packet packet = new Packet("world", NetworkStream.CLIENT, NetworkStream.WORLD_UPDATE, new JSONObject());
+            packet.setPayload(WorldDelta.encodeChunks(palette, sendKeys, sendChunks, start, end));
+            send(client, packet);
+            start = end;
+        }
+        Arrays.fill(sendChunks, 0, sendCount, null);
+    }
+
+    private void queueColumn(int cx, int cz) {
+        int[] heights;
+        try {
+            heights = terrain.heights(cx, cz);
+        } catch (IOException e) {
+            ErrorHandler.warn("Could not load the world: %s", e.getMessage());
+            return;
+        }
+        for (int cy : heights) {
+            if (queued == queue.length) {
+                queue = Arrays.copyOf(queue, queued * 2);
+            }
+            queue[queued++] = VoxelStore.chunkKey(cx, cy, cz);
+        }
+    }
+
+    // loads the queued chunks at once, so the ones to generate are made in parallel
+    private void loadQueued(boolean send) {
+        loaded += terrain.loadAll(store, queue, queued);
+        for (int i = 0; i < queued; i++) {
+            VoxelChunk chunk = store.chunks().get(queue[i]);
+            if (chunk != null) {
+                chunk.touch(updates);
+                if (send) {
+                    collect(queue[i], chunk);
+                }
+            }
+        }
+        queued = 0;
+    }
+
+    private void collect(long key, VoxelChunk chunk) {
+        if (chunk == null || !sending.add(key)) {
+            return;
+        }
+        if (sendCount == sendKeys.length) {
+            sendKeys = Arrays.copyOf(sendKeys, sendCount * 2);
+            sendChunks = Arrays.copyOf(sendChunks, sendCount * 2);
+        }
+        sendKeys[sendCount] = key;
+        sendChunks[sendCount++] = chunk;
+    }
+
+    private void scan(List<Entity> entities) {
+        restore(entities);
+        entities.removeIf(e -> {
+            if (e == null || e instanceof Player) {
+                return false;
+            }
+            long column = columnOf(e.getPosition());
+            if (ticketed(columnX(column), columnZ(column))) {
+                return false;
+            }
+            suspended.computeIfAbsent(column, c -> new ArrayList<>()).add(e);
+            suspendedCount++;
+            return true;
+        });
+
+        LongChunkMap chunks = store.chunks();
+        long[] stamps = new long[chunks.size()];
+        int candidates = 0;
+        for (int slot = 0; slot < chunks.capacity(); slot++) {
+            VoxelChunk chunk = chunks.valueAt(slot);
+            if (chunk == null) {
+                continue;
+            }
+            long key = chunks.keyAt(slot);
+            if (chunk.touched() == 0 || ticketed(VoxelStore.keyX(key), VoxelStore.keyZ(key))) {
+                chunk.touch(updates);
+            } else {
+                stamps[candidates++] = chunk.touched();
+            }
+        }
+
+        // the least recently wanted chunks, down to 7/8 of the budget so evictions come in batches
+        int evict = Math.min(candidates, chunks.size() > budget ? chunks.size() - budget + budget / 8 : 0);
+        long threshold = Long.MIN_VALUE;
+        int belowThreshold = 0;
+        if (evict > 0) {
+            long[] sorted = Arrays.copyOf(stamps, candidates);
+            Arrays.sort(sorted);
+            threshold = sorted[evict - 1];
+            while (sorted[belowThreshold] < threshold) {
+                belowThreshold++;
+            }
+        }
+        LongChunkMap absent = store.absentChunks();
+        long[] victims = new long[evict + absent.size()];
+        int count = 0;
+        int atThreshold = evict - belowThreshold;
+        for (int slot = 0; slot < chunks.capacity() && evict > 0; slot++) {
+            VoxelChunk chunk = chunks.valueAt(slot);
+            if (chunk == null || chunk.touched() == updates) {
+                continue;
+            }
+            if (chunk.touched() < threshold || (chunk.touched() == threshold && atThreshold-- > 0)) {
+                victims[count++] = chunks.keyAt(slot);
+            }
+        }
+        int chunkVictims = count;
+        // notes of missing chunks are cheap to rebuild, only the ones players are near are kept
+        for (int slot = 0; slot < absent.capacity(); slot++) {
+            if (absent.valueAt(slot) != null) {
+                long key = absent.keyAt(slot);
+                if (!ticketed(VoxelStore.keyX(key), VoxelStore.keyZ(key))) {
+                    victims[count++] = key;
+                }
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (storage.isDirty(victims[i])) {
+                try {
+                    storage.save(store);
+                } catch (IOException e) {
+                    ErrorHandler.warn("Could not save chunks before evicting them: %s", e.getMessage());
+                    return;
+                }
+                break;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            store.evict(victims[i]);
+        }
+        evicted += chunkVictims;
+    }
+
+    private void restore(List<Entity> entities) {
+        suspended.entrySet().removeIf(entry -> {
+            if (!ticketed(columnX(entry.getKey()), columnZ(entry.getKey()))) {
+                return false;
+            }
+            entities.addAll(entry.getValue());
+            suspendedCount -= entry.getValue().size();
+            return true;
+        });
+    }
+
+    public int radius() {
+        return radius;
+    }
+
+    /** How many chunks may be resident before those outside every ticket are evicted. */
+    public int budget() {
+        return budget;
+    }
+
+    public int residentChunks() {
+        return store.chunks().size();
+    }
+
+    /** Chunks loaded or generated for tickets so far. */
+    public long loads() {
+        return loaded;
+    }
+
+    public long evictions() {
+        return evicted;
+    }
+
+    public int suspendedEntities() {
+        return suspendedCount;
+    }
+
+    public int tickets() {
+        return centers.size();
+    }
+
+    private static void send(String client, Packet packet) {
+        packet.network_destination = client;
+        NetworkStream.sendPacket(packet);
+    }
+
+}
@@ -0,0 +1,209 @@
+package dev.korgi.game.physics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import dev.korgi.game.rendering.Material;
+import dev.korgi.json.JSONObject;
+import dev.korgi.math.Vector3;
+import dev.korgi.networking.NetworkStream;
+import dev.korgi.networking.Packet;
+import dev.korgi.utils.ServerSide;
+
+/**
+ * Sends a joining client the world around it, nearest chunks first.
+ *
+ * The world is snapshotted on the tick thread by sharing its chunks, which
+ * only costs a pointer per chunk, and a worker thread per join encodes the
+ * snapshot into WorldDelta batches. Edits made after the snapshot reach the
+ * client as normal world updates, which it holds until the stream is done.
+ *
+ * The tick thread sends whatever batches are ready as long as the client has
+ * fewer than WINDOW unacknowledged, and the worker stops encoding once WINDOW
+ * more are waiting, so a slow client holds at most about 2 * WINDOW batches in
+ * memory.
+ *
+ * <pre>
+ * server: {"stream": true, "chunks": n}      json, type PRIVATE_MESSAGE
+ * server: WorldDelta batch ...                binary, type PRIVATE_MESSAGE
+ * client: {"streamed": batches, "id": id}     json, cumulative
+ * </pre>
+ */
+@ServerSide
+public class ChunkStreamer {
+
+    private static final int BATCH_BYTES = 64 * 1024;
+    private static final int WINDOW = 16;
+    // chunk order packs the squared distance above the chunk's index
+    private static final int INDEX_BITS = 23;
+    private static final long MAX_DISTANCE = (1L << (63 - INDEX_BITS)) - 1;
+
+    private static class Stream {
+        final String client;
+        final BlockingQueue<byte[]> ready = new ArrayBlockingQueue<>(WINDOW);
+        volatile boolean encoded;
+        volatile boolean cancelled;
+        int sent;
+        int acked;
+
+        Stream(String client) {
+            this.client = client;
+        }
+    }
+
+    private final Map<String, Stream> streams = new HashMap<>();
+
+    /**
+     * Starts streaming a snapshot of the store to the client, nearest to origin
+     * first, leaving out columns more than radius chunks away.
+     */
+    public void start(String client, VoxelStore store, Vector3 origin, int radius) {
+        cancel(client);
+        LongChunkMap map = store.chunks();
+        if (map.size() >= 1 << INDEX_BITS) {
+            throw new IllegalStateException("Too many chunks to stream (%d)".formatted(map.size()));
+        }
+        int ox = (int) Math.floor(origin.x) >> VoxelChunk.SHIFT;
+        int oy = (int) Math.floor(origin.y) >> VoxelChunk.SHIFT;
+        int oz = (int) Math.floor(origin.z) >> VoxelChunk.SHIFT;
+        long[] keys = new long[map.size()];
+        VoxelChunk[] chunks = new VoxelChunk[map.size()];
+        int count = 0;
+        for (int slot = 0; slot < map.capacity(); slot++) {
+            VoxelChunk chunk = map.valueAt(slot);
+            if (chunk == null) {
+                continue;
+            }
+            long key = map.keyAt(slot);
+            long dx = Math.abs((long) VoxelStore.keyX(key) - ox);
+            long dz = Math.abs((long) VoxelStore.keyZ(key) - oz);
+            if (Math.max(dx, dz) > radius) {
+                continue;
+            }
+            chunk.share();
+            keys[count] = key;
+            chunks[count++] = chunk;
+        }
+        keys = Arrays.copyOf(keys, count);
+        chunks = Arrays.copyOf(chunks, count);
+        Material[] palette = store.palette().snapshot();
+
+        Stream stream = new Stream(client);
+        streams.put(client, stream);
+
+        JSONObject header = new JSONObject();
+        header.set("stream", true);
+        header.set("chunks", count);
+        send(client, new Packet("world", NetworkStream.CLIENT, NetworkStream.PRIVATE_MESSAGE, header));
+
+        long[] streamKeys = keys;
+        VoxelChunk[] streamChunks = chunks;
+        Thread worker = new Thread(() -> encode(stream, streamKeys, streamChunks, palette, ox, oy, oz),
+                "korgi-world-stream");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private static void encode(Stream stream, long[] keys, VoxelChunk[] chunks, Material[] palette, int ox, int oy,
+            int oz) {
+        int n = keys.length;
+        long[] order = new long[n];
+        for (int i = 0; i < n; i++) {
+            long dx = VoxelStore.keyX(keys[i]) - ox;
+            long dy = VoxelStore.keyY(keys[i]) - oy;
+            long dz = VoxelStore.keyZ(keys[i]) - oz;
+            order[i] = (Math.min(dx * dx + dy * dy + dz * dz, MAX_DISTANCE) << INDEX_BITS) | i;
+        }
+        Arrays.sort(order);
+        long[] sortedKeys = new long[n];
+        VoxelChunk[] sortedChunks = new VoxelChunk[n];
+        for (int i = 0; i < n; i++) {
+            int index = (int) (order[i] & ((1 << INDEX_BITS) - 1));
+            sortedKeys[i] = keys[index];
+            sortedChunks[i] = chunks[index];
+        }
+
+        try {
+            int from = 0;
+            while (from < n && !stream.cancelled) {
+                // about two bytes a voxel
+                int to = from;
+                int estimate = 0;
+                while (to < n && (to == from || estimate < BATCH_BYTES)) {
+                    estimate += sortedChunks[to++].count() * 2 + 8;
+                }
+                byte[] batch = WorldDelta.encodeChunks(palette, sortedKeys, sortedChunks, from, to);
+                while (!stream.cancelled && !stream.ready.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                }
+                from = to;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        stream.encoded = true;
+    }
+
+    /** The client has applied this many batches. */
+    public void acked(String client, int batches) {
+        Stream stream = streams.get(client);
+        if (stream != null) {
+            stream.acked = Math.max(stream.acked, batches);
+        }
+    }
+
+    /** Sends what the workers have ready, as far as each client's window allows. Called every tick. */
+    public void update() {
+        if (streams.isEmpty()) {
+            return;
+        }
+        List<String> finished = null;
+        for (Stream stream : streams.values()) {
+            if (!NetworkStream.isConnected(stream.client)) {
+                stream.cancelled = true;
+            }
+            while (!stream.cancelled && stream.sent - stream.acked < WINDOW) {
+                byte[] batch = stream.ready.poll();
+                if (batch == null) {
+                    break;
+                }
+                Packet packet = new Packet("world", NetworkStream.CLIENT, NetworkStream.PRIVATE_MESSAGE,
+                        new JSONObject());
+                packet.setPayload(batch);
+                send(stream.client, packet);
+                stream.sent++;
+            }
+            if (stream.cancelled || (stream.encoded && stream.ready.isEmpty())) {
+                if (finished == null) {
+                    finished = new ArrayList<>();
+                }
+                finished.add(stream.client);
+            }
+        }
+        if (finished != null) {
+            finished.forEach(streams::remove);
+        }
+    }
+
+    public void cancel(String client) {
+        Stream stream = streams.remove(client);
+        if (stream != null) {
+            stream.cancelled = true;
+        }
+    }
+
+    public int active() {
+        return streams.size();
+    }
+
+    private static void send(String client, Packet packet) {
+        packet.network_destination = client;
+        NetworkStream.sendPacket(packet);
+    }
+
+}
@@ -0,0 +1,45 @@
+package dev.korgi.game.physics;
+
+import dev.korgi.game.rendering.Material;
+import dev.korgi.game.rendering.TextureAtlas;
+
+/** One layer of grass at y = -5 going on forever, the plane the server used to build. */
+public class FlatGenerator implements WorldGenerator {
+
+    private static final int Y = -5;
+
+    @Override
+    public Material[] materials() {
+        Material grass = new Material();
+        grass.setTextureLocation(TextureAtlas.MINECRAFT_GRASS_BLOCK);
+        return new Material[] { grass };
+    }
+
+    @Override
+    public int minY() {
+        return Y;
+    }
+
+    @Override
+    public int maxY() {
+        return Y;
+    }
+
+    @Override
+    public int surface(int x, int z) {
+        return Y + 1;
+    }
+
+    @Override
+    public void generate(int cx, int cy, int cz, char[] ids, VoxelChunk chunk) {
+        if (cy != Y >> VoxelChunk.SHIFT) {
+            return;
+        }
+        for (int lz = 0; lz < VoxelChunk.SIZE; lz++) {
+            for (int lx = 0; lx < VoxelChunk.SIZE; lx++) {
+                chunk.set(VoxelChunk.localIndex(lx, Y, lz), ids[0]);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,141 @@
+package dev.korgi.game.physics;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing long -> chunk map so chunk lookups never box their keys.
+ */
+public class LongChunkMap {
+
+    public interface ChunkVisitor {
+        void visit(long key, VoxelChunk chunk);
+    }
+
+    private long[] keys;
+    private VoxelChunk[] values;
+    private int size;
+    private int mask;
+
+    public LongChunkMap() {
+        this(64);
+    }
+
+    public LongChunkMap(int capacity) {
+        int cap = Integer.highestOneBit(Math.max(16, capacity) * 2 - 1);
+        keys = new long[cap];
+        values = new VoxelChunk[cap];
+        mask = cap - 1;
+    }
+
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    public VoxelChunk get(long key) {
+        int i = hash(key) & mask;
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    public VoxelChunk put(long key, VoxelChunk chunk) {
+        int i = hash(key) & mask;
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                VoxelChunk prev = values[i];
+                values[i] = chunk;
+                return prev;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = chunk;
+        if (++size * 4 > values.length * 3) {
+            resize(values.length * 2);
+        }
+        return null;
+    }
+
+    public VoxelChunk remove(long key) {
+        int i = hash(key) & mask;
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                VoxelChunk prev = values[i];
+                shiftBack(i);
+                size--;
+                return prev;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    private void shiftBack(int hole) {
+        int i = hole;
+        while (true) {
+            i = (i + 1) & mask;
+            if (values[i] == null) {
+                break;
+            }
+            int home = hash(keys[i]) & mask;
+            boolean movable = hole <= i ? (home <= hole || home > i) : (home <= hole && home > i);
+            if (movable) {
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                hole = i;
+            }
+        }
+        values[hole] = null;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        VoxelChunk[] oldValues = values;
+        keys = new long[capacity];
+        values = new VoxelChunk[capacity];
+        mask = capacity - 1;
+        size = 0;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    public void forEach(ChunkVisitor action) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                action.visit(keys[i], values[i]);
+            }
+        }
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    public long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    public VoxelChunk valueAt(int slot) {
+        return values[slot];
+    }
+
+}
@@ -0,0 +1,69 @@
+package dev.korgi.game.physics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import dev.korgi.game.rendering.Material;
+import dev.korgi.math.Vector4;
+
+/**
+ * Interns every distinct material state to a small id so chunks only have to
+ * store a char per voxel. Id 0 is reserved for empty cells.
+ */
+public class MaterialPalette {
+
+    public static final int MAX_SIZE = Character.MAX_VALUE;
+
+    private record Key(double r, double g, double b, double a, double opacity, boolean rigid, int texture,
+            int overlay, double size) {
+    }
+
+    private final List<Material> materials = new ArrayList<>();
+    private final Map<Key, Character> ids = new HashMap<>();
+
+    public MaterialPalette() {
+        materials.add(null);
+    }
+
+    private static Key keyOf(Material m) {
+        Vector4 c = m.getColor();
+        Integer tex = m.getTextureLocation();
+        Integer overlay = m.getOverlayLocation();
+        return new Key(c.x, c.y, c.z, c.w, m.getOpacity(), m.isRigid(), tex == null ? -1 : tex,
+                overlay == null ? -1 : overlay, m.getSize());
+    }
+
+    public char idOf(Material m) {
+        Key key = keyOf(m);
+        Character id = ids.get(key);
+        if (id != null) {
+            return id;
+        }
+        if (materials.size() >= MAX_SIZE) {
+            throw new IllegalStateException("Material palette is full (%d entries)".formatted(MAX_SIZE));
+        }
+        char next = (char) materials.size();
+        Material stored = m.copy();
+        Vector4 c = m.getColor();
+        stored.setColor(new Vector4(c.x, c.y, c.z, c.w));
+        materials.add(stored);
+        ids.put(key, next);
+        return next;
+    }
+
+    public Material get(int id) {
+        return materials.get(id);
+    }
+
+    /** Every material by id, for encoding off the thread that adds them. */
+    public Material[] snapshot() {
+        return materials.toArray(new Material[0]);
+    }
+
+    public int size() {
+        return materials.size();
+    }
+
+}
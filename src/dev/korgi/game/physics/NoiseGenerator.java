@@ -0,0 +1,207 @@
+package dev.korgi.game.physics;
+
+import java.util.SplittableRandom;
+
+import dev.korgi.game.rendering.Material;
+import dev.korgi.game.rendering.TextureAtlas;
+
+/**
+ * Hills from a seeded heightmap, grass over dungeon blocks on a galaxy floor,
+ * with caves carved out under the surface by 3D noise. Both are Perlin
+ * gradient noise over one seeded permutation.
+ *
+ * The cave noise is sampled every CELL blocks and interpolated in between,
+ * which looks the same at this scale for a fraction of the samples.
+ */
+public class NoiseGenerator implements WorldGenerator {
+
+    private static final int BASE = -6;
+    private static final int AMPLITUDE = 12;
+    private static final int FLOOR = -32;
+    private static final int OCTAVES = 4;
+    private static final double SCALE = 1.0 / 96;
+    private static final double CAVE_SCALE = 1.0 / 24;
+    private static final double CAVE = 0.3;
+    // caves stay this many blocks under the grass
+    private static final int CRUST = 4;
+    private static final int CELL = 4;
+    private static final int SAMPLES = VoxelChunk.SIZE / CELL + 1;
+
+    private static final int TOP = 0;
+    private static final int GROUND = 1;
+    private static final int BOTTOM = 2;
+
+    private final int[] perm = new int[512];
+
+    public NoiseGenerator(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] p = new int[256];
+        for (int i = 0; i < p.length; i++) {
+            p[i] = i;
+        }
+        for (int i = p.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = p[i];
+            p[i] = p[j];
+            p[j] = t;
+        }
+        for (int i = 0; i < perm.length; i++) {
+            perm[i] = p[i & 255];
+        }
+    }
+
+    @Override
+    public Material[] materials() {
+        int[] textures = { TextureAtlas.MINECRAFT_GRASS_BLOCK, TextureAtlas.DUNGEON_BLOCK, TextureAtlas.GALAXY_BLOCK };
+        Material[] materials = new Material[textures.length];
+        for (int i = 0; i < textures.length; i++) {
+            materials[i] = new Material();
+            materials[i].setTextureLocation(textures[i]);
+        }
+        return materials;
+    }
+
+    @Override
+    public int minY() {
+        return FLOOR;
+    }
+
+    @Override
+    public int maxY() {
+        return BASE + AMPLITUDE;
+    }
+
+    @Override
+    public int surface(int x, int z) {
+        double height = 0;
+        double amplitude = 1;
+        double frequency = SCALE;
+        double total = 0;
+        for (int i = 0; i < OCTAVES; i++) {
+            height += amplitude * noise(x * frequency, 0.5, z * frequency);
+            total += amplitude;
+            amplitude *= 0.5;
+            frequency *= 2;
+        }
+        int top = BASE + (int) Math.floor(AMPLITUDE * height / total);
+        return Math.max(BASE - AMPLITUDE, Math.min(BASE + AMPLITUDE, top)) + 1;
+    }
+
+    @Override
+    public void generate(int cx, int cy, int cz, char[] ids, VoxelChunk chunk) {
+        int bx = cx << VoxelChunk.SHIFT;
+        int by = cy << VoxelChunk.SHIFT;
+        int bz = cz << VoxelChunk.SHIFT;
+        if (by > maxY() || by + VoxelChunk.SIZE <= FLOOR) {
+            return;
+        }
+        int[] tops = new int[VoxelChunk.SIZE * VoxelChunk.SIZE];
+        int highest = Integer.MIN_VALUE;
+        for (int lz = 0; lz < VoxelChunk.SIZE; lz++) {
+            for (int lx = 0; lx < VoxelChunk.SIZE; lx++) {
+                int top = surface(bx + lx, bz + lz) - 1;
+                tops[lx + lz * VoxelChunk.SIZE] = top;
+                highest = Math.max(highest, top);
+            }
+        }
+        if (by > highest) {
+            return;
+        }
+
+        double[] caves = null;
+        if (by < highest - CRUST) {
+            caves = new double[SAMPLES * SAMPLES * SAMPLES];
+            for (int i = 0; i < SAMPLES; i++) {
+                for (int j = 0; j < SAMPLES; j++) {
+                    for (int k = 0; k < SAMPLES; k++) {
+                        caves[(i * SAMPLES + j) * SAMPLES + k] = noise((bx + i * CELL) * CAVE_SCALE,
+                                (by + j * CELL) * CAVE_SCALE, (bz + k * CELL) * CAVE_SCALE);
+                    }
+                }
+            }
+        }
+
+        for (int ly = 0; ly < VoxelChunk.SIZE; ly++) {
+            int y = by + ly;
+            if (y < FLOOR) {
+                continue;
+            }
+            for (int lz = 0; lz < VoxelChunk.SIZE; lz++) {
+                for (int lx = 0; lx < VoxelChunk.SIZE; lx++) {
+                    int top = tops[lx + lz * VoxelChunk.SIZE];
+                    if (y > top) {
+                        continue;
+                    }
+                    char id;
+                    if (y == FLOOR) {
+                        id = ids[BOTTOM];
+                    } else if (caves != null && y < top - CRUST && cave(caves, lx, ly, lz) > CAVE) {
+                        continue;
+                    } else {
+                        id = y == top ? ids[TOP] : ids[GROUND];
+                    }
+                    chunk.set(VoxelChunk.localIndex(lx, ly, lz), id);
+                }
+            }
+        }
+    }
+
+    private static double cave(double[] caves, int lx, int ly, int lz) {
+        int i = lx / CELL;
+        int j = ly / CELL;
+        int k = lz / CELL;
+        double fx = (double) (lx % CELL) / CELL;
+        double fy = (double) (ly % CELL) / CELL;
+        double fz = (double) (lz % CELL) / CELL;
+        int c = (i * SAMPLES + j) * SAMPLES + k;
+        int di = SAMPLES * SAMPLES;
+        int dj = SAMPLES;
+        double x00 = lerp(fx, caves[c], caves[c + di]);
+        double x10 = lerp(fx, caves[c + dj], caves[c + di + dj]);
+        double x01 = lerp(fx, caves[c + 1], caves[c + di + 1]);
+        double x11 = lerp(fx, caves[c + dj + 1], caves[c + di + dj + 1]);
+        return lerp(fz, lerp(fy, x00, x10), lerp(fy, x01, x11));
+    }
+
+    private double noise(double x, double y, double z) {
+        int fx = (int) Math.floor(x);
+        int fy = (int) Math.floor(y);
+        int fz = (int) Math.floor(z);
+        int X = fx & 255;
+        int Y = fy & 255;
+        int Z = fz & 255;
+        x -= fx;
+        y -= fy;
+        z -= fz;
+        double u = fade(x);
+        double v = fade(y);
+        double w = fade(z);
+        int A = perm[X] + Y;
+        int AA = perm[A] + Z;
+        int AB = perm[A + 1] + Z;
+        int B = perm[X + 1] + Y;
+        int BA = perm[B] + Z;
+        int BB = perm[B + 1] + Z;
+        return lerp(w,
+                lerp(v, lerp(u, grad(perm[AA], x, y, z), grad(perm[BA], x - 1, y, z)),
+                        lerp(u, grad(perm[AB], x, y - 1, z), grad(perm[BB], x - 1, y - 1, z))),
+                lerp(v, lerp(u, grad(perm[AA + 1], x, y, z - 1), grad(perm[BA + 1], x - 1, y, z - 1)),
+                        lerp(u, grad(perm[AB + 1], x, y - 1, z - 1), grad(perm[BB + 1], x - 1, y - 1, z - 1))));
+    }
+
+    private static double fade(double t) {
+        return t * t * t * (t * (t * 6 - 15) + 10);
+    }
+
+    private static double lerp(double t, double a, double b) {
+        return a + t * (b - a);
+    }
+
+    private static double grad(int hash, double x, double y, double z) {
+        int h = hash & 15;
+        double u = h < 8 ? x : y;
+        double v = h < 4 ? y : h == 12 || h == 14 ? x : z;
+        return ((h & 1) == 0 ? u : -u) + ((h & 2) == 0 ? v : -v);
+    }
+
+}
@@ -0,0 +1,226 @@
+package dev.korgi.game.physics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * One 32x32 group of chunk columns on disk.
+ *
+ * <pre>
+ * header: 1024 x [int sectorOffset][int sectorCount], column lx + lz * 32, 0 when empty
+ * column, sector aligned:
+ *   int chunkCount, then per chunk: int cy, int payloadLength
+ *   the payloads, one compressed chunk each, in the same order
+ * </pre>
+ *
+ * Reads go through a read only mapping of the whole file, writes through
+ * positional channel writes. A column is always written to the first free run
+ * that fits, its old sectors are only freed once the header points at the new
+ * copy, so a save that fails halfway leaves the last saved column intact.
+ */
+public class RegionFile implements Closeable {
+
+    public static final int SHIFT = 5;
+    public static final int SIZE = 1 << SHIFT;
+    private static final int COLUMNS = SIZE * SIZE;
+    private static final int SECTOR = 512;
+    private static final int HEADER_SECTORS = COLUMNS * 8 / SECTOR;
+
+    private final FileChannel channel;
+    private final int[] offsets = new int[COLUMNS];
+    private final int[] counts = new int[COLUMNS];
+    private final BitSet used = new BitSet();
+    private MappedByteBuffer map;
+
+    public RegionFile(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        used.set(0, HEADER_SECTORS);
+        if (channel.size() < HEADER_SECTORS * SECTOR) {
+            channel.write(ByteBuffer.allocate(HEADER_SECTORS * SECTOR), 0);
+        }
+        ByteBuffer header = mapped().duplicate();
+        for (int i = 0; i < COLUMNS; i++) {
+            offsets[i] = header.getInt();
+            counts[i] = header.getInt();
+            if (offsets[i] != 0) {
+                used.set(offsets[i], offsets[i] + counts[i]);
+            }
+        }
+    }
+
+    private static int column(int lx, int lz) {
+        return (lx & (SIZE - 1)) + (lz & (SIZE - 1)) * SIZE;
+    }
+
+    // remapped after the file grows, writes below the old end show through
+    private MappedByteBuffer mapped() throws IOException {
+        if (map == null || map.capacity() != channel.size()) {
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return map;
+    }
+
+    private ByteBuffer columnAt(int column) throws IOException {
+        if (offsets[column] == 0) {
+            return null;
+        }
+        ByteBuffer buf = mapped().duplicate();
+        buf.position(offsets[column] * SECTOR);
+        return buf;
+    }
+
+    /** Chunk heights stored in the column, in file order. */
+    public int[] heights(int lx, int lz) throws IOException {
+        ByteBuffer buf = columnAt(column(lx, lz));
+        if (buf == null) {
+            return new int[0];
+        }
+        int[] heights = new int[buf.getInt()];
+        for (int i = 0; i < heights.length; i++) {
+            heights[i] = buf.getInt();
+            buf.getInt();
+        }
+        return heights;
+    }
+
+    public boolean contains(int lx, int lz, int cy) throws IOException {
+        for (int y : heights(lx, lz)) {
+            if (y == cy) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** The compressed chunk, or null when the column does not have it. */
+    public byte[] read(int lx, int lz, int cy) throws IOException {
+        ByteBuffer buf = columnAt(column(lx, lz));
+        if (buf == null) {
+            return null;
+        }
+        int count = buf.getInt();
+        int data = buf.position() + count * 8;
+        for (int i = 0; i < count; i++) {
+            int y = buf.getInt();
+            int length = buf.getInt();
+            if (y == cy) {
+                byte[] payload = new byte[length];
+                buf.position(data).get(payload);
+                return payload;
+            }
+            data += length;
+        }
+        return null;
+    }
+
+    /**
+     * Rewrites the column with the given chunks replaced, a null payload
+     * removes that chunk. Chunks not mentioned are kept.
+     */
+    public void write(int lx, int lz, Map<Integer, byte[]> changes) throws IOException {
+        int column = column(lx, lz);
+        Map<Integer, byte[]> chunks = new TreeMap<>();
+        ByteBuffer buf = columnAt(column);
+        if (buf != null) {
+            int count = buf.getInt();
+            int data = buf.position() + count * 8;
+            for (int i = 0; i < count; i++) {
+                int y = buf.getInt();
+                int length = buf.getInt();
+                if (!changes.containsKey(y)) {
+                    byte[] payload = new byte[length];
+                    buf.duplicate().position(data).get(payload);
+                    chunks.put(y, payload);
+                }
+                data += length;
+            }
+        }
+        for (Map.Entry<Integer, byte[]> change : changes.entrySet()) {
+            if (change.getValue() != null) {
+                chunks.put(change.getKey(), change.getValue());
+            }
+        }
+
+        int oldOffset = offsets[column];
+        int oldSectors = counts[column];
+        if (chunks.isEmpty()) {
+            setHeader(column, 0, 0);
+            release(oldOffset, oldSectors);
+            return;
+        }
+
+        int length = 4 + chunks.size() * 8;
+        for (byte[] payload : chunks.values()) {
+            length += payload.length;
+        }
+        ByteBuffer out = ByteBuffer.allocate(length);
+        out.putInt(chunks.size());
+        for (Map.Entry<Integer, byte[]> chunk : chunks.entrySet()) {
+            out.putInt(chunk.getKey()).putInt(chunk.getValue().length);
+        }
+        for (byte[] payload : chunks.values()) {
+            out.put(payload);
+        }
+        out.flip();
+
+        int sectors = (length + SECTOR - 1) / SECTOR;
+        // the live sectors stay untouched until the header points at the new copy
+        int offset = free(sectors);
+        long position = (long) offset * SECTOR;
+        while (out.hasRemaining()) {
+            position += channel.write(out, position);
+        }
+        // keep the file a whole number of sectors so the next column starts aligned
+        long end = (long) (offset + sectors) * SECTOR;
+        if (channel.size() < end) {
+            channel.write(ByteBuffer.allocate(1), end - 1);
+        }
+        used.set(offset, offset + sectors);
+        setHeader(column, offset, sectors);
+        release(oldOffset, oldSectors);
+    }
+
+    private void release(int offset, int sectors) {
+        if (offset != 0) {
+            used.clear(offset, offset + sectors);
+        }
+    }
+
+    private int free(int sectors) {
+        int start = used.nextClearBit(HEADER_SECTORS);
+        while (true) {
+            int next = used.nextSetBit(start);
+            if (next < 0 || next - start >= sectors) {
+                return start;
+            }
+            start = used.nextClearBit(next);
+        }
+    }
+
+    private void setHeader(int column, int offset, int sectors) throws IOException {
+        offsets[column] = offset;
+        counts[column] = sectors;
+        ByteBuffer entry = ByteBuffer.allocate(8).putInt(offset).putInt(sectors).flip();
+        channel.write(entry, column * 8L);
+    }
+
+    public void flush() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        map = null;
+        channel.close();
+    }
+
+}
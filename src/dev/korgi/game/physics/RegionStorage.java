@@ -0,0 +1,267 @@
+package dev.korgi.game.physics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongConsumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import dev.korgi.game.rendering.Material;
+import dev.korgi.networking.BinaryReader;
+import dev.korgi.networking.BinaryWriter;
+import dev.korgi.utils.LongHashSet;
+import dev.korgi.utils.ServerSide;
+
+/**
+ * The world on disk, one RegionFile per 32x32 chunk columns named
+ * r.rx.rz.bin. As a store's source it loads chunks the first time they are
+ * missed, as its listener it remembers which chunks changed until the next
+ * save.
+ *
+ * Each chunk is deflated on its own:
+ *
+ * <pre>
+ * varint materialCount, then the materials as in WorldDelta
+ * byte width, 1 or 2
+ * 4096 cells of width bytes in chunk order, 0 for empty, otherwise material + 1
+ * </pre>
+ *
+ * A chunk that was emptied is kept with an empty payload, so it is not
+ * generated again.
+ */
+@ServerSide
+public class RegionStorage implements VoxelStore.ChunkSource, VoxelStore.ChunkListener, Closeable {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final Path dir;
+    private final Map<Long, RegionFile> regions = new HashMap<>();
+    private final LongHashSet dirty = new LongHashSet();
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final Inflater inflater = new Inflater();
+    private byte[] buffer = new byte[VoxelChunk.VOLUME * 3];
+    // palette id to material entry + 1 while encoding a chunk
+    private int[] entries = new int[256];
+
+    public RegionStorage(Path dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+    }
+
+    private RegionFile region(int cx, int cz, boolean create) throws IOException {
+        int rx = cx >> RegionFile.SHIFT;
+        int rz = cz >> RegionFile.SHIFT;
+        long key = ((long) rx << 32) | (rz & 0xFFFFFFFFL);
+        RegionFile region = regions.get(key);
+        if (region == null) {
+            Path path = dir.resolve("r.%d.%d.bin".formatted(rx, rz));
+            if (!create && !Files.exists(path)) {
+                return null;
+            }
+            region = new RegionFile(path);
+            regions.put(key, region);
+        }
+        return region;
+    }
+
+    @Override
+    public VoxelChunk load(long chunkKey, MaterialPalette palette) {
+        int cx = VoxelStore.keyX(chunkKey);
+        int cz = VoxelStore.keyZ(chunkKey);
+        try {
+            RegionFile region = region(cx, cz, false);
+            if (region == null) {
+                return null;
+            }
+            byte[] payload = region.read(cx, cz, VoxelStore.keyY(chunkKey));
+            return payload == null || payload.length == 0 ? null : decode(payload, palette);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Whether the chunk was ever saved, so a generator must not fill it. Chunks
+     * that were emptied are kept as an empty payload.
+     */
+    public boolean stored(long chunkKey) {
+        int cx = VoxelStore.keyX(chunkKey);
+        int cz = VoxelStore.keyZ(chunkKey);
+        try {
+            RegionFile region = region(cx, cz, false);
+            return region != null && region.contains(cx, cz, VoxelStore.keyY(chunkKey));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Heights of the chunks stored under the column. */
+    public int[] heights(int cx, int cz) throws IOException {
+        RegionFile region = region(cx, cz, false);
+        return region == null ? new int[0] : region.heights(cx, cz);
+    }
+
+    @Override
+    public void chunkChanged(long chunkKey) {
+        dirty.add(chunkKey);
+    }
+
+    @Override
+    public void cleared() {
+        dirty.clear();
+    }
+
+    public int dirtyCount() {
+        return dirty.size();
+    }
+
+    /** Whether the chunk changed since the last save. */
+    public boolean isDirty(long chunkKey) {
+        return dirty.contains(chunkKey);
+    }
+
+    public void forEachDirty(LongConsumer visitor) {
+        dirty.forEach(visitor);
+    }
+
+    /** Writes every chunk changed since the last save, returns how many. */
+    public int save(VoxelStore store) throws IOException {
+        if (dirty.isEmpty()) {
+            return 0;
+        }
+        // region, then column, then chunk height
+        Map<RegionFile, Map<Integer, Map<Integer, byte[]>>> columns = new HashMap<>();
+        IOException[] failed = new IOException[1];
+        dirty.forEach(key -> {
+            int cx = VoxelStore.keyX(key);
+            int cz = VoxelStore.keyZ(key);
+            VoxelChunk chunk = store.chunks().get(key);
+            try {
+                RegionFile region = region(cx, cz, true);
+                columns.computeIfAbsent(region, r -> new HashMap<>())
+                        .computeIfAbsent((cx & (RegionFile.SIZE - 1)) | (cz & (RegionFile.SIZE - 1)) << 16,
+                                c -> new HashMap<>())
+                        .put(VoxelStore.keyY(key), chunk == null ? EMPTY : encode(chunk, store.palette()));
+            } catch (IOException e) {
+                failed[0] = e;
+            }
+        });
+        if (failed[0] != null) {
+            throw failed[0];
+        }
+
+        int saved = dirty.size();
+        for (Map.Entry<RegionFile, Map<Integer, Map<Integer, byte[]>>> region : columns.entrySet()) {
+            for (Map.Entry<Integer, Map<Integer, byte[]>> column : region.getValue().entrySet()) {
+                region.getKey().write(column.getKey() & 0xFFFF, column.getKey() >>> 16, column.getValue());
+            }
+            region.getKey().flush();
+        }
+        dirty.clear();
+        return saved;
+    }
+
+    private byte[] encode(VoxelChunk chunk, MaterialPalette palette) {
+        if (entries.length < palette.size()) {
+            entries = new int[Math.max(palette.size(), entries.length * 2)];
+        }
+        char[] cells = chunk.cells();
+        char[] used = new char[16];
+        int usedCount = 0;
+        for (char id : cells) {
+            if (id != VoxelChunk.EMPTY && entries[id] == 0) {
+                if (usedCount == used.length) {
+                    used = Arrays.copyOf(used, usedCount * 2);
+                }
+                used[usedCount++] = id;
+                entries[id] = usedCount;
+            }
+        }
+
+        BinaryWriter out = new BinaryWriter(usedCount * 64 + VoxelChunk.VOLUME * 2 + 8);
+        out.writeVarInt(usedCount);
+        for (int i = 0; i < usedCount; i++) {
+            WorldDelta.writeMaterial(out, palette.get(used[i]));
+        }
+        boolean wide = usedCount >= 256;
+        out.writeByte(wide ? 2 : 1);
+        for (char id : cells) {
+            int entry = id == VoxelChunk.EMPTY ? 0 : entries[id];
+            if (wide) {
+                out.writeByte(entry >>> 8);
+            }
+            out.writeByte(entry);
+        }
+        for (int i = 0; i < usedCount; i++) {
+            entries[used[i]] = 0;
+        }
+
+        byte[] raw = out.toByteArray();
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private VoxelChunk decode(byte[] payload, MaterialPalette palette) throws IOException {
+        inflater.reset();
+        inflater.setInput(payload);
+        int length = 0;
+        try {
+            while (!inflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                int n = inflater.inflate(buffer, length, buffer.length - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated chunk");
+                }
+                length += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt chunk", e);
+        }
+
+        BinaryReader in = new BinaryReader(buffer, 0, length);
+        char[] ids = new char[in.readVarInt() + 1];
+        for (int i = 1; i < ids.length; i++) {
+            Material m = WorldDelta.readMaterial(in);
+            ids[i] = palette.idOf(m);
+        }
+        boolean wide = in.readByte() == 2;
+        VoxelChunk chunk = new VoxelChunk();
+        for (int i = 0; i < VoxelChunk.VOLUME; i++) {
+            int entry = wide ? (in.readByte() << 8) | in.readByte() : in.readByte();
+            if (entry != 0) {
+                chunk.set(i, ids[entry]);
+            }
+        }
+        return chunk;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (RegionFile region : regions.values()) {
+            region.close();
+        }
+        regions.clear();
+        deflater.end();
+        inflater.end();
+    }
+
+}
@@ -0,0 +1,246 @@
+package dev.korgi.game.physics;
+
+import java.util.Arrays;
+import java.util.List;
+
+import dev.korgi.game.entites.Entity;
+import dev.korgi.game.rendering.Voxel;
+import dev.korgi.math.Vector3;
+
+/**
+ * Uniform grid broadphase for entity collisions. Bounds come from the hitbox
+ * voxels, each a unit cube at its position like WorldEngine.voxelIntersects.
+ * Rebuilt every tick, then {@link #forEachPair} visits every pair of entities
+ * whose bounds overlap, lower index first and in the same order as the old
+ * all-pairs loop.
+ */
+public class SpatialHash {
+
+    public interface PairConsumer {
+        void accept(int a, int b);
+    }
+
+    // entities spanning more cells than this per axis skip the grid and are
+    // tested against everything
+    private static final int MAX_SPAN = 8;
+
+    private final double cellSize;
+
+    private int count;
+    private double[] bounds = new double[6 * 64];
+    private boolean[] large = new boolean[64];
+
+    private long[] cellKeys = new long[256];
+    private int[] cellHeads = new int[256];
+    private int cellMask = 255;
+    private int cellCount;
+
+    private int[] entryItem = new int[256];
+    private int[] entryNext = new int[256];
+    private int entryCount;
+
+    private int[] largeItems = new int[16];
+    private int largeCount;
+
+    private int[] stamp = new int[64];
+    private int[] candidates = new int[64];
+
+    public SpatialHash(double cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    public void build(List<? extends Entity> entities) {
+        count = entities.size();
+        if (stamp.length < count) {
+            int cap = Integer.highestOneBit(count) * 2;
+            bounds = new double[6 * cap];
+            large = new boolean[cap];
+            stamp = new int[cap];
+            candidates = new int[cap];
+        }
+        Arrays.fill(stamp, 0, count, -1);
+        Arrays.fill(cellHeads, -1);
+        cellCount = 0;
+        entryCount = 0;
+        largeCount = 0;
+
+        for (int i = 0; i < count; i++) {
+            Entity e = entities.get(i);
+            if (!computeBounds(e, i)) {
+                large[i] = false;
+                bounds[i * 6] = Double.NaN;
+                continue;
+            }
+            int o = i * 6;
+            int x0 = cell(bounds[o]), y0 = cell(bounds[o + 1]), z0 = cell(bounds[o + 2]);
+            int x1 = cell(bounds[o + 3]), y1 = cell(bounds[o + 4]), z1 = cell(bounds[o + 5]);
+            large[i] = x1 - x0 >= MAX_SPAN || y1 - y0 >= MAX_SPAN || z1 - z0 >= MAX_SPAN;
+            if (large[i]) {
+                if (largeCount == largeItems.length) {
+                    largeItems = Arrays.copyOf(largeItems, largeCount * 2);
+                }
+                largeItems[largeCount++] = i;
+                continue;
+            }
+            for (int x = x0; x <= x1; x++) {
+                for (int y = y0; y <= y1; y++) {
+                    for (int z = z0; z <= z1; z++) {
+                        insert(key(x, y, z), i);
+                    }
+                }
+            }
+        }
+    }
+
+    public void forEachPair(PairConsumer consumer) {
+        for (int i = 0; i < count; i++) {
+            int o = i * 6;
+            if (Double.isNaN(bounds[o])) {
+                continue;
+            }
+            int found = 0;
+            if (large[i]) {
+                for (int j = i + 1; j < count; j++) {
+                    if (overlaps(i, j)) {
+                        candidates[found++] = j;
+                    }
+                }
+            } else {
+                int x0 = cell(bounds[o]), y0 = cell(bounds[o + 1]), z0 = cell(bounds[o + 2]);
+                int x1 = cell(bounds[o + 3]), y1 = cell(bounds[o + 4]), z1 = cell(bounds[o + 5]);
+                for (int x = x0; x <= x1; x++) {
+                    for (int y = y0; y <= y1; y++) {
+                        for (int z = z0; z <= z1; z++) {
+                            for (int e = head(key(x, y, z)); e >= 0; e = entryNext[e]) {
+                                found = consider(i, entryItem[e], found);
+                            }
+                        }
+                    }
+                }
+                for (int l = 0; l < largeCount; l++) {
+                    found = consider(i, largeItems[l], found);
+                }
+            }
+            Arrays.sort(candidates, 0, found);
+            for (int c = 0; c < found; c++) {
+                consumer.accept(i, candidates[c]);
+            }
+        }
+    }
+
+    private int consider(int i, int j, int found) {
+        if (j <= i || stamp[j] == i) {
+            return found;
+        }
+        stamp[j] = i;
+        if (overlaps(i, j)) {
+            candidates[found++] = j;
+        }
+        return found;
+    }
+
+    private boolean overlaps(int i, int j) {
+        int a = i * 6;
+        int b = j * 6;
+        if (Double.isNaN(bounds[b])) {
+            return false;
+        }
+        return bounds[a] < bounds[b + 3] && bounds[a + 3] > bounds[b]
+                && bounds[a + 1] < bounds[b + 4] && bounds[a + 4] > bounds[b + 1]
+                && bounds[a + 2] < bounds[b + 5] && bounds[a + 5] > bounds[b + 2];
+    }
+
+    private boolean computeBounds(Entity e, int i) {
+        List<Voxel> hitbox = e.getHitbox();
+        if (hitbox == null || hitbox.isEmpty()) {
+            return false;
+        }
+        Vector3 p = e.getPosition();
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+        for (Voxel v : hitbox) {
+            minX = Math.min(minX, v.position.x);
+            minY = Math.min(minY, v.position.y);
+            minZ = Math.min(minZ, v.position.z);
+            maxX = Math.max(maxX, v.position.x);
+            maxY = Math.max(maxY, v.position.y);
+            maxZ = Math.max(maxZ, v.position.z);
+        }
+        int o = i * 6;
+        bounds[o] = minX + p.x;
+        bounds[o + 1] = minY + p.y;
+        bounds[o + 2] = minZ + p.z;
+        bounds[o + 3] = maxX + p.x + 1;
+        bounds[o + 4] = maxY + p.y + 1;
+        bounds[o + 5] = maxZ + p.z + 1;
+        return true;
+    }
+
+    private int cell(double v) {
+        return (int) Math.floor(v / cellSize);
+    }
+
+    private static long key(int x, int y, int z) {
+        return ((long) (x & 0x1FFFFF) << 42) | ((long) (y & 0x1FFFFF) << 21) | (z & 0x1FFFFF);
+    }
+
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    private int head(long key) {
+        int i = hash(key) & cellMask;
+        while (cellHeads[i] >= 0) {
+            if (cellKeys[i] == key) {
+                return cellHeads[i];
+            }
+            i = (i + 1) & cellMask;
+        }
+        return -1;
+    }
+
+    private void insert(long key, int item) {
+        if (entryCount == entryItem.length) {
+            entryItem = Arrays.copyOf(entryItem, entryCount * 2);
+            entryNext = Arrays.copyOf(entryNext, entryCount * 2);
+        }
+        int i = hash(key) & cellMask;
+        while (cellHeads[i] >= 0 && cellKeys[i] != key) {
+            i = (i + 1) & cellMask;
+        }
+        if (cellHeads[i] < 0) {
+            cellKeys[i] = key;
+            cellCount++;
+        }
+        entryItem[entryCount] = item;
+        entryNext[entryCount] = cellHeads[i];
+        cellHeads[i] = entryCount++;
+        if (cellCount * 4 > cellHeads.length * 3) {
+            rehash(cellHeads.length * 2);
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = cellKeys;
+        int[] oldHeads = cellHeads;
+        cellKeys = new long[capacity];
+        cellHeads = new int[capacity];
+        Arrays.fill(cellHeads, -1);
+        cellMask = capacity - 1;
+        for (int i = 0; i < oldHeads.length; i++) {
+            if (oldHeads[i] < 0) {
+                continue;
+            }
+            int j = hash(oldKeys[i]) & cellMask;
+            while (cellHeads[j] >= 0) {
+                j = (j + 1) & cellMask;
+            }
+            cellKeys[j] = oldKeys[i];
+            cellHeads[j] = oldHeads[i];
+        }
+    }
+
+}
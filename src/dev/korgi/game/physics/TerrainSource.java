@@ -0,0 +1,178 @@
+package dev.korgi.game.physics;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import dev.korgi.game.rendering.Material;
+
+/**
+ * Where a world's chunks come from: the region files for chunks that were
+ * stored, the generator for the rest. Generated chunks are only stored once
+ * they change, an unchanged one is generated again the next time it is needed.
+ *
+ * A single missed chunk is generated on the calling thread, loadAll generates
+ * what it is given in parallel on a ForkJoinPool.
+ */
+public class TerrainSource implements VoxelStore.ChunkSource {
+
+    private static final int BATCH = 4;
+
+    private final RegionStorage storage;
+    private final WorldGenerator generator;
+    private final ForkJoinPool pool;
+    private MaterialPalette palette;
+    private char[] ids;
+    private long generated;
+
+    /** Either may be null, without a generator only stored chunks exist. */
+    public TerrainSource(RegionStorage storage, WorldGenerator generator, int threads) {
+        this.storage = storage;
+        this.generator = generator;
+        this.pool = new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+    }
+
+    private class Batch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] keys;
+        private final VoxelChunk[] chunks;
+        private final char[] ids;
+        private final int start, end;
+
+        Batch(long[] keys, VoxelChunk[] chunks, char[] ids, int start, int end) {
+            this.keys = keys;
+            this.chunks = chunks;
+            this.ids = ids;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= BATCH) {
+                for (int i = start; i < end; i++) {
+                    chunks[i] = generate(keys[i], ids);
+                }
+                return;
+            }
+            int mid = (start + end) >>> 1;
+            invokeAll(new Batch(keys, chunks, ids, start, mid), new Batch(keys, chunks, ids, mid, end));
+        }
+    }
+
+    @Override
+    public VoxelChunk load(long chunkKey, MaterialPalette palette) {
+        if (storage != null) {
+            VoxelChunk chunk = storage.load(chunkKey, palette);
+            if (chunk != null || storage.stored(chunkKey)) {
+                return chunk;
+            }
+        }
+        if (generator == null) {
+            return null;
+        }
+        generated++;
+        return generate(chunkKey, ids(palette));
+    }
+
+    private VoxelChunk generate(long chunkKey, char[] ids) {
+        VoxelChunk chunk = new VoxelChunk();
+        generator.generate(VoxelStore.keyX(chunkKey), VoxelStore.keyY(chunkKey), VoxelStore.keyZ(chunkKey), ids,
+                chunk);
+        return chunk;
+    }
+
+    // palette ids of the generator's materials, made on the tick thread before any worker sees them
+    private char[] ids(MaterialPalette palette) {
+        if (this.palette != palette) {
+            Material[] materials = generator.materials();
+            ids = new char[materials.length];
+            for (int i = 0; i < materials.length; i++) {
+                ids[i] = palette.idOf(materials[i]);
+            }
+            this.palette = palette;
+        }
+        return ids;
+    }
+
+    /** Heights of the chunks in the column that can hold voxels, stored or generated. */
+    public int[] heights(int cx, int cz) throws IOException {
+        int[] stored = storage == null ? new int[0] : storage.heights(cx, cz);
+        if (generator == null) {
+            return stored;
+        }
+        int low = generator.minY() >> VoxelChunk.SHIFT;
+        int high = generator.maxY() >> VoxelChunk.SHIFT;
+        int extra = 0;
+        for (int cy : stored) {
+            if (cy < low || cy > high) {
+                extra++;
+            }
+        }
+        int[] heights = new int[high - low + 1 + extra];
+        int n = 0;
+        for (int cy = low; cy <= high; cy++) {
+            heights[n++] = cy;
+        }
+        for (int cy : stored) {
+            if (cy < low || cy > high) {
+                heights[n++] = cy;
+            }
+        }
+        return heights;
+    }
+
+    /**
+     * Makes every chunk given resident in the store, loading the stored ones
+     * and generating the others in parallel. Returns how many were loaded.
+     */
+    public int loadAll(VoxelStore store, long[] keys, int count) {
+        long[] missing = new long[count];
+        int m = 0;
+        int loaded = 0;
+        for (int i = 0; i < count; i++) {
+            long key = keys[i];
+            if (store.chunks().get(key) != null || store.absentChunks().get(key) != null) {
+                continue;
+            }
+            if (storage != null) {
+                VoxelChunk chunk = storage.load(key, store.palette());
+                if (chunk != null || storage.stored(key)) {
+                    loaded += store.loaded(key, chunk) ? 1 : 0;
+                    continue;
+                }
+            }
+            if (generator == null) {
+                store.loaded(key, null);
+                continue;
+            }
+            missing[m++] = key;
+        }
+        if (m == 0) {
+            return loaded;
+        }
+
+        VoxelChunk[] chunks = new VoxelChunk[m];
+        pool.invoke(new Batch(missing, chunks, ids(store.palette()), 0, m));
+        generated += m;
+        for (int i = 0; i < m; i++) {
+            loaded += store.loaded(missing[i], chunks[i]) ? 1 : 0;
+        }
+        return loaded;
+    }
+
+    /** Chunks generated so far, empty ones included. */
+    public long generated() {
+        return generated;
+    }
+
+    public WorldGenerator generator() {
+        return generator;
+    }
+
+    public void close() {
+        pool.shutdown();
+    }
+
+}
@@ -0,0 +1,92 @@
+package dev.korgi.game.physics;
+
+public class VoxelChunk {
+
+    public static final int SHIFT = 4;
+    public static final int SIZE = 1 << SHIFT;
+    public static final int MASK = SIZE - 1;
+    public static final int VOLUME = SIZE * SIZE * SIZE;
+
+    public static final char EMPTY = 0;
+
+    private final char[] cells;
+    private int count;
+    // held by a snapshot, the store copies it before writing
+    private boolean shared;
+    // last residency update that wanted the chunk, see ChunkResidency
+    private long touched;
+
+    public VoxelChunk() {
+        this.cells = new char[VOLUME];
+    }
+
+    private VoxelChunk(char[] cells, int count) {
+        this.cells = cells;
+        this.count = count;
+    }
+
+    public static int localIndex(int x, int y, int z) {
+        return (x & MASK) | ((z & MASK) << SHIFT) | ((y & MASK) << (SHIFT * 2));
+    }
+
+    public static int localX(int index) {
+        return index & MASK;
+    }
+
+    public static int localY(int index) {
+        return (index >> (SHIFT * 2)) & MASK;
+    }
+
+    public static int localZ(int index) {
+        return (index >> SHIFT) & MASK;
+    }
+
+    public char get(int index) {
+        return cells[index];
+    }
+
+    public char set(int index, char id) {
+        char prev = cells[index];
+        if (prev == EMPTY && id != EMPTY) {
+            count++;
+        } else if (prev != EMPTY && id == EMPTY) {
+            count--;
+        }
+        cells[index] = id;
+        return prev;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public char[] cells() {
+        return cells;
+    }
+
+    public VoxelChunk copy() {
+        return new VoxelChunk(cells.clone(), count);
+    }
+
+    /** Freezes the chunk for a reader on another thread, see VoxelStore.put. */
+    public void share() {
+        shared = true;
+    }
+
+    public boolean isShared() {
+        return shared;
+    }
+
+    public void touch(long stamp) {
+        touched = stamp;
+    }
+
+    public long touched() {
+        return touched;
+    }
+
+}
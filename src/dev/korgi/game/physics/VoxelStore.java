@@ -0,0 +1,382 @@
+package dev.korgi.game.physics;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import dev.korgi.game.rendering.Material;
+import dev.korgi.game.rendering.Voxel;
+import dev.korgi.math.Vector3;
+
+/**
+ * Chunked voxel storage. Voxels are kept as palette ids inside 16x16x16 chunks
+ * that are looked up through a primitive long keyed map, so a voxel costs two
+ * bytes instead of a boxed key, a Voxel, a Vector3 and a Material.
+ */
+public class VoxelStore {
+
+    public interface VoxelVisitor {
+        void visit(int x, int y, int z, char id);
+    }
+
+    public interface ChunkListener {
+        void chunkChanged(long chunkKey);
+
+        void cleared();
+    }
+
+    /** Where chunks that are not in memory are loaded from. */
+    public interface ChunkSource {
+        /** The stored chunk with ids from the palette, or null when there is none. */
+        VoxelChunk load(long chunkKey, MaterialPalette palette);
+    }
+
+    // stands in for chunks the source has nothing for, so it is asked once
+    private static final VoxelChunk ABSENT = new VoxelChunk();
+
+    private final LongChunkMap chunks = new LongChunkMap();
+    private final LongChunkMap absent = new LongChunkMap();
+    private ChunkSource source;
+    private final MaterialPalette palette;
+    private final List<ChunkListener> listeners = new ArrayList<>();
+    private int size;
+    private long version;
+
+    public VoxelStore() {
+        this(new MaterialPalette());
+    }
+
+    public VoxelStore(MaterialPalette palette) {
+        this.palette = palette;
+    }
+
+    public static long chunkKey(int cx, int cy, int cz) {
+        return WorldStorage.voxelKey(cx, cy, cz);
+    }
+
+    public static long chunkKeyOf(int x, int y, int z) {
+        return chunkKey(x >> VoxelChunk.SHIFT, y >> VoxelChunk.SHIFT, z >> VoxelChunk.SHIFT);
+    }
+
+    public static int keyX(long key) {
+        return (int) ((key << 4) >> 44);
+    }
+
+    public static int keyY(long key) {
+        return (int) ((key << 24) >> 44);
+    }
+
+    public static int keyZ(long key) {
+        return (int) ((key << 44) >> 44);
+    }
+
+    /**
+     * Loads chunks on demand from the source the first time they are missed.
+     * Loading is not a change, listeners are not told about it.
+     */
+    public void setSource(ChunkSource source) {
+        this.source = source;
+        absent.clear();
+    }
+
+    public ChunkSource source() {
+        return source;
+    }
+
+    private VoxelChunk resident(long chunkKey) {
+        VoxelChunk chunk = chunks.get(chunkKey);
+        if (chunk != null || source == null || absent.get(chunkKey) != null) {
+            return chunk;
+        }
+        loaded(chunkKey, source.load(chunkKey, palette));
+        return chunks.get(chunkKey);
+    }
+
+    /**
+     * Takes a chunk from the source as if it had been loaded on demand, null
+     * when the source has none. Returns whether it is now resident.
+     */
+    public boolean loaded(long chunkKey, VoxelChunk chunk) {
+        if (chunks.get(chunkKey) != null) {
+            return false;
+        }
+        if (chunk == null || chunk.isEmpty()) {
+            absent.put(chunkKey, ABSENT);
+            return false;
+        }
+        chunks.put(chunkKey, chunk);
+        size += chunk.count();
+        version++;
+        return true;
+    }
+
+    /** Makes sure the chunk is in memory if the source has it. */
+    public void load(long chunkKey) {
+        resident(chunkKey);
+    }
+
+    public char paletteId(int x, int y, int z) {
+        VoxelChunk chunk = resident(chunkKeyOf(x, y, z));
+        if (chunk == null) {
+            return VoxelChunk.EMPTY;
+        }
+        return chunk.get(VoxelChunk.localIndex(x, y, z));
+    }
+
+    public boolean contains(int x, int y, int z) {
+        return paletteId(x, y, z) != VoxelChunk.EMPTY;
+    }
+
+    /** Like contains without loading anything, chunks that are not resident count as empty. */
+    public boolean containsResident(int x, int y, int z) {
+        VoxelChunk chunk = chunks.get(chunkKeyOf(x, y, z));
+        return chunk != null && chunk.get(VoxelChunk.localIndex(x, y, z)) != VoxelChunk.EMPTY;
+    }
+
+    public Voxel get(int x, int y, int z) {
+        char id = paletteId(x, y, z);
+        if (id == VoxelChunk.EMPTY) {
+            return null;
+        }
+        return toVoxel(x, y, z, id);
+    }
+
+    public Voxel get(long key) {
+        return get(keyX(key), keyY(key), keyZ(key));
+    }
+
+    public char put(int x, int y, int z, char id) {
+        long ck = chunkKeyOf(x, y, z);
+        VoxelChunk chunk = resident(ck);
+        if (chunk == null) {
+            if (id == VoxelChunk.EMPTY) {
+                return VoxelChunk.EMPTY;
+            }
+            chunk = new VoxelChunk();
+            chunks.put(ck, chunk);
+            absent.remove(ck);
+        } else if (chunk.isShared()) {
+            if (chunk.get(VoxelChunk.localIndex(x, y, z)) == id) {
+                return id;
+            }
+            chunk = chunk.copy();
+            chunks.put(ck, chunk);
+        }
+        char prev = chunk.set(VoxelChunk.localIndex(x, y, z), id);
+        if (prev == id) {
+            return prev;
+        }
+        if (prev == VoxelChunk.EMPTY && id != VoxelChunk.EMPTY) {
+            size++;
+        } else if (prev != VoxelChunk.EMPTY && id == VoxelChunk.EMPTY) {
+            size--;
+            if (chunk.isEmpty()) {
+                chunks.remove(ck);
+                markAbsent(ck);
+            }
+        }
+        version++;
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).chunkChanged(ck);
+        }
+        return prev;
+    }
+
+    /**
+     * Replaces a whole chunk, taking ownership of it. A null or empty chunk
+     * removes it.
+     */
+    public void putChunk(long chunkKey, VoxelChunk chunk) {
+        VoxelChunk prev = chunks.remove(chunkKey);
+        if (prev != null) {
+            size -= prev.count();
+        }
+        if (chunk != null && !chunk.isEmpty()) {
+            size += chunk.count();
+            chunks.put(chunkKey, chunk);
+            absent.remove(chunkKey);
+        } else {
+            markAbsent(chunkKey);
+        }
+        version++;
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).chunkChanged(chunkKey);
+        }
+    }
+
+    /**
+     * Drops a chunk, or the note that the source has none, from memory. It is
+     * not a change, listeners are not told and changes not yet stored are lost.
+     * With a source the chunk loads again the next time it is touched.
+     */
+    public void evict(long chunkKey) {
+        absent.remove(chunkKey);
+        VoxelChunk chunk = chunks.remove(chunkKey);
+        if (chunk != null) {
+            size -= chunk.count();
+            version++;
+        }
+    }
+
+    private void markAbsent(long chunkKey) {
+        if (source != null) {
+            absent.put(chunkKey, ABSENT);
+        }
+    }
+
+    public void put(long key, Voxel v) {
+        put(keyX(key), keyY(key), keyZ(key), palette.idOf(v.getMaterial()));
+    }
+
+    public boolean remove(int x, int y, int z) {
+        return put(x, y, z, VoxelChunk.EMPTY) != VoxelChunk.EMPTY;
+    }
+
+    public boolean remove(long key) {
+        return remove(keyX(key), keyY(key), keyZ(key));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Bumped on every change, so readers can tell whether anything moved since
+     * they last looked.
+     */
+    public long version() {
+        return version;
+    }
+
+    /** Drops every chunk in memory, with a source they load again from it. */
+    public void clear() {
+        chunks.clear();
+        absent.clear();
+        size = 0;
+        version++;
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).cleared();
+        }
+    }
+
+    public void addListener(ChunkListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ChunkListener listener) {
+        listeners.remove(listener);
+    }
+
+    public MaterialPalette palette() {
+        return palette;
+    }
+
+    public LongChunkMap chunks() {
+        return chunks;
+    }
+
+    // keys the source was asked for and had nothing
+    LongChunkMap absentChunks() {
+        return absent;
+    }
+
+    public VoxelChunk chunk(int cx, int cy, int cz) {
+        return resident(chunkKey(cx, cy, cz));
+    }
+
+    public Voxel toVoxel(int x, int y, int z, char id) {
+        Material m = palette.get(id);
+        return new Voxel(new Vector3(x, y, z), m.copy());
+    }
+
+    public void forEach(VoxelVisitor visitor) {
+        for (int slot = 0; slot < chunks.capacity(); slot++) {
+            VoxelChunk chunk = chunks.valueAt(slot);
+            if (chunk == null) {
+                continue;
+            }
+            long key = chunks.keyAt(slot);
+            visitChunk(key, chunk, visitor);
+        }
+    }
+
+    public static void visitChunk(long chunkKey, VoxelChunk chunk, VoxelVisitor visitor) {
+        int bx = keyX(chunkKey) << VoxelChunk.SHIFT;
+        int by = keyY(chunkKey) << VoxelChunk.SHIFT;
+        int bz = keyZ(chunkKey) << VoxelChunk.SHIFT;
+        char[] cells = chunk.cells();
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] != VoxelChunk.EMPTY) {
+                visitor.visit(bx + VoxelChunk.localX(i), by + VoxelChunk.localY(i), bz + VoxelChunk.localZ(i),
+                        cells[i]);
+            }
+        }
+    }
+
+    public Voxel first() {
+        Iterator<Voxel> it = values().iterator();
+        return it.hasNext() ? it.next() : null;
+    }
+
+    public Iterable<Voxel> values() {
+        return () -> new Iterator<Voxel>() {
+            private int slot = -1;
+            private int cell = VoxelChunk.VOLUME;
+            private VoxelChunk chunk;
+            private long key;
+
+            private boolean advance() {
+                while (true) {
+                    if (chunk != null) {
+                        char[] cells = chunk.cells();
+                        while (++cell < cells.length) {
+                            if (cells[cell] != VoxelChunk.EMPTY) {
+                                return true;
+                            }
+                        }
+                    }
+                    do {
+                        slot++;
+                        if (slot >= chunks.capacity()) {
+                            chunk = null;
+                            return false;
+                        }
+                    } while (chunks.valueAt(slot) == null);
+                    chunk = chunks.valueAt(slot);
+                    key = chunks.keyAt(slot);
+                    cell = -1;
+                }
+            }
+
+            private boolean ready;
+            private boolean has;
+
+            @Override
+            public boolean hasNext() {
+                if (!ready) {
+                    has = advance();
+                    ready = true;
+                }
+                return has;
+            }
+
+            @Override
+            public Voxel next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                ready = false;
+                int x = (keyX(key) << VoxelChunk.SHIFT) + VoxelChunk.localX(cell);
+                int y = (keyY(key) << VoxelChunk.SHIFT) + VoxelChunk.localY(cell);
+                int z = (keyZ(key) << VoxelChunk.SHIFT) + VoxelChunk.localZ(cell);
+                return toVoxel(x, y, z, chunk.get(cell));
+            }
+        };
+    }
+
+}
@@ -0,0 +1,276 @@
+package dev.korgi.game.physics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import dev.korgi.game.rendering.Material;
+import dev.korgi.game.rendering.Voxel;
+import dev.korgi.math.Vector3;
+import dev.korgi.math.Vector4;
+import dev.korgi.networking.BinaryReader;
+import dev.korgi.networking.BinaryWriter;
+
+/**
+ * Binary encoding of a batch of voxel edits, replacing the u0..uN / r0..rN
+ * JSON keys in world packets.
+ *
+ * <pre>
+ * varint paletteCount, then per entry: color rgba, opacity, rigid, texture, overlay, size
+ * varint chunkCount, then per chunk:
+ *   zigzag cx, cy, cz
+ *   varint updateCount, then per update: varint localIndex delta, varint palette entry
+ *   varlong wordMask, then one long per set bit: removal bits for 64 cells each
+ * </pre>
+ *
+ * Updates are applied before removals, matching the old packet handling.
+ */
+public class WorldDelta {
+
+    private static final int WORDS = VoxelChunk.VOLUME / 64;
+
+    private static class ChunkEdits {
+        final int cx, cy, cz;
+        long[] updates = new long[8];
+        int updateCount;
+        long[] removed;
+
+        ChunkEdits(int cx, int cy, int cz) {
+            this.cx = cx;
+            this.cy = cy;
+            this.cz = cz;
+        }
+
+        void update(int index, int paletteEntry) {
+            if (updateCount == updates.length) {
+                updates = Arrays.copyOf(updates, updateCount * 2);
+            }
+            // index first so sorting groups a cell, sequence second so the last write wins
+            updates[updateCount] = ((long) index << 48) | ((long) updateCount << 16) | paletteEntry;
+            updateCount++;
+        }
+
+        void remove(int index) {
+            if (removed == null) {
+                removed = new long[WORDS];
+            }
+            removed[index >>> 6] |= 1L << (index & 63);
+        }
+    }
+
+    private WorldDelta() {
+    }
+
+    public static byte[] encode(MaterialPalette palette, List<Voxel> updates, List<Vector3> removes) {
+        Map<Long, ChunkEdits> chunks = new HashMap<>();
+        List<ChunkEdits> order = new ArrayList<>();
+        Map<Character, Integer> entries = new HashMap<>();
+        List<Material> materials = new ArrayList<>();
+
+        for (Voxel v : updates) {
+            if (v == null) {
+                continue;
+            }
+            char id = palette.idOf(v.getMaterial());
+            Integer entry = entries.get(id);
+            if (entry == null) {
+                entry = materials.size();
+                entries.put(id, entry);
+                materials.add(palette.get(id));
+            }
+            int x = (int) v.position.x, y = (int) v.position.y, z = (int) v.position.z;
+            edits(chunks, order, x, y, z).update(VoxelChunk.localIndex(x, y, z), entry);
+        }
+
+        for (Vector3 p : removes) {
+            if (p == null) {
+                continue;
+            }
+            int x = (int) p.x, y = (int) p.y, z = (int) p.z;
+            edits(chunks, order, x, y, z).remove(VoxelChunk.localIndex(x, y, z));
+        }
+
+        BinaryWriter out = new BinaryWriter(64 + updates.size() * 3 + order.size() * 16);
+        out.writeVarInt(materials.size());
+        for (Material m : materials) {
+            writeMaterial(out, m);
+        }
+
+        out.writeVarInt(order.size());
+        for (ChunkEdits chunk : order) {
+            out.writeZigZag(chunk.cx).writeZigZag(chunk.cy).writeZigZag(chunk.cz);
+            writeUpdates(out, chunk);
+            writeRemovals(out, chunk.removed);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Whole chunks in the same format, every voxel an update and nothing
+     * removed, for streaming the world to a joining client. Only reads the
+     * chunks and the palette snapshot, so it can run off the tick thread on
+     * shared chunks.
+     */
+    public static byte[] encodeChunks(Material[] palette, long[] keys, VoxelChunk[] chunks, int from, int to) {
+        int[] entries = new int[palette.length];
+        List<Material> materials = new ArrayList<>();
+        int voxels = 0;
+        for (int c = from; c < to; c++) {
+            char[] cells = chunks[c].cells();
+            for (int i = 0; i < cells.length; i++) {
+                char id = cells[i];
+                if (id != VoxelChunk.EMPTY && entries[id] == 0) {
+                    materials.add(palette[id]);
+                    entries[id] = materials.size();
+                }
+            }
+            voxels += chunks[c].count();
+        }
+
+        BinaryWriter out = new BinaryWriter(64 + materials.size() * 64 + voxels * 2 + (to - from) * 16);
+        out.writeVarInt(materials.size());
+        for (Material m : materials) {
+            writeMaterial(out, m);
+        }
+        out.writeVarInt(to - from);
+        for (int c = from; c < to; c++) {
+            out.writeZigZag(VoxelStore.keyX(keys[c])).writeZigZag(VoxelStore.keyY(keys[c]))
+                    .writeZigZag(VoxelStore.keyZ(keys[c]));
+            char[] cells = chunks[c].cells();
+            out.writeVarInt(chunks[c].count());
+            int last = 0;
+            for (int i = 0; i < cells.length; i++) {
+                if (cells[i] != VoxelChunk.EMPTY) {
+                    out.writeVarInt(i - last);
+                    out.writeVarInt(entries[cells[i]] - 1);
+                    last = i;
+                }
+            }
+            out.writeVarLong(0);
+        }
+        return out.toByteArray();
+    }
+
+    static void writeMaterial(BinaryWriter out, Material m) {
+        Vector4 c = m.getColor();
+        out.writeDouble(c.x).writeDouble(c.y).writeDouble(c.z).writeDouble(c.w);
+        out.writeDouble(m.getOpacity());
+        out.writeByte(m.isRigid() ? 1 : 0);
+        out.writeZigZag(orNone(m.getTextureLocation()));
+        out.writeZigZag(orNone(m.getOverlayLocation()));
+        out.writeDouble(m.getSize());
+    }
+
+    static Material readMaterial(BinaryReader in) {
+        Material m = new Material();
+        m.setColor(new Vector4(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble()));
+        m.setOpacity(in.readDouble());
+        m.setRigid(in.readByte() != 0);
+        m.setTextureLocation(in.readZigZag());
+        m.setOverlayLocation(in.readZigZag());
+        m.setSize(in.readDouble());
+        return m;
+    }
+
+    private static int orNone(Integer value) {
+        return value == null ? -1 : value;
+    }
+
+    private static ChunkEdits edits(Map<Long, ChunkEdits> chunks, List<ChunkEdits> order, int x, int y, int z) {
+        long key = VoxelStore.chunkKeyOf(x, y, z);
+        ChunkEdits edits = chunks.get(key);
+        if (edits == null) {
+            edits = new ChunkEdits(x >> VoxelChunk.SHIFT, y >> VoxelChunk.SHIFT, z >> VoxelChunk.SHIFT);
+            chunks.put(key, edits);
+            order.add(edits);
+        }
+        return edits;
+    }
+
+    private static void writeUpdates(BinaryWriter out, ChunkEdits chunk) {
+        long[] updates = chunk.updates;
+        int count = chunk.updateCount;
+        Arrays.sort(updates, 0, count);
+
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (i + 1 < count && (updates[i] >>> 48) == (updates[i + 1] >>> 48)) {
+                continue;
+            }
+            updates[unique++] = updates[i];
+        }
+
+        out.writeVarInt(unique);
+        int last = 0;
+        for (int i = 0; i < unique; i++) {
+            int index = (int) (updates[i] >>> 48);
+            out.writeVarInt(index - last);
+            out.writeVarInt((int) (updates[i] & 0xFFFF));
+            last = index;
+        }
+    }
+
+    private static void writeRemovals(BinaryWriter out, long[] removed) {
+        if (removed == null) {
+            out.writeVarLong(0);
+            return;
+        }
+        long mask = 0;
+        for (int i = 0; i < WORDS; i++) {
+            if (removed[i] != 0) {
+                mask |= 1L << i;
+            }
+        }
+        out.writeVarLong(mask);
+        for (int i = 0; i < WORDS; i++) {
+            if (removed[i] != 0) {
+                out.writeLong(removed[i]);
+            }
+        }
+    }
+
+    /** Applies the edits and returns how many chunks they touched. */
+    public static int apply(byte[] data, VoxelStore store) {
+        BinaryReader in = new BinaryReader(data);
+        MaterialPalette palette = store.palette();
+
+        int materialCount = in.readVarInt();
+        char[] ids = new char[materialCount];
+        for (int i = 0; i < materialCount; i++) {
+            ids[i] = palette.idOf(readMaterial(in));
+        }
+
+        int chunkCount = in.readVarInt();
+        for (int c = 0; c < chunkCount; c++) {
+            int bx = in.readZigZag() << VoxelChunk.SHIFT;
+            int by = in.readZigZag() << VoxelChunk.SHIFT;
+            int bz = in.readZigZag() << VoxelChunk.SHIFT;
+
+            int updateCount = in.readVarInt();
+            int index = 0;
+            for (int i = 0; i < updateCount; i++) {
+                index += in.readVarInt();
+                char id = ids[in.readVarInt()];
+                store.put(bx + VoxelChunk.localX(index), by + VoxelChunk.localY(index),
+                        bz + VoxelChunk.localZ(index), id);
+            }
+
+            long mask = in.readVarLong();
+            while (mask != 0) {
+                int word = Long.numberOfTrailingZeros(mask);
+                mask &= mask - 1;
+                long bits = in.readLong();
+                while (bits != 0) {
+                    int cell = (word << 6) | Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    store.remove(bx + VoxelChunk.localX(cell), by + VoxelChunk.localY(cell),
+                            bz + VoxelChunk.localZ(cell));
+                }
+            }
+        }
+        return chunkCount;
+    }
+
+}
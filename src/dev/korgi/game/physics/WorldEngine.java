@@ -1,6 +1,9 @@
 package dev.korgi.game.physics;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import dev.korgi.game.Game;
@@ -12,10 +15,13 @@ import dev.korgi.json.JSONObject;
 import dev.korgi.math.Vector3;
 import dev.korgi.math.Vector4;
 import dev.korgi.math.VectorConstants;
+import dev.korgi.networking.InterestManager;
 import dev.korgi.networking.NetworkStream;
 import dev.korgi.networking.Packet;
 import dev.korgi.player.Player;
 import dev.korgi.utils.ClientSide;
+import dev.korgi.utils.ErrorHandler;
+import dev.korgi.utils.ServerSide;
 
 public class WorldEngine {
 
@@ -23,31 +29,77 @@ public class WorldEngine {
     public static final double g = 16;
 
     private static Jimmy jimmy;
+    @ServerSide
+    private static RegionStorage storage;
+    @ServerSide
+    private static ChunkResidency residency;
+    @ServerSide
+    private static TerrainSource terrain;
+
+    public static void init() throws IOException {
+        String dir = Game.config.getString("world_dir");
+        if (dir != null && !dir.isEmpty()) {
+            storage = new RegionStorage(Path.of(dir));
+            world.voxels.addListener(storage);
+        }
+        terrain = new TerrainSource(storage, generator(), Game.config.getInt("generator_threads"));
+        world.voxels.setSource(terrain);
 
-    public static void init() {
-        int xtotal = 100;
-        int ztotal = 100;
-        for (int x = 0; x < xtotal; x++) {
-            for (int z = 0; z < ztotal; z++) {
-                Voxel v = new Voxel(x, -5, z);
-                v.getMaterial().setTextureLocation(0);
-                addVoxel(v);
-                Game.setInitProgress(0.5f * ((float) (x * ztotal + z) / (float) (xtotal *
-                        ztotal)) + 0.5f);
+        int radius = Game.config.getInt("load_radius");
+        if (storage != null) {
+            residency = new ChunkResidency(world.voxels, storage, terrain, radius,
+                    Game.config.getFloat("chunk_memory"));
+        } else {
+            // nothing is ever unloaded without storage, so the area around spawn is made up front
+            long[] keys = new long[0];
+            for (int cx = -radius; cx <= radius; cx++) {
+                int count = 0;
+                for (int cz = -radius; cz <= radius; cz++) {
+                    for (int cy : terrain.heights(cx, cz)) {
+                        if (count == keys.length) {
+                            keys = Arrays.copyOf(keys, Math.max(64, count * 2));
+                        }
+                        keys[count++] = VoxelStore.chunkKey(cx, cy, cz);
+                    }
+                }
+                terrain.loadAll(world.voxels, keys, count);
+                Game.setInitProgress(0.5f + 0.5f * (cx + radius + 1) / (2 * radius + 1));
             }
         }
 
+        WorldGenerator generator = terrain.generator();
         jimmy = new Jimmy();
-        jimmy.getPosition().copyFrom(3, -1, 3);
+        jimmy.getPosition().copyFrom(3, generator.surface(3, 3) + 3, 3);
         jimmy.getVelocity().addTo(0, 20, 0);
         addEntity(jimmy);
         JimmyItem jimmyItem = new JimmyItem();
-        jimmyItem.getPosition().copyFrom(6, -1, 6);
+        jimmyItem.getPosition().copyFrom(6, generator.surface(6, 6) + 3, 6);
         addEntity(jimmyItem);
         world.updated = false;
         world.updates.clear();
     }
 
+    @ServerSide
+    private static WorldGenerator generator() {
+        String name = Game.config.getString("generator");
+        if ("flat".equalsIgnoreCase(name)) {
+            return new FlatGenerator();
+        }
+        if (!"noise".equalsIgnoreCase(name)) {
+            ErrorHandler.warn("Unknown generator %s, using noise", name);
+        }
+        return new NoiseGenerator(Game.config.getInt("seed"));
+    }
+
+    /** Where new players appear, a few blocks above the ground at the origin. */
+    @ServerSide
+    public static Vector3 spawnPoint() {
+        if (terrain == null || terrain.generator() == null) {
+            return new Vector3();
+        }
+        return new Vector3(0, terrain.generator().surface(0, 0) + 4, 0);
+    }
+
     public static void addEntity(Entity e) {
         world.entities.add(e);
         world.updated = true;
@@ -71,82 +123,136 @@ public class WorldEngine {
     }
 
     private static List<Packet> onHold = new ArrayList<>();
+    // initial world stream, see ChunkStreamer
+    @ClientSide
+    private static int streamChunks = -1;
+    @ClientSide
+    private static int streamedChunks;
+    @ClientSide
+    private static int streamedBatches;
+    @ClientSide
+    private static int ackedBatches;
+    @ClientSide
+    private static boolean warnedUnknown;
 
     @ClientSide
     public static void updateClient() {
         List<Packet> inPackets = NetworkStream.getAllPackets("world", true);
         if (Game.isInitialized() && !onHold.isEmpty()) {
-            inPackets.addAll(onHold);
-            onHold.clear();
+            // held packets came first, recentering depends on the order
+            onHold.addAll(inPackets);
+            inPackets = onHold;
+            onHold = new ArrayList<>();
         }
         for (Packet in : inPackets) {
-            JSONObject obj = in.getData();
-
-            obj.addBoolean("full", false);
-            if (obj.getBoolean("full")) {
-                JSONObject w = obj.getJSONObject("obj");
-                int vcount = w.getInt("vcount");
-
-                int progress = w.getInt("progress");
-                float total = w.getFloat("total");
-
-                for (int i = 0; i < vcount; i++) {
-                    JSONObject vObj = w.getJSONObject("v%d".formatted(i));
-                    Voxel v = new Voxel();
-                    vObj.fillObject(v);
-                    addVoxel(v);
-
-                    Game.setInitProgress(
-                            ((((progress - 1) * maxNetworkVoxelLoad) + (i + 1)) / (total * maxNetworkVoxelLoad)) * 0.7f
-                                    + 0.3f);
+            if (in.getPayload() != null) {
+                if (in.getType() == NetworkStream.PRIVATE_MESSAGE) {
+                    streamedChunks += WorldDelta.apply(in.getPayload(), world.voxels);
+                    streamedBatches++;
+                    continue;
                 }
-
-                int ecount = obj.getInt("ecount");
-
-                for (int i = 0; i < ecount; i++) {
-                    JSONObject eObj = obj.getJSONObject("e%d".formatted(i));
-                    String name = eObj.getString("name");
-                    Entity e = Entity.construct(name);
-                    if (e == null) {
-                        continue;
-                    }
-                    eObj.fillObject(e);
-                    addEntity(e);
-                }
-                if (w.getBoolean("done")) {
-                    Game.forceCompleteInit();
+                if (!Game.isInitialized()) {
+                    onHold.add(in);
                 } else {
-                    in.setDestination(NetworkStream.SERVER);
-                    in.network_destination = null;
-                    NetworkStream.sendPacket(in);
+                    WorldDelta.apply(in.getPayload(), world.voxels);
                 }
                 continue;
+            }
+            JSONObject obj = in.getData();
+
+            if (obj.hasKey("stream")) {
+                streamChunks = obj.getInt("chunks");
+                streamedChunks = 0;
+                streamedBatches = 0;
+                ackedBatches = 0;
+                continue;
             } else if (!Game.isInitialized()) {
                 onHold.add(in);
                 continue;
             }
 
-            int updateCount = obj.getInt("uc");
-            int removeCount = obj.getInt("rc");
+            if (obj.hasKey("center")) {
+                dropOutside(obj.getInt("cx"), obj.getInt("cz"), obj.getInt("radius"));
+                continue;
+            }
+
+            if (!warnedUnknown) {
+                ErrorHandler.warn("Ignoring unknown world packets from the server");
+                warnedUnknown = true;
+            }
+        }
 
-            for (int i = 0; i < updateCount; i++) {
-                Voxel v = new Voxel();
-                JSONObject vo = obj.getJSONObject("u%d".formatted(i));
-                vo.fillObject(v);
-                world.voxels.put(WorldStorage.voxelKey(v.position), v);
+        if (streamChunks >= 0) {
+            Game.setInitProgress(0.3f + 0.7f * streamedChunks / Math.max(1, streamChunks));
+            if (streamedBatches > ackedBatches) {
+                JSONObject ack = new JSONObject();
+                ack.set("streamed", streamedBatches);
+                ack.set("id", NetworkStream.clientId);
+                NetworkStream.sendPacket(new Packet("world", NetworkStream.SERVER, NetworkStream.WORLD_UPDATE, ack));
+                ackedBatches = streamedBatches;
+            }
+            if (streamedChunks >= streamChunks) {
+                streamChunks = -1;
+                Game.forceCompleteInit();
             }
+        }
 
-            for (int i = 0; i < removeCount; i++) {
-                Vector3 v = new Vector3();
-                JSONObject vo = obj.getJSONObject("r%d".formatted(i));
-                vo.fillObject(v);
-                world.voxels.remove(WorldStorage.voxelKey(v));
+        for (Packet in : NetworkStream.getAllPackets(InterestManager.CHANNEL, true)) {
+            JSONObject obj = in.getData();
+            int leaveCount = obj.getInt("lc");
+            for (int i = 0; i < leaveCount; i++) {
+                String id = obj.getString("l%d".formatted(i));
+                kill(id);
+                NetworkStream.discard(id, true);
             }
 
+            int enterCount = obj.getInt("ec");
+            for (int i = 0; i < enterCount; i++) {
+                JSONObject eObj = obj.getJSONObject("e%d".formatted(i));
+                String id = eObj.getString("internal_id");
+                if (entity(id) != null) {
+                    continue;
+                }
+                Entity e = Entity.construct(eObj.getString("name"));
+                if (e == null) {
+                    continue;
+                }
+                eObj.fillObject(e);
+                addEntity(e);
+            }
         }
 
     }
 
+    // the server moved this client's ticket, see ChunkResidency
+    @ClientSide
+    private static void dropOutside(int cx, int cz, int radius) {
+        LongChunkMap chunks = world.voxels.chunks();
+        long[] far = new long[chunks.size()];
+        int count = 0;
+        for (int slot = 0; slot < chunks.capacity(); slot++) {
+            if (chunks.valueAt(slot) == null) {
+                continue;
+            }
+            long key = chunks.keyAt(slot);
+            if (Math.max(Math.abs(VoxelStore.keyX(key) - cx), Math.abs(VoxelStore.keyZ(key) - cz)) > radius) {
+                far[count++] = key;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            world.voxels.putChunk(far[i], null);
+        }
+    }
+
+    public static Entity entity(String id) {
+        for (Entity e : world.entities) {
+            if (e.internal_id.equals(id)) {
+                return e;
+            }
+        }
+        return null;
+    }
+
     public static boolean canPlaceVoxel(Vector3 pos) {
         for (Entity entity : world.entities) {
             for (Voxel body : entity.getHitbox()) {
@@ -213,6 +319,9 @@ public class WorldEngine {
 
     private static final int maxNetworkVoxelLoad = 5000;
 
+    private static final SpatialHash broadphase = new SpatialHash(2);
+    private static final ChunkStreamer streamer = new ChunkStreamer();
+
     public static void execute() {
 
         manageLoad();
@@ -222,46 +331,16 @@ public class WorldEngine {
             JSONObject data = p.getData();
             data.addBoolean("full", false);
             if (data.getBoolean("full")) {
-                JSONObject voxelData = new JSONObject();
-                if (data.hasKey("obj")) {
-                    voxelData = data.getJSONObject("obj");
+                String id = data.getString("id");
+                if (residency != null) {
+                    residency.joined(id, spawnOf(id), world.entities);
                 }
-                voxelData.addInt("progress", 0);
-
-                int total = Math.max(1, (world.voxels.size() + maxNetworkVoxelLoad - 1) / maxNetworkVoxelLoad);
-                voxelData.addInt("total", total);
-
-                int page = maxNetworkVoxelLoad * voxelData.getInt("progress");
-
-                List<Voxel> chunk = world.voxels.values().stream()
-                        .skip(page)
-                        .limit(maxNetworkVoxelLoad)
-                        .toList();
-
-                voxelData.set("vcount", chunk.size());
-                for (int i = 0; i < chunk.size(); i++) {
-                    voxelData.set("v%d".formatted(i), chunk.get(i));
-                }
-
-                voxelData.set("progress", voxelData.getInt("progress") + 1);
-                voxelData.set("done", voxelData.getInt("progress") >= voxelData.getInt("total"));
-                data.set("obj", voxelData);
-
-                int c = 0;
-                if (voxelData.getBoolean("done")) {
-                    for (Entity e : world.entities) {
-                        if (e instanceof Player || e == null) {
-                            continue;
-                        }
-                        data.set("e%d".formatted(c), e);
-                        c++;
-                    }
-                }
-                data.set("ecount", c);
-                Packet fufillRequest = new Packet("world", NetworkStream.CLIENT, NetworkStream.PRIVATE_MESSAGE,
-                        data);
-                fufillRequest.network_destination = data.getString("id");
-                NetworkStream.sendPacket(fufillRequest);
+                streamer.start(id, world.voxels, spawnOf(id),
+                        residency == null ? Integer.MAX_VALUE : residency.radius());
+                continue;
+            }
+            if (data.hasKey("streamed")) {
+                streamer.acked(data.getString("id"), data.getInt("streamed"));
                 continue;
             }
             if (!data.hasKey("voxel"))
@@ -271,38 +350,24 @@ public class WorldEngine {
             world.add(v);
         }
 
-        for (int i = 0; i < world.entities.size(); i++) {
-            Entity a = world.entities.get(i);
-            for (int j = i + 1; j < world.entities.size(); j++) {
-                Entity b = world.entities.get(j);
-                entitiesIntersect(a, b);
-            }
+        streamer.update();
+
+        if (storage != null && Game.getTick() % autosaveTicks() == 0) {
+            save();
         }
 
+        collideEntities();
+
         if (world.updated) {
-            JSONObject outData = new JSONObject();
             int tou = Math.max(Math.min(world.updates.size(), maxNetworkVoxelLoad), 0);
             int tor = Math.max(Math.min(world.removes.size(), maxNetworkVoxelLoad), 0);
             List<Voxel> u = world.updates.subList(0, tou);
             List<Vector3> r = world.removes.subList(0, tor);
-            outData.set("uc", u.size());
-            outData.set("rc", r.size());
-            int index = 0;
-            for (Voxel v : u) {
-                outData.set("u%d".formatted(index), v);
-                index++;
-            }
-            index = 0;
-            for (Vector3 v : r) {
-                if (v != null) {
-                    outData.set("r%d".formatted(index), v);
-                    index++;
-                }
-            }
             if (u.size() == 0 && r.size() == 0) {
                 return;
             }
-            Packet out = new Packet("world", NetworkStream.CLIENT, NetworkStream.BROADCAST, outData);
+            Packet out = new Packet("world", NetworkStream.CLIENT, NetworkStream.BROADCAST, new JSONObject());
+            out.setPayload(WorldDelta.encode(world.voxels.palette(), u, r));
             NetworkStream.sendPacket(out);
             world.updates.removeAll(u);
             world.removes.removeAll(r);
@@ -312,9 +377,71 @@ public class WorldEngine {
         }
     }
 
+    /** Writes the chunks changed since the last save, if the world is stored. */
+    @ServerSide
+    public static void save() {
+        if (storage == null) {
+            return;
+        }
+        try {
+            storage.save(world.voxels);
+        } catch (IOException e) {
+            ErrorHandler.warn("Could not save the world: %s", e.getMessage());
+        }
+    }
+
+    @ServerSide
+    public static void close() {
+        if (storage != null) {
+            save();
+            try {
+                storage.close();
+            } catch (IOException e) {
+                ErrorHandler.warn("Could not close the world: %s", e.getMessage());
+            }
+            world.voxels.removeListener(storage);
+            storage = null;
+            residency = null;
+        }
+        if (terrain != null) {
+            terrain.close();
+            terrain = null;
+        }
+        world.voxels.setSource(null);
+    }
+
+    public static RegionStorage getStorage() {
+        return storage;
+    }
+
+    // where the client's player is, the stream starts around it
+    private static Vector3 spawnOf(String id) {
+        for (Player p : Game.getPlayers()) {
+            if (p.internal_id.equals(id)) {
+                return p.getPosition();
+            }
+        }
+        return VectorConstants.ZERO;
+    }
+
+    private static long autosaveTicks() {
+        return Math.max(1, Math.round(Game.config.getFloat("autosave_interval") * Game.getTickRate()));
+    }
+
+    public static ChunkStreamer getStreamer() {
+        return streamer;
+    }
+
+    // offload voxels and entities that are too far away to be of significance and load
+    // the ones that are needed
     private static void manageLoad() {
-        // offload voxels and entites that are to far away to be of signifgance and load
-        // voxels and entites that are needed
+        if (residency != null) {
+            residency.update(Game.getPlayers(), world.entities);
+        }
+    }
+
+    public static ChunkResidency getResidency() {
+        return residency;
     }
 
     public static WorldStorage getWorld() {
@@ -325,12 +452,21 @@ public class WorldEngine {
         return world.at(pos);
     }
 
+    public static void collideEntities() {
+        broadphase.build(world.entities);
+        broadphase.forEachPair((i, j) -> entitiesIntersect(world.entities.get(i), world.entities.get(j)));
+    }
+
     private static void entitiesIntersect(Entity a, Entity b) {
         for (Voxel va : a.getHitbox()) {
-            Vector3 vaWorld = va.position.add(a.getPosition());
+            Vector3 pa = a.getPosition();
+            double ax = va.position.x + pa.x, ay = va.position.y + pa.y, az = va.position.z + pa.z;
             for (Voxel vb : b.getHitbox()) {
-                Vector3 vbWorld = vb.position.add(b.getPosition());
-                if (voxelIntersects(vaWorld, vbWorld)) {
+                Vector3 pb = b.getPosition();
+                double bx = vb.position.x + pb.x, by = vb.position.y + pb.y, bz = vb.position.z + pb.z;
+                if (ax < bx + 1 && ax + 1 > bx && ay < by + 1 && ay + 1 > by && az < bz + 1 && az + 1 > bz) {
+                    Vector3 vaWorld = new Vector3(ax, ay, az);
+                    Vector3 vbWorld = new Vector3(bx, by, bz);
                     if (va.getMaterial().isRigid() && vb.getMaterial().isRigid()) {
                         resolveRigidCollision(a, va, vb);
                     }
@@ -347,6 +483,7 @@ public class WorldEngine {
 
     public static void kill(String id) {
         world.entities.removeIf((e) -> e.internal_id.equals(id));
+        NetworkStream.discard(id, Game.isClient);
     }
 
     public static boolean voxelIntersects(Vector3 a, Vector3 b) {
@@ -390,38 +527,134 @@ public class WorldEngine {
     }
 
     public static Hit trace(Vector3 origin, Vector3 dir, double maxDist) {
-        double stepSize = 0.05;
-        double traveled = 0.0;
-
-        Vector3 pos = origin.copy();
-        Vector3 prev = pos.copy();
-
-        while (traveled <= maxDist) {
-            Vector3 voxPos = pos.floor();
+        checkDistance(maxDist);
+        double[] dist = new double[1];
+        int[] faces = new int[1];
+        int[] cells = new int[3];
+        if (!traverse(world.voxels, origin.x, origin.y, origin.z, dir.x, dir.y, dir.z, maxDist, 0, dist, faces,
+                cells)) {
+            return null;
+        }
+        Hit hit = new Hit();
+        hit.hit = world.voxels.get(cells[0], cells[1], cells[2]);
+        hit.face = faces[0];
+        hit.dist = dist[0];
+        return hit;
+    }
 
-            Voxel v = world.at(voxPos);
-            if (v != null) {
-                Hit hit = new Hit();
-                hit.hit = v;
-                hit.dist = traveled;
+    /**
+     * Traces {@code count} rays given as packed xyz origins and directions. Ray i
+     * writes its hit distance (in units of its direction, -1 on a miss) to
+     * {@code dist[i]}, its face to {@code faces[i]} and the hit cell to
+     * {@code cells[3i..3i+2]}. Returns the number of rays that hit.
+     */
+    public static int traceMany(double[] origins, double[] dirs, int count, double maxDist, double[] dist,
+            int[] faces, int[] cells) {
+        checkDistance(maxDist);
+        VoxelStore store = world.voxels;
+        int hits = 0;
+        for (int i = 0; i < count; i++) {
+            int o = i * 3;
+            if (traverse(store, origins[o], origins[o + 1], origins[o + 2], dirs[o], dirs[o + 1], dirs[o + 2],
+                    maxDist, i, dist, faces, cells)) {
+                hits++;
+            } else {
+                dist[i] = -1;
+                faces[i] = -1;
+            }
+        }
+        return hits;
+    }
 
-                Vector3 dMin = prev.subtract(voxPos).absValue();
-                Vector3 dMax = prev.subtract(voxPos.add(VectorConstants.ONE)).absValue();
+    // a ray that misses walks until maxDist, it has to end somewhere
+    private static void checkDistance(double maxDist) {
+        if (!Double.isFinite(maxDist)) {
+            throw new IllegalArgumentException("maxDist has to be finite, got " + maxDist);
+        }
+    }
 
-                double min = Vector3.min(dMin, dMax).min();
+    /**
+     * Amanatides-Woo grid walk: visits every cell the ray passes through once,
+     * in order, and reports the face it entered the first solid cell through.
+     * Faces follow Hit: 0/1 are +x/-x, 2/3 +y/-y, 4/5 +z/-z. Only resident
+     * chunks are looked at, a trace never loads or generates one.
+     */
+    private static boolean traverse(VoxelStore store, double ox, double oy, double oz, double dx, double dy,
+            double dz, double maxDist, int i, double[] dist, int[] faces, int[] cells) {
+        int x = (int) Math.floor(ox);
+        int y = (int) Math.floor(oy);
+        int z = (int) Math.floor(oz);
+
+        if (store.containsResident(x, y, z)) {
+            dist[i] = 0;
+            faces[i] = insideFace(ox - x, oy - y, oz - z);
+            cells[i * 3] = x;
+            cells[i * 3 + 1] = y;
+            cells[i * 3 + 2] = z;
+            return true;
+        }
 
-                hit.face = (int) dMin.compare(min, new Vector4(1, 3, 5, hit.face));
-                hit.face = (int) dMax.compare(min, new Vector4(0, 2, 4, hit.face));
+        int stepX = dx > 0 ? 1 : dx < 0 ? -1 : 0;
+        int stepY = dy > 0 ? 1 : dy < 0 ? -1 : 0;
+        int stepZ = dz > 0 ? 1 : dz < 0 ? -1 : 0;
+        if (stepX == 0 && stepY == 0 && stepZ == 0) {
+            return false;
+        }
 
-                return hit;
+        double tDeltaX = stepX != 0 ? Math.abs(1 / dx) : Double.POSITIVE_INFINITY;
+        double tDeltaY = stepY != 0 ? Math.abs(1 / dy) : Double.POSITIVE_INFINITY;
+        double tDeltaZ = stepZ != 0 ? Math.abs(1 / dz) : Double.POSITIVE_INFINITY;
+        double tMaxX = stepX > 0 ? (x + 1 - ox) / dx : stepX < 0 ? (x - ox) / dx : Double.POSITIVE_INFINITY;
+        double tMaxY = stepY > 0 ? (y + 1 - oy) / dy : stepY < 0 ? (y - oy) / dy : Double.POSITIVE_INFINITY;
+        double tMaxZ = stepZ > 0 ? (z + 1 - oz) / dz : stepZ < 0 ? (z - oz) / dz : Double.POSITIVE_INFINITY;
+
+        while (true) {
+            double t;
+            int face;
+            if (tMaxX <= tMaxY && tMaxX <= tMaxZ) {
+                t = tMaxX;
+                x += stepX;
+                tMaxX += tDeltaX;
+                face = stepX > 0 ? 1 : 0;
+            } else if (tMaxY <= tMaxZ) {
+                t = tMaxY;
+                y += stepY;
+                tMaxY += tDeltaY;
+                face = stepY > 0 ? 3 : 2;
+            } else {
+                t = tMaxZ;
+                z += stepZ;
+                tMaxZ += tDeltaZ;
+                face = stepZ > 0 ? 5 : 4;
+            }
+            if (t > maxDist) {
+                return false;
+            }
+            if (store.containsResident(x, y, z)) {
+                dist[i] = t;
+                faces[i] = face;
+                cells[i * 3] = x;
+                cells[i * 3 + 1] = y;
+                cells[i * 3 + 2] = z;
+                return true;
             }
-
-            prev.copyFrom(pos);
-            pos.addTo(dir.multiply(stepSize));
-            traveled += stepSize;
         }
+    }
 
-        return null;
+    // nearest face to a point inside a cell, ties resolved like the old stepped trace
+    private static int insideFace(double fx, double fy, double fz) {
+        double min = Math.min(Math.min(Math.min(fx, fy), fz), Math.min(Math.min(1 - fx, 1 - fy), 1 - fz));
+        if (1 - fx == min)
+            return 0;
+        if (1 - fy == min)
+            return 2;
+        if (1 - fz == min)
+            return 4;
+        if (fx == min)
+            return 1;
+        if (fy == min)
+            return 3;
+        return 5;
     }
 
 }
@@ -0,0 +1,27 @@
+package dev.korgi.game.physics;
+
+import dev.korgi.game.rendering.Material;
+
+/**
+ * Makes the chunks of a world that were never stored. Chunks are generated on
+ * several threads at once and again each time an unchanged one is needed, so
+ * a chunk may only depend on its position and the generator's settings.
+ */
+public interface WorldGenerator {
+
+    /** The materials the generator places, generate is given their palette ids in this order. */
+    Material[] materials();
+
+    /** Lowest block y the generator fills. */
+    int minY();
+
+    /** Highest block y the generator fills. */
+    int maxY();
+
+    /** The first free y above the ground at x, z. */
+    int surface(int x, int z);
+
+    /** Fills an empty chunk, ids[i] is the palette id of materials()[i]. */
+    void generate(int cx, int cy, int cz, char[] ids, VoxelChunk chunk);
+
+}
@@ -1,12 +1,11 @@
 package dev.korgi.game.physics;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import dev.korgi.game.entites.Entity;
+import dev.korgi.game.rendering.Material;
 import dev.korgi.game.rendering.Voxel;
 import dev.korgi.json.JSONFillOverride;
 import dev.korgi.json.JSONIgnore;
@@ -16,7 +15,7 @@ import dev.korgi.math.Vector3;
 public class WorldStorage {
 
     @JSONFillOverride("overrideVoxelFill")
-    public HashMap<Long, Voxel> voxels = new LinkedHashMap<>();
+    public VoxelStore voxels = new VoxelStore();
 
     @JSONIgnore
     public List<Entity> entities = new ArrayList<>();
@@ -58,11 +57,35 @@ public class WorldStorage {
     }
 
     public List<Voxel> getFlat() {
-        return new ArrayList<>(voxels.values());
+        List<Voxel> flat = new ArrayList<>(voxels.size());
+        voxels.values().forEach(flat::add);
+        return flat;
     }
 
     public Voxel at(Vector3 pos) {
-        return voxels.get(voxelKey((int) pos.x, (int) pos.y, (int) pos.z));
+        return voxels.get((int) pos.x, (int) pos.y, (int) pos.z);
+    }
+
+    public boolean occupied(int x, int y, int z) {
+        return voxels.contains(x, y, z);
+    }
+
+    public boolean setOverlay(Vector3 pos, int overlay) {
+        int x = (int) pos.x;
+        int y = (int) pos.y;
+        int z = (int) pos.z;
+        char id = voxels.paletteId(x, y, z);
+        if (id == VoxelChunk.EMPTY) {
+            return false;
+        }
+        Material m = voxels.palette().get(id);
+        if (m.getOverlayLocation() == overlay) {
+            return false;
+        }
+        Material next = m.copy();
+        next.setOverlayLocation(overlay);
+        voxels.put(x, y, z, voxels.palette().idOf(next));
+        return true;
     }
 
     public void overrideVoxelFill(Object serialized) {
@@ -0,0 +1,362 @@
+package dev.korgi.game.rendering;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Java port of the world compute shader (Shaders.glsl). Takes the same arrays
+ * as KorgiJNI.executeKernal so it can stand in for the natives on machines
+ * without a Metal or OpenGL 4.3 device. Rows are split into tiles and traced
+ * on a ForkJoinPool.
+ */
+public class CPUKernal {
+
+    private static final int SKY = 0xFF87CEEB;
+    private static final int CHUNK_SIZE = 8;
+    private static final int MAX_STEPS = 500;
+    private static final float MAX_T = 100.0f;
+    private static final int TILE_ROWS = 8;
+
+    static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private static float[] tBuffer;
+
+    private static class Frame {
+        int[] pixels;
+        int width, height;
+        float camX, camY, camZ;
+        float fwdX, fwdY, fwdZ;
+        float rightX, rightY, rightZ;
+        float upX, upY, upZ;
+        float tanFov;
+        int voxCount;
+        int[] color;
+        float[] opacity;
+        int minX, minY, minZ;
+        int sizeX, sizeY, sizeZ;
+        int[] voxelGrid;
+        int[] textureLocation;
+        int[] overlayLocation;
+        int[] textureAtlas;
+        int[] chunkGrid;
+        int csx, csy;
+        float[] tBuffer;
+    }
+
+    private static class Tile extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Frame f;
+        private final int start, end;
+
+        Tile(Frame f, int start, int end) {
+            this.f = f;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= TILE_ROWS) {
+                for (int py = start; py < end; py++) {
+                    for (int px = 0; px < f.width; px++) {
+                        trace(f, px, py);
+                    }
+                }
+                return;
+            }
+            int mid = (start + end) >>> 1;
+            invokeAll(new Tile(f, start, mid), new Tile(f, mid, end));
+        }
+    }
+
+    public static void executeKernal(int[] pixels, int w, int h, float[] cam, float[] foward, float[] right,
+            float[] up, float tanFov, int voxCount, int[] color, float[] opacity, int[] worldMin, int[] worldSize,
+            int[] voxelGrid, int[] textureLocation, int[] overlayLocation, int[] textureAtlas,
+            int[] chunkGrid, int[] chunckSize) {
+        if (tBuffer == null || tBuffer.length != w * h) {
+            tBuffer = new float[w * h];
+        }
+
+        Frame f = new Frame();
+        f.pixels = pixels;
+        f.width = w;
+        f.height = h;
+        f.camX = cam[0];
+        f.camY = cam[1];
+        f.camZ = cam[2];
+        f.fwdX = foward[0];
+        f.fwdY = foward[1];
+        f.fwdZ = foward[2];
+        f.rightX = right[0];
+        f.rightY = right[1];
+        f.rightZ = right[2];
+        f.upX = up[0];
+        f.upY = up[1];
+        f.upZ = up[2];
+        f.tanFov = tanFov;
+        f.voxCount = voxCount;
+        f.color = color;
+        f.opacity = opacity;
+        f.minX = worldMin[0];
+        f.minY = worldMin[1];
+        f.minZ = worldMin[2];
+        f.sizeX = worldSize[0];
+        f.sizeY = worldSize[1];
+        f.sizeZ = worldSize[2];
+        f.voxelGrid = voxelGrid;
+        f.textureLocation = textureLocation;
+        f.overlayLocation = overlayLocation;
+        f.textureAtlas = textureAtlas;
+        f.chunkGrid = chunkGrid;
+        f.csx = chunckSize[0];
+        f.csy = chunckSize[1];
+        f.tBuffer = tBuffer;
+
+        pool.invoke(new Tile(f, 0, h));
+    }
+
+    /**
+     * Hit distance per pixel from the last frame, -1 where the ray left the
+     * grid without entering it.
+     */
+    public static float[] getTBuffer() {
+        return tBuffer;
+    }
+
+    private static int atlasLookup(Frame f, int hitFace, float hx, float hy, float hz) {
+        float lx = hx - (float) Math.floor(hx);
+        float ly = hy - (float) Math.floor(hy);
+        float lz = hz - (float) Math.floor(hz);
+        float u, v;
+
+        if (hitFace <= 1) {
+            u = lz;
+            v = 1.0f - ly;
+        } else if (hitFace <= 3) {
+            u = lx;
+            v = 1.0f - lz;
+        } else {
+            u = lx;
+            v = 1.0f - ly;
+        }
+
+        int iu = Math.min(Math.max((int) (u * 32.0f), 0), 31);
+        int iv = Math.min(Math.max((int) (v * 32.0f), 0), 31);
+        return iv * 192 + hitFace * 32 + iu;
+    }
+
+    private static int applyOverlay(Frame f, int hitColor, int overlayId, int lookupIdx) {
+        int overlayHitColor = f.textureAtlas[overlayId * (192 * 32) + lookupIdx];
+        int overlayAlpha = (overlayHitColor >> 24) & 0xFF;
+        if (overlayAlpha != 0 && (overlayHitColor & 0x00FFFFFF) != 0x00FFFFFF) {
+            return overlayHitColor;
+        }
+        return hitColor;
+    }
+
+    private static void miss(Frame f, int idx) {
+        f.tBuffer[idx] = -1.0f;
+        f.pixels[idx] = SKY;
+    }
+
+    private static void trace(Frame f, int px, int py) {
+        int idx = py * f.width + px;
+
+        float aspect = (float) f.width / (float) f.height;
+        float ndcX = (2.0f * (px + 0.5f) / f.width - 1.0f) * aspect * f.tanFov;
+        float ndcY = (1.0f - 2.0f * (py + 0.5f) / f.height) * f.tanFov;
+
+        float dx = f.fwdX + ndcX * f.rightX + ndcY * f.upX;
+        float dy = f.fwdY + ndcX * f.rightY + ndcY * f.upY;
+        float dz = f.fwdZ + ndcX * f.rightZ + ndcY * f.upZ;
+        float len = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+        dx /= len;
+        dy /= len;
+        dz /= len;
+
+        float invX = dx != 0.0f ? 1.0f / dx : 1e20f;
+        float invY = dy != 0.0f ? 1.0f / dy : 1e20f;
+        float invZ = dz != 0.0f ? 1.0f / dz : 1e20f;
+
+        float camX = f.camX, camY = f.camY, camZ = f.camZ;
+        int minX = f.minX, minY = f.minY, minZ = f.minZ;
+        int maxX = minX + f.sizeX, maxY = minY + f.sizeY, maxZ = minZ + f.sizeZ;
+
+        float tMin = 0.0f;
+        float tMax = MAX_T;
+
+        if (dx != 0.0f) {
+            float t1 = (minX - camX) * invX;
+            float t2 = (maxX - camX) * invX;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        } else if (camX < minX || camX > maxX) {
+            miss(f, idx);
+            return;
+        }
+
+        if (dy != 0.0f) {
+            float t1 = (minY - camY) * invY;
+            float t2 = (maxY - camY) * invY;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        } else if (camY < minY || camY > maxY) {
+            miss(f, idx);
+            return;
+        }
+
+        if (dz != 0.0f) {
+            float t1 = (minZ - camZ) * invZ;
+            float t2 = (maxZ - camZ) * invZ;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        } else if (camZ < minZ || camZ > maxZ) {
+            miss(f, idx);
+            return;
+        }
+
+        if (tMin > tMax) {
+            miss(f, idx);
+            return;
+        }
+
+        float sx = camX + dx * tMin;
+        float sy = camY + dy * tMin;
+        float sz = camZ + dz * tMin;
+        int cellX = (int) Math.floor(sx);
+        int cellY = (int) Math.floor(sy);
+        int cellZ = (int) Math.floor(sz);
+
+        int stepX = dx > 0.0f ? 1 : -1;
+        int stepY = dy > 0.0f ? 1 : -1;
+        int stepZ = dz > 0.0f ? 1 : -1;
+
+        float tMaxX = tMin + ((stepX > 0 ? cellX + 1.0f : cellX) - sx) * invX;
+        float tMaxY = tMin + ((stepY > 0 ? cellY + 1.0f : cellY) - sy) * invY;
+        float tMaxZ = tMin + ((stepZ > 0 ? cellZ + 1.0f : cellZ) - sz) * invZ;
+
+        float tDeltaX = dx != 0.0f ? Math.abs(invX) : 1e20f;
+        float tDeltaY = dy != 0.0f ? Math.abs(invY) : 1e20f;
+        float tDeltaZ = dz != 0.0f ? Math.abs(invZ) : 1e20f;
+
+        int csx = f.csx;
+        int csxy = f.csx * f.csy;
+        int wSX = f.sizeX;
+        int wSXY = f.sizeX * f.sizeY;
+        int[] voxelGrid = f.voxelGrid;
+        int[] chunkGrid = f.chunkGrid;
+
+        int hitColor = 0;
+        float opacAccum = 1.0f;
+        int hitFace = -1;
+        float hx = sx, hy = sy, hz = sz;
+        float t = tMin;
+
+        for (int steps = 0; steps < MAX_STEPS && t < tMax && opacAccum > 0.01f; ++steps) {
+
+            if (cellX >= minX && cellY >= minY && cellZ >= minZ && cellX < maxX && cellY < maxY && cellZ < maxZ) {
+                int rx = cellX - minX;
+                int ry = cellY - minY;
+                int rz = cellZ - minZ;
+                int ccx = rx / CHUNK_SIZE;
+                int ccy = ry / CHUNK_SIZE;
+                int ccz = rz / CHUNK_SIZE;
+
+                if (chunkGrid[ccx + ccy * csx + ccz * csxy] == 0) {
+                    float ex = minX + (stepX > 0 ? ccx + 1 : ccx) * CHUNK_SIZE;
+                    float ey = minY + (stepY > 0 ? ccy + 1 : ccy) * CHUNK_SIZE;
+                    float ez = minZ + (stepZ > 0 ? ccz + 1 : ccz) * CHUNK_SIZE;
+
+                    float tx = dx != 0.0f ? (ex - camX) * invX : 1e20f;
+                    float ty = dy != 0.0f ? (ey - camY) * invY : 1e20f;
+                    float tz = dz != 0.0f ? (ez - camZ) * invZ : 1e20f;
+
+                    float tJump = Math.min(Math.min(tx, ty), tz) + 1e-4f;
+
+                    if (tJump > t) {
+                        t = tJump;
+                        hx = camX + dx * t;
+                        hy = camY + dy * t;
+                        hz = camZ + dz * t;
+                        cellX = (int) Math.floor(hx);
+                        cellY = (int) Math.floor(hy);
+                        cellZ = (int) Math.floor(hz);
+
+                        tMaxX = dx != 0.0f ? ((stepX > 0 ? cellX + 1 : cellX) - camX) * invX : 1e20f;
+                        tMaxY = dy != 0.0f ? ((stepY > 0 ? cellY + 1 : cellY) - camY) * invY : 1e20f;
+                        tMaxZ = dz != 0.0f ? ((stepZ > 0 ? cellZ + 1 : cellZ) - camZ) * invZ : 1e20f;
+                        continue;
+                    }
+                }
+
+                int voxel = voxelGrid[rx + ry * wSX + rz * wSXY];
+
+                if (Integer.compareUnsigned(voxel, f.voxCount) < 0) {
+                    int texId = f.textureLocation[voxel];
+                    int overlayId = f.overlayLocation[voxel];
+                    float alpha = f.opacity[voxel];
+
+                    if (texId != -1 && hitFace >= 0) {
+                        int lookupIdx = atlasLookup(f, hitFace, hx, hy, hz);
+                        hitColor = f.textureAtlas[texId * (192 * 32) + lookupIdx];
+                        opacAccum = 0.0f;
+
+                        if (overlayId != -1) {
+                            hitColor = applyOverlay(f, hitColor, overlayId, lookupIdx);
+                        }
+                    } else {
+                        int c = f.color[voxel];
+                        float a = alpha * opacAccum;
+                        float ia = 1.0f - a;
+
+                        int r = (int) (((c >> 16) & 0xFF) * a + ((hitColor >> 16) & 0xFF) * ia);
+                        int g = (int) (((c >> 8) & 0xFF) * a + ((hitColor >> 8) & 0xFF) * ia);
+                        int b = (int) ((c & 0xFF) * a + (hitColor & 0xFF) * ia);
+                        hitColor = (0xFF << 24) | (r << 16) | (g << 8) | b;
+
+                        opacAccum *= (1.0f - alpha);
+
+                        if (overlayId != -1 && hitFace >= 0) {
+                            hitColor = applyOverlay(f, hitColor, overlayId, atlasLookup(f, hitFace, hx, hy, hz));
+                        }
+                    }
+                }
+            }
+
+            boolean xMin = (tMaxX <= tMaxY) && (tMaxX <= tMaxZ);
+            boolean yMin = !xMin && (tMaxY <= tMaxZ);
+
+            if (xMin) {
+                t = tMaxX;
+                tMaxX += tDeltaX;
+                cellX += stepX;
+                hitFace = stepX > 0 ? 0 : 1;
+            } else if (yMin) {
+                t = tMaxY;
+                tMaxY += tDeltaY;
+                cellY += stepY;
+                hitFace = stepY > 0 ? 3 : 2;
+            } else {
+                t = tMaxZ;
+                tMaxZ += tDeltaZ;
+                cellZ += stepZ;
+                hitFace = stepZ > 0 ? 4 : 5;
+            }
+
+            hx = camX + dx * t;
+            hy = camY + dy * t;
+            hz = camZ + dz * t;
+        }
+
+        float a = opacAccum;
+        float ia = 1.0f - a;
+        int r = (int) (((SKY >> 16) & 0xFF) * a + ((hitColor >> 16) & 0xFF) * ia);
+        int g = (int) (((SKY >> 8) & 0xFF) * a + ((hitColor >> 8) & 0xFF) * ia);
+        int b = (int) ((SKY & 0xFF) * a + (hitColor & 0xFF) * ia);
+
+        f.tBuffer[idx] = t;
+        f.pixels[idx] = (0xFF << 24) | (r << 16) | (g << 8) | b;
+    }
+
+}
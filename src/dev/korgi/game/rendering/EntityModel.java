@@ -0,0 +1,277 @@
+package dev.korgi.game.rendering;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import dev.korgi.game.entites.Entity;
+import dev.korgi.math.Vector3;
+import dev.korgi.math.Vector4;
+
+/**
+ * An entity body flattened into the arrays EntityShader reads, with a binned
+ * SAH BVH over its voxels. Bodies are in model space and every instance of a
+ * class builds the same one, so a model is built once and shared, instances
+ * only supply a position and rotation.
+ */
+public class EntityModel {
+
+    private static final int BINS = 12;
+    // EntityShader traverses with a 32 entry stack, which holds a tree this deep
+    private static final int MAX_DEPTH = 30;
+
+    // bodies only change through Entity.setOpacity, which sets every voxel
+    private static final Map<Class<?>, List<EntityModel>> cache = new HashMap<>();
+
+    public final int voxelCount;
+    public final int nodeCount;
+    public final float radius;
+    public final double opacity;
+
+    public final float[] positions;
+    public final float[] sizes;
+    public final int[] colors;
+    public final float[] opacities;
+    public final int[] textureIds;
+
+    // per node min and max corner, then left, right and the voxel of a leaf.
+    // children are indices into this model's nodes, -1 on leaves
+    public final float[] mins;
+    public final float[] maxs;
+    public final int[] links;
+
+    // where the model starts in NativeGPUKernal's packed arrays, -1 until packed
+    int voxelOffset = -1;
+    int nodeOffset = -1;
+
+    private int nodes;
+    private final float[] binMin = new float[BINS * 3];
+    private final float[] binMax = new float[BINS * 3];
+    private final int[] binCount = new int[BINS];
+    private final float[] rightArea = new float[BINS];
+
+    public static EntityModel of(Entity entity) {
+        List<Voxel> body = entity.getBody();
+        double opacity = body.isEmpty() ? 1 : body.get(0).getMaterial().getOpacity();
+        List<EntityModel> models = cache.computeIfAbsent(entity.getClass(), c -> new ArrayList<>());
+        for (EntityModel model : models) {
+            if (model.opacity == opacity && model.voxelCount == body.size()) {
+                return model;
+            }
+        }
+        EntityModel model = new EntityModel(body, opacity);
+        models.add(model);
+        return model;
+    }
+
+    public EntityModel(List<Voxel> body, double opacity) {
+        this.opacity = opacity;
+        voxelCount = body.size();
+        positions = new float[voxelCount * 3];
+        sizes = new float[voxelCount];
+        colors = new int[voxelCount];
+        opacities = new float[voxelCount];
+        textureIds = new int[voxelCount];
+
+        float maxDist = 0;
+        for (int i = 0; i < voxelCount; i++) {
+            Voxel v = body.get(i);
+            Material mat = v.getMaterial();
+            Vector3 p = v.position;
+            positions[i * 3] = (float) p.x;
+            positions[i * 3 + 1] = (float) p.y;
+            positions[i * 3 + 2] = (float) p.z;
+            sizes[i] = (float) mat.getSize();
+            maxDist = Math.max(maxDist, (float) p.length() + sizes[i] * 0.5f);
+
+            int texLoc = mat.getTextureLocation();
+            textureIds[i] = texLoc;
+            if (texLoc == -1) {
+                Vector4 color = mat.getColor();
+                colors[i] = argb((float) color.x, (float) color.y, (float) color.z);
+            } else {
+                colors[i] = -1;
+            }
+            opacities[i] = (float) mat.getOpacity();
+        }
+        radius = maxDist;
+
+        nodeCount = Math.max(0, voxelCount * 2 - 1);
+        mins = new float[nodeCount * 3];
+        maxs = new float[nodeCount * 3];
+        links = new int[nodeCount * 3];
+        if (voxelCount > 0) {
+            int[] indices = new int[voxelCount];
+            for (int i = 0; i < voxelCount; i++)
+                indices[i] = i;
+            build(indices, 0, voxelCount, 0);
+        }
+    }
+
+    private static int argb(float r, float g, float b) {
+        int ri = (int) (Math.min(r, 1f) * 255);
+        int gi = (int) (Math.min(g, 1f) * 255);
+        int bi = (int) (Math.min(b, 1f) * 255);
+        return (1 << 24) | (ri << 16) | (gi << 8) | bi;
+    }
+
+    private int build(int[] indices, int start, int end, int depth) {
+        int node = nodes++;
+        float cMinX = Float.MAX_VALUE, cMinY = Float.MAX_VALUE, cMinZ = Float.MAX_VALUE;
+        float cMaxX = -Float.MAX_VALUE, cMaxY = -Float.MAX_VALUE, cMaxZ = -Float.MAX_VALUE;
+        float aMinX = Float.MAX_VALUE, aMinY = Float.MAX_VALUE, aMinZ = Float.MAX_VALUE;
+        float aMaxX = -Float.MAX_VALUE, aMaxY = -Float.MAX_VALUE, aMaxZ = -Float.MAX_VALUE;
+        for (int i = start; i < end; i++) {
+            int v = indices[i];
+            float x = positions[v * 3], y = positions[v * 3 + 1], z = positions[v * 3 + 2];
+            float s = sizes[v] * 0.5f;
+            aMinX = Math.min(aMinX, x - s);
+            aMinY = Math.min(aMinY, y - s);
+            aMinZ = Math.min(aMinZ, z - s);
+            aMaxX = Math.max(aMaxX, x + s);
+            aMaxY = Math.max(aMaxY, y + s);
+            aMaxZ = Math.max(aMaxZ, z + s);
+            cMinX = Math.min(cMinX, x);
+            cMinY = Math.min(cMinY, y);
+            cMinZ = Math.min(cMinZ, z);
+            cMaxX = Math.max(cMaxX, x);
+            cMaxY = Math.max(cMaxY, y);
+            cMaxZ = Math.max(cMaxZ, z);
+        }
+        int o = node * 3;
+        mins[o] = aMinX;
+        mins[o + 1] = aMinY;
+        mins[o + 2] = aMinZ;
+        maxs[o] = aMaxX;
+        maxs[o + 1] = aMaxY;
+        maxs[o + 2] = aMaxZ;
+
+        if (end - start == 1) {
+            links[o] = -1;
+            links[o + 1] = -1;
+            links[o + 2] = indices[start];
+            return node;
+        }
+
+        float[] cMin = { cMinX, cMinY, cMinZ };
+        float[] cMax = { cMaxX, cMaxY, cMaxZ };
+        int mid = -1;
+        // past this depth only median splits keep the tree inside the shader's stack
+        if (depth + 32 - Integer.numberOfLeadingZeros(end - start - 1) < MAX_DEPTH) {
+            mid = sahSplit(indices, start, end, cMin, cMax);
+        }
+        if (mid <= start || mid >= end) {
+            float dx = cMaxX - cMinX, dy = cMaxY - cMinY, dz = cMaxZ - cMinZ;
+            mid = medianSplit(indices, start, end, (dx >= dy && dx >= dz) ? 0 : (dy >= dz) ? 1 : 2);
+        }
+
+        int left = build(indices, start, mid, depth + 1);
+        int right = build(indices, mid, end, depth + 1);
+        links[o] = left;
+        links[o + 1] = right;
+        links[o + 2] = -1;
+        return node;
+    }
+
+    // partitions around the cheapest bin boundary over all three axes, -1 when every centroid shares a bin
+    private int sahSplit(int[] indices, int start, int end, float[] cMin, float[] cMax) {
+        float bestCost = Float.MAX_VALUE;
+        int bestAxis = -1;
+        int bestBin = -1;
+        for (int axis = 0; axis < 3; axis++) {
+            float extent = cMax[axis] - cMin[axis];
+            if (extent <= 0)
+                continue;
+            float scale = BINS / extent;
+            Arrays.fill(binCount, 0);
+            Arrays.fill(binMin, Float.MAX_VALUE);
+            Arrays.fill(binMax, -Float.MAX_VALUE);
+            for (int i = start; i < end; i++) {
+                int v = indices[i];
+                int b = bin(positions[v * 3 + axis], cMin[axis], scale);
+                binCount[b]++;
+                float s = sizes[v] * 0.5f;
+                for (int k = 0; k < 3; k++) {
+                    binMin[b * 3 + k] = Math.min(binMin[b * 3 + k], positions[v * 3 + k] - s);
+                    binMax[b * 3 + k] = Math.max(binMax[b * 3 + k], positions[v * 3 + k] + s);
+                }
+            }
+
+            float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+            float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+            int count = 0;
+            for (int b = BINS - 1; b > 0; b--) {
+                count += binCount[b];
+                minX = Math.min(minX, binMin[b * 3]);
+                minY = Math.min(minY, binMin[b * 3 + 1]);
+                minZ = Math.min(minZ, binMin[b * 3 + 2]);
+                maxX = Math.max(maxX, binMax[b * 3]);
+                maxY = Math.max(maxY, binMax[b * 3 + 1]);
+                maxZ = Math.max(maxZ, binMax[b * 3 + 2]);
+                rightArea[b] = count == 0 ? 0 : count * area(maxX - minX, maxY - minY, maxZ - minZ);
+            }
+
+            minX = minY = minZ = Float.MAX_VALUE;
+            maxX = maxY = maxZ = -Float.MAX_VALUE;
+            count = 0;
+            for (int b = 0; b < BINS - 1; b++) {
+                count += binCount[b];
+                minX = Math.min(minX, binMin[b * 3]);
+                minY = Math.min(minY, binMin[b * 3 + 1]);
+                minZ = Math.min(minZ, binMin[b * 3 + 2]);
+                maxX = Math.max(maxX, binMax[b * 3]);
+                maxY = Math.max(maxY, binMax[b * 3 + 1]);
+                maxZ = Math.max(maxZ, binMax[b * 3 + 2]);
+                if (count == 0 || count == end - start)
+                    continue;
+                float cost = count * area(maxX - minX, maxY - minY, maxZ - minZ) + rightArea[b + 1];
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestAxis = axis;
+                    bestBin = b;
+                }
+            }
+        }
+        if (bestAxis < 0)
+            return -1;
+
+        float scale = BINS / (cMax[bestAxis] - cMin[bestAxis]);
+        int i = start;
+        int j = end - 1;
+        while (i <= j) {
+            if (bin(positions[indices[i] * 3 + bestAxis], cMin[bestAxis], scale) <= bestBin) {
+                i++;
+            } else {
+                int t = indices[i];
+                indices[i] = indices[j];
+                indices[j--] = t;
+            }
+        }
+        return i;
+    }
+
+    private static int bin(float c, float min, float scale) {
+        return Math.min(BINS - 1, (int) ((c - min) * scale));
+    }
+
+    private static float area(float dx, float dy, float dz) {
+        return dx * dy + dy * dz + dz * dx;
+    }
+
+    private int medianSplit(int[] indices, int start, int end, int axis) {
+        long[] keys = new long[end - start];
+        for (int i = start; i < end; i++) {
+            int bits = Float.floatToIntBits(positions[indices[i] * 3 + axis]);
+            // flip negative floats so the signed int order matches the float order
+            bits ^= (bits >> 31) & 0x7FFFFFFF;
+            keys[i - start] = ((long) bits << 32) | indices[i];
+        }
+        Arrays.sort(keys);
+        for (int i = start; i < end; i++)
+            indices[i] = (int) keys[i - start];
+        return (start + end) >>> 1;
+    }
+
+}
@@ -13,6 +13,9 @@ public class Graphics {
 
     private static boolean isWarping = false;
 
+    /** Render on RenderPipeline's thread instead of inside the game loop. */
+    public static boolean pipelined = true;
+
     public static void display() {
         Screen screen = Screen.getInstance();
         int width = screen.width;
@@ -23,11 +26,19 @@ public class Graphics {
             screen.loadPixels();
         }
 
-        if (resizePixels || !init) {
-            NativeGPUKernal.resetSpecs(screen.pixels, width, height);
-            init = true;
+        if (pipelined) {
+            RenderPipeline.start();
+            RenderPipeline.publish(WorldEngine.getWorld(), camera, width, height);
+            if (!RenderPipeline.present(screen.pixels)) {
+                return;
+            }
+        } else {
+            if (resizePixels || !init) {
+                NativeGPUKernal.resetSpecs(screen.pixels, width, height);
+                init = true;
+            }
+            NativeGPUKernal.execute(WorldEngine.getWorld(), camera);
         }
-        NativeGPUKernal.execute(WorldEngine.getWorld(), camera);
         if (isWarping) {
             distort(screen.pixels, width, height);
         }
@@ -78,6 +78,7 @@ public class Material {
         m.setOpacity(this.opacity);
         m.setRigid(this.rigid);
         m.setTextureLocation(this.textureLocation);
+        m.setOverlayLocation(this.overlayLocation);
         m.setSize(this.size);
         return m;
     }
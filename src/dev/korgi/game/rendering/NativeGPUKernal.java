@@ -4,24 +4,29 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RecursiveAction;
 
 import javax.imageio.ImageIO;
 
 import dev.korgi.game.Game;
 import dev.korgi.game.entites.Entity;
+import dev.korgi.game.physics.LongChunkMap;
+import dev.korgi.game.physics.MaterialPalette;
+import dev.korgi.game.physics.VoxelChunk;
+import dev.korgi.game.physics.VoxelStore;
 import dev.korgi.game.physics.WorldStorage;
 import dev.korgi.jni.KorgiJNI;
+import dev.korgi.jni.RenderContext;
 import dev.korgi.json.JSONObject;
 import dev.korgi.math.Vector3;
 import dev.korgi.math.Vector4;
-import dev.korgi.math.VectorConstants;
 import dev.korgi.player.Player;
 import dev.korgi.utils.ClientSide;
+import dev.korgi.utils.LongHashSet;
 import dev.korgi.utils.Time;
 
 @ClientSide
@@ -91,10 +96,29 @@ public class NativeGPUKernal {
     }
 
     public static void execute(WorldStorage world, Camera camera) {
+        if (!cpu) {
+            packEntities(world.entities);
+        }
+        execute(world.voxels, camera);
+    }
+
+    /**
+     * Renders the store with the entity headers left by the last packEntities
+     * call.
+     */
+    public static void execute(VoxelStore store, Camera camera) {
         NativeGPUKernal.camera = camera;
         Time.startTimer();
-        precompute(world);
-        precomputeEntites(world);
+        passes = 0;
+        precompute(store);
+        if (!cpu) {
+            precomputeEntites();
+        }
+        if (passes != 0) {
+            context.setView(camera.position.toFloatArray(), camera.getForward().toFloatArray(),
+                    camera.getRight().toFloatArray(), camera.getUp().toFloatArray(), tanFov);
+            context.render(passes, pixels);
+        }
         Time.stopTimer("Warning High Kernal Latency: %f", 0.05);
     }
 
@@ -114,154 +138,477 @@ public class NativeGPUKernal {
     }
 
     public static int render_dist = 50;
-    private static final List<Voxel> voxels = new ArrayList<>();
-    private static final Vector3 min = new Vector3();
-    private static final Vector3 max = new Vector3();
+    /** Render the world with CPUKernal instead of the natives, entities are skipped. */
+    public static boolean cpu = false;
     private static float tanFov = -1;
 
-    private static void precompute(WorldStorage world) {
-        if (world.voxels.values().isEmpty()) {
-            Arrays.fill(pixels, 0xFF87CEEB);
+    private static final int EMPTY_CELL = -1;
+
+    private static VoxelStore attached;
+    private static final LongHashSet dirty = new LongHashSet();
+    private static boolean needsRebuild = true;
+    private static final VoxelStore.ChunkListener listener = new VoxelStore.ChunkListener() {
+        @Override
+        public void chunkChanged(long chunkKey) {
+            dirty.add(chunkKey);
+        }
+
+        @Override
+        public void cleared() {
+            needsRebuild = true;
+        }
+    };
+
+    private static boolean resident = true;
+    // null when the natives predate the render context, the array entry points are used then
+    private static RenderContext context;
+    private static boolean contextSupported = true;
+    private static int passes;
+    private static int[] uploadedAtlas;
+    private static int paletteCount;
+
+    private static int centerX, centerY, centerZ;
+    private static boolean gridValid;
+    private static int gcMinX, gcMinY, gcMinZ, gcMaxX, gcMaxY, gcMaxZ;
+    private static final int[] gridMin = new int[3];
+    private static final int[] gridSize = new int[3];
+    private static final int[] chunkSize = new int[3];
+
+    private static long[] ranges = new long[64];
+    private static int rangeCount;
+    private static long[] chunkRanges = new long[64];
+    private static int chunkRangeCount;
+
+    private static void attach(VoxelStore store) {
+        if (attached == store) {
+            return;
+        }
+        if (attached != null) {
+            attached.removeListener(listener);
+        }
+        attached = store;
+        store.addListener(listener);
+        paletteCount = 0;
+        needsRebuild = true;
+        dirty.clear();
+    }
+
+    private static void syncPalette(MaterialPalette palette) {
+        int count = palette.size();
+        if (count == paletteCount) {
+            return;
+        }
+        if (vcolor == null || vcolor.length < count) {
+            int cap = Math.max(count, vcolor == null ? 64 : vcolor.length * 2);
+            vcolor = vcolor == null ? new int[cap] : Arrays.copyOf(vcolor, cap);
+            opacity = opacity == null ? new float[cap] : Arrays.copyOf(opacity, cap);
+            textureLocation = textureLocation == null ? new int[cap] : Arrays.copyOf(textureLocation, cap);
+            overlayLocation = overlayLocation == null ? new int[cap] : Arrays.copyOf(overlayLocation, cap);
+        }
+        textureLocation[0] = -1;
+        overlayLocation[0] = -1;
+        for (int i = Math.max(1, paletteCount); i < count; i++) {
+            Material m = palette.get(i);
+            Integer tex = m.getTextureLocation();
+            Integer overlay = m.getOverlayLocation();
+            textureLocation[i] = tex == null ? -1 : tex;
+            overlayLocation[i] = overlay == null ? -1 : overlay;
+            if (textureLocation[i] == -1) {
+                Vector4 color = m.getColor();
+                vcolor[i] = rgbToARGB((float) color.x, (float) color.y, (float) color.z, 1);
+                opacity[i] = (float) m.getOpacity();
+            }
+        }
+        paletteCount = count;
+        if (resident) {
+            KorgiJNI.uploadPalette(count, vcolor, opacity, textureLocation, overlayLocation);
+        }
+    }
+
+    private static void rebuild(VoxelStore store) {
+        int r = (render_dist + VoxelChunk.MASK) >> VoxelChunk.SHIFT;
+        gatherChunks(store, r);
+
+        needsRebuild = false;
+        dirty.clear();
+        if (gatheredCount == 0) {
+            gridValid = false;
             return;
         }
 
-        min.copyFrom(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
-        max.copyFrom(Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE);
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+        for (int i = 0; i < gatheredCount; i++) {
+            long key = gatheredKeys[i];
+            int cx = VoxelStore.keyX(key), cy = VoxelStore.keyY(key), cz = VoxelStore.keyZ(key);
+            minX = Math.min(minX, cx);
+            minY = Math.min(minY, cy);
+            minZ = Math.min(minZ, cz);
+            maxX = Math.max(maxX, cx);
+            maxY = Math.max(maxY, cy);
+            maxZ = Math.max(maxZ, cz);
+        }
 
-        int radius = render_dist;
+        gcMinX = minX;
+        gcMinY = minY;
+        gcMinZ = minZ;
+        gcMaxX = maxX;
+        gcMaxY = maxY;
+        gcMaxZ = maxZ;
+
+        // one empty voxel of padding on every side, same as the old bounding box
+        gridMin[0] = (minX << VoxelChunk.SHIFT) - 1;
+        gridMin[1] = (minY << VoxelChunk.SHIFT) - 1;
+        gridMin[2] = (minZ << VoxelChunk.SHIFT) - 1;
+        gridSize[0] = ((maxX - minX + 1) << VoxelChunk.SHIFT) + 2;
+        gridSize[1] = ((maxY - minY + 1) << VoxelChunk.SHIFT) + 2;
+        gridSize[2] = ((maxZ - minZ + 1) << VoxelChunk.SHIFT) + 2;
+        for (int i = 0; i < 3; i++) {
+            chunkSize[i] = (gridSize[i] + 7) / 8;
+        }
 
-        Vector3 forward = camera.getForward();
+        int gridLength = gridSize[0] * gridSize[1] * gridSize[2];
+        if (voxelGrid == null || voxelGrid.length != gridLength)
+            voxelGrid = new int[gridLength];
 
-        Vector3 right = camera.getRight();
+        int chunkLength = chunkSize[0] * chunkSize[1] * chunkSize[2];
+        if (chunkGrid == null || chunkGrid.length != chunkLength)
+            chunkGrid = new int[chunkLength];
+        Arrays.fill(chunkGrid, 0);
 
-        Vector3 up = right.cross(forward).normalizeHere();
+        CPUKernal.pool.invoke(new Fill(true, 0, gridSize[2]));
+        CPUKernal.pool.invoke(new Fill(false, 0, gatheredCount));
+        Arrays.fill(gatheredChunks, 0, gatheredCount, null);
+
+        gridValid = true;
+        if (resident) {
+            KorgiJNI.uploadVoxelGrid(voxelGrid, gridMin, gridSize, chunkGrid, chunkSize);
+        }
+    }
 
-        voxels.clear();
-        if (world.voxels.values().size() < radius * radius * radius * 8) {
-            for (Voxel v : world.voxels.values()) {
-                double dx = v.position.x - camera.position.x;
-                double dy = v.position.y - camera.position.y;
-                double dz = v.position.z - camera.position.z;
-                if (Math.abs(dx) > radius || Math.abs(dy) > radius || Math.abs(dz) > radius)
+    private static long[] gatheredKeys = new long[64];
+    private static VoxelChunk[] gatheredChunks = new VoxelChunk[64];
+    private static int gatheredCount;
+
+    // occupied chunks within r chunks of the camera, walking whichever of the chunk map and the window is smaller
+    private static void gatherChunks(VoxelStore store, int r) {
+        gatheredCount = 0;
+        LongChunkMap chunks = store.chunks();
+        long side = 2L * r + 1;
+        if (chunks.capacity() < side * side * side) {
+            for (int slot = 0; slot < chunks.capacity(); slot++) {
+                VoxelChunk chunk = chunks.valueAt(slot);
+                if (chunk == null)
+                    continue;
+                long key = chunks.keyAt(slot);
+                if (Math.abs(VoxelStore.keyX(key) - centerX) > r || Math.abs(VoxelStore.keyY(key) - centerY) > r
+                        || Math.abs(VoxelStore.keyZ(key) - centerZ) > r)
                     continue;
-                int xv = (int) v.position.x;
-                int yv = (int) v.position.y;
-                int zv = (int) v.position.z;
-                if (xv < min.x)
-                    min.x = xv;
-                if (yv < min.y)
-                    min.y = yv;
-                if (zv < min.z)
-                    min.z = zv;
-                if (xv > max.x)
-                    max.x = xv;
-                if (yv > max.y)
-                    max.y = yv;
-                if (zv > max.z)
-                    max.z = zv;
-                voxels.add(v);
+                addGathered(key, chunk);
             }
-        } else {
-            for (int x = -radius; x < radius; x++) {
-                for (int y = -radius; y < radius; y++) {
-                    for (int z = -radius; z < radius; z++) {
-                        int xv = (int) camera.position.x + x;
-                        int yv = (int) camera.position.y + y;
-                        int zv = (int) camera.position.z + z;
-                        Voxel v = world.voxels.get(WorldStorage.voxelKey(xv, yv, zv));
-                        if (v == null)
-                            continue;
-
-                        if (xv < min.x)
-                            min.x = xv;
-                        if (yv < min.y)
-                            min.y = yv;
-                        if (zv < min.z)
-                            min.z = zv;
-                        if (xv > max.x)
-                            max.x = xv;
-                        if (yv > max.y)
-                            max.y = yv;
-                        if (zv > max.z)
-                            max.z = zv;
-                        voxels.add(v);
-                    }
+            return;
+        }
+        for (int cx = centerX - r; cx <= centerX + r; cx++) {
+            for (int cy = centerY - r; cy <= centerY + r; cy++) {
+                for (int cz = centerZ - r; cz <= centerZ + r; cz++) {
+                    VoxelChunk chunk = store.chunk(cx, cy, cz);
+                    if (chunk != null)
+                        addGathered(VoxelStore.chunkKey(cx, cy, cz), chunk);
                 }
             }
         }
+    }
 
-        if (voxels.isEmpty()) {
-            Arrays.fill(pixels, 0xFF87CEEB);
-            return;
+    private static void addGathered(long key, VoxelChunk chunk) {
+        if (gatheredCount == gatheredKeys.length) {
+            gatheredKeys = Arrays.copyOf(gatheredKeys, gatheredCount * 2);
+            gatheredChunks = Arrays.copyOf(gatheredChunks, gatheredCount * 2);
         }
+        gatheredKeys[gatheredCount] = key;
+        gatheredChunks[gatheredCount++] = chunk;
+    }
 
-        min.subtractFrom(VectorConstants.ONE);
-        max.addTo(VectorConstants.ONE);
-        Vector3 size = max.subtract(min).addTo(VectorConstants.ONE);
+    // clears z planes of the grid, then writes the gathered chunks, both split across the pool.
+    // chunks never share voxels so the writes need no locking
+    private static class Fill extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
 
-        if (tanFov < 0) {
-            tanFov = (float) Math.tan(Math.toRadians(camera.fov * 0.5f));
+        private final boolean clear;
+        private final int start, end;
+
+        Fill(boolean clear, int start, int end) {
+            this.clear = clear;
+            this.start = start;
+            this.end = end;
         }
 
-        int voxelCount = voxels.size();
+        @Override
+        protected void compute() {
+            if (end - start <= (clear ? 4 : 2)) {
+                int plane = gridSize[0] * gridSize[1];
+                for (int i = start; i < end; i++) {
+                    if (clear) {
+                        Arrays.fill(voxelGrid, i * plane, (i + 1) * plane, EMPTY_CELL);
+                        continue;
+                    }
+                    long key = gatheredKeys[i];
+                    writeChunk(VoxelStore.keyX(key), VoxelStore.keyY(key), VoxelStore.keyZ(key), gatheredChunks[i]);
+                }
+                return;
+            }
+            int mid = (start + end) >>> 1;
+            invokeAll(new Fill(clear, start, mid), new Fill(clear, mid, end));
+        }
+    }
 
-        Vector3 chunckSize = size.add(7).multiplyBy(1.0 / 8.0);
+    private static void writeChunk(int cx, int cy, int cz, VoxelChunk chunk) {
+        int sx = gridSize[0];
+        int sxy = sx * gridSize[1];
+        int bx = (cx << VoxelChunk.SHIFT) - gridMin[0];
+        int by = (cy << VoxelChunk.SHIFT) - gridMin[1];
+        int bz = (cz << VoxelChunk.SHIFT) - gridMin[2];
+        int csx = chunkSize[0];
+        int csxy = csx * chunkSize[1];
+        char[] cells = chunk == null ? null : chunk.cells();
+        for (int ly = 0; ly < VoxelChunk.SIZE; ly++) {
+            int y = by + ly;
+            for (int lz = 0; lz < VoxelChunk.SIZE; lz++) {
+                int z = bz + lz;
+                int row = bx + y * sx + z * sxy;
+                if (cells == null) {
+                    Arrays.fill(voxelGrid, row, row + VoxelChunk.SIZE, EMPTY_CELL);
+                    continue;
+                }
+                int src = VoxelChunk.localIndex(0, ly, lz);
+                int flags = (y / 8) * csx + (z / 8) * csxy;
+                for (int lx = 0; lx < VoxelChunk.SIZE; lx++) {
+                    char id = cells[src + lx];
+                    if (id == VoxelChunk.EMPTY) {
+                        voxelGrid[row + lx] = EMPTY_CELL;
+                        continue;
+                    }
+                    voxelGrid[row + lx] = id;
+                    // neighbouring chunks may set the same flag, they only ever write 1
+                    chunkGrid[(bx + lx) / 8 + flags] = 1;
+                }
+            }
+        }
+    }
 
-        if (chunkGrid == null || chunkGrid.length != (int) chunckSize.multiplyComp())
-            chunkGrid = new int[(int) chunckSize.multiplyComp()];
-        Arrays.fill(chunkGrid, 0);
+    private static void refreshChunkFlags(int cx, int cy, int cz) {
+        int sx = gridSize[0];
+        int sxy = sx * gridSize[1];
+        int x0 = ((cx << VoxelChunk.SHIFT) - gridMin[0]) / 8;
+        int y0 = ((cy << VoxelChunk.SHIFT) - gridMin[1]) / 8;
+        int z0 = ((cz << VoxelChunk.SHIFT) - gridMin[2]) / 8;
+        int x1 = ((cx << VoxelChunk.SHIFT) + VoxelChunk.MASK - gridMin[0]) / 8;
+        int y1 = ((cy << VoxelChunk.SHIFT) + VoxelChunk.MASK - gridMin[1]) / 8;
+        int z1 = ((cz << VoxelChunk.SHIFT) + VoxelChunk.MASK - gridMin[2]) / 8;
+        for (int rz = z0; rz <= z1; rz++) {
+            for (int ry = y0; ry <= y1; ry++) {
+                for (int rx = x0; rx <= x1; rx++) {
+                    int flag = 0;
+                    scan: for (int z = rz * 8; z < Math.min(rz * 8 + 8, gridSize[2]); z++) {
+                        for (int y = ry * 8; y < Math.min(ry * 8 + 8, gridSize[1]); y++) {
+                            int row = y * sx + z * sxy;
+                            for (int x = rx * 8; x < Math.min(rx * 8 + 8, sx); x++) {
+                                if (voxelGrid[row + x] != EMPTY_CELL) {
+                                    flag = 1;
+                                    break scan;
+                                }
+                            }
+                        }
+                    }
+                    chunkGrid[rx + ry * chunkSize[0] + rz * chunkSize[0] * chunkSize[1]] = flag;
+                }
+                int start = x0 + ry * chunkSize[0] + rz * chunkSize[0] * chunkSize[1];
+                addChunkRange(start, start + x1 - x0 + 1);
+            }
+        }
+    }
 
-        if (vcolor == null || vcolor.length != voxelCount) {
-            vcolor = new int[voxelCount];
-            opacity = new float[voxelCount];
-            textureLocation = new int[voxelCount];
-            overlayLocation = new int[voxelCount];
+    private static void applyDirty(VoxelStore store) {
+        int r = (render_dist + VoxelChunk.MASK) >> VoxelChunk.SHIFT;
+        rangeCount = 0;
+        chunkRangeCount = 0;
+        dirty.forEach(key -> {
+            if (needsRebuild)
+                return;
+            int cx = VoxelStore.keyX(key);
+            int cy = VoxelStore.keyY(key);
+            int cz = VoxelStore.keyZ(key);
+            if (Math.abs(cx - centerX) > r || Math.abs(cy - centerY) > r || Math.abs(cz - centerZ) > r)
+                return;
+            if (!gridValid || cx < gcMinX || cy < gcMinY || cz < gcMinZ || cx > gcMaxX || cy > gcMaxY
+                    || cz > gcMaxZ) {
+                needsRebuild = true;
+                return;
+            }
+            writeChunk(cx, cy, cz, store.chunk(cx, cy, cz));
+            refreshChunkFlags(cx, cy, cz);
+
+            int sx = gridSize[0];
+            int sxy = sx * gridSize[1];
+            int x = (cx << VoxelChunk.SHIFT) - gridMin[0];
+            int y = (cy << VoxelChunk.SHIFT) - gridMin[1];
+            int z = (cz << VoxelChunk.SHIFT) - gridMin[2];
+            int start = x + y * sx + z * sxy;
+            int end = (x + VoxelChunk.MASK) + (y + VoxelChunk.MASK) * sx + (z + VoxelChunk.MASK) * sxy + 1;
+            ranges = addRange(ranges, rangeCount++, start, end);
+        });
+        dirty.clear();
+
+        if (needsRebuild) {
+            rebuild(store);
+            return;
+        }
+        if (resident) {
+            flushRanges(ranges, rangeCount, true);
+            flushRanges(chunkRanges, chunkRangeCount, false);
         }
+    }
 
-        if (voxelGrid == null || voxelGrid.length != (int) size.multiplyComp())
-            voxelGrid = new int[(int) size.multiplyComp()];
+    private static void addChunkRange(int start, int end) {
+        chunkRanges = addRange(chunkRanges, chunkRangeCount++, start, end);
+    }
 
-        Arrays.fill(voxelGrid, -1);
-        for (int i = 0; i < voxelCount; i++) {
-            Voxel v = voxels.get(i);
-            Vector3 g = v.position.subtract(min);
+    private static long[] addRange(long[] into, int index, int start, int end) {
+        if (index >= into.length)
+            into = Arrays.copyOf(into, into.length * 2);
+        into[index] = ((long) start << 32) | end;
+        return into;
+    }
 
-            if (g.x < 0 || g.x >= size.x ||
-                    g.y < 0 || g.y >= size.y ||
-                    g.z < 0 || g.z >= size.z)
+    private static void flushRanges(long[] list, int count, boolean voxels) {
+        if (count == 0)
+            return;
+        Arrays.sort(list, 0, count);
+        int start = (int) (list[0] >>> 32);
+        int end = (int) list[0];
+        for (int i = 1; i <= count; i++) {
+            if (i < count && (int) (list[i] >>> 32) <= end) {
+                end = Math.max(end, (int) list[i]);
                 continue;
+            }
+            if (voxels) {
+                KorgiJNI.patchVoxelGrid(voxelGrid, start, end - start);
+            } else {
+                KorgiJNI.patchChunkGrid(chunkGrid, start, end - start);
+            }
+            if (i < count) {
+                start = (int) (list[i] >>> 32);
+                end = (int) list[i];
+            }
+        }
+    }
 
-            textureLocation[i] = v.getMaterial().getTextureLocation();
-            overlayLocation[i] = v.getMaterial().getOverlayLocation();
-            if (textureLocation[i] == -1) {
-                Vector4 color = v.getMaterial().getColor();
-                vcolor[i] = rgbToARGB((float) color.x, (float) color.y, (float) color.z, 1);
-                opacity[i] = (float) v.getMaterial().getOpacity();
+    private static void syncAtlas() {
+        int[] atlas = textureAtlas.getAtlas();
+        if (atlas == uploadedAtlas)
+            return;
+        try {
+            KorgiJNI.uploadTextureAtlas(atlas);
+        } catch (UnsatisfiedLinkError e) {
+            // natives built before the resident entry points, keep uploading everything per frame
+            resident = false;
+            System.out.println("Resident world upload unavailable, falling back to full uploads");
+        }
+        uploadedAtlas = atlas;
+    }
+
+    private static void syncContext() {
+        if (context == null && contextSupported) {
+            try {
+                RenderContext created = new RenderContext(RenderContext.jni(), path, path2);
+                created.resize(width, height);
+                created.ensureRegistered();
+                context = created;
+                // models packed before this still have to reach the context
+                if (totalVoxels > 0) {
+                    context.putModels(bvPositions, bvSizes, bvColors, bvOpacities, bvTextureIds, 0, totalVoxels,
+                            bvhMins, bvhMaxs, bvhLinks, 0, totalBvhNodes);
+                }
+            } catch (UnsatisfiedLinkError e) {
+                contextSupported = false;
+                System.out.println("Render context unavailable, passing scene arrays per frame");
             }
+        }
+        if (context != null) {
+            context.resize(width, height);
+        }
+    }
+
+    private static void precompute(VoxelStore store) {
+        attach(store);
+        if (store.isEmpty()) {
+            Arrays.fill(pixels, 0xFF87CEEB);
+            return;
+        }
+
+        Vector3 forward = camera.getForward();
+        Vector3 right = camera.getRight();
+        Vector3 up = right.cross(forward).normalizeHere();
+
+        if (tanFov < 0) {
+            tanFov = (float) Math.tan(Math.toRadians(camera.fov * 0.5f));
+        }
+
+        if (cpu)
+            resident = false;
+        else if (resident)
+            syncAtlas();
+        if (resident)
+            syncContext();
+        syncPalette(store.palette());
+
+        int cx = (int) Math.floor(camera.position.x) >> VoxelChunk.SHIFT;
+        int cy = (int) Math.floor(camera.position.y) >> VoxelChunk.SHIFT;
+        int cz = (int) Math.floor(camera.position.z) >> VoxelChunk.SHIFT;
+        if (cx != centerX || cy != centerY || cz != centerZ) {
+            centerX = cx;
+            centerY = cy;
+            centerZ = cz;
+            needsRebuild = true;
+        }
 
-            voxelGrid[(int) ((int) g.x + (int) g.y * (int) size.x + (int) g.z * (int) size.x * (int) size.y)] = i;
+        if (needsRebuild) {
+            rebuild(store);
+        } else if (!dirty.isEmpty()) {
+            applyDirty(store);
+        }
 
-            int cx = (int) g.x / 8;
-            int cy = (int) g.y / 8;
-            int cz = (int) g.z / 8;
-            chunkGrid[cx + cy * (int) chunckSize.x + cz * (int) chunckSize.x * (int) chunckSize.y] = 1;
+        if (!gridValid) {
+            Arrays.fill(pixels, 0xFF87CEEB);
+            return;
         }
 
         Time.startTimer();
-        KorgiJNI.executeKernal(pixels, width, height, camera.position.toFloatArray(), forward.toFloatArray(),
-                right.toFloatArray(),
-                up.toFloatArray(), tanFov,
-                voxelCount,
-                vcolor, opacity,
-                min.toIntArray(),
-                size.toIntArray(),
-                voxelGrid,
-                path,
-                textureLocation,
-                overlayLocation,
-                textureAtlas.getAtlas(),
-                chunkGrid,
-                chunckSize.toIntArray());
+        if (cpu) {
+            CPUKernal.executeKernal(pixels, width, height, camera.position.toFloatArray(), forward.toFloatArray(),
+                    right.toFloatArray(), up.toFloatArray(), tanFov, paletteCount, vcolor, opacity, gridMin,
+                    gridSize, voxelGrid, textureLocation, overlayLocation, textureAtlas.getAtlas(), chunkGrid,
+                    chunkSize);
+        } else if (resident && context != null) {
+            passes |= RenderContext.WORLD;
+        } else if (resident) {
+            KorgiJNI.executeResidentKernal(pixels, width, height, camera.position.toFloatArray(),
+                    forward.toFloatArray(), right.toFloatArray(), up.toFloatArray(), tanFov, path);
+        } else {
+            KorgiJNI.executeKernal(pixels, width, height, camera.position.toFloatArray(), forward.toFloatArray(),
+                    right.toFloatArray(),
+                    up.toFloatArray(), tanFov,
+                    paletteCount,
+                    vcolor, opacity,
+                    gridMin,
+                    gridSize,
+                    voxelGrid,
+                    path,
+                    textureLocation,
+                    overlayLocation,
+                    textureAtlas.getAtlas(),
+                    chunkGrid,
+                    chunkSize);
+        }
         Time.stopTimer("High Render Latency: %f", 0.05);
     }
 
@@ -270,207 +617,142 @@ public class NativeGPUKernal {
     private static int[] entityVoxelOffsets;
     private static int[] entityBvhOffsets;
     private static float[] entityRadii;
-    private static float[] bvPositions;
-    private static float[] bvSizes;
-    private static int[] bvColors;
-    private static float[] bvOpacities;
-    private static int[] bvTextureIds;
-    private static float[] bvhMins;
-    private static float[] bvhMaxs;
-    private static int[] bvhLinks;
-
-    private static int buildBVH(int[] localIndices, int start, int end,
-            float[] bvPositions, float[] bvSizes, int globalOffset,
-            List<float[]> mins, List<float[]> maxs, List<int[]> links) {
-        int nodeIdx = mins.size();
-
-        if (end - start == 1) {
-            int gi = globalOffset + localIndices[start];
-            float x = bvPositions[gi * 3], y = bvPositions[gi * 3 + 1], z = bvPositions[gi * 3 + 2];
-            float s = bvSizes[gi] * 0.5f;
-            mins.add(new float[] { x - s, y - s, z - s });
-            maxs.add(new float[] { x + s, y + s, z + s });
-            links.add(new int[] { -1, -1, localIndices[start] });
-            return nodeIdx;
-        }
-
-        float aMinX = Float.MAX_VALUE, aMinY = Float.MAX_VALUE, aMinZ = Float.MAX_VALUE;
-        float aMaxX = -Float.MAX_VALUE, aMaxY = -Float.MAX_VALUE, aMaxZ = -Float.MAX_VALUE;
-        float cMinX = Float.MAX_VALUE, cMinY = Float.MAX_VALUE, cMinZ = Float.MAX_VALUE;
-        float cMaxX = -Float.MAX_VALUE, cMaxY = -Float.MAX_VALUE, cMaxZ = -Float.MAX_VALUE;
-
-        for (int i = start; i < end; i++) {
-            int gi = globalOffset + localIndices[i];
-            float x = bvPositions[gi * 3], y = bvPositions[gi * 3 + 1], z = bvPositions[gi * 3 + 2];
-            float s = bvSizes[gi] * 0.5f;
-            aMinX = Math.min(aMinX, x - s);
-            aMaxX = Math.max(aMaxX, x + s);
-            aMinY = Math.min(aMinY, y - s);
-            aMaxY = Math.max(aMaxY, y + s);
-            aMinZ = Math.min(aMinZ, z - s);
-            aMaxZ = Math.max(aMaxZ, z + s);
-            cMinX = Math.min(cMinX, x);
-            cMaxX = Math.max(cMaxX, x);
-            cMinY = Math.min(cMinY, y);
-            cMaxY = Math.max(cMaxY, y);
-            cMinZ = Math.min(cMinZ, z);
-            cMaxZ = Math.max(cMaxZ, z);
-        }
-
-        float dx = cMaxX - cMinX, dy = cMaxY - cMinY, dz = cMaxZ - cMinZ;
-        final int axis = (dx >= dy && dx >= dz) ? 0 : (dy >= dz) ? 1 : 2;
-
-        Integer[] sub = new Integer[end - start];
-        for (int i = 0; i < sub.length; i++)
-            sub[i] = localIndices[start + i];
-        Arrays.sort(sub, (a, b) -> Float.compare(bvPositions[(globalOffset + a) * 3 + axis],
-                bvPositions[(globalOffset + b) * 3 + axis]));
-        for (int i = 0; i < sub.length; i++)
-            localIndices[start + i] = sub[i];
-
-        mins.add(new float[] { aMinX, aMinY, aMinZ });
-        maxs.add(new float[] { aMaxX, aMaxY, aMaxZ });
-        links.add(new int[] { -1, -1, -1 });
-
-        int left = buildBVH(localIndices, start, (start + end) / 2, bvPositions, bvSizes, globalOffset, mins, maxs,
-                links);
-        int right = buildBVH(localIndices, (start + end) / 2, end, bvPositions, bvSizes, globalOffset, mins, maxs,
-                links);
-
-        links.get(nodeIdx)[0] = left;
-        links.get(nodeIdx)[1] = right;
-
-        return nodeIdx;
-    }
-
-    private static void precomputeEntites(WorldStorage world) {
-        List<Entity> entities = world.entities;
-        Player client = Game.getClient();
-        entities.remove(client);
-
-        if (entities.isEmpty()) {
-            return;
+    private static int entityCount;
+
+    // every model drawn so far, packed one after another. instances point at their model's range
+    private static float[] bvPositions = new float[0];
+    private static float[] bvSizes = new float[0];
+    private static int[] bvColors = new int[0];
+    private static float[] bvOpacities = new float[0];
+    private static int[] bvTextureIds = new int[0];
+    private static float[] bvhMins = new float[0];
+    private static float[] bvhMaxs = new float[0];
+    private static int[] bvhLinks = new int[0];
+    private static int totalVoxels;
+    private static int totalBvhNodes;
+
+    private static void pack(EntityModel model) {
+        int voxels = totalVoxels + model.voxelCount;
+        if (bvSizes.length < voxels) {
+            int cap = Math.max(voxels, bvSizes.length * 2);
+            bvPositions = Arrays.copyOf(bvPositions, cap * 3);
+            bvSizes = Arrays.copyOf(bvSizes, cap);
+            bvColors = Arrays.copyOf(bvColors, cap);
+            bvOpacities = Arrays.copyOf(bvOpacities, cap);
+            bvTextureIds = Arrays.copyOf(bvTextureIds, cap);
         }
-
-        int totalVoxels = 0;
-
-        for (Entity entity : entities) {
-            totalVoxels += entity.getBody().size();
+        int nodes = totalBvhNodes + model.nodeCount;
+        if (bvhLinks.length < nodes * 3) {
+            int cap = Math.max(nodes, bvhLinks.length / 3 * 2);
+            bvhMins = Arrays.copyOf(bvhMins, cap * 3);
+            bvhMaxs = Arrays.copyOf(bvhMaxs, cap * 3);
+            bvhLinks = Arrays.copyOf(bvhLinks, cap * 3);
         }
 
-        int entityCount = entities.size();
-
-        if (entityPositions == null || entityPositions.length != entityCount * 3) {
-            entityPositions = new float[entityCount * 3];
-            entityRotations = new float[entityCount * 9];
-            entityVoxelOffsets = new int[entityCount * 2];
-            entityBvhOffsets = new int[entityCount];
-            entityRadii = new float[entityCount];
+        System.arraycopy(model.positions, 0, bvPositions, totalVoxels * 3, model.voxelCount * 3);
+        System.arraycopy(model.sizes, 0, bvSizes, totalVoxels, model.voxelCount);
+        System.arraycopy(model.colors, 0, bvColors, totalVoxels, model.voxelCount);
+        System.arraycopy(model.opacities, 0, bvOpacities, totalVoxels, model.voxelCount);
+        System.arraycopy(model.textureIds, 0, bvTextureIds, totalVoxels, model.voxelCount);
+        System.arraycopy(model.mins, 0, bvhMins, totalBvhNodes * 3, model.nodeCount * 3);
+        System.arraycopy(model.maxs, 0, bvhMaxs, totalBvhNodes * 3, model.nodeCount * 3);
+        // child links are absolute in the shader, leaf voxel indices stay relative to the entity's voxels
+        for (int i = 0; i < model.nodeCount * 3; i += 3) {
+            int left = model.links[i];
+            int o = totalBvhNodes * 3 + i;
+            bvhLinks[o] = left == -1 ? -1 : left + totalBvhNodes;
+            bvhLinks[o + 1] = left == -1 ? -1 : model.links[i + 1] + totalBvhNodes;
+            bvhLinks[o + 2] = model.links[i + 2];
         }
 
-        if (bvPositions == null || bvPositions.length < totalVoxels * 3) {
-            bvPositions = new float[totalVoxels * 3];
-            bvSizes = new float[totalVoxels];
-            bvColors = new int[totalVoxels];
-            bvOpacities = new float[totalVoxels];
-            bvTextureIds = new int[totalVoxels];
+        if (context != null) {
+            context.putModels(bvPositions, bvSizes, bvColors, bvOpacities, bvTextureIds, totalVoxels,
+                    model.voxelCount, bvhMins, bvhMaxs, bvhLinks, totalBvhNodes, model.nodeCount);
         }
 
-        int voxelCursor = 0;
+        model.voxelOffset = totalVoxels;
+        model.nodeOffset = totalBvhNodes;
+        totalVoxels = voxels;
+        totalBvhNodes = nodes;
+    }
 
-        for (int i = 0; i < entityCount; i++) {
-            Entity entity = entities.get(i);
-            List<Voxel> bodyVoxels = entity.getBody();
-
-            int ep = i * 3;
-            Vector3 ePos = entity.getPosition();
-            entityPositions[ep] = (float) ePos.x;
-            entityPositions[ep + 1] = (float) ePos.y;
-            entityPositions[ep + 2] = (float) ePos.z;
-
-            float[] rot = entity.getRotationMatrix();
-            int rp = i * 9;
-            System.arraycopy(rot, 0, entityRotations, rp, 9);
-
-            entityVoxelOffsets[i * 2] = voxelCursor;
-            entityVoxelOffsets[i * 2 + 1] = bodyVoxels.size();
-
-            float maxDist = 0;
-            for (Voxel bv : bodyVoxels) {
-                float d = (float) bv.position.length() + (float) bv.getMaterial().getSize() * 0.5f;
-                if (d > maxDist)
-                    maxDist = d;
-
-                Material mat = bv.getMaterial();
-                int vp = voxelCursor * 3;
-                Vector3 bvPos = bv.position;
-                bvPositions[vp] = (float) bvPos.x;
-                bvPositions[vp + 1] = (float) bvPos.y;
-                bvPositions[vp + 2] = (float) bvPos.z;
-
-                bvSizes[voxelCursor] = (float) mat.getSize();
-
-                int texLoc = mat.getTextureLocation();
-                bvTextureIds[voxelCursor] = texLoc;
-
-                if (texLoc == -1) {
-                    Vector4 color = mat.getColor();
-                    bvColors[voxelCursor] = rgbToARGB(
-                            (float) color.x,
-                            (float) color.y,
-                            (float) color.z,
-                            1);
-                } else {
-                    bvColors[voxelCursor] = -1;
-                }
+    /**
+     * Writes the per instance headers for the entities, packing any model not
+     * seen before. The local client is left out. Returns the number of
+     * entities written.
+     */
+    public static int packEntities(List<Entity> entities) {
+        Player client = Game.getClient();
+        int count = entities.size();
+        ensureEntityCapacity(count);
 
-                bvOpacities[voxelCursor] = (float) mat.getOpacity();
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            Entity entity = entities.get(i);
+            if (entity == client)
+                continue;
+            EntityModel model = EntityModel.of(entity);
+            if (model.voxelCount == 0)
+                continue;
 
-                voxelCursor++;
-            }
-            entityRadii[i] = maxDist;
+            Vector3 ePos = entity.getRenderPosition();
+            entityPositions[n * 3] = (float) ePos.x;
+            entityPositions[n * 3 + 1] = (float) ePos.y;
+            entityPositions[n * 3 + 2] = (float) ePos.z;
+            System.arraycopy(entity.getRotationMatrix(), 0, entityRotations, n * 9, 9);
+            putModel(n++, model);
         }
+        entityCount = n;
+        return n;
+    }
 
-        List<float[]> bvhMinsList = new ArrayList<>();
-        List<float[]> bvhMaxsList = new ArrayList<>();
-        List<int[]> bvhLinksList = new ArrayList<>();
-
-        voxelCursor = 0;
-        for (int i = 0; i < entityCount; i++) {
-            List<Voxel> bodyVoxels = entities.get(i).getBody();
-            int voxelCount = bodyVoxels.size();
-            entityBvhOffsets[i] = bvhMinsList.size();
-
-            if (voxelCount > 0) {
-                int[] localIndices = new int[voxelCount];
-                for (int j = 0; j < voxelCount; j++)
-                    localIndices[j] = j;
-                buildBVH(localIndices, 0, voxelCount, bvPositions, bvSizes, voxelCursor, bvhMinsList, bvhMaxsList,
-                        bvhLinksList);
-            }
+    /**
+     * Same as {@link #packEntities(List)} for instances captured elsewhere,
+     * with three position and nine rotation floats per model.
+     */
+    public static int packEntities(EntityModel[] models, float[] positions, float[] rotations, int count) {
+        ensureEntityCapacity(count);
+        System.arraycopy(positions, 0, entityPositions, 0, count * 3);
+        System.arraycopy(rotations, 0, entityRotations, 0, count * 9);
+        for (int i = 0; i < count; i++) {
+            putModel(i, models[i]);
+        }
+        entityCount = count;
+        return count;
+    }
 
-            voxelCursor += voxelCount;
+    private static void ensureEntityCapacity(int count) {
+        if (entityPositions == null || entityRadii.length < count) {
+            int cap = Math.max(count, 16);
+            entityPositions = new float[cap * 3];
+            entityRotations = new float[cap * 9];
+            entityVoxelOffsets = new int[cap * 2];
+            entityBvhOffsets = new int[cap];
+            entityRadii = new float[cap];
         }
+    }
 
-        int totalBvhNodes = bvhMinsList.size();
-        if (bvhMins == null || bvhMins.length < totalBvhNodes * 3) {
-            bvhMins = new float[totalBvhNodes * 3];
-            bvhMaxs = new float[totalBvhNodes * 3];
-            bvhLinks = new int[totalBvhNodes * 3];
+    private static void putModel(int n, EntityModel model) {
+        if (model.voxelOffset < 0)
+            pack(model);
+        entityVoxelOffsets[n * 2] = model.voxelOffset;
+        entityVoxelOffsets[n * 2 + 1] = model.voxelCount;
+        entityBvhOffsets[n] = model.nodeOffset;
+        entityRadii[n] = model.radius;
+    }
+
+    private static void precomputeEntites() {
+        if (entityCount == 0) {
+            return;
         }
 
-        for (int i = 0; i < totalBvhNodes; i++) {
-            float[] mn = bvhMinsList.get(i), mx = bvhMaxsList.get(i);
-            int[] lk = bvhLinksList.get(i);
-            bvhMins[i * 3] = mn[0];
-            bvhMins[i * 3 + 1] = mn[1];
-            bvhMins[i * 3 + 2] = mn[2];
-            bvhMaxs[i * 3] = mx[0];
-            bvhMaxs[i * 3 + 1] = mx[1];
-            bvhMaxs[i * 3 + 2] = mx[2];
-            bvhLinks[i * 3] = lk[0];
-            bvhLinks[i * 3 + 1] = lk[1];
-            bvhLinks[i * 3 + 2] = lk[2];
+        if (context != null && resident) {
+            context.putHeaders(entityPositions, entityRotations, entityRadii, entityVoxelOffsets, entityBvhOffsets,
+                    entityCount);
+            // without a world pass this frame the sky was filled in on the java side
+            passes |= (passes & RenderContext.WORLD) != 0 ? RenderContext.ENTITIES
+                    : RenderContext.ENTITIES | RenderContext.UPLOAD_PIXELS;
+            return;
         }
 
         Time.startTimer();
@@ -500,7 +782,6 @@ public class NativeGPUKernal {
                 textureAtlas.getAtlas(),
                 path2);
         Time.stopTimer("High Entity render: %f", 0.02f);
-        entities.add(client);
     }
 
 }
@@ -0,0 +1,350 @@
+package dev.korgi.game.rendering;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import dev.korgi.game.Game;
+import dev.korgi.game.entites.Entity;
+import dev.korgi.game.physics.LongChunkMap;
+import dev.korgi.game.physics.MaterialPalette;
+import dev.korgi.game.physics.VoxelChunk;
+import dev.korgi.game.physics.VoxelStore;
+import dev.korgi.game.physics.WorldStorage;
+import dev.korgi.math.Vector3;
+import dev.korgi.player.Player;
+import dev.korgi.utils.ClientSide;
+import dev.korgi.utils.LongHashSet;
+
+/**
+ * Runs NativeGPUKernal on its own thread so the game loop does not wait on it.
+ * The game thread publishes a frame, a copy of the camera, the world version
+ * and copies of the chunks changed since the last frame, and the render thread
+ * applies it to its own copy of the world. While one frame is in the kernal the
+ * next one is being captured. Finished frames land in a back buffer that is
+ * swapped to the front and copied into the screen.
+ */
+@ClientSide
+public class RenderPipeline {
+
+    private static class Frame {
+        final Camera camera = new Camera();
+        long version;
+        int width, height;
+
+        // a different store, its palette ids start over
+        boolean reset;
+        boolean cleared;
+        long[] keys = new long[64];
+        // copies owned by the render thread once published, null for removed chunks
+        VoxelChunk[] chunks = new VoxelChunk[64];
+        int chunkCount;
+        final List<Material> materials = new ArrayList<>();
+
+        EntityModel[] models = new EntityModel[16];
+        float[] positions = new float[16 * 3];
+        float[] rotations = new float[16 * 9];
+        int entityCount;
+
+        void addChunk(long key, VoxelChunk chunk) {
+            if (chunkCount == keys.length) {
+                keys = Arrays.copyOf(keys, chunkCount * 2);
+                chunks = Arrays.copyOf(chunks, chunkCount * 2);
+            }
+            keys[chunkCount] = key;
+            chunks[chunkCount++] = chunk == null ? null : chunk.copy();
+        }
+
+        void addEntity(EntityModel model, Vector3 position, float[] rotation) {
+            if (entityCount == models.length) {
+                models = Arrays.copyOf(models, entityCount * 2);
+                positions = Arrays.copyOf(positions, entityCount * 2 * 3);
+                rotations = Arrays.copyOf(rotations, entityCount * 2 * 9);
+            }
+            positions[entityCount * 3] = (float) position.x;
+            positions[entityCount * 3 + 1] = (float) position.y;
+            positions[entityCount * 3 + 2] = (float) position.z;
+            System.arraycopy(rotation, 0, rotations, entityCount * 9, 9);
+            models[entityCount++] = model;
+        }
+    }
+
+    private static final Object lock = new Object();
+    private static final Frame[] frames = { new Frame(), new Frame() };
+    private static int next;
+    private static Frame pending;
+    private static boolean busy;
+    private static Thread thread;
+    private static volatile boolean running;
+
+    private static int[] front;
+    private static int[] back;
+    private static boolean fresh;
+    private static long presentedVersion = -1;
+
+    // game thread side, what has been sent so far
+    private static VoxelStore source;
+    private static final LongHashSet dirty = new LongHashSet();
+    private static boolean sourceCleared;
+    private static long publishedVersion = -1;
+    private static int publishedPalette;
+    private static final VoxelStore.ChunkListener listener = new VoxelStore.ChunkListener() {
+        @Override
+        public void chunkChanged(long chunkKey) {
+            dirty.add(chunkKey);
+        }
+
+        @Override
+        public void cleared() {
+            sourceCleared = true;
+            dirty.clear();
+        }
+    };
+
+    // render thread side
+    private static VoxelStore mirror = new VoxelStore();
+    private static long appliedVersion = -1;
+
+    public static boolean isRunning() {
+        return running;
+    }
+
+    public static void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(RenderPipeline::run, "korgi-render");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the render thread after the frame it is on. The next start sends
+     * the whole world again.
+     */
+    public static void stop() {
+        if (!running) {
+            return;
+        }
+        synchronized (lock) {
+            running = false;
+            lock.notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+        pending = null;
+        fresh = false;
+        if (source != null) {
+            source.removeListener(listener);
+            source = null;
+        }
+    }
+
+    /**
+     * Captures the next frame for the render thread. Returns false when the
+     * previous one has not been picked up yet, changes then wait for the next
+     * publish.
+     */
+    public static boolean publish(WorldStorage world, Camera camera, int width, int height) {
+        synchronized (lock) {
+            if (pending != null) {
+                return false;
+            }
+        }
+        Frame frame = frames[next];
+        frame.camera.position.copyFrom(camera.position);
+        frame.camera.rotation.copyFrom(camera.rotation);
+        frame.camera.fov = camera.fov;
+        frame.width = width;
+        frame.height = height;
+        captureWorld(world.voxels, frame);
+        captureEntities(world.entities, frame);
+
+        synchronized (lock) {
+            pending = frame;
+            lock.notifyAll();
+        }
+        next ^= 1;
+        return true;
+    }
+
+    private static void captureWorld(VoxelStore store, Frame frame) {
+        frame.reset = false;
+        frame.cleared = false;
+        frame.chunkCount = 0;
+        frame.materials.clear();
+        if (store != source) {
+            if (source != null) {
+                source.removeListener(listener);
+            }
+            source = store;
+            store.addListener(listener);
+            sourceCleared = true;
+            publishedPalette = 0;
+            frame.reset = true;
+        }
+        frame.version = store.version();
+        if (frame.version == publishedVersion && !sourceCleared) {
+            return;
+        }
+
+        MaterialPalette palette = store.palette();
+        for (int i = Math.max(1, publishedPalette); i < palette.size(); i++) {
+            frame.materials.add(palette.get(i));
+        }
+        publishedPalette = palette.size();
+
+        if (sourceCleared) {
+            frame.cleared = true;
+            LongChunkMap chunks = store.chunks();
+            for (int slot = 0; slot < chunks.capacity(); slot++) {
+                VoxelChunk chunk = chunks.valueAt(slot);
+                if (chunk != null) {
+                    frame.addChunk(chunks.keyAt(slot), chunk);
+                }
+            }
+        } else {
+            dirty.forEach(key -> frame.addChunk(key, store.chunks().get(key)));
+        }
+        dirty.clear();
+        sourceCleared = false;
+        publishedVersion = frame.version;
+    }
+
+    private static void captureEntities(List<Entity> entities, Frame frame) {
+        frame.entityCount = 0;
+        if (NativeGPUKernal.cpu) {
+            return;
+        }
+        Player client = Game.getClient();
+        for (int i = 0; i < entities.size(); i++) {
+            Entity entity = entities.get(i);
+            if (entity == client)
+                continue;
+            EntityModel model = EntityModel.of(entity);
+            if (model.voxelCount == 0)
+                continue;
+            frame.addEntity(model, entity.getRenderPosition(), entity.getRotationMatrix());
+        }
+    }
+
+    /**
+     * Copies the newest finished frame into the pixels. Returns false when
+     * there is none of that size yet, the pixels are left alone then.
+     */
+    public static boolean present(int[] into) {
+        synchronized (lock) {
+            if (front == null || front.length != into.length) {
+                return false;
+            }
+            System.arraycopy(front, 0, into, 0, into.length);
+            fresh = false;
+            return true;
+        }
+    }
+
+    /**
+     * Whether a frame finished since the last {@link #present}.
+     */
+    public static boolean hasFreshFrame() {
+        synchronized (lock) {
+            return fresh;
+        }
+    }
+
+    /**
+     * The world version of the last finished frame.
+     */
+    public static long presentedVersion() {
+        synchronized (lock) {
+            return presentedVersion;
+        }
+    }
+
+    /**
+     * Waits until everything published so far has been rendered.
+     */
+    public static void finish() throws InterruptedException {
+        synchronized (lock) {
+            while (running && (pending != null || busy)) {
+                lock.wait();
+            }
+        }
+    }
+
+    private static void run() {
+        while (true) {
+            Frame frame;
+            synchronized (lock) {
+                while (running && pending == null) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+                frame = pending;
+                pending = null;
+                busy = true;
+            }
+
+            try {
+                render(frame);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+
+            synchronized (lock) {
+                busy = false;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private static void render(Frame frame) {
+        if (frame.version != appliedVersion || frame.cleared) {
+            if (frame.reset) {
+                mirror = new VoxelStore();
+            } else if (frame.cleared) {
+                mirror.clear();
+            }
+            // ids line up because both palettes intern the same materials in the same order
+            for (int i = 0; i < frame.materials.size(); i++) {
+                mirror.palette().idOf(frame.materials.get(i));
+            }
+            for (int i = 0; i < frame.chunkCount; i++) {
+                mirror.putChunk(frame.keys[i], frame.chunks[i]);
+                frame.chunks[i] = null;
+            }
+            appliedVersion = frame.version;
+        }
+
+        int length = frame.width * frame.height;
+        if (back == null || back.length != length) {
+            back = new int[length];
+        }
+        NativeGPUKernal.resetSpecs(back, frame.width, frame.height);
+        if (!NativeGPUKernal.cpu) {
+            NativeGPUKernal.packEntities(frame.models, frame.positions, frame.rotations, frame.entityCount);
+        }
+        Arrays.fill(frame.models, 0, frame.entityCount, null);
+        NativeGPUKernal.execute(mirror, frame.camera);
+
+        synchronized (lock) {
+            int[] done = back;
+            back = front;
+            front = done;
+            fresh = true;
+            presentedVersion = frame.version;
+        }
+    }
+
+}
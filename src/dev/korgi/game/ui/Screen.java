@@ -11,11 +11,13 @@ import java.util.List;
 import dev.korgi.game.Game;
 import dev.korgi.game.rendering.Graphics;
 import dev.korgi.game.ui.game.InfoDisplay;
+import dev.korgi.game.ui.game.Inventory;
 import dev.korgi.game.ui.pregame.ConfigGUI;
 import dev.korgi.game.ui.pregame.LoadingGUI;
 import dev.korgi.game.ui.pregame.SelectorGUI;
 import dev.korgi.player.Player;
 import dev.korgi.utils.ClientSide;
+import dev.korgi.utils.ErrorHandler;
 import dev.korgi.utils.StyleConstants;
 import processing.core.PApplet;
 import processing.core.PFont;
@@ -53,6 +55,7 @@ public final class Screen extends PApplet {
     public SelectorGUI selector;
     public LoadingGUI loadingScreen;
     public InfoDisplay infoDisplay;
+    public Inventory hotbar;
 
     @Override
     public void settings() {
@@ -122,15 +125,16 @@ public final class Screen extends PApplet {
         loadingScreen = new LoadingGUI();
         selector = new SelectorGUI();
         infoDisplay = new InfoDisplay();
+        hotbar = new Inventory();
         selector.show();
     }
 
     @Override
     public void draw() {
-        if (Game.isInitialized()) {
-            if (Game.isClient) {
-                handleMouseMovement();
-            }
+        ErrorHandler.showPending();
+        // the server ticks on Game.scheduler's thread
+        if (Game.isInitialized() && Game.isClient) {
+            handleMouseMovement();
             Game.loop();
         }
 
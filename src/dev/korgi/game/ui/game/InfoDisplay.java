@@ -1,9 +1,11 @@
 package dev.korgi.game.ui.game;
 
 import dev.korgi.game.Game;
+import dev.korgi.game.ServerScheduler;
 import dev.korgi.game.ui.GUI;
 import dev.korgi.json.JSONObject;
 import dev.korgi.networking.NetworkStream;
+import dev.korgi.utils.AllocationTracker;
 import dev.korgi.utils.StyleConstants;
 import processing.core.PApplet;
 
@@ -64,6 +66,21 @@ public class InfoDisplay extends GUI {
         loadStyle("info-text");
         screen.text("FPS: " + (int) screen.frameRate, 16, 16);
         screen.text("Sync: " + Math.floor((NetworkStream.packetCount / NetworkStream.frameCount) * 100) + "%", 16, 32);
+        ServerScheduler scheduler = Game.scheduler;
+        if (scheduler != null) {
+            screen.text("TPS: " + scheduler.tickRate() + "  late: " + scheduler.ticksLate() + "  skipped: "
+                    + scheduler.ticksSkipped(), 16, 48);
+            screen.text(String.format("Tick: %.2fms mean  %.2fms p99", scheduler.meanTickMs(), scheduler.p99TickMs()),
+                    16, 64);
+        }
+        if (AllocationTracker.isSupported()) {
+            int y = scheduler != null ? 80 : 48;
+            screen.text("Alloc: " + AllocationTracker.format(AllocationTracker.lastTickTotal()) + "/tick", 16, y);
+            for (int i = 0; i < AllocationTracker.NAMES.length; i++) {
+                screen.text("  " + AllocationTracker.NAMES[i] + ": "
+                        + AllocationTracker.format(AllocationTracker.lastTick(i)), 16, y + 16 * (i + 1));
+            }
+        }
 
     }
 
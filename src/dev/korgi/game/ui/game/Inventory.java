@@ -1,81 +1,17 @@
 package dev.korgi.game.ui.game;
 
 import dev.korgi.game.items.Item;
+import dev.korgi.game.items.ItemSlots;
 import dev.korgi.game.ui.GUI;
 import dev.korgi.json.JSONObject;
 import processing.core.PApplet;
 
 public class Inventory extends GUI {
 
-    private Item[] items;
-    private int selected;
+    private ItemSlots slots = new ItemSlots();
 
-    public Inventory() {
-        this.items = new Item[9];
-    }
-
-    public Inventory(int size) {
-        this.items = new Item[size];
-    }
-
-    public void select(int val) {
-        selected = val;
-    }
-
-    public Item getSelected() {
-        return items[selected];
-    }
-
-    public int getSelectedIndex() {
-        return selected;
-    }
-
-    public boolean addToInventory(Item item) {
-        for (int i = 0; i < items.length; i++) {
-            if (items[i] == null) {
-                items[i] = item;
-                return true;
-            }
-        }
-        return false;
-    }
-
-    public boolean removeFromInventory(Item item) {
-        for (int i = 0; i < items.length; i++) {
-            if (items[i].internal_id.equals(item.internal_id)) {
-                items[i] = null;
-                return true;
-            }
-        }
-        return false;
-    }
-
-    public int totalCapacity() {
-        return items.length;
-    }
-
-    public int itemCount() {
-        int size = 0;
-        for (int i = 0; i < items.length; i++) {
-            if (items[i] != null) {
-                size++;
-            }
-        }
-        return size;
-    }
-
-    public void clear() {
-        for (int i = 0; i < items.length; i++) {
-            items[i] = null;
-        }
-    }
-
-    public Item get(int i) {
-        return items[i];
-    }
-
-    public Item[] getItems() {
-        return items;
+    public void setSlots(ItemSlots slots) {
+        this.slots = slots;
     }
 
     @Override
@@ -91,10 +27,11 @@ public class Inventory extends GUI {
         loadStyle("container");
         rect(startX - 12, y - 10, totalW + 24, slotSize + 20);
 
+        Item[] items = slots.getItems();
         loadStyle("slot");
         for (int i = 0; i < items.length; i++) {
             int x = startX + i * (slotSize + gap);
-            boolean selected = i == this.selected;
+            boolean selected = i == slots.getSelectedIndex();
             if (selected) {
                 loadStyle("slotActive");
             }
@@ -115,7 +52,7 @@ public class Inventory extends GUI {
             int x = startX + i * (slotSize + gap);
 
             if (items[i] != null) {
-                screen.image(items[i].getIcon(), x + slotSize / 2f, y + slotSize / 2f, iconSize, iconSize);
+                screen.image(ItemIcons.get(items[i].getIconName()), x + slotSize / 2f, y + slotSize / 2f, iconSize, iconSize);
             }
         }
 
@@ -0,0 +1,43 @@
+package dev.korgi.game.ui.game;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import dev.korgi.game.Game;
+import dev.korgi.utils.ClientSide;
+import processing.core.PImage;
+
+/**
+ * Item icons from the texture pack, loaded the first time they are drawn.
+ */
+@ClientSide
+public class ItemIcons {
+
+    private static final Map<String, PImage> cache = new HashMap<>();
+
+    public static PImage get(String name) {
+        PImage icon = cache.get(name);
+        if (icon != null) {
+            return icon;
+        }
+        try {
+            File file = new File("./texture/" + Game.config.getString("pack") + "/items/" + name);
+            BufferedImage img = ImageIO.read(file);
+            int w = img.getWidth();
+            int h = img.getHeight();
+            icon = new PImage(w, h, PImage.ARGB);
+            img.getRGB(0, 0, w, h, icon.pixels, 0, w);
+            icon.updatePixels();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        cache.put(name, icon);
+        return icon;
+    }
+
+}
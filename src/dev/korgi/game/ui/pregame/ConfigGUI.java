@@ -11,17 +11,17 @@ import processing.core.PApplet;
 
 public class ConfigGUI extends GUI {
 
-    private final String[] cbgKeys = { "mouse_sensitivity", "fov", "render_dist", "ip", "pack" };
+    private final String[] cbgKeys = { "mouse_sensitivity", "fov", "render_dist", "ip", "pack", "renderer" };
     private final String[] cbgLabels = { "Mouse Sensitivity", "Field of View", "Render Distance", "Server IP",
-            "Resource Pack" };
-    private final float[] cbgMin = { 1f, 40f, 10f, 0, 0 };
-    private final float[] cbgMax = { 6f, 120f, 80f, 0, 0 };
+            "Resource Pack", "Renderer (gpu/cpu)" };
+    private final float[] cbgMin = { 1f, 40f, 10f, 0, 0, 0 };
+    private final float[] cbgMax = { 6f, 120f, 80f, 0, 0, 0 };
 
-    private final boolean[] cbgIsToggle = { false, false, false, false, false };
-    private final boolean[] cbgIsString = { false, false, false, true, true };
+    private final boolean[] cbgIsToggle = { false, false, false, false, false, false };
+    private final boolean[] cbgIsString = { false, false, false, true, true, true };
 
-    private float[] cbgValues = new float[] { 3f, 60f, 50f, 0f, 0f };
-    private String[] cbgStrings = new String[] { "", "", "", "localhost", "default" };
+    private float[] cbgValues = new float[] { 3f, 60f, 50f, 0f, 0f, 0f };
+    private String[] cbgStrings = new String[] { "", "", "", "localhost", "default", "gpu" };
 
     private boolean cbgDragging = false;
     private int cbgDragIndex = -1;
@@ -1,5 +1,7 @@
 package dev.korgi.jni;
 
+import java.nio.ByteBuffer;
+
 public class KorgiJNI {
 
     static {
@@ -20,6 +22,21 @@ public class KorgiJNI {
             int[] voxelGrid, String path, int[] textureLocation, int[] overlayLocation, int[] textureAtlas,
             int[] chunkGrid, int[] chunckSize);
 
+    public static native void uploadTextureAtlas(int[] textureAtlas);
+
+    public static native void uploadPalette(int voxCount, int[] color, float[] opacity, int[] textureLocation,
+            int[] overlayLocation);
+
+    public static native void uploadVoxelGrid(int[] voxelGrid, int[] worldMin, int[] worldSize, int[] chunkGrid,
+            int[] chunckSize);
+
+    public static native void patchVoxelGrid(int[] voxelGrid, int offset, int length);
+
+    public static native void patchChunkGrid(int[] chunkGrid, int offset, int length);
+
+    public static native void executeResidentKernal(int[] pixels, int w, int h, float[] cam, float[] foward,
+            float[] right, float[] up, float tanFov, String path);
+
     public static native void executeEntityKernal(int[] pixels, int width, int height, float[] floatArray,
             float[] floatArray2,
             float[] floatArray3, float[] floatArray4, float tanFov, float[] entityPositions, float[] entityRotations,
@@ -29,4 +46,11 @@ public class KorgiJNI {
             float[] bvOpacities, int[] bvTextureIds, int totalVoxels, float[] bvhMins, float[] bvhMaxs, int[] bvhLinks,
             int totalBvhNodes, int[] textureAtlas, String path);
 
+    public static native void registerRenderContext(ByteBuffer uniforms, ByteBuffer pixels, ByteBuffer headers,
+            ByteBuffer voxelsHot, ByteBuffer voxelsCold, ByteBuffer nodes, String worldShader, String entityShader);
+
+    public static native void patchRenderContext(int voxelOffset, int voxelCount, int nodeOffset, int nodeCount);
+
+    public static native void executeRenderContext(int passes);
+
 }
@@ -0,0 +1,225 @@
+package dev.korgi.jni;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Scene buffers shared with the natives. Everything lives in direct buffers
+ * that are registered once, in the layouts the shaders read, so a frame only
+ * fills the uniforms block and the entity headers and passes a set of flags.
+ * Buffers are only registered again when one of them has to grow.
+ */
+public class RenderContext {
+
+    public interface Natives {
+        void register(ByteBuffer uniforms, ByteBuffer pixels, ByteBuffer headers, ByteBuffer voxelsHot,
+                ByteBuffer voxelsCold, ByteBuffer nodes, String worldShader, String entityShader);
+
+        void patch(int voxelOffset, int voxelCount, int nodeOffset, int nodeCount);
+
+        void execute(int passes);
+    }
+
+    /** Trace the resident world grid into the pixels. */
+    public static final int WORLD = 1;
+    /** Trace the entities over the pixels. */
+    public static final int ENTITIES = 2;
+    /** The pixels were drawn on the java side and have to be uploaded first. */
+    public static final int UPLOAD_PIXELS = 4;
+
+    // cam, forward, right, up, (tanFov, entities, voxels, 0), (width, height, 0, 0) as vec4s
+    public static final int UNIFORM_BYTES = 24 * 4;
+    public static final int HEADER_BYTES = 16 * 4;
+    public static final int VOXEL_BYTES = 4 * 4;
+    public static final int NODE_BYTES = 12 * 4;
+
+    private final Natives natives;
+    private final String worldShader;
+    private final String entityShader;
+
+    private final ByteBuffer uniforms = allocate(UNIFORM_BYTES);
+    private ByteBuffer pixels = allocate(4);
+    private ByteBuffer headers = allocate(HEADER_BYTES * 64);
+    private ByteBuffer hot = allocate(VOXEL_BYTES * 1024);
+    private ByteBuffer cold = allocate(VOXEL_BYTES * 1024);
+    private ByteBuffer nodes = allocate(NODE_BYTES * 2048);
+    private boolean registered;
+
+    private int width, height;
+    private int entityCount;
+    private int voxelCount;
+    private int patchVoxelStart = Integer.MAX_VALUE, patchVoxelEnd;
+    private int patchNodeStart = Integer.MAX_VALUE, patchNodeEnd;
+
+    public RenderContext(Natives natives, String worldShader, String entityShader) {
+        this.natives = natives;
+        this.worldShader = worldShader;
+        this.entityShader = entityShader;
+    }
+
+    /**
+     * Natives backed by KorgiJNI, loading the library on first use.
+     */
+    public static Natives jni() {
+        return new Natives() {
+            @Override
+            public void register(ByteBuffer uniforms, ByteBuffer pixels, ByteBuffer headers, ByteBuffer voxelsHot,
+                    ByteBuffer voxelsCold, ByteBuffer nodes, String worldShader, String entityShader) {
+                KorgiJNI.registerRenderContext(uniforms, pixels, headers, voxelsHot, voxelsCold, nodes, worldShader,
+                        entityShader);
+            }
+
+            @Override
+            public void patch(int voxelOffset, int voxelCount, int nodeOffset, int nodeCount) {
+                KorgiJNI.patchRenderContext(voxelOffset, voxelCount, nodeOffset, nodeCount);
+            }
+
+            @Override
+            public void execute(int passes) {
+                KorgiJNI.executeRenderContext(passes);
+            }
+        };
+    }
+
+    private static ByteBuffer allocate(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int bytes) {
+        if (buffer.capacity() >= bytes)
+            return buffer;
+        ByteBuffer bigger = allocate(Math.max(bytes, buffer.capacity() * 2));
+        bigger.put(buffer.duplicate().clear());
+        return bigger.clear();
+    }
+
+    public void resize(int width, int height) {
+        this.width = width;
+        this.height = height;
+        if (pixels.capacity() != width * height * 4) {
+            pixels = allocate(width * height * 4);
+            registered = false;
+        }
+    }
+
+    public void ensureRegistered() {
+        if (registered)
+            return;
+        natives.register(uniforms, pixels, headers, hot, cold, nodes, worldShader, entityShader);
+        registered = true;
+        patchVoxelStart = Integer.MAX_VALUE;
+        patchNodeStart = Integer.MAX_VALUE;
+    }
+
+    public void setView(float[] cam, float[] forward, float[] right, float[] up, float tanFov) {
+        FloatBuffer u = uniforms.asFloatBuffer();
+        u.put(0, cam, 0, 3);
+        u.put(4, forward, 0, 3);
+        u.put(8, right, 0, 3);
+        u.put(12, up, 0, 3);
+        u.put(16, tanFov);
+    }
+
+    /**
+     * Copies packed model data, laid out like the arrays of
+     * KorgiJNI.executeEntityKernal, into the shared voxel and node buffers. The
+     * ranges reach the natives on the next {@link #render}.
+     */
+    public void putModels(float[] positions, float[] sizes, int[] colors, float[] opacities, int[] textureIds,
+            int voxelOffset, int voxels, float[] mins, float[] maxs, int[] links, int nodeOffset, int nodeCount) {
+        int voxelEnd = voxelOffset + voxels;
+        int nodeEnd = nodeOffset + nodeCount;
+        if (hot.capacity() < voxelEnd * VOXEL_BYTES || nodes.capacity() < nodeEnd * NODE_BYTES) {
+            hot = grow(hot, voxelEnd * VOXEL_BYTES);
+            cold = grow(cold, voxelEnd * VOXEL_BYTES);
+            nodes = grow(nodes, nodeEnd * NODE_BYTES);
+            registered = false;
+        }
+        for (int i = voxelOffset; i < voxelEnd; i++) {
+            int o = i * VOXEL_BYTES;
+            hot.putFloat(o, positions[i * 3]);
+            hot.putFloat(o + 4, positions[i * 3 + 1]);
+            hot.putFloat(o + 8, positions[i * 3 + 2]);
+            hot.putFloat(o + 12, sizes[i]);
+            cold.putInt(o, colors[i]);
+            cold.putFloat(o + 4, opacities[i]);
+            cold.putInt(o + 8, textureIds[i]);
+            cold.putInt(o + 12, 0);
+        }
+        for (int i = nodeOffset; i < nodeEnd; i++) {
+            int o = i * NODE_BYTES;
+            nodes.putFloat(o, mins[i * 3]);
+            nodes.putFloat(o + 4, mins[i * 3 + 1]);
+            nodes.putFloat(o + 8, mins[i * 3 + 2]);
+            nodes.putInt(o + 12, links[i * 3]);
+            nodes.putFloat(o + 16, maxs[i * 3]);
+            nodes.putFloat(o + 20, maxs[i * 3 + 1]);
+            nodes.putFloat(o + 24, maxs[i * 3 + 2]);
+            nodes.putInt(o + 28, links[i * 3 + 1]);
+            nodes.putInt(o + 32, links[i * 3 + 2]);
+            nodes.putInt(o + 36, 0);
+            nodes.putInt(o + 40, 0);
+            nodes.putInt(o + 44, 0);
+        }
+        voxelCount = Math.max(voxelCount, voxelEnd);
+        patchVoxelStart = Math.min(patchVoxelStart, voxelOffset);
+        patchVoxelEnd = Math.max(patchVoxelEnd, voxelEnd);
+        patchNodeStart = Math.min(patchNodeStart, nodeOffset);
+        patchNodeEnd = Math.max(patchNodeEnd, nodeEnd);
+    }
+
+    /**
+     * Writes the per instance headers, laid out like the arrays of
+     * KorgiJNI.executeEntityKernal.
+     */
+    public void putHeaders(float[] positions, float[] rotations, float[] radii, int[] voxelOffsets,
+            int[] bvhOffsets, int count) {
+        if (headers.capacity() < count * HEADER_BYTES) {
+            headers = grow(headers, count * HEADER_BYTES);
+            registered = false;
+        }
+        for (int i = 0; i < count; i++) {
+            int o = i * HEADER_BYTES;
+            headers.putFloat(o, positions[i * 3]);
+            headers.putFloat(o + 4, positions[i * 3 + 1]);
+            headers.putFloat(o + 8, positions[i * 3 + 2]);
+            headers.putInt(o + 12, voxelOffsets[i * 2]);
+            headers.putInt(o + 16, voxelOffsets[i * 2 + 1]);
+            for (int r = 0; r < 9; r++) {
+                headers.putFloat(o + 20 + r * 4, rotations[i * 9 + r]);
+            }
+            headers.putFloat(o + 56, radii[i]);
+            headers.putInt(o + 60, bvhOffsets[i]);
+        }
+        entityCount = count;
+    }
+
+    /**
+     * Runs the given passes and copies the result into the pixels. With
+     * {@link #UPLOAD_PIXELS} the pixels are read as the background first.
+     */
+    public void render(int passes, int[] into) {
+        IntBuffer px = pixels.asIntBuffer();
+        if ((passes & UPLOAD_PIXELS) != 0) {
+            px.put(into, 0, width * height);
+        }
+        ensureRegistered();
+        if (patchVoxelStart < patchVoxelEnd || patchNodeStart < patchNodeEnd) {
+            natives.patch(patchVoxelStart, patchVoxelEnd - patchVoxelStart, patchNodeStart,
+                    patchNodeEnd - patchNodeStart);
+        }
+        patchVoxelStart = patchNodeStart = Integer.MAX_VALUE;
+        patchVoxelEnd = patchNodeEnd = 0;
+
+        FloatBuffer u = uniforms.asFloatBuffer();
+        u.put(17, (passes & ENTITIES) != 0 ? entityCount : 0);
+        u.put(18, voxelCount);
+        u.put(20, width);
+        u.put(21, height);
+        natives.execute(passes);
+        px.get(0, into, 0, width * height);
+    }
+
+}
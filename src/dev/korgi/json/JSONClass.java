@@ -0,0 +1,180 @@
+package dev.korgi.json;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import dev.korgi.utils.ClientSide;
+import dev.korgi.utils.ServerSide;
+
+/**
+ * Serialized fields of a class with their annotations and accessors, walked
+ * once per class instead of on every serialize and fill.
+ */
+public class JSONClass {
+
+    public static class Property {
+        public final Field field;
+        public final String name;
+        public final Class<?> type;
+        public final boolean clientSide;
+        public final boolean serverSide;
+        // element class of a List field, Object when unknown
+        public final Class<?> elementType;
+        final String fillOverride;
+        final Method fillOverrideMethod;
+        private final VarHandle handle;
+
+        Property(Class<?> owner, Field field) throws IllegalAccessException {
+            this.field = field;
+            this.name = field.getName();
+            this.type = field.getType();
+            this.clientSide = field.isAnnotationPresent(ClientSide.class);
+            this.serverSide = field.isAnnotationPresent(ServerSide.class);
+            this.elementType = elementType(field);
+            this.handle = MethodHandles.privateLookupIn(field.getDeclaringClass(), MethodHandles.lookup())
+                    .unreflectVarHandle(field);
+
+            JSONFillOverride override = field.getAnnotation(JSONFillOverride.class);
+            this.fillOverride = override == null ? null : override.value();
+            Method method = null;
+            if (override != null) {
+                try {
+                    method = owner.getMethod(override.value(), Object.class);
+                } catch (NoSuchMethodException e) {
+                    e.printStackTrace();
+                }
+            }
+            this.fillOverrideMethod = method;
+        }
+
+        public Object get(Object target) {
+            return handle.get(target);
+        }
+
+        public void set(Object target, Object value) {
+            handle.set(target, value);
+        }
+
+        void setInt(Object target, int value) {
+            handle.set(target, value);
+        }
+
+        void setLong(Object target, long value) {
+            handle.set(target, value);
+        }
+
+        void setFloat(Object target, float value) {
+            handle.set(target, value);
+        }
+
+        void setDouble(Object target, double value) {
+            handle.set(target, value);
+        }
+
+        void setBoolean(Object target, boolean value) {
+            handle.set(target, value);
+        }
+
+        private static Class<?> elementType(Field field) {
+            if (field.getGenericType() instanceof ParameterizedType pt) {
+                Type[] args = pt.getActualTypeArguments();
+                if (args.length == 1 && args[0] instanceof Class<?> cls)
+                    return cls;
+            }
+            return Object.class;
+        }
+    }
+
+    private static final ClassValue<JSONClass> cache = new ClassValue<>() {
+        @Override
+        protected JSONClass computeValue(Class<?> type) {
+            return new JSONClass(type);
+        }
+    };
+
+    private final List<Property> properties = new ArrayList<>();
+    private final Map<String, Property> byName = new HashMap<>();
+    private final Set<String> clientSideNames;
+    private final Set<String> serverSideNames;
+    private final Constructor<?> constructor;
+
+    private JSONClass(Class<?> type) {
+        Set<String> client = new HashSet<>();
+        Set<String> server = new HashSet<>();
+        Class<?> clazz = type;
+        while (clazz != null && clazz != Object.class) {
+            for (Field field : clazz.getDeclaredFields()) {
+                int mods = field.getModifiers();
+                if (Modifier.isStatic(mods) || Modifier.isFinal(mods) || field.isAnnotationPresent(JSONIgnore.class)) {
+                    continue;
+                }
+                Property p;
+                try {
+                    p = new Property(type, field);
+                } catch (IllegalAccessException e) {
+                    throw new RuntimeException("Cannot access " + field, e);
+                }
+                properties.add(p);
+                byName.putIfAbsent(p.name, p);
+                if (p.clientSide)
+                    client.add(p.name);
+                if (p.serverSide)
+                    server.add(p.name);
+            }
+            clazz = clazz.getSuperclass();
+        }
+        clientSideNames = Collections.unmodifiableSet(client);
+        serverSideNames = Collections.unmodifiableSet(server);
+
+        Constructor<?> ctor = null;
+        try {
+            ctor = type.getDeclaredConstructor();
+        } catch (NoSuchMethodException e) {
+        }
+        constructor = ctor;
+    }
+
+    public static JSONClass of(Class<?> type) {
+        return cache.get(type);
+    }
+
+    /**
+     * Fields of the class and its superclasses, subclass first.
+     */
+    public List<Property> properties() {
+        return properties;
+    }
+
+    public Property property(String name) {
+        return byName.get(name);
+    }
+
+    public Set<String> clientSideNames() {
+        return clientSideNames;
+    }
+
+    public Set<String> serverSideNames() {
+        return serverSideNames;
+    }
+
+    /**
+     * The no argument constructor, or null when there is none.
+     */
+    public Constructor<?> constructor() {
+        return constructor;
+    }
+
+}
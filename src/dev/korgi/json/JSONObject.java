@@ -5,7 +5,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Array;
-import java.lang.reflect.Field;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
 import java.nio.charset.StandardCharsets;
@@ -14,6 +14,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class JSONObject {
 
@@ -34,36 +35,12 @@ public class JSONObject {
                 values.put(key, value);
             }
         } else {
-            Class<?> clazz = obj.getClass();
-            List<Field> fields = getAllFields(clazz);
-
-            for (Field field : fields) {
-                field.setAccessible(true);
-                try {
-                    Object value = field.get(obj);
-                    values.put(field.getName(), wrapValue(value));
-                } catch (IllegalAccessException e) {
-                    e.printStackTrace();
-                }
+            for (JSONClass.Property p : JSONClass.of(obj.getClass()).properties()) {
+                values.put(p.name, wrapValue(p.get(obj)));
             }
         }
     }
 
-    private static List<Field> getAllFields(Class<?> clazz) {
-        List<Field> fields = new ArrayList<>();
-        while (clazz != null && clazz != Object.class) {
-            for (Field field : clazz.getDeclaredFields()) {
-                int mods = field.getModifiers();
-                if (Modifier.isStatic(mods) || Modifier.isFinal(mods) || field.isAnnotationPresent(JSONIgnore.class)) {
-                    continue;
-                }
-                fields.add(field);
-            }
-            clazz = clazz.getSuperclass();
-        }
-        return fields;
-    }
-
     private Object wrapValue(Object value) {
         if (value == null)
             return null;
@@ -150,6 +127,13 @@ public class JSONObject {
         return sb.toString();
     }
 
+    /**
+     * The value under {@code key} as it appears in {@link #toJSONString()}.
+     */
+    public String toJSONString(String key) {
+        return valueToJSONString(values.get(key));
+    }
+
     private String valueToJSONString(Object value) {
         if (value == null)
             return "null";
@@ -378,8 +362,7 @@ public class JSONObject {
     }
 
     public static JSONObject fromJSONString(String json) throws RuntimeException {
-        JSONParser parser = new JSONParser(json);
-        return parser.parseObject();
+        return new JSONReader(json).readObject();
     }
 
     public static JSONObject fromResource(String name) {
@@ -427,75 +410,182 @@ public class JSONObject {
         if (target == null)
             return;
 
-        Class<?> clazz = target.getClass();
-        List<Field> fields = getAllFields(clazz);
+        for (JSONClass.Property p : JSONClass.of(target.getClass()).properties()) {
+            Object value = values.get(p.name);
+            if (value == null)
+                continue;
 
-        for (Field field : fields) {
-            field.setAccessible(true);
-            String key = field.getName();
+            fillField(target, p, value);
+        }
+    }
 
-            if (!values.containsKey(key))
-                continue;
+    public static void fillObject(JSONReader in, Object target) {
+        fillObject(in, target, Set.of());
+    }
 
-            Object value = values.get(key);
-            if (value == null)
+    /**
+     * Binds the next object from {@code in} straight into the fields of
+     * {@code target} without building a JSONObject for it. Keys in {@code skip}
+     * are read past, anything the fast path does not cover goes through the same
+     * conversion as {@link #fillObject(Object)}.
+     */
+    public static void fillObject(JSONReader in, Object target, Set<String> skip) {
+        if (target == null || in.peek() != JSONReader.Token.BEGIN_OBJECT) {
+            in.skipValue();
+            return;
+        }
+
+        JSONClass meta = JSONClass.of(target.getClass());
+        in.beginObject();
+        while (in.hasNext()) {
+            String key = in.nextName();
+            JSONClass.Property p = meta.property(key);
+            if (p == null || skip.contains(key) || in.peek() == JSONReader.Token.NULL) {
+                in.skipValue();
                 continue;
+            }
+            readField(in, target, p);
+        }
+        in.endObject();
+    }
 
-            if (field.isAnnotationPresent(JSONFillOverride.class)) {
-                JSONFillOverride annotation = field.getAnnotation(JSONFillOverride.class);
-                String override = annotation.value();
-                try {
-                    target.getClass().getMethod(override, Object.class).invoke(target, value);
-                    continue;
-                } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException
-                        | NoSuchMethodException | SecurityException e) {
-                    e.printStackTrace();
+    private static void readField(JSONReader in, Object target, JSONClass.Property field) {
+        if (field.fillOverride != null) {
+            fillField(target, field, in.readValue());
+            return;
+        }
+
+        Class<?> type = field.type;
+        try {
+            switch (in.peek()) {
+                case NUMBER -> {
+                    if (type == int.class) {
+                        field.setInt(target, in.nextInt());
+                        return;
+                    } else if (type == double.class) {
+                        field.setDouble(target, in.nextDouble());
+                        return;
+                    } else if (type == float.class) {
+                        field.setFloat(target, (float) in.nextDouble());
+                        return;
+                    } else if (type == long.class) {
+                        field.setLong(target, in.nextLong());
+                        return;
+                    }
+                }
+                case BOOLEAN -> {
+                    if (type == boolean.class || type == Boolean.class) {
+                        field.set(target, in.nextBoolean());
+                        return;
+                    }
+                }
+                case STRING -> {
+                    if (type == String.class) {
+                        field.set(target, in.nextString());
+                        return;
+                    }
+                }
+                case BEGIN_ARRAY -> {
+                    if (type == double[].class) {
+                        field.set(target, readDoubles(in));
+                        return;
+                    }
+                }
+                case BEGIN_OBJECT -> {
+                    Constructor<?> constructor = bindableConstructor(type);
+                    if (constructor != null) {
+                        Object nested = constructor.newInstance();
+                        fillObject(in, nested);
+                        field.set(target, nested);
+                        return;
+                    }
+                }
+                default -> {
                 }
             }
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            e.printStackTrace();
+            return;
+        }
+        fillField(target, field, in.readValue());
+    }
+
+    private static double[] readDoubles(JSONReader in) {
+        double[] values = new double[8];
+        int count = 0;
+        in.beginArray();
+        while (in.hasNext()) {
+            if (count == values.length)
+                values = Arrays.copyOf(values, count * 2);
+            values[count++] = in.nextDouble();
+        }
+        in.endArray();
+        return Arrays.copyOf(values, count);
+    }
+
+    private static Constructor<?> bindableConstructor(Class<?> type) {
+        if (type.isPrimitive() || type.isArray() || type.isInterface() || Modifier.isAbstract(type.getModifiers())
+                || type == Object.class || type == String.class || Map.class.isAssignableFrom(type)
+                || List.class.isAssignableFrom(type)) {
+            return null;
+        }
+        return JSONClass.of(type).constructor();
+    }
 
+    private static void fillField(Object target, JSONClass.Property field, Object value) {
+        if (value == null)
+            return;
+
+        if (field.fillOverrideMethod != null) {
             try {
-                Class<?> type = field.getType();
-
-                if (type == int.class || type == Integer.class) {
-                    field.set(target, ((Number) value).intValue());
-                } else if (type == double.class || type == Double.class) {
-                    field.set(target, ((Number) value).doubleValue());
-                } else if (type == float.class || type == Float.class) {
-                    field.set(target, ((Number) value).floatValue());
-                } else if (type == long.class || type == Long.class) {
-                    field.set(target, ((Number) value).longValue());
-                } else if (type == boolean.class || type == Boolean.class) {
-                    field.set(target, (Boolean) value);
-                } else if (type == char.class || type == Character.class) {
-                    if (value instanceof Character)
-                        field.set(target, value);
-                    else if (value instanceof String && ((String) value).length() > 0)
-                        field.set(target, ((String) value).charAt(0));
-                } else if (type == String.class) {
-                    field.set(target, value.toString());
-                } else if (type.isArray() && value instanceof List<?> list) {
-                    field.set(target, convertListToArray(list, type.getComponentType()));
-                } else if (List.class.isAssignableFrom(type) && value instanceof List<?> list) {
-                    field.set(target, convertListToTypedList(list, field));
-                } else if (value instanceof JSONObject) {
-                    try {
-                        Object nested = type.getDeclaredConstructor().newInstance();
-                        ((JSONObject) value).fillObject(nested);
-                        field.set(target, nested);
-                    } catch (NoSuchMethodException e) {
+                field.fillOverrideMethod.invoke(target, value);
+                return;
+            } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
+                e.printStackTrace();
+            }
+        }
 
-                    }
-                } else if (value instanceof Map || value instanceof List) {
+        try {
+            Class<?> type = field.type;
+
+            if (type == int.class || type == Integer.class) {
+                field.set(target, ((Number) value).intValue());
+            } else if (type == double.class || type == Double.class) {
+                field.set(target, ((Number) value).doubleValue());
+            } else if (type == float.class || type == Float.class) {
+                field.set(target, ((Number) value).floatValue());
+            } else if (type == long.class || type == Long.class) {
+                field.set(target, ((Number) value).longValue());
+            } else if (type == boolean.class || type == Boolean.class) {
+                field.set(target, (Boolean) value);
+            } else if (type == char.class || type == Character.class) {
+                if (value instanceof Character)
                     field.set(target, value);
+                else if (value instanceof String && ((String) value).length() > 0)
+                    field.set(target, ((String) value).charAt(0));
+            } else if (type == String.class) {
+                field.set(target, value.toString());
+            } else if (type.isArray() && value instanceof List<?> list) {
+                field.set(target, convertListToArray(list, type.getComponentType()));
+            } else if (List.class.isAssignableFrom(type) && value instanceof List<?> list) {
+                field.set(target, convertListToTypedList(list, field.elementType));
+            } else if (value instanceof JSONObject) {
+                Constructor<?> constructor = JSONClass.of(type).constructor();
+                if (constructor != null) {
+                    Object nested = constructor.newInstance();
+                    ((JSONObject) value).fillObject(nested);
+                    field.set(target, nested);
                 }
-
-            } catch (Exception e) {
-                e.printStackTrace();
+            } else if (value instanceof Map || value instanceof List) {
+                field.set(target, value);
             }
+
+        } catch (Exception e) {
+            e.printStackTrace();
         }
     }
 
-    private Object convertListToArray(List<?> list, Class<?> componentType) throws Exception {
+    private static Object convertListToArray(List<?> list, Class<?> componentType) throws Exception {
         Object array = Array.newInstance(componentType, list.size());
 
         for (int i = 0; i < list.size(); i++) {
@@ -523,20 +613,8 @@ public class JSONObject {
         return array;
     }
 
-    private List<?> convertListToTypedList(List<?> jsonList, Field field) throws Exception {
+    private static List<?> convertListToTypedList(List<?> jsonList, Class<?> listType) throws Exception {
         List<Object> result = new ArrayList<>();
-        Class<?> listType = Object.class;
-
-        try {
-            java.lang.reflect.Type genericType = field.getGenericType();
-            if (genericType instanceof java.lang.reflect.ParameterizedType pt) {
-                java.lang.reflect.Type[] typeArgs = pt.getActualTypeArguments();
-                if (typeArgs.length == 1 && typeArgs[0] instanceof Class<?> cls)
-                    listType = cls;
-            }
-        } catch (Exception ignored) {
-            ignored.printStackTrace();
-        }
 
         for (Object elem : jsonList) {
             if (elem instanceof JSONObject jsonObj) {
@@ -555,7 +633,7 @@ public class JSONObject {
                 jsonObj.fillObject(nested);
                 result.add(nested);
             } else if (elem instanceof List && List.class.isAssignableFrom(listType)) {
-                result.add(convertListToTypedList((List<?>) elem, field));
+                result.add(convertListToTypedList((List<?>) elem, listType));
             } else {
                 result.add(elem);
             }
@@ -566,184 +644,4 @@ public class JSONObject {
     public Map<String, Object> getValues() {
         return values;
     }
-
-    private static class JSONParser {
-        private final String json;
-        private int pos = 0;
-
-        public JSONParser(String json) {
-            this.json = json.trim();
-        }
-
-        public JSONObject parseObject() {
-            skipWhitespace();
-            if (peek() != '{')
-                throw new RuntimeException("Expected '{' at position " + pos);
-            pos++; // skip '{'
-            JSONObject obj = new JSONObject();
-            skipWhitespace();
-            if (peek() == '}') {
-                pos++;
-                return obj;
-            }
-            while (true) {
-                skipWhitespace();
-                String key = parseString();
-                skipWhitespace();
-                expect(':');
-                skipWhitespace();
-                Object value = parseValue();
-                obj.set(key, value);
-                skipWhitespace();
-                if (peek() == ',') {
-                    pos++;
-                } else if (peek() == '}') {
-                    pos++;
-                    break;
-                } else {
-                    System.out.println(json);
-                    throw new RuntimeException("Expected ',' or '}' at position " + pos);
-                }
-            }
-            return obj;
-        }
-
-        private Object parseValue() {
-            skipWhitespace();
-            char c = peek();
-            if (c == '"')
-                return parseString();
-            if (c == '{')
-                return parseObject();
-            if (c == '[')
-                return parseArray();
-            if (c == 't' || c == 'f')
-                return parseBoolean();
-            if (c == 'n')
-                return parseNull();
-            return parseNumber();
-        }
-
-        private List<Object> parseArray() {
-            expect('[');
-            List<Object> list = new ArrayList<>();
-            skipWhitespace();
-            if (peek() == ']') {
-                pos++;
-                return list;
-            }
-            while (true) {
-                list.add(parseValue());
-                skipWhitespace();
-                if (peek() == ',') {
-                    pos++;
-                } else if (peek() == ']') {
-                    pos++;
-                    break;
-                } else {
-                    throw new RuntimeException("Expected ',' or ']' at position " + pos);
-                }
-            }
-            return list;
-        }
-
-        private String parseString() {
-            expect('"');
-            StringBuilder sb = new StringBuilder();
-            while (true) {
-                char c = next();
-                if (c == '"')
-                    break;
-                if (c == '\\') {
-                    c = next();
-                    switch (c) {
-                        case '"', '\\', '/' -> sb.append(c);
-                        case 'b' -> sb.append('\b');
-                        case 'f' -> sb.append('\f');
-                        case 'n' -> sb.append('\n');
-                        case 'r' -> sb.append('\r');
-                        case 't' -> sb.append('\t');
-                        default -> throw new RuntimeException("Invalid escape: \\" + c);
-                    }
-                } else
-                    sb.append(c);
-            }
-            return sb.toString();
-        }
-
-        private Boolean parseBoolean() {
-            if (json.startsWith("true", pos)) {
-                pos += 4;
-                return true;
-            } else if (json.startsWith("false", pos)) {
-                pos += 5;
-                return false;
-            }
-            throw new RuntimeException("Invalid boolean at position " + pos);
-        }
-
-        private Object parseNull() {
-            if (json.startsWith("null", pos)) {
-                pos += 4;
-                return null;
-            }
-            throw new RuntimeException("Invalid null at position " + pos);
-        }
-
-        private Number parseNumber() {
-            int start = pos;
-            if (peek() == '-')
-                pos++;
-            boolean hasDot = false;
-            boolean hasExp = false;
-
-            while (pos < json.length()) {
-                char c = peek();
-                if (Character.isDigit(c)) {
-                    pos++;
-                } else if (c == '.' && !hasDot) {
-                    hasDot = true;
-                    pos++;
-                } else if ((c == 'e' || c == 'E') && !hasExp) {
-                    hasExp = true;
-                    pos++;
-                    if (peek() == '+' || peek() == '-')
-                        pos++;
-                } else {
-                    break;
-                }
-            }
-
-            String numberStr = json.substring(start, pos);
-            if (numberStr.contains(".") || numberStr.contains("e") || numberStr.contains("E")) {
-                return Double.parseDouble(numberStr);
-            } else {
-                return Long.parseLong(numberStr);
-            }
-        }
-
-        private void skipWhitespace() {
-            while (pos < json.length() && Character.isWhitespace(json.charAt(pos)))
-                pos++;
-        }
-
-        private char peek() {
-            if (pos >= json.length())
-                return '\0';
-            return json.charAt(pos);
-        }
-
-        private char next() {
-            if (pos >= json.length())
-                throw new RuntimeException("Unexpected end of input");
-            return json.charAt(pos++);
-        }
-
-        private void expect(char expected) {
-            char c = next();
-            if (c != expected)
-                throw new RuntimeException(
-                        "Expected '" + expected + "' but found '" + c + "' at position " + (pos - 1));
-        }
-    }
-}
+}
\ No newline at end of file
@@ -0,0 +1,475 @@
+package dev.korgi.json;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pull parser over a CharSequence. Values are read a token at a time, so
+ * callers can bind them straight into fields with
+ * {@link JSONObject#fillObject(JSONReader, Object)} instead of building a
+ * JSONObject tree first.
+ */
+public class JSONReader {
+
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END
+    }
+
+    private static final int TOP = 0;
+    private static final int EMPTY_ARRAY = 1;
+    private static final int ARRAY = 2;
+    private static final int EMPTY_OBJECT = 3;
+    private static final int OBJECT = 4;
+    private static final int AFTER_NAME = 5;
+
+    // powers of ten that are exact doubles, see parseDecimal
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private final CharSequence json;
+    private final int end;
+    private int pos;
+
+    private int[] stack = new int[16];
+    private int depth = 1;
+    private Token peeked;
+
+    private final StringBuilder scratch = new StringBuilder();
+
+    public JSONReader(CharSequence json) {
+        this(json, 0, json.length());
+    }
+
+    public JSONReader(CharSequence json, int start, int end) {
+        this.json = json;
+        this.pos = start;
+        this.end = end;
+        stack[0] = TOP;
+    }
+
+    /**
+     * Offset of the next unread character. After {@link #peek()} this is the
+     * first character of the next value.
+     */
+    public int position() {
+        return pos;
+    }
+
+    public CharSequence source() {
+        return json;
+    }
+
+    public Token peek() {
+        if (peeked != null)
+            return peeked;
+
+        skipWhitespace();
+        switch (stack[depth - 1]) {
+            case EMPTY_ARRAY -> {
+                if (current() == ']')
+                    return peeked = Token.END_ARRAY;
+                stack[depth - 1] = ARRAY;
+            }
+            case ARRAY -> {
+                if (current() == ']')
+                    return peeked = Token.END_ARRAY;
+                expect(',');
+                skipWhitespace();
+            }
+            case EMPTY_OBJECT -> {
+                if (current() == '}')
+                    return peeked = Token.END_OBJECT;
+                return peeked = nameToken();
+            }
+            case OBJECT -> {
+                if (current() == '}')
+                    return peeked = Token.END_OBJECT;
+                expect(',');
+                skipWhitespace();
+                return peeked = nameToken();
+            }
+            case AFTER_NAME -> {
+                expect(':');
+                skipWhitespace();
+                stack[depth - 1] = OBJECT;
+            }
+            default -> {
+                if (pos >= end)
+                    return peeked = Token.END;
+            }
+        }
+
+        char c = current();
+        return peeked = switch (c) {
+            case '{' -> Token.BEGIN_OBJECT;
+            case '[' -> Token.BEGIN_ARRAY;
+            case '"' -> Token.STRING;
+            case 't', 'f' -> Token.BOOLEAN;
+            case 'n' -> Token.NULL;
+            default -> {
+                if (c == '-' || (c >= '0' && c <= '9'))
+                    yield Token.NUMBER;
+                throw error("Unexpected '" + c + "'");
+            }
+        };
+    }
+
+    private Token nameToken() {
+        if (current() != '"')
+            throw error("Expected name");
+        return Token.NAME;
+    }
+
+    public boolean hasNext() {
+        Token t = peek();
+        return t != Token.END_OBJECT && t != Token.END_ARRAY && t != Token.END;
+    }
+
+    public void beginObject() {
+        consume(Token.BEGIN_OBJECT);
+        pos++;
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() {
+        consume(Token.END_OBJECT);
+        pos++;
+        depth--;
+    }
+
+    public void beginArray() {
+        consume(Token.BEGIN_ARRAY);
+        pos++;
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() {
+        consume(Token.END_ARRAY);
+        pos++;
+        depth--;
+    }
+
+    public String nextName() {
+        consume(Token.NAME);
+        String name = readString();
+        stack[depth - 1] = AFTER_NAME;
+        return name;
+    }
+
+    public String nextString() {
+        consume(Token.STRING);
+        return readString();
+    }
+
+    public boolean nextBoolean() {
+        consume(Token.BOOLEAN);
+        if (matches("true")) {
+            pos += 4;
+            return true;
+        }
+        if (matches("false")) {
+            pos += 5;
+            return false;
+        }
+        throw error("Invalid boolean");
+    }
+
+    public void nextNull() {
+        consume(Token.NULL);
+        if (!matches("null"))
+            throw error("Invalid null");
+        pos += 4;
+    }
+
+    public double nextDouble() {
+        consume(Token.NUMBER);
+        int start = pos;
+        boolean integral = scanNumber();
+        return integral ? parseLong(start, pos) : parseDecimal(start, pos);
+    }
+
+    public long nextLong() {
+        consume(Token.NUMBER);
+        int start = pos;
+        boolean integral = scanNumber();
+        return integral ? parseLong(start, pos) : (long) parseDecimal(start, pos);
+    }
+
+    public int nextInt() {
+        return (int) nextLong();
+    }
+
+    /**
+     * Reads a number the way the tree parser stores it, a Long for integral
+     * literals and a Double otherwise.
+     */
+    public Number nextNumber() {
+        consume(Token.NUMBER);
+        int start = pos;
+        boolean integral = scanNumber();
+        if (integral)
+            return parseLong(start, pos);
+        return parseDecimal(start, pos);
+    }
+
+    public void skipValue() {
+        int open = 0;
+        do {
+            switch (peek()) {
+                case BEGIN_OBJECT -> {
+                    beginObject();
+                    open++;
+                }
+                case BEGIN_ARRAY -> {
+                    beginArray();
+                    open++;
+                }
+                case END_OBJECT -> {
+                    endObject();
+                    open--;
+                }
+                case END_ARRAY -> {
+                    endArray();
+                    open--;
+                }
+                case NAME -> nextName();
+                case STRING -> skipString();
+                case NUMBER -> {
+                    consume(Token.NUMBER);
+                    scanNumber();
+                }
+                case BOOLEAN -> nextBoolean();
+                case NULL -> nextNull();
+                case END -> throw error("Unexpected end of input");
+            }
+        } while (open > 0 || stack[depth - 1] == AFTER_NAME);
+    }
+
+    /**
+     * Reads the next value as a tree: JSONObject, List, String, Long, Double,
+     * Boolean or null.
+     */
+    public Object readValue() {
+        return switch (peek()) {
+            case BEGIN_OBJECT -> readObject();
+            case BEGIN_ARRAY -> {
+                beginArray();
+                List<Object> list = new ArrayList<>();
+                while (hasNext())
+                    list.add(readValue());
+                endArray();
+                yield list;
+            }
+            case STRING -> nextString();
+            case NUMBER -> nextNumber();
+            case BOOLEAN -> nextBoolean();
+            case NULL -> {
+                nextNull();
+                yield null;
+            }
+            default -> throw error("Expected a value");
+        };
+    }
+
+    public JSONObject readObject() {
+        if (peek() != Token.BEGIN_OBJECT)
+            throw error("Expected '{'");
+        beginObject();
+        JSONObject obj = new JSONObject();
+        while (hasNext()) {
+            String key = nextName();
+            obj.toMap().put(key, readValue());
+        }
+        endObject();
+        return obj;
+    }
+
+    private void push(int state) {
+        if (depth == stack.length) {
+            int[] grown = new int[depth * 2];
+            System.arraycopy(stack, 0, grown, 0, depth);
+            stack = grown;
+        }
+        stack[depth++] = state;
+    }
+
+    private void consume(Token expected) {
+        Token t = peek();
+        if (t != expected)
+            throw error("Expected " + expected + " but found " + t);
+        peeked = null;
+    }
+
+    private String readString() {
+        pos++; // skip '"'
+        int start = pos;
+        while (pos < end) {
+            char c = json.charAt(pos);
+            if (c == '"') {
+                String s = json.subSequence(start, pos).toString();
+                pos++;
+                return s;
+            }
+            if (c == '\\')
+                break;
+            pos++;
+        }
+
+        scratch.setLength(0);
+        scratch.append(json, start, pos);
+        while (true) {
+            char c = next();
+            if (c == '"')
+                break;
+            if (c != '\\') {
+                scratch.append(c);
+                continue;
+            }
+            c = next();
+            switch (c) {
+                case '"', '\\', '/' -> scratch.append(c);
+                case 'b' -> scratch.append('\b');
+                case 'f' -> scratch.append('\f');
+                case 'n' -> scratch.append('\n');
+                case 'r' -> scratch.append('\r');
+                case 't' -> scratch.append('\t');
+                case 'u' -> {
+                    if (pos + 4 > end)
+                        throw error("Unexpected end of input");
+                    scratch.append((char) Integer.parseInt(json, pos, pos + 4, 16));
+                    pos += 4;
+                }
+                default -> throw error("Invalid escape: \\" + c);
+            }
+        }
+        return scratch.toString();
+    }
+
+    private void skipString() {
+        consume(Token.STRING);
+        pos++;
+        while (true) {
+            char c = next();
+            if (c == '"')
+                return;
+            if (c == '\\')
+                next();
+        }
+    }
+
+    /**
+     * Moves past a number literal and returns whether it was integral.
+     */
+    private boolean scanNumber() {
+        boolean integral = true;
+        if (current() == '-')
+            pos++;
+        while (pos < end) {
+            char c = json.charAt(pos);
+            if (c >= '0' && c <= '9') {
+                pos++;
+            } else if (c == '.' || c == 'e' || c == 'E' || ((c == '+' || c == '-') && !integral)) {
+                integral = false;
+                pos++;
+            } else {
+                break;
+            }
+        }
+        return integral;
+    }
+
+    private long parseLong(int start, int stop) {
+        boolean negative = json.charAt(start) == '-';
+        int i = negative ? start + 1 : start;
+        if (stop - i > 18)
+            return Long.parseLong(json, start, stop, 10);
+        long value = 0;
+        for (; i < stop; i++)
+            value = value * 10 + (json.charAt(i) - '0');
+        return negative ? -value : value;
+    }
+
+    /**
+     * Exact for up to 15 significant digits and small exponents, where the
+     * mantissa and the power of ten are both exact doubles and a single multiply
+     * or divide rounds correctly. Anything else goes through Double.parseDouble.
+     */
+    private double parseDecimal(int start, int stop) {
+        int i = start;
+        boolean negative = json.charAt(i) == '-';
+        if (negative)
+            i++;
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        for (; i < stop; i++) {
+            char c = json.charAt(i);
+            if (c == '.') {
+                fraction = true;
+            } else if (c >= '0' && c <= '9') {
+                if (mantissa != 0 || c != '0')
+                    digits++;
+                mantissa = mantissa * 10 + (c - '0');
+                if (fraction)
+                    scale--;
+            } else {
+                break;
+            }
+        }
+        if (i < stop) {
+            i++; // skip 'e'
+            boolean negativeExp = json.charAt(i) == '-';
+            if (json.charAt(i) == '-' || json.charAt(i) == '+')
+                i++;
+            int exp = 0;
+            for (; i < stop && exp < 1000; i++)
+                exp = exp * 10 + (json.charAt(i) - '0');
+            scale += negativeExp ? -exp : exp;
+        }
+
+        if (digits > 15 || scale < -22 || scale > 22)
+            return Double.parseDouble(json.subSequence(start, stop).toString());
+        double value = scale < 0 ? mantissa / POW10[-scale] : mantissa * POW10[scale];
+        return negative ? -value : value;
+    }
+
+    private boolean matches(String literal) {
+        if (pos + literal.length() > end)
+            return false;
+        for (int i = 0; i < literal.length(); i++) {
+            if (json.charAt(pos + i) != literal.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private void skipWhitespace() {
+        while (pos < end && Character.isWhitespace(json.charAt(pos)))
+            pos++;
+    }
+
+    private char current() {
+        if (pos >= end)
+            return '\0';
+        return json.charAt(pos);
+    }
+
+    private char next() {
+        if (pos >= end)
+            throw error("Unexpected end of input");
+        return json.charAt(pos++);
+    }
+
+    private void expect(char expected) {
+        char c = next();
+        if (c != expected)
+            throw error("Expected '" + expected + "' but found '" + c + "'");
+    }
+
+    private RuntimeException error(String message) {
+        return new RuntimeException(message + " at position " + pos);
+    }
+
+}
@@ -0,0 +1,104 @@
+package dev.korgi.networking;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Cursor over a byte array written by {@link BinaryWriter}.
+ */
+public class BinaryReader {
+
+    private final byte[] buf;
+    private int pos;
+    private final int end;
+
+    public BinaryReader(byte[] buf) {
+        this(buf, 0, buf.length);
+    }
+
+    public BinaryReader(byte[] buf, int offset, int length) {
+        this.buf = buf;
+        this.pos = offset;
+        this.end = offset + length;
+    }
+
+    private void need(int n) {
+        if (pos + n > end) {
+            throw new IllegalArgumentException("Truncated binary frame");
+        }
+    }
+
+    public int readByte() {
+        need(1);
+        return buf[pos++] & 0xFF;
+    }
+
+    public int readInt() {
+        need(4);
+        int v = ((buf[pos] & 0xFF) << 24) | ((buf[pos + 1] & 0xFF) << 16) | ((buf[pos + 2] & 0xFF) << 8)
+                | (buf[pos + 3] & 0xFF);
+        pos += 4;
+        return v;
+    }
+
+    public long readLong() {
+        long hi = readInt() & 0xFFFFFFFFL;
+        return (hi << 32) | (readInt() & 0xFFFFFFFFL);
+    }
+
+    public float readFloat() {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    public double readDouble() {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    public int readVarInt() {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte();
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    public long readVarLong() {
+        long v = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = readByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varlong");
+    }
+
+    public int readZigZag() {
+        int v = readVarInt();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    public String readString() {
+        int length = readVarInt();
+        need(length);
+        String s = new String(buf, pos, length, StandardCharsets.UTF_8);
+        pos += length;
+        return s;
+    }
+
+    public byte[] readRemaining() {
+        byte[] rest = Arrays.copyOfRange(buf, pos, end);
+        pos = end;
+        return rest;
+    }
+
+    public boolean hasRemaining() {
+        return pos < end;
+    }
+
+}
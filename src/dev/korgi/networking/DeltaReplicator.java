@@ -0,0 +1,154 @@
+package dev.korgi.networking;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+import dev.korgi.json.JSONObject;
+import dev.korgi.utils.ServerSide;
+
+/**
+ * Per client, per object state replication. Each state sent to a client only
+ * carries the fields that differ from the last state that client acknowledged,
+ * or from any state sent since, so it is correct whichever of those the client
+ * last applied. An object whose fields match all of them is not sent at all.
+ *
+ * Clients acknowledge a single sequence number: every state sent up to it has
+ * been received and, since the per-id queues only ever skip a state for a newer
+ * one, the newest of them per object has been applied.
+ *
+ * A full state goes out when there is no acknowledged baseline yet, every
+ * keyframeInterval deltas, and when a client stops acknowledging.
+ */
+@ServerSide
+public class DeltaReplicator {
+
+    // unacknowledged states kept per stream before it falls back to full states
+    private static final int MAX_PENDING = 64;
+
+    private static class Sent {
+        long sequence;
+        Map<String, String> fields;
+
+        Sent(long sequence, Map<String, String> fields) {
+            this.sequence = sequence;
+            this.fields = fields;
+        }
+    }
+
+    // one object as seen by one client
+    private static class Stream {
+        Map<String, String> baseline;
+        ArrayDeque<Sent> pending = new ArrayDeque<>();
+        int sinceKeyframe;
+    }
+
+    private final int keyframeInterval;
+    private final Map<String, Map<String, Stream>> clients = new HashMap<>();
+    private long sequence;
+
+    private long fullSent;
+    private long deltasSent;
+    private long unchanged;
+
+    public DeltaReplicator(int keyframeInterval) {
+        this.keyframeInterval = Math.max(1, keyframeInterval);
+    }
+
+    /** Every field of the state as text, computed once and shared by all clients. */
+    public static Map<String, String> fields(JSONObject state) {
+        Map<String, String> fields = new HashMap<>();
+        for (String key : state.getValues().keySet()) {
+            fields.put(key, state.toJSONString(key));
+        }
+        return fields;
+    }
+
+    /**
+     * The packet to send the client for this state, or null when it already
+     * has it.
+     */
+    public Packet encode(String client, String id, JSONObject state, Map<String, String> fields) {
+        Stream stream = clients.computeIfAbsent(client, c -> new HashMap<>()).computeIfAbsent(id, i -> new Stream());
+        if (stream.pending.size() >= MAX_PENDING) {
+            stream.baseline = null;
+            stream.pending.clear();
+        }
+
+        JSONObject data;
+        if (stream.baseline == null || stream.sinceKeyframe >= keyframeInterval) {
+            data = state;
+            stream.sinceKeyframe = 0;
+            fullSent++;
+        } else {
+            data = new JSONObject();
+            for (Map.Entry<String, String> field : fields.entrySet()) {
+                if (changed(stream, field.getKey(), field.getValue())) {
+                    data.set(field.getKey(), state.getValues().get(field.getKey()));
+                }
+            }
+            if (data.getValues().isEmpty()) {
+                unchanged++;
+                return null;
+            }
+            stream.sinceKeyframe++;
+            deltasSent++;
+        }
+
+        stream.pending.add(new Sent(++sequence, fields));
+        Packet packet = new Packet(id, NetworkStream.CLIENT, NetworkStream.BROADCAST, data);
+        packet.setSequence(sequence);
+        return packet;
+    }
+
+    private static boolean changed(Stream stream, String key, String value) {
+        if (!value.equals(stream.baseline.get(key))) {
+            return true;
+        }
+        for (Sent sent : stream.pending) {
+            if (!value.equals(sent.fields.get(key))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** The client has applied every state sent up to {@code sequence}. */
+    public void acked(String client, long sequence) {
+        Map<String, Stream> streams = clients.get(client);
+        if (streams == null) {
+            return;
+        }
+        for (Stream stream : streams.values()) {
+            while (!stream.pending.isEmpty() && stream.pending.peekFirst().sequence <= sequence) {
+                stream.baseline = stream.pending.pollFirst().fields;
+            }
+        }
+    }
+
+    /** Starts over with full states, for when the client rebuilt the object. */
+    public void forget(String client, String id) {
+        Map<String, Stream> streams = clients.get(client);
+        if (streams != null) {
+            streams.remove(id);
+        }
+    }
+
+    public void forget(String client) {
+        clients.remove(client);
+    }
+
+    public long fullSent() {
+        return fullSent;
+    }
+
+    public long deltasSent() {
+        return deltasSent;
+    }
+
+    /** States that were not sent because the client already had them. */
+    public long unchanged() {
+        return unchanged;
+    }
+
+}
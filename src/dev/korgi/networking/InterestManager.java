@@ -0,0 +1,166 @@
+package dev.korgi.networking;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import dev.korgi.game.entites.Entity;
+import dev.korgi.json.JSONObject;
+import dev.korgi.math.Vector3;
+import dev.korgi.player.Player;
+import dev.korgi.utils.ServerSide;
+
+/**
+ * Tracks which entities each connected player is within radius of. Every
+ * update sends each client the entities that came into range, with their full
+ * state so the client can construct them, and the ids of those that left, on
+ * the ordered "entities" channel. Broadcasts of a tracked entity are then only
+ * sent to clients that can see it.
+ *
+ * Players are tracked for filtering but never announced, a client always sees
+ * its own player.
+ */
+@ServerSide
+public class InterestManager {
+
+    public static final String CHANNEL = "entities";
+
+    private final double radiusSq;
+    private final Map<String, Set<String>> visible = new HashMap<>();
+    private final Map<String, Set<String>> previous = new HashMap<>();
+    private final Set<String> tracked = new HashSet<>();
+    private final Set<String> playerIds = new HashSet<>();
+    private final Set<String> watched = new HashSet<>();
+
+    private long entered;
+    private long left;
+
+    public InterestManager(double radius) {
+        this.radiusSq = radius * radius;
+    }
+
+    public void update(List<Player> players, List<Entity> entities) {
+        tracked.clear();
+        for (Entity e : entities) {
+            if (e != null)
+                tracked.add(e.internal_id);
+        }
+        playerIds.clear();
+        for (Player p : players) {
+            playerIds.add(p.internal_id);
+        }
+        visible.keySet().removeIf(id -> !isConnected(players, id));
+        previous.keySet().removeIf(id -> !isConnected(players, id));
+        watched.clear();
+
+        for (Player p : players) {
+            if (!p.connected) {
+                continue;
+            }
+            Set<String> now = previous.remove(p.internal_id);
+            if (now == null) {
+                now = new HashSet<>();
+            }
+            now.clear();
+            now.add(p.internal_id);
+            Vector3 center = p.getPosition();
+            for (Entity e : entities) {
+                if (e == null || e == p) {
+                    continue;
+                }
+                Vector3 pos = e.getPosition();
+                double dx = pos.x - center.x, dy = pos.y - center.y, dz = pos.z - center.z;
+                if (dx * dx + dy * dy + dz * dz <= radiusSq) {
+                    now.add(e.internal_id);
+                }
+            }
+
+            watched.addAll(now);
+            Set<String> before = visible.put(p.internal_id, now);
+            sendChanges(p.internal_id, before, now, entities);
+            if (before != null) {
+                previous.put(p.internal_id, before);
+            }
+        }
+    }
+
+    private void sendChanges(String client, Set<String> before, Set<String> now, List<Entity> entities) {
+        JSONObject data = new JSONObject();
+        DeltaReplicator deltas = NetworkStream.getReplicator();
+        int ec = 0;
+        for (Entity e : entities) {
+            if (e == null || e instanceof Player || !now.contains(e.internal_id)) {
+                continue;
+            }
+            if (before == null || !before.contains(e.internal_id)) {
+                data.set("e%d".formatted(ec++), e);
+                if (deltas != null)
+                    deltas.forget(client, e.internal_id);
+            }
+        }
+        int lc = 0;
+        if (before != null) {
+            for (String id : before) {
+                if (now.contains(id)) {
+                    continue;
+                }
+                if (deltas != null)
+                    deltas.forget(client, id);
+                if (!playerIds.contains(id))
+                    data.set("l%d".formatted(lc++), id);
+            }
+        }
+        if (ec == 0 && lc == 0) {
+            return;
+        }
+        entered += ec;
+        left += lc;
+        data.set("ec", ec);
+        data.set("lc", lc);
+        Packet out = new Packet(CHANNEL, NetworkStream.CLIENT, NetworkStream.PRIVATE_MESSAGE, data);
+        out.network_destination = client;
+        NetworkStream.sendPacket(out);
+    }
+
+    private static boolean isConnected(List<Player> players, String id) {
+        for (Player p : players) {
+            if (p.connected && p.internal_id.equals(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether a broadcast for the given id should reach the client. Ids that
+     * are not entities, like the world channel, always go through.
+     */
+    public boolean wants(String client, String id) {
+        if (!tracked.contains(id)) {
+            return true;
+        }
+        Set<String> set = visible.get(client);
+        return set != null && set.contains(id);
+    }
+
+    /** Whether any client can see the entity, so its state is worth sending. */
+    public boolean watched(String id) {
+        return watched.contains(id);
+    }
+
+    public int visibleCount(String client) {
+        Set<String> set = visible.get(client);
+        return set == null ? 0 : set.size();
+    }
+
+    public long entered() {
+        return entered;
+    }
+
+    public long left() {
+        return left;
+    }
+
+}
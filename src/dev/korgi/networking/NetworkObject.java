@@ -1,13 +1,12 @@
 package dev.korgi.networking;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 import dev.korgi.game.Game;
+import dev.korgi.json.JSONClass;
 import dev.korgi.json.JSONIgnore;
 import dev.korgi.json.JSONObject;
 import dev.korgi.utils.ClientSide;
@@ -33,7 +32,8 @@ public abstract class NetworkObject {
         Packet incomming_packet = NetworkStream.getPacket(internal_id, Game.isClient);
         if (incomming_packet != null) {
             handleInPacket(incomming_packet);
-            incomming_packet.getData().fillObject(this);
+            incomming_packet.fillObject(this);
+            stateApplied(incomming_packet);
             NetworkStream.packetCount++;
         }
         if (cancelTick != null && cancelTick.get()) {
@@ -70,28 +70,14 @@ public abstract class NetworkObject {
 
     }
 
-    protected void handleInPacket(Packet in) {
-        Class<?> clazz = this.getClass();
-        List<Field> fields = new ArrayList<>();
-        while (clazz != null && clazz != Object.class) {
-            for (Field field : clazz.getDeclaredFields()) {
-                int mods = field.getModifiers();
-                if (Modifier.isStatic(mods) || Modifier.isFinal(mods) || field.isAnnotationPresent(JSONIgnore.class)) {
-                    continue;
-                }
-                if (Game.isClient && field.isAnnotationPresent(ClientSide.class)) {
-                    fields.add(field);
-                } else if (!Game.isClient && field.isAnnotationPresent(ServerSide.class)) {
-                    fields.add(field);
-                }
-            }
-            clazz = clazz.getSuperclass();
-        }
-
-        JSONObject inData = in.getData();
+    /** Called once a received state has been filled in. */
+    protected void stateApplied(Packet in) {
+    }
 
-        for (Field field : fields) {
-            inData.set(field.getName(), null);
+    protected void handleInPacket(Packet in) {
+        JSONClass meta = JSONClass.of(getClass());
+        for (String name : Game.isClient ? meta.clientSideNames() : meta.serverSideNames()) {
+            in.skipField(name);
         }
     }
 
@@ -102,8 +88,11 @@ public abstract class NetworkObject {
 
     public void sendOut() {
         JSONObject outData = new JSONObject(this);
-        Packet outPacket = new Packet(internal_id, Game.isClient ? NetworkStream.SERVER : NetworkStream.CLIENT,
-                Game.isClient ? NetworkStream.INPUT_HANDLE_REQUEST : NetworkStream.BROADCAST, outData);
+        if (!Game.isClient) {
+            NetworkStream.sendState(internal_id, outData);
+            return;
+        }
+        Packet outPacket = new Packet(internal_id, NetworkStream.SERVER, NetworkStream.INPUT_HANDLE_REQUEST, outData);
         handleOutPacket(outPacket);
         NetworkStream.sendPacket(outPacket);
     }
@@ -1,13 +1,13 @@
 package dev.korgi.networking;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.ServerSocket;
+import java.io.OutputStream;
 import java.net.Socket;
 import java.net.SocketException;
-import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.ConcurrentModificationException;
 import java.util.HashMap;
@@ -21,13 +21,22 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 
 import dev.korgi.game.Game;
 import dev.korgi.json.JSONObject;
+import dev.korgi.json.JSONReader;
 import dev.korgi.player.Player;
 import dev.korgi.utils.ClientSide;
 import dev.korgi.utils.ServerSide;
 
 public class NetworkStream {
 
-    public static final int PROTOCOL_VERSION = 1;
+    public static final int PROTOCOL_VERSION = 5;
+
+    // Frames are [kind:1][length:4][body], json bodies are a serialized Packet,
+    // binary bodies are the packet header followed by its payload
+    public static final int FRAME_JSON = 0;
+    public static final int FRAME_BINARY = 1;
+    private static final int MAX_FRAME_SIZE = 64 << 20;
+    // bytes a client may fall behind by before the server drops it
+    private static final long MAX_QUEUED = MAX_FRAME_SIZE;
 
     // Destinations
     public static final int CLIENT = 0;
@@ -40,6 +49,7 @@ public class NetworkStream {
     public static final int HANDSHAKE_REQUEST = 2;
     public static final int HANDSHAKE_RESPONSE = 3;
     public static final int PRIVATE_MESSAGE = 4;
+    public static final int ACK = 5;
     public static final int PING = 9;
     public static final int DISCONNECT = 10;
 
@@ -47,11 +57,19 @@ public class NetworkStream {
     private static final long PING_TIMEOUT_MS = 15000;
     private static final long PING_INTERVAL_MS = 3000;
 
-    public static final List<Packet> serverPackets = new ArrayList<>();
-    public static final List<Packet> clientPackets = new ArrayList<>();
+    // Channels whose packets must all be delivered in order, every other id only
+    // keeps its latest packet since it carries full state
+    private static final Set<String> ORDERED_CHANNELS = Set.of("world", InterestManager.CHANNEL);
+
+    private static final Map<String, ArrayDeque<Packet>> serverPackets = new HashMap<>();
+    private static final Map<String, ArrayDeque<Packet>> clientPackets = new HashMap<>();
 
     @ServerSide
-    private static ServerSocket serverSocket;
+    private static ServerTransport transport;
+    @ServerSide
+    private static InterestManager interest;
+    @ServerSide
+    private static DeltaReplicator replicator;
     @ClientSide
     private static Socket clientSocket;
 
@@ -63,11 +81,17 @@ public class NetworkStream {
 
     @ClientSide
     public static String clientId = null;
+    // highest replicated state sequence received and the last one acknowledged
+    @ClientSide
+    private static long receivedSequence = 0;
+    @ClientSide
+    private static long ackedSequence = 0;
     private static long lastPingSent = 0;
     private static long lastRoundTripPing = -1;
 
     public static double frameCount = 0;
     public static double packetCount = 0;
+    public static long bytesSent = 0;
 
     private static final Queue<Incoming> incoming = new ConcurrentLinkedQueue<>();
 
@@ -76,21 +100,31 @@ public class NetworkStream {
 
     private static class Incoming {
         Socket socket;
-        String json;
+        int kind;
+        byte[] body;
 
-        Incoming(Socket socket, String json) {
+        Incoming(Socket socket, int kind, byte[] body) {
             this.socket = socket;
-            this.json = json;
+            this.kind = kind;
+            this.body = body;
         }
     }
 
     @ServerSide
     public static void startServer(int port) throws IOException {
-        serverSocket = new ServerSocket(port);
-        serverSocket.setSoTimeout(1);
+        transport = new ServerTransport(port, MAX_FRAME_SIZE, MAX_QUEUED,
+                (socket, kind, body) -> incoming.add(new Incoming(socket, kind, body)));
         System.out.println("Server listening on port " + port);
     }
 
+    @ServerSide
+    public static void stopServer() {
+        if (transport != null) {
+            transport.shutdown();
+            transport = null;
+        }
+    }
+
     @ClientSide
     public static void startClient(String host, int port) throws IOException {
         clientSocket = new Socket(host, port);
@@ -111,54 +145,99 @@ public class NetworkStream {
     }
 
     public static void update(boolean isServer) {
-        try {
-            if (isServer && serverSocket != null) {
-                try {
-                    Socket client = serverSocket.accept();
-                    pendingSockets.add(client);
-                    pendingSince.put(client, System.currentTimeMillis());
-                    new Thread(() -> listenSocket(client)).start();
-                    System.out.println("Incoming connection...");
-                } catch (SocketTimeoutException ignored) {
-                }
+        if (isServer && transport != null) {
+            Socket client;
+            while ((client = transport.pollAccepted()) != null) {
+                pendingSockets.add(client);
+                pendingSince.put(client, System.currentTimeMillis());
+                System.out.println("Incoming connection...");
             }
+        }
 
-            handleHandshakeTimeouts();
-            handlePingTimeouts();
+        handleHandshakeTimeouts();
+        handlePingTimeouts();
 
-            if (!isServer && clientSocket != null &&
-                    System.currentTimeMillis() - lastPingSent > PING_INTERVAL_MS) {
-                sendPingPacket();
-                lastPingSent = System.currentTimeMillis();
-            }
+        if (!isServer && clientSocket != null &&
+                System.currentTimeMillis() - lastPingSent > PING_INTERVAL_MS) {
+            sendPingPacket();
+            lastPingSent = System.currentTimeMillis();
+        }
 
-            while (!incoming.isEmpty()) {
-                Incoming in = incoming.poll();
-                acceptPacket(in.socket, in.json);
-            }
+        // states queued by the last update have been applied by now
+        if (!isServer && receivedSequence > ackedSequence) {
+            JSONObject data = new JSONObject();
+            data.set("sequence", receivedSequence);
+            sendPacket(new Packet(clientId, SERVER, ACK, data));
+            ackedSequence = receivedSequence;
+        }
 
-        } catch (IOException e) {
-            e.printStackTrace();
+        while (!incoming.isEmpty()) {
+            Incoming in = incoming.poll();
+            if (in.kind == FRAME_BINARY) {
+                acceptBinaryPacket(in.socket, in.body);
+            } else {
+                acceptPacket(in.socket, new String(in.body, StandardCharsets.UTF_8));
+            }
         }
     }
 
     private static void listenSocket(Socket socket) {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                incoming.add(new Incoming(socket, line));
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            int kind;
+            while ((kind = in.read()) != -1) {
+                int length = in.readInt();
+                if (length < 0 || length > MAX_FRAME_SIZE) {
+                    System.err.println("Dropping connection, bad frame length " + length);
+                    close(socket);
+                    return;
+                }
+                byte[] body = new byte[length];
+                in.readFully(body);
+                incoming.add(new Incoming(socket, kind, body));
             }
         } catch (IOException ignored) {
         }
     }
 
+    private static byte[] frame(Packet packet) {
+        if (packet.getPayload() == null) {
+            // received packets may be relayed before anyone parsed their data
+            packet.getData();
+            JSONObject json = new JSONObject(packet);
+            if (packet.getSequence() != 0)
+                json.set("sequence", packet.getSequence());
+            if (packet.getTick() != 0)
+                json.set("tick", packet.getTick());
+            return frame(FRAME_JSON, json.toJSONString().getBytes(StandardCharsets.UTF_8));
+        }
+        BinaryWriter body = new BinaryWriter(packet.getPayload().length + 32);
+        body.writeString(packet.getInternalId());
+        body.writeVarInt(packet.getDestination());
+        body.writeZigZag(packet.getType());
+        body.writeBytes(packet.getPayload(), 0, packet.getPayload().length);
+        return frame(FRAME_BINARY, body.toByteArray());
+    }
+
+    private static byte[] frame(int kind, byte[] body) {
+        byte[] frame = new byte[body.length + 5];
+        frame[0] = (byte) kind;
+        frame[1] = (byte) (body.length >>> 24);
+        frame[2] = (byte) (body.length >>> 16);
+        frame[3] = (byte) (body.length >>> 8);
+        frame[4] = (byte) body.length;
+        System.arraycopy(body, 0, frame, 5, body.length);
+        return frame;
+    }
+
     public static void sendPacket(Packet packet) {
         try {
-            String json = new JSONObject(packet).toJSONString();
+            byte[] frame = frame(packet);
 
             if (packet.getType() == BROADCAST && packet.getDestination() == CLIENT) {
-                for (Socket s : clientSockets.values())
-                    sendString(s, json);
+                for (Map.Entry<String, Socket> c : clientSockets.entrySet()) {
+                    if (interest == null || interest.wants(c.getKey(), packet.getInternalId()))
+                        sendFrame(c.getValue(), frame);
+                }
                 return;
             }
 
@@ -167,12 +246,12 @@ public class NetworkStream {
                     if (packet.network_destination != null) {
                         Socket s = clientSockets.get(packet.network_destination);
                         if (s != null)
-                            sendString(s, json);
+                            sendFrame(s, frame);
                     }
                     break;
                 case SERVER: // client -> server
                     if (clientSocket != null && !clientSocket.isClosed())
-                        sendString(clientSocket, json);
+                        sendFrame(clientSocket, frame);
                     break;
                 default:
                     System.err.println("Unknown destination: " + packet.getDestination());
@@ -189,34 +268,133 @@ public class NetworkStream {
         }
     }
 
-    private static void sendString(Socket socket, String msg) throws IOException {
-        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-        out.println(msg);
+    /**
+     * Sends an object's state to every client that wants it, as full state or
+     * as a delta when a DeltaReplicator is set.
+     */
+    @ServerSide
+    public static void sendState(String internalId, JSONObject state) {
+        if (replicator == null) {
+            Packet packet = new Packet(internalId, CLIENT, BROADCAST, state);
+            packet.setTick(Game.getTick());
+            sendPacket(packet);
+            return;
+        }
+        Map<String, String> fields = DeltaReplicator.fields(state);
+        List<String> dropped = null;
+        for (Map.Entry<String, Socket> c : clientSockets.entrySet()) {
+            if (interest != null && !interest.wants(c.getKey(), internalId))
+                continue;
+            Packet packet = replicator.encode(c.getKey(), internalId, state, fields);
+            if (packet == null)
+                continue;
+            packet.setTick(Game.getTick());
+            try {
+                sendFrame(c.getValue(), frame(packet));
+            } catch (IOException e) {
+                if (dropped == null)
+                    dropped = new ArrayList<>();
+                dropped.add(c.getKey());
+            }
+        }
+        if (dropped != null) {
+            dropped.forEach(NetworkStream::disconnectClient);
+        }
+    }
+
+    private static void sendFrame(Socket socket, byte[] frame) throws IOException {
+        bytesSent += frame.length;
+        if (transport != null && socket.getChannel() != null) {
+            if (!transport.send(socket, frame))
+                throw new SocketException("Connection closed");
+            return;
+        }
+        synchronized (socket) {
+            OutputStream out = socket.getOutputStream();
+            out.write(frame);
+            out.flush();
+        }
+    }
+
+    private static void acceptBinaryPacket(Socket socket, byte[] body) {
+        BinaryReader in = new BinaryReader(body);
+        Packet packet = new Packet(in.readString(), in.readVarInt(), in.readZigZag(), new JSONObject());
+        packet.setPayload(in.readRemaining());
+
+        deliver(packet);
     }
 
     private static void acceptPacket(Socket socket, String packetString) {
-        JSONObject obj = JSONObject.fromJSONString(packetString);
-        Packet packet = new Packet(
-                obj.getString("internal_id"),
-                obj.getInt("destination"),
-                obj.getInt("type"),
-                obj.getJSONObject("data"));
-
-        if (handleProtocolPackets(socket, packet, obj))
+        // only the header is parsed here, data stays text until it is used
+        JSONReader in = new JSONReader(packetString);
+        String internalId = null;
+        int destination = 0;
+        int type = 0;
+        long sequence = 0;
+        long tick = 0;
+        int dataStart = 0;
+        int dataEnd = 0;
+        in.beginObject();
+        while (in.hasNext()) {
+            String key = in.nextName();
+            JSONReader.Token token = in.peek();
+            if (key.equals("internal_id") && token == JSONReader.Token.STRING) {
+                internalId = in.nextString();
+            } else if (key.equals("destination") && token == JSONReader.Token.NUMBER) {
+                destination = in.nextInt();
+            } else if (key.equals("type") && token == JSONReader.Token.NUMBER) {
+                type = in.nextInt();
+            } else if (key.equals("sequence") && token == JSONReader.Token.NUMBER) {
+                sequence = in.nextLong();
+            } else if (key.equals("tick") && token == JSONReader.Token.NUMBER) {
+                tick = in.nextLong();
+            } else if (key.equals("data") && token == JSONReader.Token.BEGIN_OBJECT) {
+                dataStart = in.position();
+                in.skipValue();
+                dataEnd = in.position();
+            } else {
+                in.skipValue();
+            }
+        }
+        Packet packet = dataEnd > dataStart
+                ? new Packet(internalId, destination, type, packetString, dataStart, dataEnd)
+                : new Packet(internalId, destination, type, null);
+        packet.setSequence(sequence);
+        packet.setTick(tick);
+
+        if (handleProtocolPackets(socket, packet))
             return;
 
-        if (packet.getDestination() == CLIENT)
-            clientPackets.add(packet);
-        else
-            serverPackets.add(packet);
+        deliver(packet);
+    }
+
+    /**
+     * Queues a received packet under its internal id, collapsing it onto any
+     * undelivered packet for the same id unless the id is an ordered channel.
+     */
+    public static void deliver(Packet packet) {
+        Map<String, ArrayDeque<Packet>> queues = packet.getDestination() == CLIENT ? clientPackets : serverPackets;
+        ArrayDeque<Packet> queue = queues.get(packet.getInternalId());
+        if (queue == null) {
+            queue = new ArrayDeque<>(2);
+            queues.put(packet.getInternalId(), queue);
+        } else if (!ORDERED_CHANNELS.contains(packet.getInternalId())) {
+            queue.clear();
+        }
+        queue.add(packet);
+        if (packet.getDestination() == CLIENT) {
+            receivedSequence = Math.max(receivedSequence, packet.getSequence());
+            if (packet.getTick() != 0)
+                ServerClock.observe(packet.getTick());
+        }
     }
 
-    private static boolean handleProtocolPackets(Socket socket, Packet packet, JSONObject raw) {
+    private static boolean handleProtocolPackets(Socket socket, Packet packet) {
         if (packet.getType() == HANDSHAKE_REQUEST) {
             if (!pendingSockets.contains(socket))
                 return true;
 
-            JSONObject data = raw.getJSONObject("data");
+            JSONObject data = packet.getData();
             int version = data.getInt("protocol");
             if (version != PROTOCOL_VERSION) {
                 sendHandshakeResponse(socket, false, "Protocol mismatch");
@@ -238,12 +416,18 @@ public class NetworkStream {
         }
 
         if (packet.getType() == HANDSHAKE_RESPONSE) {
-            boolean ok = raw.getJSONObject("data").getBoolean("accepted");
+            boolean ok = packet.getData().getBoolean("accepted");
             if (!ok) {
                 System.out.println("Handshake rejected");
                 close(clientSocket);
             } else {
                 System.out.println("Handshake successful");
+                JSONObject data = packet.getData();
+                ServerClock.reset();
+                if (data.hasKey("tick_rate", "state_interval")) {
+                    ServerClock.tickRate = data.getInt("tick_rate");
+                    ServerClock.stateInterval = data.getInt("state_interval");
+                }
                 Game.playerConnected(clientId);
             }
             return true;
@@ -270,6 +454,14 @@ public class NetworkStream {
             return true;
         }
 
+        if (packet.getType() == ACK) {
+            String client = socketToClientId.get(socket);
+            if (client != null && replicator != null) {
+                replicator.acked(client, packet.getData().getLong("sequence"));
+            }
+            return true;
+        }
+
         if (packet.getType() == DISCONNECT) {
             disconnectClient(packet.getInternalId());
             return true;
@@ -289,8 +481,10 @@ public class NetworkStream {
             JSONObject data = new JSONObject();
             data.set("accepted", ok);
             data.set("reason", reason);
+            data.set("tick_rate", Game.getTickRate());
+            data.set("state_interval", Game.getStateInterval());
             Packet p = new Packet("server", CLIENT, HANDSHAKE_RESPONSE, data);
-            sendString(socket, new JSONObject(p).toJSONString());
+            sendFrame(socket, frame(p));
         } catch (IOException ignored) {
             ignored.printStackTrace();
         }
@@ -344,46 +538,76 @@ public class NetworkStream {
             close(s);
         socketToClientId.values().remove(id);
         lastPing.remove(id);
+        serverPackets.remove(id);
+        if (replicator != null)
+            replicator.forget(id);
         System.out.println("Client disconnected: " + id);
     }
 
     private static void close(Socket s) {
+        if (transport != null && s.getChannel() != null) {
+            transport.close(s);
+            return;
+        }
         try {
             s.close();
         } catch (IOException ignored) {
         }
     }
 
+    // drained queues are dropped, ids that stop receiving packets leave nothing behind
     public static Packet getPacket(String internalId, boolean isClient) {
-        List<Packet> list = isClient ? clientPackets : serverPackets;
-        List<Packet> packets = new ArrayList<>();
-        for (Packet p : list) {
-            if (p.getInternalId().equals(internalId)) {
-                packets.add(p);
-            }
-        }
-        for (Packet p : packets) {
-            list.remove(p);
-        }
-        if (packets.size() > 0) {
-            return packets.get(packets.size() - 1);
-        } else {
+        ArrayDeque<Packet> queue = (isClient ? clientPackets : serverPackets).remove(internalId);
+        if (queue == null || queue.isEmpty()) {
             return null;
         }
+        return queue.peekLast();
     }
 
     public static List<Packet> getAllPackets(String internalId, boolean isClient) {
-        List<Packet> list = isClient ? clientPackets : serverPackets;
-        List<Packet> packets = new ArrayList<>();
-        for (Packet p : list) {
-            if (p.getInternalId().equals(internalId)) {
-                packets.add(p);
-            }
-        }
-        for (Packet p : packets) {
-            list.remove(p);
+        ArrayDeque<Packet> queue = (isClient ? clientPackets : serverPackets).remove(internalId);
+        if (queue == null || queue.isEmpty()) {
+            return new ArrayList<>();
         }
-        return packets;
+        return new ArrayList<>(queue);
+    }
+
+    /**
+     * Filters entity broadcasts to the clients that can see them, null sends
+     * every broadcast to every client.
+     */
+    @ServerSide
+    public static void setInterest(InterestManager manager) {
+        interest = manager;
+    }
+
+    @ServerSide
+    public static InterestManager getInterest() {
+        return interest;
+    }
+
+    /**
+     * Sends object states as deltas against what each client acknowledged,
+     * null sends full states.
+     */
+    @ServerSide
+    public static void setReplicator(DeltaReplicator deltas) {
+        replicator = deltas;
+    }
+
+    @ServerSide
+    public static DeltaReplicator getReplicator() {
+        return replicator;
+    }
+
+    @ServerSide
+    public static boolean isConnected(String clientId) {
+        return clientSockets.containsKey(clientId);
+    }
+
+    /** Drops anything still queued for an id that is gone. */
+    public static void discard(String internalId, boolean isClient) {
+        (isClient ? clientPackets : serverPackets).remove(internalId);
     }
 
     public static long getPing() {
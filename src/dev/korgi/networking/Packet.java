@@ -1,6 +1,11 @@
 package dev.korgi.networking;
 
+import java.util.HashSet;
+import java.util.Set;
+
+import dev.korgi.json.JSONIgnore;
 import dev.korgi.json.JSONObject;
+import dev.korgi.json.JSONReader;
 
 public class Packet {
 
@@ -9,6 +14,24 @@ public class Packet {
     private int type;
     private JSONObject data;
     public String network_destination = null;
+    @JSONIgnore
+    private byte[] payload;
+    // snapshot number of a replicated state and the server tick it was taken
+    // on, 0 for anything else
+    @JSONIgnore
+    private long sequence;
+    @JSONIgnore
+    private long tick;
+
+    // received data still as text, parsed on first getData() or bound directly by fillObject
+    @JSONIgnore
+    private String source;
+    @JSONIgnore
+    private int dataStart;
+    @JSONIgnore
+    private int dataEnd;
+    @JSONIgnore
+    private Set<String> skipped;
 
     public Packet(String internal_id, int destination, int type, JSONObject data) {
         this.internal_id = internal_id;
@@ -17,6 +40,17 @@ public class Packet {
         this.data = data;
     }
 
+    /**
+     * Packet whose data is the unparsed object at {@code [dataStart, dataEnd)} of
+     * {@code source}.
+     */
+    public Packet(String internal_id, int destination, int type, String source, int dataStart, int dataEnd) {
+        this(internal_id, destination, type, null);
+        this.source = source;
+        this.dataStart = dataStart;
+        this.dataEnd = dataEnd;
+    }
+
     public int getDestination() {
         return destination;
     }
@@ -30,9 +64,42 @@ public class Packet {
     }
 
     public JSONObject getData() {
+        if (data == null && source != null) {
+            data = new JSONReader(source, dataStart, dataEnd).readObject();
+            source = null;
+        }
         return data;
     }
 
+    /**
+     * Leaves the key out when the data is filled into an object.
+     */
+    public void skipField(String name) {
+        if (skipped == null) {
+            skipped = new HashSet<>();
+        }
+        skipped.add(name);
+    }
+
+    /**
+     * Fills the data into {@code target}, binding straight from the received text
+     * when it has not been parsed yet.
+     */
+    public void fillObject(Object target) {
+        Set<String> skip = skipped == null ? Set.of() : skipped;
+        if (data == null && source != null) {
+            JSONObject.fillObject(new JSONReader(source, dataStart, dataEnd), target, skip);
+            return;
+        }
+        if (data == null) {
+            return;
+        }
+        for (String name : skip) {
+            data.set(name, null);
+        }
+        data.fillObject(target);
+    }
+
     public void setDestination(int destination) {
         this.destination = destination;
     }
@@ -41,4 +108,31 @@ public class Packet {
         this.type = type;
     }
 
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public void setTick(long tick) {
+        this.tick = tick;
+    }
+
+    /**
+     * Binary body sent instead of the JSON data, see NetworkStream.FRAME_BINARY.
+     */
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public void setPayload(byte[] payload) {
+        this.payload = payload;
+    }
+
 }
@@ -0,0 +1,72 @@
+package dev.korgi.networking;
+
+import dev.korgi.utils.ClientSide;
+
+/**
+ * The client's estimate of the server tick, taken from the ticks stamped on
+ * received states. The offset follows the least delayed packet seen and only
+ * drifts down slowly, so jitter does not move the timeline. Remote objects are
+ * drawn at {@link #renderTick()}, a fixed delay behind it, which is fixed once
+ * per frame by {@link #advance()} and never goes backwards.
+ */
+@ClientSide
+public class ServerClock {
+
+    // how fast the offset follows packets that arrive later than the best one
+    private static final double DRIFT = 0.01;
+
+    /** Server ticks per second, sent in the handshake. */
+    public static int tickRate = 60;
+    /** Ticks between states of non-player entities, sent in the handshake. */
+    public static int stateInterval = 1;
+    public static double delayMs = 100;
+
+    private static boolean synced;
+    // server tick minus local time in ticks
+    private static double offset;
+    private static double renderTick;
+
+    private ServerClock() {
+    }
+
+    public static void observe(long tick) {
+        observe(tick, System.nanoTime());
+    }
+
+    public static void observe(long tick, long nanos) {
+        double sample = tick - nanos / 1e9 * tickRate;
+        if (!synced || sample > offset) {
+            offset = sample;
+            synced = true;
+        } else {
+            offset += (sample - offset) * DRIFT;
+        }
+    }
+
+    public static void advance() {
+        advance(System.nanoTime());
+    }
+
+    public static void advance(long nanos) {
+        if (!synced) {
+            return;
+        }
+        double tick = nanos / 1e9 * tickRate + offset - delayMs / 1000 * tickRate;
+        renderTick = Math.max(renderTick, tick);
+    }
+
+    public static boolean isSynced() {
+        return synced;
+    }
+
+    public static double renderTick() {
+        return renderTick;
+    }
+
+    public static void reset() {
+        synced = false;
+        offset = 0;
+        renderTick = 0;
+    }
+
+}
@@ -0,0 +1,292 @@
+package dev.korgi.networking;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import dev.korgi.utils.ServerSide;
+
+/**
+ * Non-blocking server side of NetworkStream. A single IO thread accepts,
+ * reads frames and drains per-connection write queues through pooled direct
+ * buffers, so the game thread never blocks on a socket and no thread is spent
+ * per client.
+ *
+ * Connections are identified by their Socket adaptor so NetworkStream can keep
+ * its Socket keyed bookkeeping. A client that stops reading is dropped once
+ * more than maxQueued bytes wait for it, instead of queueing without end.
+ */
+@ServerSide
+public class ServerTransport {
+
+    public interface FrameHandler {
+        void frame(Socket socket, int kind, byte[] body);
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static class Connection {
+        final SocketChannel channel;
+        final SelectionKey key;
+        final ByteBuffer readBuf;
+        final ByteBuffer writeBuf;
+        final Queue<byte[]> writes = new ConcurrentLinkedQueue<>();
+        final AtomicLong queued = new AtomicLong();
+        int headOffset;
+
+        int kind;
+        byte[] body;
+        int bodyPos;
+
+        Connection(SocketChannel channel, SelectionKey key, ByteBuffer readBuf, ByteBuffer writeBuf) {
+            this.channel = channel;
+            this.key = key;
+            this.readBuf = readBuf;
+            this.writeBuf = writeBuf;
+            writeBuf.flip();
+        }
+    }
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final FrameHandler handler;
+    private final int maxFrameSize;
+    private final long maxQueued;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    private final Map<Socket, Connection> connections = new ConcurrentHashMap<>();
+    private final Queue<Connection> flushQueue = new ConcurrentLinkedQueue<>();
+    private final Queue<Socket> closeQueue = new ConcurrentLinkedQueue<>();
+    private final Queue<Socket> accepted = new ConcurrentLinkedQueue<>();
+    private final ArrayDeque<ByteBuffer> pool = new ArrayDeque<>();
+
+    public ServerTransport(int port, int maxFrameSize, long maxQueued, FrameHandler handler) throws IOException {
+        this.handler = handler;
+        this.maxFrameSize = maxFrameSize;
+        this.maxQueued = maxQueued;
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.configureBlocking(false);
+        server.bind(new InetSocketAddress(port));
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        thread = new Thread(this::run, "korgi-net-io");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Sockets accepted since the last call, to be handed to the handshake logic
+     * on the game thread.
+     */
+    public Socket pollAccepted() {
+        return accepted.poll();
+    }
+
+    public int connectionCount() {
+        return connections.size();
+    }
+
+    public boolean send(Socket socket, byte[] frame) {
+        Connection c = connections.get(socket);
+        if (c == null) {
+            return false;
+        }
+        if (c.queued.addAndGet(frame.length) > maxQueued) {
+            System.err.println("Dropping connection, more than " + maxQueued + " bytes waiting to be sent");
+            close(socket);
+            return false;
+        }
+        c.writes.add(frame);
+        flushQueue.add(c);
+        selector.wakeup();
+        return true;
+    }
+
+    public void close(Socket socket) {
+        closeQueue.add(socket);
+        selector.wakeup();
+    }
+
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private ByteBuffer acquire() {
+        ByteBuffer buf = pool.poll();
+        if (buf == null) {
+            buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        buf.clear();
+        return buf;
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+
+                Socket closing;
+                while ((closing = closeQueue.poll()) != null) {
+                    Connection c = connections.get(closing);
+                    if (c != null) {
+                        disconnect(c);
+                    }
+                }
+
+                Connection pending;
+                while ((pending = flushQueue.poll()) != null) {
+                    if (pending.key.isValid()) {
+                        try {
+                            flush(pending);
+                        } catch (IOException e) {
+                            disconnect(pending);
+                        }
+                    }
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection c = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            read(c);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            flush(c);
+                        }
+                    } catch (IOException e) {
+                        disconnect(c);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            for (Connection c : connections.values()) {
+                disconnect(c);
+            }
+            try {
+                server.close();
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            Connection c = new Connection(channel, key, acquire(), acquire());
+            key.attach(c);
+            connections.put(channel.socket(), c);
+            accepted.add(channel.socket());
+        }
+    }
+
+    private void read(Connection c) throws IOException {
+        ByteBuffer buf = c.readBuf;
+        int n = c.channel.read(buf);
+        if (n < 0) {
+            disconnect(c);
+            return;
+        }
+        buf.flip();
+        while (true) {
+            if (c.body == null) {
+                if (buf.remaining() < 5) {
+                    break;
+                }
+                c.kind = buf.get() & 0xFF;
+                int length = buf.getInt();
+                if (length < 0 || length > maxFrameSize) {
+                    System.err.println("Dropping connection, bad frame length " + length);
+                    disconnect(c);
+                    return;
+                }
+                c.body = new byte[length];
+                c.bodyPos = 0;
+            }
+            int take = Math.min(buf.remaining(), c.body.length - c.bodyPos);
+            buf.get(c.body, c.bodyPos, take);
+            c.bodyPos += take;
+            if (c.bodyPos < c.body.length) {
+                break;
+            }
+            byte[] body = c.body;
+            c.body = null;
+            handler.frame(c.channel.socket(), c.kind, body);
+        }
+        buf.compact();
+    }
+
+    private void flush(Connection c) throws IOException {
+        ByteBuffer buf = c.writeBuf;
+        while (true) {
+            if (!buf.hasRemaining()) {
+                buf.clear();
+                byte[] head;
+                while (buf.hasRemaining() && (head = c.writes.peek()) != null) {
+                    int take = Math.min(buf.remaining(), head.length - c.headOffset);
+                    buf.put(head, c.headOffset, take);
+                    c.headOffset += take;
+                    if (c.headOffset == head.length) {
+                        c.writes.poll();
+                        c.queued.addAndGet(-head.length);
+                        c.headOffset = 0;
+                    }
+                }
+                buf.flip();
+                if (!buf.hasRemaining()) {
+                    c.key.interestOps(SelectionKey.OP_READ);
+                    return;
+                }
+            }
+            c.channel.write(buf);
+            if (buf.hasRemaining()) {
+                c.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+        }
+    }
+
+    private void disconnect(Connection c) {
+        if (connections.remove(c.channel.socket()) == null) {
+            return;
+        }
+        c.key.cancel();
+        try {
+            c.channel.close();
+        } catch (IOException ignored) {
+        }
+        pool.add(c.readBuf);
+        pool.add(c.writeBuf);
+    }
+
+}
@@ -0,0 +1,118 @@
+package dev.korgi.networking;
+
+import dev.korgi.math.Vector3;
+import dev.korgi.utils.ClientSide;
+
+/**
+ * The last few received states of a remote object, position, rotation and
+ * velocity by server tick. Sampling between two states interpolates, past the
+ * newest it extrapolates along the newest velocity for a few ticks and then
+ * holds.
+ *
+ * A state arriving more than two intervals after the previous one means the
+ * object sat still in between, deltas are not sent for unchanged objects, so
+ * the previous state is repeated one interval earlier rather than blending
+ * across the gap.
+ */
+@ClientSide
+public class SnapshotBuffer {
+
+    private static final int SIZE = 32;
+    private static final int STRIDE = 9;
+
+    /** Longest extrapolation past the newest state, in seconds. */
+    public static double maxExtrapolation = 0.1;
+
+    private final long[] ticks = new long[SIZE];
+    private final double[] states = new double[SIZE * STRIDE];
+    private int newest = -1;
+    private int count;
+
+    public void add(long tick, Vector3 position, Vector3 rotation, Vector3 velocity) {
+        if (count > 0) {
+            long last = ticks[newest];
+            if (tick <= last) {
+                return;
+            }
+            int interval = Math.max(1, ServerClock.stateInterval);
+            if (tick - last > 2L * interval) {
+                int from = newest;
+                push(tick - interval);
+                System.arraycopy(states, from * STRIDE, states, newest * STRIDE, STRIDE);
+            }
+        }
+        push(tick);
+        int o = newest * STRIDE;
+        states[o] = position.x;
+        states[o + 1] = position.y;
+        states[o + 2] = position.z;
+        states[o + 3] = rotation.x;
+        states[o + 4] = rotation.y;
+        states[o + 5] = rotation.z;
+        states[o + 6] = velocity.x;
+        states[o + 7] = velocity.y;
+        states[o + 8] = velocity.z;
+    }
+
+    private void push(long tick) {
+        newest = (newest + 1) % SIZE;
+        ticks[newest] = tick;
+        count = Math.min(count + 1, SIZE);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Writes the state at the given server tick. Returns false when nothing
+     * has been received yet.
+     */
+    public boolean sample(double tick, Vector3 position, Vector3 rotation) {
+        if (count == 0) {
+            return false;
+        }
+        if (tick >= ticks[newest]) {
+            int o = newest * STRIDE;
+            double seconds = Math.min(tick - ticks[newest], maxExtrapolation * ServerClock.tickRate)
+                    / ServerClock.tickRate;
+            position.copyFrom(states[o] + states[o + 6] * seconds, states[o + 1] + states[o + 7] * seconds,
+                    states[o + 2] + states[o + 8] * seconds);
+            rotation.copyFrom(states[o + 3], states[o + 4], states[o + 5]);
+            return true;
+        }
+
+        int after = newest;
+        for (int i = 1; i < count; i++) {
+            int before = (newest - i + SIZE) % SIZE;
+            if (ticks[before] <= tick) {
+                double t = (tick - ticks[before]) / (ticks[after] - ticks[before]);
+                int a = before * STRIDE;
+                int b = after * STRIDE;
+                position.copyFrom(lerp(states[a], states[b], t), lerp(states[a + 1], states[b + 1], t),
+                        lerp(states[a + 2], states[b + 2], t));
+                rotation.copyFrom(lerpAngle(states[a + 3], states[b + 3], t),
+                        lerpAngle(states[a + 4], states[b + 4], t), lerpAngle(states[a + 5], states[b + 5], t));
+                return true;
+            }
+            after = before;
+        }
+
+        // older than anything kept
+        int o = after * STRIDE;
+        position.copyFrom(states[o], states[o + 1], states[o + 2]);
+        rotation.copyFrom(states[o + 3], states[o + 4], states[o + 5]);
+        return true;
+    }
+
+    private static double lerp(double a, double b, double t) {
+        return a + (b - a) * t;
+    }
+
+    // takes the short way round
+    private static double lerpAngle(double a, double b, double t) {
+        double d = Math.IEEEremainder(b - a, Math.PI * 2);
+        return a + d * t;
+    }
+
+}
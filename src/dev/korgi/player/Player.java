@@ -8,11 +8,13 @@ import dev.korgi.game.Game;
 import dev.korgi.game.entites.Entity;
 import dev.korgi.game.entites.StorageEntity;
 import dev.korgi.game.items.Item;
+import dev.korgi.game.items.ItemSlots;
 import dev.korgi.game.physics.WorldEngine;
+import dev.korgi.game.physics.WorldStorage;
 import dev.korgi.game.rendering.Graphics;
 import dev.korgi.game.rendering.TextureAtlas;
 import dev.korgi.game.rendering.Voxel;
-import dev.korgi.game.ui.game.Inventory;
+import dev.korgi.game.ui.Screen;
 import dev.korgi.json.JSONIgnore;
 import dev.korgi.math.Vector3;
 import dev.korgi.math.VectorConstants;
@@ -35,13 +37,13 @@ public class Player extends Entity implements StorageEntity {
     private int speed;
 
     @ServerSide
-    private Inventory inventory = new Inventory(9);
+    private ItemSlots inventory = new ItemSlots(9);
 
     @JSONIgnore
     private int selectedBlock = TextureAtlas.DUNGEON_BLOCK;
 
     @JSONIgnore
-    private Voxel last;
+    private Vector3 last;
 
     public Player() {
         setCancelProtocol(() -> !connected);
@@ -59,22 +61,23 @@ public class Player extends Entity implements StorageEntity {
 
         rotation = Graphics.camera.rotation;
         Graphics.camera.position = position.add(VectorConstants.HALF);
-        inventory.show();
+        Screen.getInstance().hotbar.setSlots(inventory);
+        Screen.getInstance().hotbar.show();
         overlay();
     }
 
     private void overlay() {
+        Vector3[] target = new Vector3[1];
+        withHit((hit) -> target[0] = hit.getVoxelPos(), 5);
 
-        if (last != null) {
-            last.getMaterial().setOverlayLocation(-1);
+        WorldStorage world = WorldEngine.getWorld();
+        if (last != null && !last.equals(target[0])) {
+            world.setOverlay(last, -1);
         }
-
-        withHit((hit) -> {
-            Vector3 pos = hit.getVoxelPos();
-            Voxel voxel = WorldEngine.voxelAt(pos);
-            voxel.getMaterial().setOverlayLocation(TextureAtlas.OUTLINE);
-            last = voxel;
-        }, 5);
+        if (target[0] != null) {
+            world.setOverlay(target[0], TextureAtlas.OUTLINE);
+        }
+        last = target[0];
     }
 
     @Override
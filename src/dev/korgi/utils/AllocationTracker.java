@@ -0,0 +1,136 @@
+package dev.korgi.utils;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Counts bytes allocated by the game thread per tick, split by subsystem, using
+ * the per-thread allocation counter of the JVM. Call {@link #beginTick()},
+ * switch sections with {@link #section(int)} and close with {@link #endTick()}.
+ */
+public class AllocationTracker {
+
+    public static final int NETWORK = 0;
+    public static final int WORLD = 1;
+    public static final int RENDER = 2;
+    public static final int ENTITIES = 3;
+    public static final int OTHER = 4;
+
+    public static final String[] NAMES = { "network", "world", "render", "entities", "other" };
+
+    private static final long LOG_INTERVAL_NS = 10_000_000_000L;
+
+    private static final com.sun.management.ThreadMXBean threads = threadBean();
+    private static final boolean supported = threads != null;
+
+    private static final long[] current = new long[NAMES.length];
+    private static final long[] lastTick = new long[NAMES.length];
+    private static final long[] window = new long[NAMES.length];
+    private static int windowTicks;
+    private static long windowStart = System.nanoTime();
+
+    private static int section = OTHER;
+    private static long mark;
+
+    private AllocationTracker() {
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        try {
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                    && bean.isThreadAllocatedMemorySupported()) {
+                bean.setThreadAllocatedMemoryEnabled(true);
+                return bean;
+            }
+        } catch (UnsupportedOperationException e) {
+        }
+        return null;
+    }
+
+    private static long allocated() {
+        return threads.getCurrentThreadAllocatedBytes();
+    }
+
+    public static boolean isSupported() {
+        return supported;
+    }
+
+    public static void beginTick() {
+        if (!supported)
+            return;
+        for (int i = 0; i < current.length; i++) {
+            current[i] = 0;
+        }
+        section = OTHER;
+        mark = allocated();
+    }
+
+    /**
+     * Charges everything allocated since the last switch to the previous section
+     * and starts counting towards {@code next}.
+     */
+    public static void section(int next) {
+        if (!supported)
+            return;
+        long now = allocated();
+        current[section] += now - mark;
+        mark = now;
+        section = next;
+    }
+
+    public static void endTick() {
+        if (!supported)
+            return;
+        section(OTHER);
+        for (int i = 0; i < current.length; i++) {
+            lastTick[i] = current[i];
+            window[i] += current[i];
+        }
+        windowTicks++;
+
+        long now = System.nanoTime();
+        if (now - windowStart >= LOG_INTERVAL_NS) {
+            System.out.println("[" + Time.now() + "] Alloc per tick: " + describe(window, windowTicks));
+            for (int i = 0; i < window.length; i++) {
+                window[i] = 0;
+            }
+            windowTicks = 0;
+            windowStart = now;
+        }
+    }
+
+    public static long lastTick(int section) {
+        return lastTick[section];
+    }
+
+    public static long lastTickTotal() {
+        long total = 0;
+        for (long bytes : lastTick) {
+            total += bytes;
+        }
+        return total;
+    }
+
+    private static String describe(long[] bytes, int ticks) {
+        ticks = Math.max(1, ticks);
+        long total = 0;
+        for (long b : bytes) {
+            total += b;
+        }
+        StringBuilder sb = new StringBuilder(format(total / ticks)).append(" (");
+        for (int i = 0; i < bytes.length; i++) {
+            if (i > 0)
+                sb.append(", ");
+            sb.append(NAMES[i]).append(' ').append(format(bytes[i] / ticks));
+        }
+        return sb.append(')').toString();
+    }
+
+    public static String format(long bytes) {
+        if (bytes >= 1 << 20)
+            return "%.1f MB".formatted(bytes / (double) (1 << 20));
+        if (bytes >= 1 << 10)
+            return "%.1f KB".formatted(bytes / (double) (1 << 10));
+        return bytes + " B";
+    }
+
+}
@@ -1,23 +1,41 @@
 package dev.korgi.utils;
 
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
 import dev.korgi.game.ui.ErrorMessage;
 import dev.korgi.game.ui.Screen;
 import dev.korgi.json.JSONObject;
 
 public class ErrorHandler {
 
+    private static boolean headless;
+    // errors and warnings come from the tick thread too, the Screen only changes on the draw thread
+    private static final Queue<Pending> pending = new ConcurrentLinkedQueue<>();
+
+    private static class Pending {
+        final String message;
+        final int color;
+        final boolean isError;
+
+        Pending(String message, int color, boolean isError) {
+            this.message = message;
+            this.color = color;
+            this.isError = isError;
+        }
+    }
+
     private ErrorHandler() {
     };
 
+    /** Print errors and warnings only, for running without a Screen. */
+    public static void setHeadless(boolean headless) {
+        ErrorHandler.headless = headless;
+    }
+
     public static Error error(String message, Object... format) {
-        JSONObject style = Screen.errorMsg.getStylesheet();
-        JSONObject textLocal = style.getJSONObject("txt");
-        textLocal.set("bg", StyleConstants.RED);
         String error = "ERROR: %s".formatted(message).formatted(format);
-        Screen.errorMsg.hide();
-        Screen.errorMsg = new ErrorMessage(error, 3);
-        Screen.errorMsg.setError(true);
-        Screen.errorMsg.show();
+        show(error, StyleConstants.RED, true);
         Thread thread = Thread.currentThread();
         StackTraceElement[] stackTrace = thread.getStackTrace();
         System.err.println(error);
@@ -27,13 +45,36 @@ public class ErrorHandler {
     }
 
     public static void warn(String message, Object... format) {
+        String error = "WARNING: %s".formatted(message).formatted(format);
+        if (headless) {
+            System.err.println(error);
+            return;
+        }
+        show(error, StyleConstants.WARN, false);
+    }
+
+    private static void show(String message, int color, boolean isError) {
+        if (headless) {
+            return;
+        }
+        pending.add(new Pending(message, color, isError));
+    }
+
+    /** Shows the messages queued since the last frame, called from Screen.draw. */
+    public static void showPending() {
+        Pending p;
+        while ((p = pending.poll()) != null) {
+            display(p.message, p.color, p.isError);
+        }
+    }
+
+    private static void display(String message, int color, boolean isError) {
         JSONObject style = Screen.errorMsg.getStylesheet();
         JSONObject textLocal = style.getJSONObject("txt");
-        textLocal.set("bg", StyleConstants.WARN);
-        String error = "WARNING: %s".formatted(message).formatted(format);
+        textLocal.set("bg", color);
         Screen.errorMsg.hide();
-        Screen.errorMsg = new ErrorMessage(error, 3);
-        Screen.errorMsg.setError(false);
+        Screen.errorMsg = new ErrorMessage(message, 3);
+        Screen.errorMsg.setError(isError);
         Screen.errorMsg.show();
     }
 
@@ -0,0 +1,100 @@
+package dev.korgi.utils;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Open addressing set of primitive longs, used for dirty chunk keys so marking
+ * a chunk never allocates.
+ */
+public class LongHashSet {
+
+    private long[] keys;
+    private boolean[] used;
+    private int size;
+    private int mask;
+
+    public LongHashSet() {
+        this(64);
+    }
+
+    public LongHashSet(int capacity) {
+        int cap = Integer.highestOneBit(Math.max(16, capacity) * 2 - 1);
+        keys = new long[cap];
+        used = new boolean[cap];
+        mask = cap - 1;
+    }
+
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    public boolean add(long key) {
+        int i = hash(key) & mask;
+        while (used[i]) {
+            if (keys[i] == key) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        used[i] = true;
+        if (++size * 4 > used.length * 3) {
+            resize(used.length * 2);
+        }
+        return true;
+    }
+
+    public boolean contains(long key) {
+        int i = hash(key) & mask;
+        while (used[i]) {
+            if (keys[i] == key) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        boolean[] oldUsed = used;
+        keys = new long[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+        size = 0;
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (oldUsed[i]) {
+                add(oldKeys[i]);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        if (size == 0) {
+            return;
+        }
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    public void forEach(LongConsumer action) {
+        for (int i = 0; i < used.length; i++) {
+            if (used[i]) {
+                action.accept(keys[i]);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+package dev.korgi.utils;
+
+/**
+ * A .vox scene flattened into primitive arrays: every voxel of every visible
+ * shape, placed by the transforms above it, in MagicaVoxel's z up
+ * coordinates. A file with a single shape keeps that model's own coordinates.
+ * The arrays are shared by everyone who loaded the model, read them but do
+ * not change them.
+ */
+public class VoxModel {
+
+    public final int count;
+    /** x, y, z of each voxel. */
+    public final short[] positions;
+    /** Palette index of each voxel, 1 to 255. */
+    public final byte[] colors;
+    /** 256 colors as 0xAABBGGRR, the layout Vector4.of reads. */
+    public final int[] palette;
+    public final int minX, minY, minZ;
+    public final int maxX, maxY, maxZ;
+
+    public VoxModel(int count, short[] positions, byte[] colors, int[] palette) {
+        this.count = count;
+        this.positions = positions;
+        this.colors = colors;
+        this.palette = palette;
+        int[] min = { Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE };
+        int[] max = { Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE };
+        for (int i = 0; i < count * 3; i++) {
+            min[i % 3] = Math.min(min[i % 3], positions[i]);
+            max[i % 3] = Math.max(max[i % 3], positions[i]);
+        }
+        minX = min[0];
+        minY = min[1];
+        minZ = min[2];
+        maxX = max[0];
+        maxY = max[1];
+        maxZ = max[2];
+    }
+
+    public int x(int i) {
+        return positions[i * 3];
+    }
+
+    public int y(int i) {
+        return positions[i * 3 + 1];
+    }
+
+    public int z(int i) {
+        return positions[i * 3 + 2];
+    }
+
+    public int color(int i) {
+        return palette[colors[i] & 0xFF];
+    }
+
+    /** Bytes held by the arrays. */
+    public long bytes() {
+        return positions.length * 2L + colors.length + palette.length * 4L;
+    }
+
+}
@@ -1,95 +1,347 @@
 package dev.korgi.utils;
 
-import java.io.DataInputStream;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import dev.korgi.game.rendering.Voxel;
 import dev.korgi.math.Vector4;
 
+/**
+ * Loads MagicaVoxel .vox files into VoxModels. The file is mapped rather than
+ * read, and every model in it is placed by the scene graph (nTRN, nGRP, nSHP)
+ * with the file's own palette. Each name is parsed once, later calls share
+ * the same packed arrays.
+ */
 public class VoxTranslator {
 
-    private static Map<String, List<Voxel>> cache = new HashMap<>();
+    private static final int VOX = chunkId("VOX ");
+    private static final int MAIN = chunkId("MAIN");
+    private static final int SIZE = chunkId("SIZE");
+    private static final int XYZI = chunkId("XYZI");
+    private static final int RGBA = chunkId("RGBA");
+    private static final int TRANSFORM = chunkId("nTRN");
+    private static final int GROUP = chunkId("nGRP");
+    private static final int SHAPE = chunkId("nSHP");
+    private static final int LAYER = chunkId("LAYR");
+    // deeper than any scene the editor makes, stops a malformed graph from looping
+    private static final int MAX_DEPTH = 64;
+    private static final int[] IDENTITY = { 1, 0, 0, 0, 1, 0, 0, 0, 1 };
 
-    public static List<Voxel> fromModel(String name) {
-        if (cache.get(name) != null) {
-            return copyModel(cache.get(name));
+    // loaded from the tick thread and the client's threads, missing files are cached as MISSING
+    private static final Map<String, VoxModel> cache = new ConcurrentHashMap<>();
+    private static final VoxModel MISSING = new VoxModel(0, new short[0], new byte[0], new int[256]);
+
+    private static class Node {
+        boolean transform, hidden;
+        int child, layer;
+        int[] rotation = IDENTITY;
+        int[] translation = new int[3];
+        int[] children = new int[0];
+        int model = -1;
+    }
+
+    private static class Scene {
+        final ByteBuffer in;
+        final List<int[]> sizes = new ArrayList<>();
+        // offset and count of each model's voxels in the file
+        final List<int[]> models = new ArrayList<>();
+        final Map<Integer, Node> nodes = new HashMap<>();
+        final Set<Integer> hiddenLayers = new HashSet<>();
+        final int[] palette = createDefaultPalette();
+        // model id, rotation and translation of each visible shape
+        final List<int[]> shapes = new ArrayList<>();
+
+        Scene(ByteBuffer in) {
+            this.in = in;
+        }
+    }
+
+    /** The named model from ./models, or null when there is no such file. */
+    public static VoxModel model(String name) {
+        VoxModel model = cache.computeIfAbsent(name, VoxTranslator::loadModel);
+        return model == MISSING ? null : model;
+    }
+
+    private static VoxModel loadModel(String name) {
+        Path file = Path.of("models", name + ".vox");
+        if (!Files.exists(file)) {
+            return MISSING;
         }
-        File model = new File("./models/%s.vox".formatted(name));
-        if (!model.exists())
+        try {
+            return load(file);
+        } catch (IOException | RuntimeException e) {
+            ErrorHandler.warn("Could not load model %s: %s", name, e.getMessage());
+            return MISSING;
+        }
+    }
+
+    /**
+     * Voxels for an entity body, a fresh list the caller owns. Centered and
+     * turned into game axes the way bodies have always been.
+     */
+    public static List<Voxel> fromModel(String name) {
+        VoxModel model = model(name);
+        if (model == null || model.count == 0) {
             return List.of(new Voxel(0, 0, 0), new Voxel(0, -1, 0));
+        }
+        return toVoxels(model);
+    }
 
-        List<Voxel> voxels = new ArrayList<>();
-        try (DataInputStream in = new DataInputStream(new FileInputStream(model))) {
-            int[] palette = createDefaultPalette();
-
-            byte[] magic = new byte[4];
-            in.readFully(magic);
-            Integer.reverseBytes(in.readInt());
-
-            while (in.available() > 0) {
-                byte[] chunkIdBytes = new byte[4];
-                in.readFully(chunkIdBytes);
-                String chunkId = new String(chunkIdBytes);
-
-                int contentSize = Integer.reverseBytes(in.readInt());
-                Integer.reverseBytes(in.readInt());
-
-                if (chunkId.equals("XYZI")) {
-                    int numVoxels = Integer.reverseBytes(in.readInt());
-
-                    float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
-                    float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
-
-                    List<Voxel> rawVoxels = new ArrayList<>();
-                    for (int i = 0; i < numVoxels; i++) {
-                        int x = in.readUnsignedByte();
-                        int y = in.readUnsignedByte();
-                        int z = in.readUnsignedByte();
-                        int colorIndex = in.readUnsignedByte();
-                        int color = palette[colorIndex - 1];
-                        rawVoxels.add(new Voxel(x, z, y, Vector4.of(color)));
-
-                        minX = Math.min(minX, x);
-                        minY = Math.min(minY, y);
-                        minZ = Math.min(minZ, z);
-                        maxX = Math.max(maxX, x);
-                        maxY = Math.max(maxY, y);
-                        maxZ = Math.max(maxZ, z);
-                    }
-
-                    float cx = (minX + maxX) / 2f;
-                    float cy = (minY + maxY) / 2f;
-                    float cz = (minZ + maxZ) / 2f;
-
-                    for (Voxel v : rawVoxels) {
-                        float x = (float) v.position.x - cx;
-                        float y = (float) v.position.y - cy;
-                        float z = (float) v.position.z - cz;
-
-                        v.position.x = -x;
-                        v.position.y = y;
-                        v.position.z = -z;
-
-                        voxels.add(v);
-                    }
-
-                } else {
-                    in.skipBytes(contentSize);
+    public static List<Voxel> toVoxels(VoxModel model) {
+        float cx = (model.minX + model.maxX) / 2f;
+        float cy = (model.minY + model.maxY) / 2f;
+        float cz = (model.minZ + model.maxZ) / 2f;
+        List<Voxel> voxels = new ArrayList<>(model.count);
+        for (int i = 0; i < model.count; i++) {
+            voxels.add(new Voxel(cx - model.x(i), model.z(i) - cy, cz - model.y(i), Vector4.of(model.color(i))));
+        }
+        return voxels;
+    }
+
+    public static VoxModel load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return parse(in.order(ByteOrder.LITTLE_ENDIAN));
+        }
+    }
+
+    private static VoxModel parse(ByteBuffer in) throws IOException {
+        if (in.remaining() < 8 || in.getInt() != VOX) {
+            throw new IOException("not a .vox file");
+        }
+        in.getInt();
+        Scene scene = new Scene(in);
+        while (in.remaining() >= 12) {
+            int id = in.getInt();
+            int content = in.getInt();
+            int children = in.getInt();
+            if (id == MAIN) {
+                continue;
+            }
+            int end = in.position() + content;
+            if (end > in.limit()) {
+                throw new IOException("chunk runs past the end of the file");
+            }
+            if (id == SIZE) {
+                scene.sizes.add(new int[] { in.getInt(), in.getInt(), in.getInt() });
+            } else if (id == XYZI) {
+                int count = in.getInt();
+                if (in.position() + count * 4L > end) {
+                    throw new IOException("XYZI holds fewer voxels than it claims");
+                }
+                scene.models.add(new int[] { in.position(), count });
+            } else if (id == RGBA) {
+                for (int i = 0; i < 255; i++) {
+                    scene.palette[i + 1] = in.getInt();
+                }
+            } else if (id == TRANSFORM) {
+                readTransform(in, scene);
+            } else if (id == GROUP) {
+                Node node = new Node();
+                int nodeId = in.getInt();
+                readDict(in);
+                node.children = new int[in.getInt()];
+                for (int i = 0; i < node.children.length; i++) {
+                    node.children[i] = in.getInt();
+                }
+                scene.nodes.put(nodeId, node);
+            } else if (id == SHAPE) {
+                Node node = new Node();
+                int nodeId = in.getInt();
+                readDict(in);
+                if (in.getInt() > 0) {
+                    node.model = in.getInt();
+                }
+                scene.nodes.put(nodeId, node);
+            } else if (id == LAYER) {
+                int layer = in.getInt();
+                if ("1".equals(readDict(in).get("_hidden"))) {
+                    scene.hiddenLayers.add(layer);
                 }
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+            in.position(end + children);
+        }
+        if (scene.sizes.size() < scene.models.size()) {
+            throw new IOException("XYZI without a SIZE");
         }
 
-        cache.put(name, copyModel(voxels));
+        if (scene.nodes.containsKey(0)) {
+            place(scene, 0, IDENTITY, new int[3], 0);
+        } else if (!scene.models.isEmpty()) {
+            // without a scene graph more models are the frames of an animation
+            scene.shapes.add(unplaced(scene, 0));
+        }
+        // a lone shape keeps its model's coordinates, bodies are centered from those
+        if (scene.shapes.size() == 1) {
+            scene.shapes.set(0, unplaced(scene, scene.shapes.get(0)[0]));
+        }
+        return pack(scene);
+    }
 
-        return voxels;
+    private static void readTransform(ByteBuffer in, Scene scene) {
+        Node node = new Node();
+        node.transform = true;
+        int nodeId = in.getInt();
+        node.hidden = "1".equals(readDict(in).get("_hidden"));
+        node.child = in.getInt();
+        in.getInt();
+        node.layer = in.getInt();
+        int frames = in.getInt();
+        // animated transforms keep their first frame
+        if (frames > 0) {
+            Map<String, String> frame = readDict(in);
+            String r = frame.get("_r");
+            if (r != null) {
+                node.rotation = rotation(Integer.parseInt(r.trim()));
+            }
+            String t = frame.get("_t");
+            if (t != null) {
+                String[] parts = t.trim().split("\\s+");
+                for (int i = 0; i < 3 && i < parts.length; i++) {
+                    node.translation[i] = Integer.parseInt(parts[i]);
+                }
+            }
+        }
+        scene.nodes.put(nodeId, node);
+    }
+
+    private static void place(Scene scene, int nodeId, int[] rotation, int[] translation, int depth) {
+        Node node = scene.nodes.get(nodeId);
+        if (node == null || depth > MAX_DEPTH) {
+            return;
+        }
+        if (node.transform) {
+            if (node.hidden || scene.hiddenLayers.contains(node.layer)) {
+                return;
+            }
+            int[] t = multiply(rotation, node.translation);
+            for (int i = 0; i < 3; i++) {
+                t[i] += translation[i];
+            }
+            place(scene, node.child, multiply3(rotation, node.rotation), t, depth + 1);
+        } else if (node.model >= 0) {
+            if (node.model < scene.models.size()) {
+                scene.shapes.add(shape(node.model, rotation, translation));
+            }
+        } else {
+            for (int child : node.children) {
+                place(scene, child, rotation, translation, depth + 1);
+            }
+        }
+    }
+
+    private static int[] unplaced(Scene scene, int model) {
+        int[] size = scene.sizes.get(model);
+        return shape(model, IDENTITY, new int[] { size[0] / 2, size[1] / 2, size[2] / 2 });
+    }
+
+    private static int[] shape(int model, int[] rotation, int[] translation) {
+        int[] shape = new int[13];
+        shape[0] = model;
+        System.arraycopy(rotation, 0, shape, 1, 9);
+        System.arraycopy(translation, 0, shape, 10, 3);
+        return shape;
+    }
+
+    // each model is centered on its transform, then rotated and moved into place
+    private static VoxModel pack(Scene scene) {
+        long total = 0;
+        for (int[] shape : scene.shapes) {
+            total += scene.models.get(shape[0])[1];
+        }
+        if (total > Integer.MAX_VALUE / 3) {
+            throw new IllegalStateException("too many voxels: " + total);
+        }
+        int count = (int) total;
+        short[] positions = new short[count * 3];
+        byte[] colors = new byte[count];
+        ByteBuffer in = scene.in;
+        int n = 0;
+        for (int[] shape : scene.shapes) {
+            int[] size = scene.sizes.get(shape[0]);
+            int[] model = scene.models.get(shape[0]);
+            int px = size[0] / 2;
+            int py = size[1] / 2;
+            int pz = size[2] / 2;
+            for (int i = 0, at = model[0]; i < model[1]; i++, at += 4) {
+                int v = in.getInt(at);
+                int x = (v & 0xFF) - px;
+                int y = (v >> 8 & 0xFF) - py;
+                int z = (v >> 16 & 0xFF) - pz;
+                positions[n * 3] = (short) (shape[1] * x + shape[2] * y + shape[3] * z + shape[10]);
+                positions[n * 3 + 1] = (short) (shape[4] * x + shape[5] * y + shape[6] * z + shape[11]);
+                positions[n * 3 + 2] = (short) (shape[7] * x + shape[8] * y + shape[9] * z + shape[12]);
+                colors[n] = (byte) (v >>> 24);
+                n++;
+            }
+        }
+        return new VoxModel(count, positions, colors, scene.palette);
+    }
+
+    // bits 0-1 and 2-3 are the columns of the non-zero entries of rows 0 and 1, bits 4-6 their signs
+    private static int[] rotation(int bits) {
+        int first = bits & 3;
+        int second = bits >> 2 & 3;
+        int third = 3 - first - second;
+        if (first > 2 || second > 2 || first == second) {
+            return IDENTITY;
+        }
+        int[] m = new int[9];
+        m[first] = (bits & 16) == 0 ? 1 : -1;
+        m[3 + second] = (bits & 32) == 0 ? 1 : -1;
+        m[6 + third] = (bits & 64) == 0 ? 1 : -1;
+        return m;
+    }
+
+    private static int[] multiply(int[] m, int[] v) {
+        return new int[] {
+                m[0] * v[0] + m[1] * v[1] + m[2] * v[2],
+                m[3] * v[0] + m[4] * v[1] + m[5] * v[2],
+                m[6] * v[0] + m[7] * v[1] + m[8] * v[2]
+        };
+    }
+
+    private static int[] multiply3(int[] a, int[] b) {
+        int[] m = new int[9];
+        for (int row = 0; row < 3; row++) {
+            for (int col = 0; col < 3; col++) {
+                m[row * 3 + col] = a[row * 3] * b[col] + a[row * 3 + 1] * b[3 + col] + a[row * 3 + 2] * b[6 + col];
+            }
+        }
+        return m;
+    }
+
+    private static Map<String, String> readDict(ByteBuffer in) {
+        int pairs = in.getInt();
+        Map<String, String> dict = new HashMap<>();
+        for (int i = 0; i < pairs; i++) {
+            String key = readString(in);
+            dict.put(key, readString(in));
+        }
+        return dict;
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int chunkId(String id) {
+        return id.charAt(0) | id.charAt(1) << 8 | id.charAt(2) << 16 | id.charAt(3) << 24;
     }
 
     private static int[] createDefaultPalette() {